@@ -0,0 +1,70 @@
+package com.jray.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重新計算大量 schedule 的下一個 fire time: 逐一 CompiledCron.next v.s. CronUtil.nextAll (fork-join, 依時區分組).
+ *
+ * schedule 隨機混合 ExpressionShape 與時區 (固定 seed), 每次計算全部的 schedule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkNextBenchmark {
+
+    // 2014-11-02 05:30 UTC (New York DST 結束之後)
+    private static final long MILLIS = 1414906200000L;
+
+    private static final String[] ZONES = { "UTC", "America/New_York", "Europe/London", "Asia/Taipei",
+            "Australia/Lord_Howe" };
+
+    @Param({ "100000", "1000000" })
+    public int count;
+
+    private CompiledCron[] schedules;
+
+    private long[] out;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(20140731L);
+        ExpressionShape[] shapes = ExpressionShape.values();
+        this.schedules = new CompiledCron[this.count];
+        for (int i = 0; i < this.count; i++) {
+            TimeZone timeZone = TimeZone.getTimeZone(ZONES[random.nextInt(ZONES.length)]);
+            this.schedules[i] = CronUtil.compile(shapes[random.nextInt(shapes.length)].getExpression(), timeZone);
+        }
+        this.out = new long[this.count];
+    }
+
+    @Benchmark
+    public long[] serialNext() {
+        for (int i = 0; i < this.count; i++) {
+            this.out[i] = this.schedules[i].next(MILLIS);
+        }
+        return this.out;
+    }
+
+    @Benchmark
+    public long[] nextAll() {
+        CronUtil.nextAll(this.schedules, MILLIS, this.out);
+        return this.out;
+    }
+}
@@ -0,0 +1,86 @@
+package com.jray.cron;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 比較 classic thread pool 與 virtual thread 兩種 dispatch 模式的 fire lag (工作開始執行時間 - fire time).
+ *
+ *  - 100,000 個每分鐘觸發一次的 job (10% 集中在每分鐘的第 0 秒, 其餘平均分散), 每個工作 block (模擬 I/O) 一段時間
+ *  - 執行: gradlew dispatchLag [-PdispatchLag.args="jobs minutes blockMillis poolSize"] (不是 JMH benchmark, 以 main() 執行)
+ *  - virtual thread 需要 JDK 21 以上, 否則只執行 classic 模式
+ */
+public class DispatchLagBenchmark {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int blockMillis = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int poolSize = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        run("classic (" + poolSize + " threads)", new CronDispatcher(pool, CronDispatcher.UNLIMITED), jobs, minutes, blockMillis);
+        pool.shutdownNow();
+
+        ExecutorService fallback = Executors.newFixedThreadPool(poolSize);
+        CronDispatcher virtual = CronDispatcher.virtualThreads(CronDispatcher.UNLIMITED, fallback);
+        if (virtual.isVirtualThreads()) {
+            run("virtual threads", virtual, jobs, minutes, blockMillis);
+        }
+        else {
+            System.out.println("virtual threads not supported by this JDK: " + System.getProperty("java.version"));
+        }
+        fallback.shutdownNow();
+    }
+
+    private static void run(String mode, CronDispatcher dispatcher, int jobs, int minutes, int blockMillis)
+            throws InterruptedException {
+        final long[] lags = new long[jobs * (minutes + 1)];
+        final AtomicInteger count = new AtomicInteger();
+        final long block = blockMillis;
+        CronScheduler scheduler = new CronScheduler(new CronEngine(), dispatcher, CronScheduler.SYSTEM_CLOCK);
+        for (int i = 0; i < jobs; i++) {
+            final int second = i % 10 == 0 ? 0 : i % 60;
+            scheduler.schedule(new CronExpression(second + " * * * * ?", UTC), new Runnable() {
+                @Override
+                public void run() {
+                    // fire time 為最近一次 "該秒" 的整秒
+                    long lag = EpochCalendar.floorMod(System.currentTimeMillis() - second * 1000L, 60000L);
+                    int index = count.getAndIncrement();
+                    if (index < lags.length) {
+                        lags[index] = lag;
+                    }
+                    try {
+                        Thread.sleep(block);
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        scheduler.start();
+        TimeUnit.MINUTES.sleep(minutes);
+        scheduler.shutdown();
+
+        int n = Math.min(count.get(), lags.length);
+        long[] sorted = Arrays.copyOf(lags, n);
+        Arrays.sort(sorted);
+        System.out.printf("%-24s fired=%d misfires=%d p50=%dms p90=%dms p99=%dms p99.9=%dms max=%dms%n", mode, n,
+                scheduler.getMisfireCount(), percentile(sorted, 0.5), percentile(sorted, 0.9),
+                percentile(sorted, 0.99), percentile(sorted, 0.999), n == 0 ? 0 : sorted[n - 1]);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+    }
+}
@@ -0,0 +1,29 @@
+package com.jray.cron;
+
+/**
+ * benchmark 使用的代表性 expression
+ */
+public enum ExpressionShape {
+
+    // 每秒 (只需要秒欄位的搜尋)
+    EVERY_SECOND("* * * * * ?"),
+
+    // 上班時間每 15 分鐘
+    BUSINESS_HOURS("0 */15 9-17 * * MON-FRI"),
+
+    // 只有大月的 31 號 (日的搜尋跨月)
+    SPARSE_DAY_OF_MONTH("0 0 12 31 * ?"),
+
+    // 2/29 (只存在於閏年: 搜尋直接跳到下一個閏年, 結果最多在 8 年後, 例如 2096 -> 2104)
+    LEAP_DAY("0 0 0 29 2 ?");
+
+    private final String expression;
+
+    ExpressionShape(String expression) {
+        this.expression = expression;
+    }
+
+    public String getExpression() {
+        return this.expression;
+    }
+}
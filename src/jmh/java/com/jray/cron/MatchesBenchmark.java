@@ -0,0 +1,97 @@
+package com.jray.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每秒 tick 的 dispatcher 判斷是否觸發: matches(t) v.s. next(t - 1) == t (CronUtil 與 CronEngine).
+ *
+ * tick 為 2014-10-01 起連續的 TICKS 秒; bulk 一次檢查全部的 tick (以每個 tick 的時間計算).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchesBenchmark {
+
+    // 2014-10-01 00:00:00 UTC
+    private static final long START = 1412121600000L;
+
+    private static final int TICKS = 1024;
+
+    @Param
+    public ExpressionShape shape;
+
+    @Param({ "UTC", "America/New_York" })
+    public String zone;
+
+    private final long[] ticks = new long[TICKS];
+
+    private final boolean[] out = new boolean[TICKS];
+
+    private int index;
+
+    private CronUtil cronUtil;
+
+    private CronEngine cronEngine;
+
+    private CronExpression cronExpression;
+
+    @Setup
+    public void setUp() {
+        TimeZone timeZone = TimeZone.getTimeZone(this.zone);
+        for (int i = 0; i < TICKS; i++) {
+            this.ticks[i] = START + i * 1000L;
+        }
+        this.cronUtil = new CronUtil(this.shape.getExpression(), timeZone);
+        this.cronEngine = new CronEngine();
+        this.cronExpression = new CronExpression(this.shape.getExpression(), timeZone);
+    }
+
+    private long nextTick() {
+        return this.ticks[this.index++ & (TICKS - 1)];
+    }
+
+    @Benchmark
+    public boolean cronUtilNext() {
+        long tick = this.nextTick();
+        return this.cronUtil.next(tick - 1) == tick;
+    }
+
+    @Benchmark
+    public boolean cronUtilMatches() {
+        return this.cronUtil.matches(this.nextTick());
+    }
+
+    @Benchmark
+    public boolean cronEngineNext() {
+        long tick = this.nextTick();
+        return this.cronEngine.getNextFireTime(this.cronExpression, tick - 1) == tick;
+    }
+
+    @Benchmark
+    public boolean cronEngineMatches() {
+        return this.cronEngine.matches(this.cronExpression, this.nextTick());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public int cronUtilBulkMatches() {
+        return this.cronUtil.matches(this.ticks, this.out);
+    }
+}
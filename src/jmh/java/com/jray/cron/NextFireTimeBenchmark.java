@@ -0,0 +1,89 @@
+package com.jray.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 計算下一個 fire time: CronUtil.next / CronEngine.getNextFireTime v.s. Spring CronSequenceGenerator.
+ *
+ * 起始時間為 2014 ~ 2024 之間的隨機時間 (固定 seed), 在 DST 時區中會跨越 offset 轉換.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NextFireTimeBenchmark {
+
+    // 2014-01-01 ~ 2024-01-01 (UTC)
+    private static final long FROM = 1388534400000L;
+    private static final long TO = 1704067200000L;
+
+    private static final int STARTS = 1024;
+
+    @Param
+    public ExpressionShape shape;
+
+    @Param({ "UTC", "America/New_York", "Europe/London", "Australia/Lord_Howe" })
+    public String zone;
+
+    private final long[] starts = new long[STARTS];
+
+    private int index;
+
+    private CronUtil cronUtil;
+
+    private CronEngine cronEngine;
+
+    private CronExpression cronExpression;
+
+    private CronSequenceGenerator spring;
+
+    @Setup
+    public void setUp() {
+        TimeZone timeZone = TimeZone.getTimeZone(this.zone);
+        Random random = new Random(20140728L);
+        for (int i = 0; i < STARTS; i++) {
+            this.starts[i] = FROM + (long) (random.nextDouble() * (TO - FROM));
+        }
+        this.cronUtil = new CronUtil(this.shape.getExpression(), timeZone);
+        this.cronEngine = new CronEngine();
+        this.cronExpression = new CronExpression(this.shape.getExpression(), timeZone);
+        this.spring = new CronSequenceGenerator(this.shape.getExpression(), timeZone);
+    }
+
+    private long nextStart() {
+        return this.starts[this.index++ & (STARTS - 1)];
+    }
+
+    @Benchmark
+    public long cronUtilNext() {
+        return this.cronUtil.next(this.nextStart());
+    }
+
+    @Benchmark
+    public long cronEngineNext() {
+        return this.cronEngine.getNextFireTime(this.cronExpression, this.nextStart());
+    }
+
+    @Benchmark
+    public Date springNext() {
+        return this.spring.next(new Date(this.nextStart()));
+    }
+}
@@ -0,0 +1,61 @@
+package com.jray.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析 cron expression: CronUtil (快取 / 不快取) v.s. Spring CronSequenceGenerator
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param
+    public ExpressionShape shape;
+
+    @Param({ "UTC", "America/New_York" })
+    public String zone;
+
+    private String expression;
+
+    private TimeZone timeZone;
+
+    @Setup
+    public void setUp() {
+        this.expression = this.shape.getExpression();
+        this.timeZone = TimeZone.getTimeZone(this.zone);
+    }
+
+    @Benchmark
+    public CronUtil cronUtilConstruct() {
+        // 重複的 expression 由解析快取取得
+        return new CronUtil(this.expression, this.timeZone);
+    }
+
+    @Benchmark
+    public CompiledCron cronUtilParse() {
+        return CronUtil.parse(this.expression, this.timeZone);
+    }
+
+    @Benchmark
+    public CronSequenceGenerator springConstruct() {
+        return new CronSequenceGenerator(this.expression, this.timeZone);
+    }
+}
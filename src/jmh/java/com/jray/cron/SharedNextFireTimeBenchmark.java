@@ -0,0 +1,106 @@
+package com.jray.cron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多個 thread 共用同一個 CronEngine 與 CronExpression 時的 getNextFireTime 吞吐量.
+ *
+ * 讀取路徑不使用 lock (解析結果為不可變物件), 吞吐量應隨 thread 數接近線性成長, 例如:
+ *
+ *   gradlew jmh -Pjmh.include=SharedNextFireTimeBenchmark  (預設: 所有 CPU)
+ *   java -jar ... SharedNextFireTimeBenchmark -t 1,2,4,8,16,32,64  (比較不同 thread 數)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class SharedNextFireTimeBenchmark {
+
+    // 2014-01-01 ~ 2024-01-01 (UTC)
+    private static final long FROM = 1388534400000L;
+    private static final long TO = 1704067200000L;
+
+    private static final int STARTS = 1024;
+
+    /**
+     * 所有 thread 共用 (setup 時不預先解析, 由第一次呼叫解析)
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param
+        public ExpressionShape shape;
+
+        @Param({ "UTC", "America/New_York" })
+        public String zone;
+
+        CronEngine cronEngine;
+
+        CronExpression cronExpression;
+
+        CronUtil cronUtil;
+
+        @Setup
+        public void setUp() {
+            TimeZone timeZone = TimeZone.getTimeZone(this.zone);
+            this.cronEngine = new CronEngine();
+            this.cronExpression = new CronExpression(this.shape.getExpression(), timeZone);
+            this.cronUtil = new CronUtil(this.shape.getExpression(), timeZone);
+        }
+    }
+
+    /**
+     * 各 thread 的起始時間 (不同 seed, 避免所有 thread 計算相同的時間)
+     */
+    @State(Scope.Thread)
+    public static class Starts {
+
+        private static int seed;
+
+        final long[] starts = new long[STARTS];
+
+        int index;
+
+        @Setup
+        public void setUp() {
+            Random random;
+            synchronized (Starts.class) {
+                random = new Random(20140728L + seed++);
+            }
+            for (int i = 0; i < STARTS; i++) {
+                this.starts[i] = FROM + (long) (random.nextDouble() * (TO - FROM));
+            }
+        }
+
+        long next() {
+            return this.starts[this.index++ & (STARTS - 1)];
+        }
+    }
+
+    @Benchmark
+    public long cronEngineNext(Shared shared, Starts starts) {
+        return shared.cronEngine.getNextFireTime(shared.cronExpression, starts.next());
+    }
+
+    @Benchmark
+    public long cronUtilNext(Shared shared, Starts starts) {
+        return shared.cronUtil.next(starts.next());
+    }
+}
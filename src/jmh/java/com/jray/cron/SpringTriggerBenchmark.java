@@ -0,0 +1,83 @@
+package com.jray.cron;
+
+import com.jray.cron.spring.EngineCronTrigger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trigger.nextExecutionTime: Spring CronTrigger v.s. EngineCronTrigger (同一個 TriggerContext, 只有 trigger 不同).
+ *
+ * 上一次完成的時間為 2014 ~ 2024 之間的隨機時間 (固定 seed); 以 -prof gc 比較每次呼叫配置的記憶體.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpringTriggerBenchmark {
+
+    // 2014-01-01 ~ 2024-01-01 (UTC)
+    private static final long FROM = 1388534400000L;
+    private static final long TO = 1704067200000L;
+
+    private static final int STARTS = 1024;
+
+    @Param({ "EVERY_SECOND", "BUSINESS_HOURS", "SPARSE_DAY_OF_MONTH" })
+    public ExpressionShape shape;
+
+    @Param({ "UTC", "America/New_York" })
+    public String zone;
+
+    private final SimpleTriggerContext[] contexts = new SimpleTriggerContext[STARTS];
+
+    private int index;
+
+    private Trigger spring;
+
+    private Trigger engine;
+
+    @Setup
+    public void setUp() {
+        TimeZone timeZone = TimeZone.getTimeZone(this.zone);
+        Random random = new Random(20140728L);
+        for (int i = 0; i < STARTS; i++) {
+            Date completion = new Date(FROM + (long) (random.nextDouble() * (TO - FROM)));
+            this.contexts[i] = new SimpleTriggerContext();
+            this.contexts[i].update(null, null, completion);
+        }
+        this.spring = new CronTrigger(this.shape.getExpression(), timeZone);
+        this.engine = new EngineCronTrigger(new CronEngine(), this.shape.getExpression(), timeZone);
+    }
+
+    private SimpleTriggerContext nextContext() {
+        return this.contexts[this.index++ & (STARTS - 1)];
+    }
+
+    @Benchmark
+    public Date springCronTrigger() {
+        return this.spring.nextExecutionTime(this.nextContext());
+    }
+
+    @Benchmark
+    public Date engineCronTrigger() {
+        return this.engine.nextExecutionTime(this.nextContext());
+    }
+}
@@ -0,0 +1,1060 @@
+package com.jray.cron;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 已解析的 cron expression (不可變).
+ *
+ *  1. 每個欄位以 primitive bit mask 保存, 取代 6 個 {@link java.util.BitSet}:
+ *      seconds (bit 0~59), minutes (bit 0~59), hours (bit 0~23),
+ *      daysOfMonth (bit 1~31), months (bit 0~11, 同 Calendar.MONTH), daysOfWeek (bit 0~6, 0 = SUN),
+ *      years (bit n = {@link #MIN_YEAR} + n, null 代表不限制年份)
+ *  2. nextSetBit 以 {@link Long#numberOfTrailingZeros(long)} 計算
+ *  3. equals / hashCode 以 bit mask 與時區 (ID 與規則) 比較, 可作為 map key
+ *
+ * 搜尋演算法同 org.springframework.scheduling.support.CronSequenceGenerator, 以 {@link EpochCalendar} 計算.
+ * 日期 (日 / 星期 / 月) 不逐日前進, 改以每年預先計算的 366 bits day mask 一次找到下一個允許的日期,
+ * 今年沒有時直接跳到下一個可能的年份 (years 的下一個 bit, 只有 2/29 時只看閏年) 的 1/1.
+ * 不可能符合的 expression (例如: 2/30) 在解析時即判斷, 不需搜尋; 其餘的搜尋最多 400 年 (格里曆的週期).
+ *
+ * 與 Spring (原本以 GregorianCalendar 實作的演算法) 刻意不同的結果 (其餘完全相同):
+ *  1. 符合的日期相隔超過 366 天 (例如: 13 號星期五) 時不會失敗 ("Overflow in day")
+ *  2. 跨月後日期相同時, Spring 不重新調整時間, 可能回傳不符合的時間 (例如: 00:00:00); 此處一律回傳符合的時間
+ *  3. 日期改變時時 / 分 / 秒全部重設, 回傳新日期的第一個 fire time; Spring 保留本回合已前進的秒 (或分),
+ *     會略過較早的 fire time. 例如 "0,30 0,30 0,12 1 * ?" (UTC) 由 2018-06-18 00:00:21 起:
+ *     此處為 2018-07-01 00:00:00, Spring 為 00:00:30
+ */
+public final class CompiledCron {
+
+    // 可 reset 的欄位 (由小到大)
+    private static final int[] RESET_FIELDS = {
+            Calendar.SECOND, Calendar.MINUTE, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_MONTH, Calendar.MONTH };
+
+    // 所有 schedule 共用的每年允許日期快取: 只與 日 / 月 / 星期 / 年 有關, 依 hash 直接對應 (容量固定, 衝突時覆蓋)
+    private static final int YEAR_MASK_SLOTS = 2048;
+
+    private static final AtomicReferenceArray<YearMask> YEAR_MASKS = new AtomicReferenceArray<YearMask>(YEAR_MASK_SLOTS);
+
+    // 年份範圍 (同 Quartz)
+    public static final int MIN_YEAR = 1970;
+
+    public static final int MAX_YEAR = 2099;
+
+    static final int YEAR_WORDS = (MAX_YEAR - MIN_YEAR) / 64 + 1;
+
+    // 格里曆每 400 年循環一次 (星期與閏年), 超過仍找不到代表不會再觸發
+    static final int MAX_SEARCH_YEARS = 400;
+
+    private static final long[] NO_DAYS = new long[6];
+
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+
+    // 解析前的 expression (錯誤訊息用, 不影響 equals / hashCode), 直接以 bit mask 建立時為 null
+    private final String expression;
+
+    private final long seconds;
+
+    private final long minutes;
+
+    private final int hours;
+
+    private final int daysOfMonth;
+
+    private final int months;
+
+    private final int daysOfWeek;
+
+    private final long[] years;
+
+    private final TimeZone timeZone;
+
+    // 時區的 offset 轉換表 (同一時區共用)
+    private final ZoneTransitions transitions;
+
+    // 是否有任何一天符合 日 / 星期 / 月 (不考慮年份)
+    private final boolean satisfiable;
+
+    // 只有閏年有符合的日期 (例如: 2/29)
+    private final boolean leapYearsOnly;
+
+    // 日 / 月 / 星期 的 hash (共用的 year mask 快取的 slot), 不影響 equals / hashCode
+    private final int dateHash;
+
+    public CompiledCron(long seconds, long minutes, int hours, int daysOfMonth, int months, int daysOfWeek,
+                        TimeZone timeZone) {
+        this(seconds, minutes, hours, daysOfMonth, months, daysOfWeek, null, timeZone);
+    }
+
+    /**
+     * @param years 允許的年份 (bit n = {@link #MIN_YEAR} + n), null 代表不限制
+     */
+    public CompiledCron(long seconds, long minutes, int hours, int daysOfMonth, int months, int daysOfWeek,
+                        long[] years, TimeZone timeZone) {
+        this(null, seconds, minutes, hours, daysOfMonth, months, daysOfWeek, years, timeZone);
+    }
+
+    /**
+     * @param expression 解析前的 expression (錯誤訊息用), 可為 null
+     */
+    CompiledCron(String expression, long seconds, long minutes, int hours, int daysOfMonth, int months,
+                 int daysOfWeek, long[] years, TimeZone timeZone) {
+        if (timeZone == null) {
+            throw new IllegalArgumentException("time zone must not be null");
+        }
+        this.expression = expression;
+        this.seconds = seconds & 0x0FFFFFFFFFFFFFFFL;
+        this.minutes = minutes & 0x0FFFFFFFFFFFFFFFL;
+        this.hours = hours & 0x00FFFFFF;
+        this.daysOfMonth = daysOfMonth & 0xFFFFFFFE;
+        this.months = months & 0x0FFF;
+        this.daysOfWeek = daysOfWeek & 0x7F;
+        this.years = years == null ? null : Arrays.copyOf(years, YEAR_WORDS);
+        if (this.years != null) {
+            this.years[YEAR_WORDS - 1] &= -1L >>> (63 - (MAX_YEAR - MIN_YEAR) % 64);
+        }
+        this.timeZone = timeZone;
+        this.transitions = ZoneTransitions.of(timeZone);
+        // 日 / 月 的組合至少在閏年存在才可能觸發 (只存在於閏年時, 例如 2/29, 只需搜尋閏年);
+        // 同一個日期在 400 年內會落在每一個星期, 因此只需確認有允許的星期
+        boolean commonYear = false;
+        boolean leapYear = false;
+        long days = this.daysOfMonth & 0xFFFFFFFFL;
+        for (int month = nextSetBit(this.months, 0); month >= 0; month = nextSetBit(this.months, month + 1)) {
+            int first = nextSetBit(days, 1);
+            if (first >= 0 && first <= EpochCalendar.monthLength(2001, month)) {
+                commonYear = true;
+            }
+            if (first >= 0 && first <= EpochCalendar.monthLength(2000, month)) {
+                leapYear = true;
+            }
+        }
+        this.satisfiable = leapYear && this.daysOfWeek != 0 && (this.years == null || !isEmpty(this.years));
+        this.leapYearsOnly = leapYear && !commonYear;
+        this.dateHash = ((this.daysOfMonth * 31 + this.months) * 31 + this.daysOfWeek) * 0x9E3779B9;
+    }
+
+    /**
+     * 取得 "指定時間" 後的 下一個符合 cron expression 時間
+     *
+     * @param millis
+     *            指定時間
+     * @return 下一個符合 cron expression 時間
+     * @throws NoMoreFireTimesException 允許的年份已用完, 之後不會再觸發
+     */
+    public long next(long millis) {
+
+        // 設定指定的時間
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(this.transitions);
+        calendar.setTimeInMillis(millis);
+        return this.next(calendar, false, null);
+    }
+
+    /**
+     * 同 {@link #next(long)}, 並將搜尋過程記錄在 stats 中
+     */
+    long next(long millis, SearchStats stats) {
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(this.transitions);
+        calendar.setTimeInMillis(millis);
+        return this.next(calendar, false, stats);
+    }
+
+    /**
+     * 連續取得 "指定時間" 後的 n 個符合 cron expression 時間 (結果與連續呼叫 {@link #next(long)} 相同)
+     *
+     * 每次由上一個結果繼續往前推進, 不需重新設定 calendar, 也不建立任何物件.
+     *
+     * @param millis 指定時間
+     * @param out 存放結果 (不會再觸發時, 之後的位置為 Long.MIN_VALUE)
+     * @param n 數量
+     * @return 取得的數量 (不會再觸發時少於 n)
+     */
+    public int next(long millis, long[] out, int n) {
+        if (n < 0 || n > out.length) {
+            throw new IllegalArgumentException("invalid count " + n + " for array of length " + out.length);
+        }
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(this.transitions);
+        calendar.setTimeInMillis(millis);
+        for (int i = 0; i < n; i++) {
+            try {
+                // calendar 停在上一個結果 => 已符合 expression, 可省略首次搜尋
+                out[i] = this.next(calendar, i > 0, null);
+            }
+            catch (NoMoreFireTimesException ex) {
+                Arrays.fill(out, i, n, Long.MIN_VALUE);
+                return i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 指定時間是否為 fire time (結果同 next(millis - 1) == millis), 不需搜尋也不建立任何物件.
+     *
+     * 將時間拆為 wall time 的欄位一次, 再以 bit 運算檢查各欄位的 mask;
+     * 只有在 DST 轉換前後一天內 (不存在或重複的 wall time 依 next() 的換算決定) 才改用 next() 確認.
+     *
+     * @param millis 指定時間
+     * @return 是否為 fire time
+     */
+    public boolean matches(long millis) {
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(this.transitions);
+        return this.matches(calendar, millis);
+    }
+
+    /**
+     * 大量時間的 {@link #matches(long)} (例如: 一段時間內的每一個 tick), 共用同一個 calendar
+     *
+     * @param instants 指定時間
+     * @param out 存放結果 (out[i] 對應 instants[i], 長度至少與 instants 相同)
+     * @return 符合的數量
+     */
+    public int matches(long[] instants, boolean[] out) {
+        if (out.length < instants.length) {
+            throw new IllegalArgumentException("output array shorter than instants: " + out.length + " < " + instants.length);
+        }
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(this.transitions);
+        int count = 0;
+        for (int i = 0; i < instants.length; i++) {
+            out[i] = this.matches(calendar, instants[i]);
+            if (out[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean matches(EpochCalendar calendar, long millis) {
+
+        // fire time 必定為整秒
+        if (!this.satisfiable || EpochCalendar.floorMod(millis, EpochCalendar.MILLIS_PER_SECOND) != 0) {
+            return false;
+        }
+        calendar.setTimeInMillis(millis);
+        if (calendar.isNearTransition()) {
+            try {
+                return this.next(millis - 1) == millis;
+            }
+            catch (NoMoreFireTimesException ex) {
+                // 之後不會再觸發
+                return false;
+            }
+        }
+        if (!isSet(this.seconds, calendar.get(Calendar.SECOND)) || !isSet(this.minutes, calendar.get(Calendar.MINUTE))
+                || (this.hours & 1 << calendar.get(Calendar.HOUR_OF_DAY)) == 0
+                || (this.daysOfMonth & 1 << calendar.get(Calendar.DAY_OF_MONTH)) == 0
+                || (this.months & 1 << calendar.get(Calendar.MONTH)) == 0
+                || (this.daysOfWeek & 1 << (calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY)) == 0) {
+            return false;
+        }
+        if (this.years == null) {
+            return true;
+        }
+        int index = calendar.get(Calendar.YEAR) - MIN_YEAR;
+        return index >= 0 && index <= MAX_YEAR - MIN_YEAR && isSet(this.years[index >> 6], index & 63);
+    }
+
+    /**
+     * 取得 "指定時間" 前的 最後一個符合 cron expression 時間
+     *
+     * 與 next() 相反方向的搜尋: 欄位改變時, 較小的欄位設為最大值後重新搜尋.
+     * 搜尋以 wall time (年/月/日/時/分/秒) 進行, 最後才換算為 UTC:
+     *  1. 不存在的時間 (DST gap) 不會被選取
+     *  2. 重複的時間 (DST overlap) 同 next(), 取較晚的時間點
+     *
+     * @param millis
+     *            指定時間
+     * @return 早於指定時間的最後一個符合 cron expression 時間
+     * @throws NoMoreFireTimesException 允許的年份已用完, 之前沒有 fire time
+     */
+    public long prev(long millis) {
+
+        // 結果必須早於 millis => 由 millis 之前的最後一個整秒開始
+        long start = millis - 1 - EpochCalendar.floorMod(millis - 1, EpochCalendar.MILLIS_PER_SECOND);
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(this.transitions);
+        calendar.setTimeInMillis(start);
+        int baseYear = calendar.get(Calendar.YEAR);
+        if (!this.satisfiable) {
+            throw this.runaway("previous");
+        }
+        long time = this.prev(calendar, start, baseYear);
+        // 結果與起點之間, 以及結果的前後一天內都沒有 offset 轉換 => wall time 只對應一個時間點, 即為結果
+        calendar.setTimeInMillis(time);
+        if (!calendar.isNearTransition() && this.transitions.lastTransition(time, start) == Long.MIN_VALUE) {
+            return time;
+        }
+        return this.prevNearTransition(calendar, start, baseYear);
+    }
+
+    /**
+     * DST 轉換附近的 {@link #prev(long)}: 轉換前後的區段各自以固定的 offset 換算 wall time
+     * (重疊時段的兩個時間點都是候選, DST gap 中的 wall time 同 next() 以轉換前的 offset 換算),
+     * 候選再以 {@link #matches(long)} 確認 (轉換附近 next() 的結果依搜尋路徑而定, 重疊時段的時間點不一定是 fire time).
+     *
+     * @param calendar 使用中的 calendar (時區同此 schedule)
+     * @param start 結果不可晚於此時間 (整秒)
+     */
+    private long prevNearTransition(EpochCalendar calendar, long start, int baseYear) {
+        long limit = start;
+        while (true) {
+            int offset = calendar.getOffset(limit);
+            long time = this.prev(EpochCalendar.fixedForCurrentThread(offset), limit, baseYear);
+            long transition = this.transitions.lastTransition(time, limit);
+            if (transition != Long.MIN_VALUE) {
+                // limit 所在的區段內沒有候選 => 以轉換前的 offset 換算 (DST gap 的 wall time 換算後落在轉換後 gap 長度內)
+                int before = calendar.getOffset(transition - 1);
+                long bound = Math.min(limit, transition + Math.max(0, offset - before) - 1);
+                bound -= EpochCalendar.floorMod(bound, EpochCalendar.MILLIS_PER_SECOND);
+                time = this.prev(EpochCalendar.fixedForCurrentThread(before), bound, baseYear);
+                if (this.transitions.lastTransition(time, transition - 1) != Long.MIN_VALUE) {
+                    // 轉換前的區段內也沒有候選 => 由更早的區段繼續
+                    limit = transition - 1 - EpochCalendar.floorMod(transition - 1, EpochCalendar.MILLIS_PER_SECOND);
+                    continue;
+                }
+            }
+            if (this.matches(calendar, time)) {
+                return time;
+            }
+            limit = time - EpochCalendar.MILLIS_PER_SECOND;
+        }
+    }
+
+    /**
+     * 以 wall time 往回搜尋不晚於 start 的最後一個符合的時間 (固定 offset 的 calendar 換算結果唯一)
+     *
+     * @param calendar 換算 wall time 的 calendar
+     * @param start 結果不可晚於此時間 (整秒)
+     * @param baseYear 起始年份 (判斷搜尋是否超過 {@link #MAX_SEARCH_YEARS})
+     */
+    private long prev(EpochCalendar calendar, long start, int baseYear) {
+        calendar.setTimeInMillis(start);
+        while (true) {
+            int year = calendar.get(Calendar.YEAR);
+            int month = calendar.get(Calendar.MONTH);
+            int day = calendar.get(Calendar.DAY_OF_MONTH);
+            int hour = calendar.get(Calendar.HOUR_OF_DAY);
+            int minute = calendar.get(Calendar.MINUTE);
+            int second = calendar.get(Calendar.SECOND);
+
+            // 以 wall time 往回搜尋; 任一欄位減 1 時, 較小的欄位設為最大值 (-1 代表需要往較大的欄位借位)
+            while (true) {
+                if (second < 0) {
+                    second = 59;
+                    minute--;
+                }
+                if (minute < 0) {
+                    minute = 59;
+                    hour--;
+                }
+                if (hour < 0) {
+                    hour = 23;
+                    day--;
+                }
+                if (day < 1) {
+                    month--;
+                    if (month < 0) {
+                        month = Calendar.DECEMBER;
+                        year--;
+                    }
+                    day = EpochCalendar.monthLength(year, month);
+                }
+
+                // 日 / 星期 / 月: 以該年的 day mask 往回找到允許的日期, 今年沒有時直接跳到上一個可能的年份
+                int dayOfYear = (int) (EpochCalendar.daysFromCivil(year, month + 1, day)
+                        - EpochCalendar.daysFromCivil(year, 1, 1));
+                int updateDayOfYear = this.prevDayOfYear(year, dayOfYear);
+                if (updateDayOfYear != dayOfYear) {
+                    while (updateDayOfYear < 0) {
+                        year = this.prevCandidateYear(year - 1);
+                        // 確認在合理範圍內
+                        if (year == NO_YEAR) {
+                            throw this.exhausted("previous");
+                        }
+                        if (baseYear - year > MAX_SEARCH_YEARS) {
+                            throw this.runaway("previous");
+                        }
+                        updateDayOfYear = this.prevDayOfYear(year, EpochCalendar.isLeapYear(year) ? 365 : 364);
+                    }
+                    month = 0;
+                    day = updateDayOfYear + 1;
+                    for (int length = EpochCalendar.monthLength(year, month); day > length;
+                         length = EpochCalendar.monthLength(year, month)) {
+                        day -= length;
+                        month++;
+                    }
+                    hour = 23;
+                    minute = 59;
+                    second = 59;
+                }
+
+                // 時
+                int updateHour = prevSetBit(this.hours, hour);
+                if (updateHour != hour) {
+                    hour = updateHour;
+                    minute = 59;
+                    second = 59;
+                    if (hour < 0) {
+                        continue;
+                    }
+                }
+
+                // 分
+                int updateMinute = prevSetBit(this.minutes, minute);
+                if (updateMinute != minute) {
+                    minute = updateMinute;
+                    second = 59;
+                    if (minute < 0) {
+                        continue;
+                    }
+                }
+
+                // 秒
+                second = prevSetBit(this.seconds, second);
+                if (second >= 0) {
+                    break;
+                }
+            }
+
+            // 換算為 UTC
+            calendar.set(Calendar.YEAR, year);
+            calendar.set(Calendar.MONTH, month);
+            calendar.set(Calendar.DAY_OF_MONTH, day);
+            calendar.set(Calendar.HOUR_OF_DAY, hour);
+            calendar.set(Calendar.MINUTE, minute);
+            calendar.set(Calendar.SECOND, second);
+            calendar.set(Calendar.MILLISECOND, 0);
+            long time = calendar.getTimeInMillis();
+            boolean exists = calendar.get(Calendar.SECOND) == second && calendar.get(Calendar.MINUTE) == minute
+                    && calendar.get(Calendar.HOUR_OF_DAY) == hour && calendar.get(Calendar.DAY_OF_MONTH) == day;
+            if (exists && time <= start) {
+                return time;
+            }
+
+            // DST gap (時間不存在) 或 DST overlap (較晚的時間點晚於起點) => 由轉換前的時間繼續往回找
+            long transition = calendar.findTransition(time - EpochCalendar.MILLIS_PER_DAY, time);
+            long restart;
+            if (transition == Long.MIN_VALUE) {
+                restart = time - EpochCalendar.MILLIS_PER_SECOND;
+            }
+            else if (exists) {
+                // overlap: 由重複時段開始前 (第一次出現) 的上一秒繼續
+                int delta = calendar.getOffset(transition - 1) - calendar.getOffset(transition);
+                restart = transition - delta - 1;
+            }
+            else {
+                // gap: 由轉換前的上一秒繼續
+                restart = transition - 1;
+            }
+            restart -= EpochCalendar.floorMod(restart, EpochCalendar.MILLIS_PER_SECOND);
+            calendar.setTimeInMillis(Math.min(restart, start));
+        }
+    }
+
+    /**
+     * 只考慮日期 (日 / 月 / 星期 / 年, 不含時間): 由指定日期 (含) 起下一個允許的日期
+     *
+     * @param epochDay 起始日期 (1970-01-01 = 0)
+     * @return 下一個允許的日期 (epoch day), 400 年內都沒有則回傳 Long.MIN_VALUE
+     */
+    public long nextDay(long epochDay) {
+        if (!this.satisfiable) {
+            return Long.MIN_VALUE;
+        }
+        int year = EpochCalendar.yearOfDay(epochDay);
+        int baseYear = year;
+        int dayOfYear = this.nextDayOfYear(year, (int) (epochDay - EpochCalendar.daysFromCivil(year, 1, 1)));
+        while (dayOfYear < 0) {
+            year = this.nextCandidateYear(year + 1);
+            if (year == NO_YEAR || year - baseYear > MAX_SEARCH_YEARS) {
+                return Long.MIN_VALUE;
+            }
+            dayOfYear = this.nextDayOfYear(year, 0);
+        }
+        return EpochCalendar.daysFromCivil(year, 1, 1) + dayOfYear;
+    }
+
+    /**
+     * 只考慮日期 (日 / 月 / 星期 / 年, 不含時間): 由指定日期 (含) 往回找到的第一個允許的日期
+     *
+     * @param epochDay 起始日期 (1970-01-01 = 0)
+     * @return 往回找到的第一個允許的日期 (epoch day), 400 年內都沒有則回傳 Long.MIN_VALUE
+     */
+    public long prevDay(long epochDay) {
+        if (!this.satisfiable) {
+            return Long.MIN_VALUE;
+        }
+        int year = EpochCalendar.yearOfDay(epochDay);
+        int baseYear = year;
+        int dayOfYear = this.prevDayOfYear(year, (int) (epochDay - EpochCalendar.daysFromCivil(year, 1, 1)));
+        while (dayOfYear < 0) {
+            year = this.prevCandidateYear(year - 1);
+            if (year == NO_YEAR || baseYear - year > MAX_SEARCH_YEARS) {
+                return Long.MIN_VALUE;
+            }
+            dayOfYear = this.prevDayOfYear(year, EpochCalendar.isLeapYear(year) ? 365 : 364);
+        }
+        return EpochCalendar.daysFromCivil(year, 1, 1) + dayOfYear;
+    }
+
+    /**
+     * 時間區間內的所有 fire time (lazy 計算, 可使用 parallel())
+     *
+     * @param from 起始時間 (含)
+     * @param to 結束時間 (不含)
+     * @return 依時間排序的 fire time
+     */
+    public LongStream fireTimes(long from, long to) {
+        return StreamSupport.longStream(new FireTimeSpliterator(this::next, this.timeZone, from, to), false);
+    }
+
+    /**
+     * 由 calendar 目前的時間往前搜尋下一個時間點, 結果保留在 calendar 中
+     *
+     * @param calendar 起點
+     * @param matched 起點是否為上一次的搜尋結果
+     * @param stats 搜尋統計 (null: 不記錄)
+     * @return 下一個符合 cron expression 時間
+     */
+    private long next(EpochCalendar calendar, boolean matched, SearchStats stats) {
+
+        if (!this.satisfiable) {
+            throw this.runaway("next");
+        }
+
+        // 捨棄 millisecond
+        long previous = calendar.getTimeInMillis();
+        calendar.set(Calendar.MILLISECOND, 0);
+        long originalTimestamp = calendar.getTimeInMillis();
+
+        // 首次搜尋 (忽略毫秒)
+        if (!matched || originalTimestamp != previous) {
+            this.doNext(calendar, calendar.get(Calendar.YEAR), stats, 1);
+        }
+
+        // 如果時間相等 => 需要 +1 秒再算一次, 確保取得的時間比 date 晚
+        if (calendar.getTimeInMillis() == originalTimestamp) {
+            calendar.add(Calendar.SECOND, 1);
+            this.doNext(calendar, calendar.get(Calendar.YEAR), stats, 1);
+        }
+
+        // 回傳結果
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * 搜尋下一個時間點
+     *
+     * @param calendar
+     * @param baseYear
+     * @param stats 搜尋統計 (null: 不記錄)
+     * @param depth 遞迴深度
+     */
+    private void doNext(EpochCalendar calendar, int baseYear, SearchStats stats, int depth) {
+
+        if (stats != null) {
+            stats.enter(depth);
+        }
+
+        // 記錄需要 reset 的欄位 (bit mask, 以 Calendar field id 為 index)
+        int resets = 0;
+
+        // 秒
+        int second = calendar.get(Calendar.SECOND);
+        int updateSecond = findNext(this.seconds, second, calendar, Calendar.SECOND, Calendar.MINUTE, resets);
+        // 沒有異動 => 加入 reset 清單 (沒異動代表下一個欄位進位時需要 reset)
+        if (second == updateSecond) {
+            resets |= 1 << Calendar.SECOND;
+        }
+
+        // 分
+        int minute = calendar.get(Calendar.MINUTE);
+        int updateMinute = findNext(this.minutes, minute, calendar, Calendar.MINUTE, Calendar.HOUR_OF_DAY, resets);
+        // 沒有異動 => 加入 reset 清單
+        if (minute == updateMinute) {
+            resets |= 1 << Calendar.MINUTE;
+        }
+        // 已經異動 => 再次調整較小的欄位 (second)
+        else {
+            doNext(calendar, baseYear, stats, depth + 1);
+            return;
+        }
+
+        // 時
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        int updateHour = findNext(this.hours, hour, calendar, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_WEEK, resets);
+        if (hour != updateHour) {
+            doNext(calendar, baseYear, stats, depth + 1);
+            return;
+        }
+
+        // 日 / 星期 / 月: 以該年的 day mask 直接找到下一個允許的日期
+        int year = calendar.get(Calendar.YEAR);
+        int month = calendar.get(Calendar.MONTH);
+        int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+        long day = EpochCalendar.daysFromCivil(year, month + 1, dayOfMonth);
+        int dayOfYear = (int) (day - EpochCalendar.daysFromCivil(year, 1, 1));
+        int nextDayOfYear = this.nextDayOfYear(year, dayOfYear);
+        if (nextDayOfYear == dayOfYear) {
+            return;
+        }
+        // 今年沒有 => 直接跳到下一個可能的年份 (由 1/1 開始)
+        while (nextDayOfYear < 0) {
+            year = this.nextCandidateYear(year + 1);
+            // 確認在合理範圍內
+            if (year == NO_YEAR) {
+                throw this.exhausted("next");
+            }
+            if (year - baseYear > MAX_SEARCH_YEARS) {
+                throw this.runaway("next");
+            }
+            nextDayOfYear = this.nextDayOfYear(year, 0);
+        }
+        month = 0;
+        dayOfMonth = nextDayOfYear + 1;
+        for (int length = EpochCalendar.monthLength(year, month); dayOfMonth > length;
+             length = EpochCalendar.monthLength(year, month)) {
+            dayOfMonth -= length;
+            month++;
+        }
+        if (stats != null) {
+            stats.dayScanSteps += (int) (EpochCalendar.daysFromCivil(year, month + 1, dayOfMonth) - day);
+        }
+        // 日期改變 => 較小的欄位全部 reset 後重新調整 (新日期的第一個 fire time; Spring 保留本回合已前進的欄位, 見 class 說明)
+        calendar.set(Calendar.YEAR, year);
+        calendar.set(Calendar.MONTH, month);
+        calendar.set(Calendar.DAY_OF_MONTH, dayOfMonth);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        doNext(calendar, baseYear, stats, depth + 1);
+    }
+
+    /**
+     * @param year 年
+     * @param fromDayOfYear 起始日 (0 = 1/1, 含)
+     * @return 該年下一個允許的日期 (0 ~ 365), 找不到則回傳 -1
+     */
+    private int nextDayOfYear(int year, int fromDayOfYear) {
+        long[] days = this.getYearMask(year);
+        int word = fromDayOfYear >> 6;
+        long bits = days[word] & (-1L << fromDayOfYear);
+        while (bits == 0) {
+            if (++word == days.length) {
+                return -1;
+            }
+            bits = days[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * @param year 年
+     * @param fromDayOfYear 起始日 (0 = 1/1, 含)
+     * @return 該年往回找到的第一個允許的日期 (0 ~ 365), 找不到則回傳 -1
+     */
+    private int prevDayOfYear(int year, int fromDayOfYear) {
+        long[] days = this.getYearMask(year);
+        int word = fromDayOfYear >> 6;
+        long bits = days[word] & (-1L >>> (63 - (fromDayOfYear & 63)));
+        while (bits == 0) {
+            if (--word < 0) {
+                return -1;
+            }
+            bits = days[word];
+        }
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+    }
+
+    /**
+     * @param from 起始年份 (含)
+     * @return 下一個可能有 fire time 的年份 (years 允許, 且只有 2/29 時為閏年), 找不到則回傳 NO_YEAR
+     */
+    private int nextCandidateYear(int from) {
+        int year = from;
+        while (true) {
+            if (this.years != null) {
+                int index = year > MAX_YEAR ? -1 : nextSetBit(this.years, Math.max(year, MIN_YEAR) - MIN_YEAR);
+                if (index < 0) {
+                    return NO_YEAR;
+                }
+                year = MIN_YEAR + index;
+            }
+            if (!this.leapYearsOnly || EpochCalendar.isLeapYear(year)) {
+                return year;
+            }
+            year++;
+        }
+    }
+
+    /**
+     * @param from 起始年份 (含)
+     * @return 往回找到的第一個可能有 fire time 的年份, 找不到則回傳 NO_YEAR
+     */
+    private int prevCandidateYear(int from) {
+        int year = from;
+        while (true) {
+            if (this.years != null) {
+                int index = year < MIN_YEAR ? -1 : prevSetBit(this.years, Math.min(year, MAX_YEAR) - MIN_YEAR);
+                if (index < 0) {
+                    return NO_YEAR;
+                }
+                year = MIN_YEAR + index;
+            }
+            if (!this.leapYearsOnly || EpochCalendar.isLeapYear(year)) {
+                return year;
+            }
+            year--;
+        }
+    }
+
+    private IllegalArgumentException runaway(String direction) {
+        return new IllegalArgumentException("Invalid cron expression \""
+                + (this.expression == null ? this.toString() : this.expression)
+                + "\" led to runaway search for " + direction + " trigger");
+    }
+
+    private NoMoreFireTimesException exhausted(String direction) {
+        return new NoMoreFireTimesException("Cron expression \""
+                + (this.expression == null ? this.toString() : this.expression)
+                + "\" has no " + direction + " trigger in its allowed years");
+    }
+
+    /**
+     * @param year 年
+     * @return 該年是否允許 (years 為 null 時都允許)
+     */
+    boolean isYearAllowed(int year) {
+        if (this.years == null) {
+            return true;
+        }
+        int index = year - MIN_YEAR;
+        return index >= 0 && index <= MAX_YEAR - MIN_YEAR && (this.years[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * 取得該年允許的日期 (已合併 日 / 星期 / 月 / 年), 第一次使用時計算並快取
+     *
+     * @param year 年
+     * @return 366 bits, bit n 代表該年的第 n + 1 天 (不可修改)
+     */
+    long[] getYearMask(int year) {
+        if (!this.isYearAllowed(year)) {
+            return NO_DAYS;
+        }
+        int hash = this.dateHash + year * 0x61C88647;
+        int slot = (hash ^ hash >>> 16) & (YEAR_MASK_SLOTS - 1);
+        YearMask mask = YEAR_MASKS.get(slot);
+        if (mask == null || mask.year != year || mask.daysOfMonth != this.daysOfMonth || mask.months != this.months
+                || mask.daysOfWeek != this.daysOfWeek) {
+            // 多個 thread 同時計算時結果相同, 以最後放入者為準
+            mask = new YearMask(year, this.daysOfMonth, this.months, this.daysOfWeek, this.computeYearMask(year));
+            YEAR_MASKS.set(slot, mask);
+        }
+        return mask.days;
+    }
+
+    private long[] computeYearMask(int year) {
+        long[] days = new long[6];
+        // 1970-01-01 為星期四 (4)
+        int firstDayOfWeek = (int) EpochCalendar.floorMod(EpochCalendar.daysFromCivil(year, 1, 1) + 4, 7L);
+        int dayOfYear = 0;
+        for (int month = 0; month < 12; month++) {
+            int length = EpochCalendar.monthLength(year, month);
+            if (isSet(this.months, month)) {
+                // 本月允許的日期 (bit 1~length), 移到 bit 0 後放入該年的第 dayOfYear 天
+                long bits = (this.daysOfMonth & 0xFFFFFFFFL) & weekPattern(this.daysOfWeek, firstDayOfWeek);
+                bits = (bits & (-1L >>> (63 - length))) >>> 1;
+                int word = dayOfYear >> 6;
+                int shift = dayOfYear & 63;
+                days[word] |= bits << shift;
+                if (shift > 64 - 31) {
+                    days[word + 1] |= bits >>> (64 - shift);
+                }
+            }
+            dayOfYear += length;
+            firstDayOfWeek = (firstDayOfWeek + length) % 7;
+        }
+        return days;
+    }
+
+    /**
+     * 1 日為星期 first 時, day 日為星期 (first + day - 1) % 7: 將星期 rotate 後每 7 天重複一次 (不逐日計算)
+     *
+     * @return 該月允許的星期所對應的日期 (bit 1~31)
+     */
+    private static long weekPattern(int daysOfWeek, int first) {
+        long week = ((daysOfWeek >>> first) | (daysOfWeek << (7 - first))) & 0x7F;
+        long pattern = 0;
+        for (int day = 1; day <= 31; day += 7) {
+            pattern |= week << day;
+        }
+        return pattern & 0xFFFFFFFEL;
+    }
+
+    /**
+     * Search the bits provided for the next set bit after the value provided, and reset the calendar.
+     *
+     * @param bits
+     *            a bit mask representing the allowed values of the field
+     * @param value
+     *            the current value of the field
+     * @param calendar
+     *            the calendar to increment as we move through the bits
+     * @param field
+     *            the field to increment in the calendar (@see {@link Calendar} for the static constants defining valid
+     *            fields)
+     * @param lowerOrders
+     *            bit mask of the Calendar field ids that should be reset (i.e. the ones of lower significance than
+     *            the field of interest)
+     * @return the value of the calendar field that is next in the sequence
+     */
+    private static int findNext(long bits, int value, EpochCalendar calendar, int field, int nextField,
+                                int lowerOrders) {
+
+        // 在 bit mask 中尋找下一個合法值
+        int nextValue = nextSetBit(bits, value);
+
+        // 找不到 => 下一個 Field 需要進位, 然後由 0 再找一次
+        if (nextValue == -1) {
+            calendar.add(nextField, 1);
+            reset(calendar, 1 << field); // TODO 應該不需要 ? 底下會設定.
+            nextValue = nextSetBit(bits, 0);
+        }
+
+        // 找到的值與目前不同 => 設定新值 + 將較小的欄位 reset
+        if (nextValue != value) {
+            calendar.set(field, nextValue);
+            reset(calendar, lowerOrders);
+        }
+        return nextValue;
+    }
+
+    /**
+     * Reset the calendar setting all the fields provided (bit mask of Calendar field ids) to zero.
+     */
+    private static void reset(EpochCalendar calendar, int fields) {
+        for (int field : RESET_FIELDS) {
+            if ((fields & (1 << field)) != 0) {
+                calendar.set(field, field == Calendar.DAY_OF_MONTH ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * 同 {@link java.util.BitSet#nextSetBit(int)}
+     *
+     * @param bits bit mask
+     * @param fromIndex 起始位置 (含)
+     * @return 下一個為 1 的位置, 找不到則回傳 -1
+     */
+    public static int nextSetBit(long bits, int fromIndex) {
+        if (fromIndex >= 64) {
+            return -1;
+        }
+        long word = bits & (-1L << fromIndex);
+        return word == 0 ? -1 : Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @param bits bit mask
+     * @param fromIndex 起始位置 (含)
+     * @return 往回找到的第一個為 1 的位置, 找不到則回傳 -1
+     */
+    public static int prevSetBit(long bits, int fromIndex) {
+        if (fromIndex < 0) {
+            return -1;
+        }
+        long word = bits & (-1L >>> (63 - Math.min(fromIndex, 63)));
+        return word == 0 ? -1 : 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    public static boolean isSet(long bits, int index) {
+        return index < 64 && (bits & (1L << index)) != 0;
+    }
+
+    /**
+     * 同 {@link #nextSetBit(long, int)}, 用於超過 64 bits 的 mask (例如: years)
+     */
+    public static int nextSetBit(long[] words, int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        int word = fromIndex >> 6;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << fromIndex);
+        while (bits == 0) {
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * 同 {@link #prevSetBit(long, int)}, 用於超過 64 bits 的 mask (例如: years)
+     */
+    public static int prevSetBit(long[] words, int fromIndex) {
+        if (fromIndex < 0) {
+            return -1;
+        }
+        int word = fromIndex >> 6;
+        long bits;
+        if (word >= words.length) {
+            word = words.length - 1;
+            bits = words[word];
+        }
+        else {
+            bits = words[word] & (-1L >>> (63 - (fromIndex & 63)));
+        }
+        while (bits == 0) {
+            if (--word < 0) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+    }
+
+    private static boolean isEmpty(long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getSeconds() {
+        return seconds;
+    }
+
+    public long getMinutes() {
+        return minutes;
+    }
+
+    public int getHours() {
+        return hours;
+    }
+
+    public int getDaysOfMonth() {
+        return daysOfMonth;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+    public int getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    /**
+     * @return 允許的年份 (bit n = {@link #MIN_YEAR} + n, 複本), null 代表不限制
+     */
+    public long[] getYears() {
+        return years == null ? null : years.clone();
+    }
+
+    /**
+     * @return 是否可能符合 (false: 無法滿足的組合, 例如 2/30, 搜尋一律失敗)
+     */
+    public boolean isSatisfiable() {
+        return satisfiable;
+    }
+
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * @return 時區的 offset 轉換表 (同一時區的 schedule 共用同一個物件)
+     */
+    ZoneTransitions getTransitions() {
+        return transitions;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompiledCron)) {
+            return false;
+        }
+        CompiledCron cron = (CompiledCron) obj;
+        return cron.seconds == this.seconds && cron.minutes == this.minutes && cron.hours == this.hours
+                && cron.daysOfMonth == this.daysOfMonth && cron.months == this.months
+                && cron.daysOfWeek == this.daysOfWeek && Arrays.equals(cron.years, this.years)
+                && sameZone(cron.timeZone, this.timeZone);
+    }
+
+    // 只比較 ID 不足: 自訂的 TimeZone 可能使用系統時區的 ID 但規則不同 (hashCode 仍只用 ID)
+    private static boolean sameZone(TimeZone a, TimeZone b) {
+        return a == b || a.getID().equals(b.getID()) && a.hasSameRules(b);
+    }
+
+    @Override
+    public int hashCode() {
+        long h = this.seconds * 31 + this.minutes;
+        h = h * 31 + this.hours;
+        h = h * 31 + this.daysOfMonth;
+        h = h * 31 + this.months;
+        h = h * 31 + this.daysOfWeek;
+        h = h * 31 + Arrays.hashCode(this.years);
+        return (int) (h ^ (h >>> 32)) * 31 + this.timeZone.getID().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[seconds=" + Long.toHexString(this.seconds)
+                + ", minutes=" + Long.toHexString(this.minutes) + ", hours=" + Integer.toHexString(this.hours)
+                + ", daysOfMonth=" + Integer.toHexString(this.daysOfMonth)
+                + ", months=" + Integer.toHexString(this.months)
+                + ", daysOfWeek=" + Integer.toHexString(this.daysOfWeek)
+                + (this.years == null ? "" : ", years=" + yearsToString(this.years)) + ", timeZone=" + this.timeZone.getID() + "]";
+    }
+
+    private static String yearsToString(long[] years) {
+        StringBuilder text = new StringBuilder();
+        for (int i = years.length - 1; i >= 0; i--) {
+            String word = Long.toHexString(years[i]);
+            if (text.length() > 0) {
+                for (int pad = word.length(); pad < 16; pad++) {
+                    text.append('0');
+                }
+            }
+            if (text.length() > 0 || years[i] != 0 || i == 0) {
+                text.append(word);
+            }
+        }
+        return text.toString();
+    }
+
+    private static final class YearMask {
+
+        private final int year;
+
+        private final int daysOfMonth;
+
+        private final int months;
+
+        private final int daysOfWeek;
+
+        private final long[] days;
+
+        YearMask(int year, int daysOfMonth, int months, int daysOfWeek, long[] days) {
+            this.year = year;
+            this.daysOfMonth = daysOfMonth;
+            this.months = months;
+            this.daysOfWeek = daysOfWeek;
+            this.days = days;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.jray.cron;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+/**
+ * 已解析 cron expression 的二進位格式 (固定長度, 可 memory-map 後直接讀取, 不需 parser).
+ *
+ * 檔案格式 (big-endian):
+ *
+ *  1. header (24 bytes):
+ *      int magic ("CRON"), short version, short record size, int record count,
+ *      short zone count, short year count, int records offset, int reserved
+ *  2. zone table: 每個時區為 short length + UTF-8 的 time zone ID, short length + 自訂時區的規則
+ *     (系統時區的長度為 0, 讀取時以 ID 取得; 自訂的 {@link SimpleTimeZone} 為 Java serialization 的內容)
+ *  3. year table: 每組年份為 {@link CompiledCron#YEAR_WORDS} 個 long (bit n = {@link CompiledCron#MIN_YEAR} + n)
+ *  4. records (由 records offset 開始, 對齊 8 bytes), 每筆 {@link #RECORD_SIZE} bytes:
+ *      <pre>
+ *       0  long  seconds
+ *       8  long  minutes
+ *      16  int   hours (bit 0~23) | daysOfWeek (bit 24~30)
+ *      20  int   daysOfMonth (bit 1~31)
+ *      24  short months (bit 0~11)
+ *      26  short flags (保留給新的欄位功能, version 1 必須為 0)
+ *      28  short zone index (zone table)
+ *      30  short year index (0: 不限制年份, n: year table 第 n - 1 組)
+ *      </pre>
+ *
+ * 相容性:
+ *
+ *  1. record size 記錄在 header 中, 新版本可在 record 尾端增加欄位, 讀取時依 header 的 record size 移動
+ *  2. 讀取時拒絕較新的 version, 以及含有未知 flags 的 record (舊版無法正確計算新的欄位功能)
+ *
+ * @see CompiledCronReader
+ */
+public final class CompiledCronCodec {
+
+    // "CRON"
+    public static final int MAGIC = 0x43524F4E;
+
+    public static final int VERSION = 1;
+
+    public static final int RECORD_SIZE = 32;
+
+    static final int HEADER_SIZE = 24;
+
+    // version 1 已知的 flags (目前沒有)
+    static final int KNOWN_FLAGS = 0;
+
+    private CompiledCronCodec() {
+    }
+
+    /**
+     * @return 寫入 schedules 需要的 bytes
+     */
+    public static int encodedSize(CompiledCron[] schedules) {
+        return new Tables(schedules).recordsOffset + schedules.length * RECORD_SIZE;
+    }
+
+    /**
+     * 由 buffer 目前的位置寫入 (結束後 position 移到資料尾端)
+     *
+     * @param schedules 已解析的 cron expression
+     * @param buffer 存放結果 (剩餘空間至少為 {@link #encodedSize(CompiledCron[])})
+     */
+    public static void write(CompiledCron[] schedules, ByteBuffer buffer) {
+
+        Tables tables = new Tables(schedules);
+        int size = tables.recordsOffset + schedules.length * RECORD_SIZE;
+        // check argument
+        if (buffer.remaining() < size) {
+            throw new IllegalArgumentException("buffer has " + buffer.remaining() + " bytes, " + size + " required");
+        }
+        ByteBuffer out = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC);
+        out.putShort((short) VERSION);
+        out.putShort((short) RECORD_SIZE);
+        out.putInt(schedules.length);
+        out.putShort((short) tables.zones.size());
+        out.putShort((short) tables.years.size());
+        out.putInt(tables.recordsOffset);
+        out.putInt(0);
+        for (int i = 0; i < tables.zones.size(); i++) {
+            byte[] zone = tables.zones.get(i);
+            byte[] rules = tables.rules.get(i);
+            out.putShort((short) zone.length);
+            out.put(zone);
+            out.putShort((short) rules.length);
+            out.put(rules);
+        }
+        for (LongBuffer years : tables.years) {
+            for (int i = 0; i < CompiledCron.YEAR_WORDS; i++) {
+                out.putLong(years.get(i));
+            }
+        }
+        for (int i = 0; i < schedules.length; i++) {
+            CompiledCron schedule = schedules[i];
+            int offset = tables.recordsOffset + i * RECORD_SIZE;
+            out.putLong(offset, schedule.getSeconds());
+            out.putLong(offset + 8, schedule.getMinutes());
+            out.putInt(offset + 16, schedule.getHours() | schedule.getDaysOfWeek() << 24);
+            out.putInt(offset + 20, schedule.getDaysOfMonth());
+            out.putShort(offset + 24, (short) schedule.getMonths());
+            out.putShort(offset + 26, (short) 0);
+            out.putShort(offset + 28, (short) tables.zoneIndex[i]);
+            out.putShort(offset + 30, (short) tables.yearIndex[i]);
+        }
+        buffer.position(buffer.position() + size);
+    }
+
+    /**
+     * 寫入檔案 (覆寫原本的內容)
+     */
+    public static void write(CompiledCron[] schedules, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, encodedSize(schedules));
+            write(schedules, buffer);
+            buffer.force();
+        }
+    }
+
+    /**
+     * zone table 與 year table (相同的時區 / 年份只記錄一次)
+     */
+    private static final class Tables {
+
+        final List<byte[]> zones = new ArrayList<byte[]>();
+
+        // 自訂時區的規則 (系統時區為空的)
+        final List<byte[]> rules = new ArrayList<byte[]>();
+
+        final List<LongBuffer> years = new ArrayList<LongBuffer>();
+
+        final int[] zoneIndex;
+
+        final int[] yearIndex;
+
+        final int recordsOffset;
+
+        Tables(CompiledCron[] schedules) {
+            // check argument
+            if (schedules == null) {
+                throw new IllegalArgumentException("schedules must not be null");
+            }
+            this.zoneIndex = new int[schedules.length];
+            this.yearIndex = new int[schedules.length];
+            Map<String, Integer> zoneIds = new HashMap<String, Integer>();
+            Map<TimeZone, byte[]> zoneRules = new IdentityHashMap<TimeZone, byte[]>();
+            // LongBuffer 的 equals / hashCode 比較內容
+            Map<LongBuffer, Integer> yearIds = new HashMap<LongBuffer, Integer>();
+            int size = HEADER_SIZE;
+            for (int i = 0; i < schedules.length; i++) {
+                CompiledCron schedule = schedules[i];
+                if (schedule == null) {
+                    throw new IllegalArgumentException("schedule " + i + " must not be null");
+                }
+                TimeZone timeZone = schedule.getTimeZone();
+                String zone = timeZone.getID();
+                byte[] rules = zoneRules.get(timeZone);
+                if (rules == null) {
+                    rules = rules(timeZone);
+                    zoneRules.put(timeZone, rules);
+                }
+                Integer index = zoneIds.get(zone);
+                if (index == null) {
+                    byte[] bytes = zone.getBytes(StandardCharsets.UTF_8);
+                    index = this.zones.size();
+                    zoneIds.put(zone, index);
+                    this.zones.add(bytes);
+                    this.rules.add(rules);
+                    size += 2 + bytes.length + 2 + rules.length;
+                }
+                else if (!Arrays.equals(this.rules.get(index), rules)) {
+                    throw new IllegalArgumentException("time zone " + zone + " is used with different rules");
+                }
+                this.zoneIndex[i] = index;
+                long[] years = schedule.getYears();
+                if (years != null) {
+                    LongBuffer key = LongBuffer.wrap(years);
+                    index = yearIds.get(key);
+                    if (index == null) {
+                        index = this.years.size() + 1;
+                        yearIds.put(key, index);
+                        this.years.add(key);
+                        size += CompiledCron.YEAR_WORDS * 8;
+                    }
+                    this.yearIndex[i] = index;
+                }
+            }
+            if (this.zones.size() > 0xFFFF || this.years.size() >= 0xFFFF) {
+                throw new IllegalArgumentException("too many distinct time zones or years: "
+                        + this.zones.size() + ", " + this.years.size());
+            }
+            this.recordsOffset = (size + 7) & ~7;
+        }
+
+        /**
+         * @return 自訂時區的規則, 系統時區 (ID 可取得相同規則) 為空的
+         */
+        private static byte[] rules(TimeZone timeZone) {
+            TimeZone system = TimeZone.getTimeZone(timeZone.getID());
+            if (system.getID().equals(timeZone.getID()) && system.hasSameRules(timeZone)) {
+                return new byte[0];
+            }
+            if (timeZone.getClass() != SimpleTimeZone.class) {
+                throw new IllegalArgumentException("unsupported custom time zone " + timeZone.getID() + " ("
+                        + timeZone.getClass().getName() + "), only SimpleTimeZone can be written");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(timeZone);
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            if (bytes.size() > 0xFFFF) {
+                throw new IllegalArgumentException("time zone rules too large: " + timeZone.getID());
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
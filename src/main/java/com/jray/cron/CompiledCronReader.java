@@ -0,0 +1,248 @@
+package com.jray.cron;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 讀取 {@link CompiledCronCodec} 格式的資料 (通常為 memory-map 的檔案).
+ *
+ *  1. 開啟時只讀取 header, zone table 與 year table; record 在第一次使用時才由 buffer 直接解碼,
+ *     解碼後的 {@link CompiledCron} 保留下來重複使用 (之後的 get / next 不再解碼, 也保留 CompiledCron 的日期快取)
+ *  2. 解碼只需讀取固定位置的 bit mask, 不需要 expression 字串, 也不經過 parser
+ *  3. 未知的 time zone ID 視為資料錯誤 (不使用 TimeZone.getTimeZone 預設的 GMT); 自訂時區使用檔案中記錄的規則
+ *  4. thread-safe: 只使用絕對位置讀取, 不改變 buffer 的 position; 同時解碼同一筆 record 時只保留其中一個結果
+ */
+public final class CompiledCronReader {
+
+    private final ByteBuffer buffer;
+
+    private final int version;
+
+    private final int recordSize;
+
+    private final int count;
+
+    private final int recordsOffset;
+
+    // zone table (使用 ZoneTransitions 快取中的 TimeZone, 建立 CompiledCron 時不需比較時區規則)
+    private final TimeZone[] zones;
+
+    // year table
+    private final long[][] years;
+
+    // 已解碼的 record
+    private final AtomicReferenceArray<CompiledCron> decoded;
+
+    /**
+     * @param buffer 資料 (由目前的 position 開始)
+     */
+    public CompiledCronReader(ByteBuffer buffer) {
+
+        ByteBuffer in = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        // check header
+        if (in.remaining() < CompiledCronCodec.HEADER_SIZE || in.getInt(0) != CompiledCronCodec.MAGIC) {
+            throw new IllegalArgumentException("not a compiled cron file");
+        }
+        this.version = in.getShort(4) & 0xFFFF;
+        if (this.version > CompiledCronCodec.VERSION) {
+            throw new IllegalArgumentException("unsupported version " + this.version + " (supported: "
+                    + CompiledCronCodec.VERSION + ")");
+        }
+        this.recordSize = in.getShort(6) & 0xFFFF;
+        this.count = in.getInt(8);
+        int zoneCount = in.getShort(12) & 0xFFFF;
+        int yearCount = in.getShort(14) & 0xFFFF;
+        this.recordsOffset = in.getInt(16);
+        if (this.recordSize < CompiledCronCodec.RECORD_SIZE || this.count < 0
+                || this.recordsOffset < CompiledCronCodec.HEADER_SIZE
+                || (long) this.recordsOffset + (long) this.count * this.recordSize > in.limit()) {
+            throw new IllegalArgumentException("truncated or corrupted compiled cron file");
+        }
+        // zone table
+        int position = CompiledCronCodec.HEADER_SIZE;
+        this.zones = new TimeZone[zoneCount];
+        for (int i = 0; i < zoneCount; i++) {
+            byte[] id = bytes(in, position);
+            position += 2 + id.length;
+            byte[] rules = bytes(in, position);
+            position += 2 + rules.length;
+            this.zones[i] = ZoneTransitions.of(zone(new String(id, StandardCharsets.UTF_8), rules)).getTimeZone();
+        }
+        // year table
+        this.years = new long[yearCount][];
+        for (int i = 0; i < yearCount; i++) {
+            long[] words = new long[CompiledCron.YEAR_WORDS];
+            for (int j = 0; j < words.length; j++) {
+                words[j] = in.getLong(position);
+                position += 8;
+            }
+            this.years[i] = words;
+        }
+        if (position > this.recordsOffset) {
+            throw new IllegalArgumentException("truncated or corrupted compiled cron file");
+        }
+        this.buffer = in;
+        this.decoded = new AtomicReferenceArray<CompiledCron>(this.count);
+    }
+
+    // short length + bytes
+    private static byte[] bytes(ByteBuffer in, int position) {
+        if (position + 2 > in.limit() || position + 2 + (in.getShort(position) & 0xFFFF) > in.limit()) {
+            throw new IllegalArgumentException("truncated or corrupted compiled cron file");
+        }
+        byte[] bytes = new byte[in.getShort(position) & 0xFFFF];
+        ByteBuffer source = in.duplicate();
+        source.position(position + 2);
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param id time zone ID
+     * @param rules 自訂時區的規則, 系統時區為空的
+     */
+    private static TimeZone zone(String id, byte[] rules) {
+        if (rules.length == 0) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            // 未知的 ID 會得到 GMT
+            if (!timeZone.getID().equals(id)) {
+                throw new IllegalArgumentException("unknown time zone: " + id);
+            }
+            return timeZone;
+        }
+        try (ObjectInputStream in = new ZoneInputStream(new ByteArrayInputStream(rules))) {
+            TimeZone timeZone = (TimeZone) in.readObject();
+            if (!timeZone.getID().equals(id)) {
+                throw new IllegalArgumentException("time zone rules do not match " + id + ": " + timeZone.getID());
+            }
+            return timeZone;
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            throw new IllegalArgumentException("invalid rules of time zone " + id, ex);
+        }
+    }
+
+    /**
+     * memory-map 檔案 (唯讀)
+     */
+    public static CompiledCronReader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CompiledCronReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return 資料的版本
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return schedule 的數量
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * @return 第 index 個 schedule 的時區
+     */
+    public TimeZone getTimeZone(int index) {
+        return this.zones[this.buffer.getShort(this.offset(index) + 28) & 0xFFFF];
+    }
+
+    /**
+     * 第 index 個 schedule (第一次使用時解碼, 之後回傳同一個物件)
+     */
+    public CompiledCron get(int index) {
+
+        CompiledCron cron = this.decoded.get(this.check(index));
+        if (cron == null) {
+            cron = this.decode(index);
+            if (!this.decoded.compareAndSet(index, null, cron)) {
+                cron = this.decoded.get(index);
+            }
+        }
+        return cron;
+    }
+
+    private CompiledCron decode(int index) {
+
+        ByteBuffer in = this.buffer;
+        int offset = this.offset(index);
+        int flags = in.getShort(offset + 26) & 0xFFFF;
+        if ((flags & ~CompiledCronCodec.KNOWN_FLAGS) != 0) {
+            throw new IllegalArgumentException("schedule " + index + " uses unsupported features (flags "
+                    + Integer.toHexString(flags) + ")");
+        }
+        int hoursAndDays = in.getInt(offset + 16);
+        int yearIndex = in.getShort(offset + 30) & 0xFFFF;
+        return new CompiledCron(in.getLong(offset), in.getLong(offset + 8), hoursAndDays & 0x00FFFFFF,
+                in.getInt(offset + 20), in.getShort(offset + 24) & 0x0FFF, hoursAndDays >>> 24,
+                yearIndex == 0 ? null : this.years[yearIndex - 1], this.zones[in.getShort(offset + 28) & 0xFFFF]);
+    }
+
+    /**
+     * 第 index 個 schedule 在 "指定時間" 後的下一個 fire time
+     */
+    public long next(int index, long millis) {
+        return this.get(index).next(millis);
+    }
+
+    /**
+     * 所有 schedule 的下一個 fire time (以 {@link CronUtil#nextAll(CompiledCron[], long, long[])} 平行計算)
+     *
+     * @param out 存放結果 (長度至少為 {@link #size()}); 不會再觸發的 schedule 結果為 Long.MIN_VALUE
+     */
+    public void nextAll(long millis, long[] out) {
+        CompiledCron[] schedules = new CompiledCron[this.count];
+        for (int i = 0; i < this.count; i++) {
+            schedules[i] = this.get(i);
+        }
+        CronUtil.nextAll(schedules, millis, out);
+    }
+
+    private int offset(int index) {
+        return this.recordsOffset + this.check(index) * this.recordSize;
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + this.count);
+        }
+        return index;
+    }
+
+    /**
+     * 只允許 {@link SimpleTimeZone} (檔案內容不一定可信任, 不解析其他類別)
+     */
+    private static final class ZoneInputStream extends ObjectInputStream {
+
+        ZoneInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (!name.equals(SimpleTimeZone.class.getName()) && !name.equals(TimeZone.class.getName())
+                    && !name.equals("[B") && !name.equals("[I")) {
+                throw new IOException("unexpected class in time zone rules: " + name);
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.jray.cron;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 將觸發的 cron job 交給 executor 執行, 並限制同一個 expression 同時執行的數量.
+ *
+ *  1. 執行模式:
+ *      1.1 virtual thread: 每次觸發使用一個新的 virtual thread (JDK 21+, 適合會 block 在 I/O 的工作)
+ *      1.2 classic: 使用指定的 executor (例如: thread pool); JDK 不支援 virtual thread 時也使用此模式
+ *  2. 同一個 expression (expression + 時區) 同時執行的工作超過上限時, 後續的工作依序等待, 前一個完成後才交給 executor
+ *  3. 沒有執行中與等待中工作的 expression 不保留狀態 (大量一次性的 expression 不會累積)
+ *
+ * @see CronScheduler#CronScheduler(CronEngine, CronDispatcher, CronScheduler.Clock)
+ */
+public class CronDispatcher {
+
+    // 不限制同時執行的數量
+    public static final int UNLIMITED = 0;
+
+    private final Executor executor;
+
+    private final int maxConcurrentPerExpression;
+
+    private final boolean virtualThreads;
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+    private final AtomicLong queuedCount = new AtomicLong();
+
+    /**
+     * classic 模式
+     *
+     * @param executor 執行工作的 executor
+     * @param maxConcurrentPerExpression 同一個 expression 同時執行的上限 ({@link #UNLIMITED}: 不限制)
+     */
+    public CronDispatcher(Executor executor, int maxConcurrentPerExpression) {
+        this(executor, maxConcurrentPerExpression, false);
+    }
+
+    private CronDispatcher(Executor executor, int maxConcurrentPerExpression, boolean virtualThreads) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (maxConcurrentPerExpression < 0) {
+            throw new IllegalArgumentException("invalid concurrency limit: " + maxConcurrentPerExpression);
+        }
+        this.executor = executor;
+        this.maxConcurrentPerExpression = maxConcurrentPerExpression;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * virtual thread 模式 (JDK 不支援時改用 fallback)
+     *
+     * @param maxConcurrentPerExpression 同一個 expression 同時執行的上限 ({@link #UNLIMITED}: 不限制)
+     * @param fallback JDK 不支援 virtual thread 時使用的 executor
+     * @return dispatcher
+     */
+    public static CronDispatcher virtualThreads(int maxConcurrentPerExpression, Executor fallback) {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            return new CronDispatcher(fallback, maxConcurrentPerExpression, false);
+        }
+        return new CronDispatcher(executor, maxConcurrentPerExpression, true);
+    }
+
+    /**
+     * @return 每個工作使用一個新的 virtual thread 的 executor, JDK 不支援時回傳 null
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // 以 reflection 呼叫, 仍可在舊版 JDK 上編譯與執行
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 執行觸發的工作
+     *
+     * @param expression 觸發的 cron expression
+     * @param task 工作
+     */
+    public void dispatch(CronExpression expression, Runnable task) {
+        if (this.maxConcurrentPerExpression == UNLIMITED) {
+            this.executor.execute(task);
+            return;
+        }
+        String key = expression.getExpression() + '@' + expression.getTimeZone().getID();
+        // 在 map 的鎖內登記, 與移除閒置的 lane 互斥 (同一個 key 不會同時有兩個 lane 在執行)
+        Lane lane = this.lanes.compute(key, (k, existing) -> {
+            Lane current = existing == null ? new Lane(k) : existing;
+            current.pending++;
+            return current;
+        });
+        lane.submit(task);
+    }
+
+    /**
+     * @return 是否使用 virtual thread 執行
+     */
+    public boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    public int getMaxConcurrentPerExpression() {
+        return this.maxConcurrentPerExpression;
+    }
+
+    /**
+     * @return 目前有執行中或等待中工作的 expression 數
+     */
+    int getLaneCount() {
+        return this.lanes.size();
+    }
+
+    /**
+     * @return 因超過同時執行上限而需要等待的工作數
+     */
+    public long getQueuedCount() {
+        return this.queuedCount.get();
+    }
+
+    /**
+     * 同一個 expression 的工作: 最多同時執行 maxConcurrentPerExpression 個, 其餘依序等待
+     */
+    private final class Lane {
+
+        private final String key;
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<Runnable>();
+
+        // 尚未完成 (執行中 + 等待中) 的工作數, 只在 lanes 的 compute 內修改; 歸零時移除此 lane
+        private int pending;
+
+        Lane(String key) {
+            this.key = key;
+        }
+
+        void submit(Runnable task) {
+            if (this.tryAcquire()) {
+                this.execute(task);
+                return;
+            }
+            CronDispatcher.this.queuedCount.incrementAndGet();
+            this.waiting.offer(task);
+            // 放入等待前可能剛好有工作完成 => 再檢查一次
+            this.drain();
+        }
+
+        private void execute(final Runnable task) {
+            try {
+                CronDispatcher.this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+                        }
+                        finally {
+                            Lane.this.running.decrementAndGet();
+                            try {
+                                Lane.this.drain();
+                            }
+                            finally {
+                                Lane.this.done();
+                            }
+                        }
+                    }
+                });
+            }
+            catch (RuntimeException ex) {
+                this.running.decrementAndGet();
+                this.done();
+                throw ex;
+            }
+        }
+
+        private void done() {
+            CronDispatcher.this.lanes.computeIfPresent(this.key, (k, lane) -> {
+                if (lane != this) {
+                    return lane;
+                }
+                return --this.pending == 0 ? null : this;
+            });
+        }
+
+        private void drain() {
+            while (!this.waiting.isEmpty() && this.tryAcquire()) {
+                Runnable task = this.waiting.poll();
+                if (task == null) {
+                    this.running.decrementAndGet();
+                    continue;
+                }
+                this.execute(task);
+            }
+        }
+
+        private boolean tryAcquire() {
+            int max = CronDispatcher.this.maxConcurrentPerExpression;
+            for (int current = this.running.get(); current < max; current = this.running.get()) {
+                if (this.running.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
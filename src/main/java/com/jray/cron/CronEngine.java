@@ -1,9 +1,20 @@
 package com.jray.cron;
 
+import com.jray.cron.field.DateFieldMeta;
+import com.jray.cron.field.DayOfMonthFieldHandler;
+import com.jray.cron.field.DayOfWeekFieldHandler;
 import com.jray.cron.field.FieldHandler;
-import org.springframework.util.StringUtils;
+import com.jray.cron.field.FieldMeta;
+import com.jray.cron.field.HourFieldHandler;
+import com.jray.cron.field.MillisecondFieldHandler;
+import com.jray.cron.field.MinuteFieldHandler;
+import com.jray.cron.field.MonthFieldHandler;
+import com.jray.cron.field.SecondFieldHandler;
+import com.jray.cron.field.YearFieldHandler;
 
 import java.util.*;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by Jerry on 2014/7/22.
@@ -23,12 +34,20 @@ import java.util.*;
  *  3. get initial timestamp: t1
  *  4. 依序 (小到大) 讓每個 field handler 將 t1 往前推進
  *      4.1 field(n) 如果無法推進, field(n+1) 需推進一個單位, field(n) 重設後再嘗試.
- *      4.2 field(n) 如果發生異動, field(n-1) 必須重設後重新推進.
-
+ *      4.2 field(n) 如果發生異動, 較小的欄位 (依 getPrevField() 串連) 重設後由 field(0) 重新推進.
+ *  5. 結果與 {@link CronUtil} 相同: 分 / 時改變時, 本回合已改變的秒不重設 (同 Spring);
+ *     日期改變時時 / 分 / 秒一律重設 (與 Spring 不同, 見 {@link CompiledCron})
+ *
+ * Thread-safety:
+ *
+ *  1. engine 建立後不可變 (field handler 於建構時決定), 可由多個 thread 共用
+ *  2. 解析結果 ({@link Compiled}) 不可變, 保存在 CronExpression 中; 讀取時不需任何 lock
+ *  3. 搜尋使用各 thread 自己的 EpochCalendar
  *
  * Example:
  *
  *  1. 0 0 9-17 * * MON-FRI *
+ *  2. 0,500 * * * * * ? * (毫秒欄位, 見 {@link #millisecondFieldHandlers()}: 每 500 毫秒)
  *
  */
 public class CronEngine {
@@ -42,15 +61,134 @@ public class CronEngine {
             Calendar.DAY_OF_WEEK,
             Calendar.YEAR };
 
-    private FieldHandler[] fieldHandlers;
+    // 改變時保留本回合已改變之較小欄位的時間欄位 (同 Spring); 日期改變時一律重設 (同 CompiledCron)
+    private static final int TIME_FIELDS = 1 << Calendar.SECOND | 1 << Calendar.MINUTE | 1 << Calendar.HOUR_OF_DAY;
+
+    private final FieldHandler[] fieldHandlers;
+
+    // fields[i]: field handler(i) 對應的 Calendar 欄位
+    private final int[] fields;
+
+    // resetFields[i]: field handler(i) 異動時需要重設的欄位 (由大到小)
+    private final int[][] resetFields;
+
+    // 以秒為單位的 expression (毫秒固定為 0) 使用: 不含毫秒
+    private final int[][] secondResetFields;
 
+    // 是否有毫秒的 handler (8 個欄位時其他 handler 由第 2 個欄位起算)
+    private final boolean millisecondField;
+
+    // 與日的欄位合併為日期表的 handler: 只合併預設的 handler (null: 沒有或為自訂的 handler, 由其自行搜尋)
+    private final MonthFieldHandler dateMonths;
+
+    private final DayOfWeekFieldHandler dateDaysOfWeek;
+
+    private final YearFieldHandler dateYears;
+
+    // 解析結果依 field handler 而定, 每個 engine 各自快取
+    private final ParseCache<FieldMeta[]> parseCache = new ParseCache<FieldMeta[]>() {
+        @Override
+        protected FieldMeta[] load(String expression, TimeZone timeZone) {
+            CronMetrics metrics = CronEngine.this.metrics;
+            if (metrics == CronMetrics.NONE) {
+                return CronEngine.this.parseExpression(expression);
+            }
+            long start = System.nanoTime();
+            FieldMeta[] fieldMeta = CronEngine.this.parseExpression(expression);
+            metrics.parsed(expression, System.nanoTime() - start);
+            return fieldMeta;
+        }
+    };
+
+    private volatile CronMetrics metrics = CronMetrics.NONE;
+
+    /**
+     * 使用完整的欄位: 秒 分 時 日 月 星期 [年]
+     */
     public CronEngine() {
 
+        this(defaultFieldHandlers());
     }
 
+    /**
+     * @param fieldHandlers field handler (由小到大, 必須是不可變的物件; 建立後無法更換)
+     */
     public CronEngine(FieldHandler[] fieldHandlers) {
 
-        this.fieldHandlers = fieldHandlers;
+        // check argument
+        if (fieldHandlers == null || fieldHandlers.length == 0) {
+            throw new IllegalArgumentException("field handlers must not be empty");
+        }
+        for (FieldHandler handler : fieldHandlers) {
+            if (handler == null) {
+                throw new IllegalArgumentException("field handler must not be null");
+            }
+        }
+        this.fieldHandlers = fieldHandlers.clone();
+        this.fields = new int[this.fieldHandlers.length];
+        for (int i = 0; i < this.fields.length; i++) {
+            this.fields[i] = this.fieldHandlers[i].getField();
+        }
+        this.resetFields = resetFields(this.fieldHandlers);
+        this.secondResetFields = new int[this.resetFields.length][];
+        boolean millisecondField = false;
+        for (int i = 0; i < this.resetFields.length; i++) {
+            int[] fields = this.resetFields[i];
+            int n = fields.length;
+            if (n > 0 && fields[n - 1] == Calendar.MILLISECOND) {
+                n--;
+            }
+            this.secondResetFields[i] = Arrays.copyOf(fields, n);
+            millisecondField |= this.fieldHandlers[i] instanceof MillisecondFieldHandler;
+        }
+        this.millisecondField = millisecondField;
+        this.dateMonths = (MonthFieldHandler) this.defaultHandler(MonthFieldHandler.class);
+        this.dateDaysOfWeek = (DayOfWeekFieldHandler) this.defaultHandler(DayOfWeekFieldHandler.class);
+        this.dateYears = (YearFieldHandler) this.defaultHandler(YearFieldHandler.class);
+    }
+
+    /**
+     * @return 類別完全相同的 handler (子類別可能改變解析或搜尋的方式, 不合併), 沒有則回傳 null
+     */
+    private FieldHandler defaultHandler(Class<? extends FieldHandler> type) {
+        for (FieldHandler handler : this.fieldHandlers) {
+            if (handler.getClass() == type) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 秒 分 時 日 月 星期 年 的 field handler (年份可省略)
+     */
+    public static FieldHandler[] defaultFieldHandlers() {
+        return new FieldHandler[] {
+                new SecondFieldHandler(),
+                new MinuteFieldHandler(),
+                new HourFieldHandler(),
+                new DayOfMonthFieldHandler(),
+                new MonthFieldHandler(),
+                new DayOfWeekFieldHandler(),
+                new YearFieldHandler() };
+    }
+
+    /**
+     * 可使用毫秒欄位的 engine: new CronEngine(CronEngine.millisecondFieldHandlers())
+     *
+     * 以毫秒為單位的 expression 不沿用 Spring 的 DST 行為: next() 為晚於指定時間且符合的最早時間 (依時間遞增),
+     * 重複的 wall time (DST 結束) 兩次都觸發, 不存在的 wall time (DST 開始) 不觸發.
+     * 因此毫秒為 0 的 expression 只在 offset 轉換附近與以秒為單位的 expression 不同, 例如 "0 30 * * * * ? *" 與
+     * "30 * * * * ?" (America/New_York) 由 2014-11-02 01:59:59.387 EDT 起: 前者為 01:00:30 EST, 後者略過重複的一小時.
+     *
+     * @return 毫秒 秒 分 時 日 月 星期 年 的 field handler (8 個欄位時第 1 個為毫秒; 6 或 7 個欄位同 {@link #defaultFieldHandlers()})
+     */
+    public static FieldHandler[] millisecondFieldHandlers() {
+        FieldHandler[] defaults = defaultFieldHandlers();
+        FieldHandler[] handlers = new FieldHandler[defaults.length + 1];
+        handlers[0] = new MillisecondFieldHandler();
+        System.arraycopy(defaults, 0, handlers, 1, defaults.length);
+        return handlers;
     }
 
     public long getNextFireTime(CronExpression expression) {
@@ -59,230 +197,606 @@ public class CronEngine {
 
     public long getNextFireTime(CronExpression expression, long millis) {
 
+        Compiled compiled = this.compile(expression);
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(compiled.transitions);
+        calendar.setTimeInMillis(millis);
+        CronMetrics metrics = this.metrics;
+        if (metrics == CronMetrics.NONE) {
+            return this.getNextFireTime(calendar, compiled, false, null);
+        }
+        SearchStats stats = SearchStats.forCurrentThread();
+        long start = System.nanoTime();
+        long next = this.getNextFireTime(calendar, compiled, false, stats);
+        metrics.searched(expression.getExpression(), System.nanoTime() - start, stats);
+        return next;
+    }
+
+    /**
+     * 取得指定時間之前的最後一個 fire time (例如: 重新啟動時檢查 misfire)
+     *
+     * @param expression cron expression
+     * @param millis 指定時間
+     * @return 早於指定時間的最後一個 fire time
+     */
+    public long getPrevFireTime(CronExpression expression, long millis) {
+
+        Compiled compiled = this.compile(expression);
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(compiled.transitions);
+        // start from the last whole unit (second or millisecond) before given time (result must be earlier than given time)
+        long start = millis - 1;
+        start -= EpochCalendar.floorMod(start, compiled.unit);
+        calendar.setTimeInMillis(start);
+        this.snapToPrevFireTime(calendar, compiled, start);
+        long time = calendar.getTimeInMillis();
+        // 結果與起點之間, 以及結果的前後一天內都沒有 offset 轉換 => wall time 只對應一個時間點, 即為結果
+        calendar.setTimeInMillis(time);
+        if (!calendar.isNearTransition() && compiled.transitions.lastTransition(time, start) == Long.MIN_VALUE) {
+            return time;
+        }
+        return this.prevNearTransition(calendar, compiled, start);
+    }
+
+    /**
+     * DST 轉換附近以毫秒為單位的 getNextFireTime(): 依時間順序逐一區段以固定的 offset 搜尋,
+     * 區段內找到的時間即為結果 (重複的 wall time 在兩個區段各觸發一次)
+     *
+     * @param calendar 使用中的 calendar (時區同 expression)
+     * @param from 結果不可早於此時間
+     */
+    private long nextNearTransition(EpochCalendar calendar, Compiled compiled, long from, SearchStats stats) {
+        ZoneTransitions transitions = compiled.transitions;
+        long start = from;
+        while (true) {
+            EpochCalendar fixed = EpochCalendar.fixedForCurrentThread(calendar.getOffset(start));
+            fixed.setTimeInMillis(start);
+            this.snapToNextFireTime(fixed, compiled, stats);
+            long time = fixed.getTimeInMillis();
+            long transition = transitions.firstTransition(start, time);
+            if (transition == Long.MIN_VALUE) {
+                return time;
+            }
+            // 轉換前的區段內沒有符合的時間 => 由轉換後的區段開始
+            start = transition;
+        }
+    }
+
+    /**
+     * DST 轉換附近的 getPrevFireTime(), 同 CompiledCron: 轉換前後的區段各自以固定的 offset 換算 wall time,
+     * 候選再以 matches() 確認
+     *
+     * @param calendar 使用中的 calendar (時區同 expression)
+     * @param start 結果不可晚於此時間 (整單位)
+     */
+    private long prevNearTransition(EpochCalendar calendar, Compiled compiled, long start) {
+        ZoneTransitions transitions = compiled.transitions;
+        long unit = compiled.unit;
+        long limit = start;
+        while (true) {
+            int offset = calendar.getOffset(limit);
+            EpochCalendar fixed = EpochCalendar.fixedForCurrentThread(offset);
+            fixed.setTimeInMillis(limit);
+            this.snapToPrevFireTime(fixed, compiled, limit);
+            long time = fixed.getTimeInMillis();
+            long transition = transitions.lastTransition(time, limit);
+            if (transition != Long.MIN_VALUE) {
+                // limit 所在的區段內沒有候選 => 以轉換前的 offset 換算 (DST gap 的 wall time 換算後落在轉換後 gap 長度內)
+                int before = calendar.getOffset(transition - 1);
+                long bound = Math.min(limit, transition + Math.max(0, offset - before) - 1);
+                bound -= EpochCalendar.floorMod(bound, unit);
+                fixed = EpochCalendar.fixedForCurrentThread(before);
+                fixed.setTimeInMillis(bound);
+                this.snapToPrevFireTime(fixed, compiled, bound);
+                time = fixed.getTimeInMillis();
+                if (transitions.lastTransition(time, transition - 1) != Long.MIN_VALUE) {
+                    // 轉換前的區段內也沒有候選 => 由更早的區段繼續
+                    limit = transition - 1 - EpochCalendar.floorMod(transition - 1, unit);
+                    continue;
+                }
+            }
+            if (this.matches(calendar, compiled, time)) {
+                return time;
+            }
+            limit = time - unit;
+        }
+    }
+
+    /**
+     * 指定時間是否為 fire time (結果同 getNextFireTime(expression, millis - 1) == millis), 不需搜尋.
+     *
+     * 將時間拆為欄位一次, 再由各 field handler 檢查 ({@link FieldHandler#matches}, 內建的 handler 只檢查 bit mask);
+     * DST 轉換前後一天內 (不存在或重複的 wall time) 改用搜尋確認.
+     *
+     * @param expression cron expression
+     * @param millis 指定時間
+     * @return 是否為 fire time
+     */
+    public boolean matches(CronExpression expression, long millis) {
+        Compiled compiled = this.compile(expression);
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(compiled.transitions);
+        return this.matches(calendar, compiled, millis);
+    }
+
+    /**
+     * 大量時間的 {@link #matches(CronExpression, long)} (例如: 一段時間內的每一個 tick), 不建立任何物件
+     *
+     * @param expression cron expression
+     * @param instants 指定時間
+     * @param out 存放結果 (out[i] 對應 instants[i], 長度至少與 instants 相同)
+     * @return 符合的數量
+     */
+    public int matches(CronExpression expression, long[] instants, boolean[] out) {
+
+        // check argument
+        if (instants == null || out == null || out.length < instants.length) {
+            throw new IllegalArgumentException("output array must be at least as long as instants");
+        }
+        Compiled compiled = this.compile(expression);
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(compiled.transitions);
+        int count = 0;
+        for (int i = 0; i < instants.length; i++) {
+            out[i] = this.matches(calendar, compiled, instants[i]);
+            if (out[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean matches(EpochCalendar calendar, Compiled compiled, long millis) {
+
+        // 以秒為單位時 fire time 必定為整秒
+        if (EpochCalendar.floorMod(millis, compiled.unit) != 0) {
+            return false;
+        }
+        calendar.setTimeInMillis(millis);
+        if (calendar.isNearTransition()) {
+            calendar.setTimeInMillis(millis - 1);
+            try {
+                return this.getNextFireTime(calendar, compiled, false, null) == millis;
+            }
+            catch (NoMoreFireTimesException ex) {
+                // 之後不會再觸發
+                return false;
+            }
+        }
+        FieldHandler[] handlers = this.fieldHandlers;
+        FieldMeta[] fieldMeta = compiled.fieldMeta;
+        for (int i = compiled.first; i < handlers.length; i++) {
+            if (fieldMeta[i] != FieldMeta.ANY && !handlers[i].matches(calendar, fieldMeta[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 連續取得 n 個 fire time (結果與連續呼叫 getNextFireTime() 相同), 每次由上一個結果繼續推進, 不建立任何物件
+     *
+     * @param expression cron expression
+     * @param millis 起始時間
+     * @param out 存放結果 (長度至少為 n; 不會再觸發時, 之後的位置為 Long.MIN_VALUE)
+     * @param n 數量
+     * @return 取得的數量 (不會再觸發時少於 n)
+     */
+    public int nextFireTimes(CronExpression expression, long millis, long[] out, int n) {
+
+        // check argument
+        if (out == null || n < 0 || n > out.length) {
+            throw new IllegalArgumentException("invalid count " + n + " for output array");
+        }
+        Compiled compiled = this.compile(expression);
+        EpochCalendar calendar = EpochCalendar.forCurrentThread(compiled.transitions);
+        calendar.setTimeInMillis(millis);
+        for (int i = 0; i < n; i++) {
+            try {
+                out[i] = this.getNextFireTime(calendar, compiled, i > 0, null);
+            }
+            catch (NoMoreFireTimesException ex) {
+                Arrays.fill(out, i, n, Long.MIN_VALUE);
+                return i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 時間區間內的所有 fire time (lazy 計算, 可使用 parallel() 分段平行計算)
+     *
+     * @param expression cron expression
+     * @param from 起始時間 (含)
+     * @param to 結束時間 (不含)
+     * @return 依時間排序的 fire time
+     */
+    public LongStream fireTimes(CronExpression expression, long from, long to) {
+
+        // 先解析, 避免多個 thread 同時解析
+        this.compile(expression);
+        FireTimeSpliterator spliterator = new FireTimeSpliterator(
+                millis -> this.getNextFireTime(expression, millis), expression.getTimeZone(), from, to);
+        return StreamSupport.longStream(spliterator, false);
+    }
+
+    /**
+     * @return fire time 的最小單位 (millis): 使用毫秒欄位時為 1, 否則為 1000
+     */
+    long getUnit(CronExpression expression) {
+        return this.compile(expression).unit;
+    }
+
+    /**
+     * 取得 expression 的解析結果 (第一次使用或改由其他 engine 使用時才解析)
+     */
+    private Compiled compile(CronExpression expression) {
+
         // check argument
         if (expression == null) {
             throw new IllegalArgumentException("CronExpression must not be null");
         }
-        // parse express (and save field meta) if necessary
-        if (!expression.isParsed()) {
-            expression.setFieldMeta(this.parseExpression(expression));
+        // 只讀取一次 (其他 thread 可能同時寫入); Compiled 的欄位皆為 final, 讀到的物件必定完整
+        Compiled compiled = expression.getCompiled();
+        if (compiled == null || compiled.engine != this) {
+            TimeZone timeZone = expression.getTimeZone();
+            FieldMeta[] fieldMeta = this.parseCache.get(expression.getExpression(), timeZone);
+            compiled = new Compiled(this, fieldMeta, ZoneTransitions.of(timeZone), this.firstField(fieldMeta));
+            expression.setCompiled(compiled);
         }
-        // calculate next fire time
-        Calendar calendar = new GregorianCalendar();
-        calendar.setTimeZone(expression.getTimeZone());
-        calendar.setTimeInMillis(millis);
+        return compiled;
+    }
+
+    /**
+     * @param calendar 起點 (結果也會保留在 calendar 中)
+     * @param compiled 已解析的 expression
+     * @param matched 起點是否為上一次的結果 (已符合 expression, 可省略首次搜尋)
+     * @param stats 搜尋統計 (null: 不記錄)
+     */
+    private long getNextFireTime(EpochCalendar calendar, Compiled compiled, boolean matched, SearchStats stats) {
+
+        if (compiled.unit == 1) {
+            // 毫秒欄位: 由下一毫秒開始搜尋 (結果必定晚於指定時間)
+            long from = calendar.getTimeInMillis() + 1;
+            calendar.setTimeInMillis(from);
+            if (!calendar.isNearTransition()) {
+                this.snapToNextFireTime(calendar, compiled, stats);
+                long time = calendar.getTimeInMillis();
+                // 起點與結果之間, 以及結果的前後一天內都沒有 offset 轉換 => wall time 只對應一個時間點, 即為結果
+                if (!calendar.isNearTransition() && compiled.transitions.lastTransition(from, time) == Long.MIN_VALUE) {
+                    return time;
+                }
+            }
+            long time = this.nextNearTransition(calendar, compiled, from, stats);
+            calendar.setTimeInMillis(time);
+            return time;
+        }
+        long previous = calendar.getTimeInMillis();
         calendar.set(Calendar.MILLISECOND, 0);
         long originalTimestamp = calendar.getTimeInMillis();
         // first search (ignore millisecond)
-        this.snapToNextFireTime(calendar, expression.getFiledMeta());
+        if (!matched || originalTimestamp != previous) {
+            this.snapToNextFireTime(calendar, compiled, stats);
+        }
         // second search if necessary (add 1 second to make sure result is after given time)
         if (calendar.getTimeInMillis() == originalTimestamp) {
             calendar.add(Calendar.SECOND, 1);
-            this.snapToNextFireTime(calendar, expression.getFiledMeta());
+            this.snapToNextFireTime(calendar, compiled, stats);
         }
         // return
         return calendar.getTimeInMillis();
     }
 
-    private Object[] parseExpression(CronExpression expression) {
+    private FieldMeta[] parseExpression(String expression) {
 
         // check argument
-        if (expression == null || expression.getExpression() == null) {
+        if (expression == null) {
             throw new IllegalArgumentException("cron expression must not be null");
         }
-        // check state
-        if (this.fieldHandlers == null) {
-            throw new IllegalStateException("must call setFieldHandlers() before parsing expression");
-        }
         // split fields
-        String[] fields = expression.getExpression().split("\\s+");
+        String[] fields = CronParser.splitFields(expression);
         // check field count (v.s. field handler)
-        int count = fields.length;
-        if (count > this.fieldHandlers.length) {
-            throw new IllegalArgumentException(String.format("expression contains more fields(%d) than handler(%d): %s", count, this.fieldHandlers.length, expression.getExpression()));
+        int count = this.fieldHandlers.length;
+        if (fields.length > count) {
+            throw new IllegalArgumentException(String.format("expression contains more fields(%d) than handler(%d): %s", fields.length, count, expression));
+        }
+        // 開頭為毫秒的欄位 (8 個欄位): 其他 handler 由第 2 個欄位起算
+        String[] others = fields;
+        if (this.millisecondField && fields.length == MillisecondFieldHandler.FIELD_COUNT) {
+            others = Arrays.copyOfRange(fields, 1, fields.length);
         }
-        // parse fields
-        Object[] fieldMeta = new Object[count];
+        // parse fields (each handler selects its own field, optional fields may be absent)
+        FieldMeta[] fieldMeta = new FieldMeta[count];
         for (int i = 0; i < count; i++) {
-            fieldMeta[i] = this.fieldHandlers[i].parseField(fields[i]);
+            FieldHandler handler = this.fieldHandlers[i];
+            if (handler instanceof DayOfMonthFieldHandler) {
+                // 日 + 預設的 月 / 星期 / 年 handler 的欄位 => 日期表
+                fieldMeta[i] = ((DayOfMonthFieldHandler) handler).parseFields(others, this.dateMonths,
+                        this.dateDaysOfWeek, this.dateYears);
+            }
+            else {
+                fieldMeta[i] = handler.parseFields(handler instanceof MillisecondFieldHandler ? fields : others);
+            }
+        }
+        // 已合併到日期表的欄位不需再個別搜尋 (日期表找到的日期必定符合)
+        for (int i = 0; i < count; i++) {
+            if (fieldMeta[i] instanceof DateFieldMeta) {
+                for (int j = 0; j < count; j++) {
+                    FieldHandler handler = this.fieldHandlers[j];
+                    if (handler == this.dateMonths || handler == this.dateDaysOfWeek || handler == this.dateYears) {
+                        fieldMeta[j] = FieldMeta.ANY;
+                    }
+                }
+            }
         }
         return fieldMeta;
     }
 
-    private void snapToNextFireTime(Calendar calendar, Object[] fieldMeta) {
+    /**
+     * @return 搜尋的第一個 handler: 不使用毫秒欄位時略過毫秒的 handler (以秒為單位, 毫秒固定為 0)
+     */
+    private int firstField(FieldMeta[] fieldMeta) {
+        int first = 0;
+        while (first < fieldMeta.length - 1 && this.fieldHandlers[first].getField() == Calendar.MILLISECOND
+                && fieldMeta[first] == FieldMeta.ANY) {
+            first++;
+        }
+        return first;
+    }
 
-        // search from second to year one by one
-        int count = fieldMeta.length;
-        for (int i=0; i<count; i++) {
-            FieldHandler handler = this.fieldHandlers[i];
-            if (handler.next(calendar, fieldMeta[i])){
-                update calendar (reset minor fields)
-                if (i>0){
-                    go from second (i = -1)
+    private void snapToNextFireTime(EpochCalendar calendar, Compiled compiled, SearchStats stats) {
+
+        FieldHandler[] handlers = this.fieldHandlers;
+        FieldMeta[] fieldMeta = compiled.fieldMeta;
+        int[][] resetFields = compiled.resetFields;
+        int[] searched = compiled.searched;
+        int first = compiled.first;
+        int startYear = calendar.get(Calendar.YEAR);
+        int restarts = 0;
+        // 本回合 (由 field(first) 開始) 已改變的欄位
+        int changed = 0;
+        // search from (milli)second to year one by one (略過不限制的欄位)
+        for (int k = 0; k < searched.length; k++) {
+            int i = searched[k];
+            if (stats != null) {
+                stats.iterations++;
+            }
+            if (!handlers[i].seekNext(calendar, fieldMeta[i])) {
+                continue;
+            }
+            // field(n) 發生異動 => 較小的欄位設為最小值 (時間欄位改變時保留本回合已改變的欄位, 毫秒一律重設)
+            int field = this.fields[i];
+            int keep = (TIME_FIELDS & 1 << field) != 0 ? changed & TIME_FIELDS : 0;
+            int[] lowers = resetFields[i];
+            int[] values = compiled.resetValues[i];
+            for (int n = 0; n < lowers.length; n++) {
+                int lower = lowers[n];
+                if ((keep & 1 << lower) == 0) {
+                    calendar.set(lower, values != null ? values[n] : calendar.getActualMinimum(lower));
+                }
+            }
+            changed |= 1 << field;
+            if (i > first) {
+                // 無法滿足的組合 (例如: 2/30) 不會收斂, 超過一個格里曆循環即放棄
+                if (calendar.get(Calendar.YEAR) - startYear > CompiledCron.MAX_SEARCH_YEARS) {
+                    throw new IllegalArgumentException("cron expression led to runaway search for next trigger");
+                }
+                if (values != null) {
+                    // 重設的欄位都已符合: 重新搜尋不會再改變任何欄位, 直接往下
+                    if (!calendar.isNearTransition()) {
+                        changed = 0;
+                        continue;
+                    }
+                    // offset 轉換附近 (時間可能被調整): 同 Spring 重設為最小值後重新搜尋
+                    for (int lower : lowers) {
+                        if ((keep & 1 << lower) == 0) {
+                            calendar.set(lower, calendar.getActualMinimum(lower));
+                        }
+                    }
                 }
+                if (stats != null && ++restarts > stats.depth) {
+                    stats.depth = restarts;
+                }
+                changed = 0;
+                k = -1;
             }
         }
     }
 
-
-    public void setFieldHandlers(FieldHandler[] fieldHandlers) {
-
-        this.fieldHandlers = fieldHandlers;
-    }
-
-
     /**
-     * 將 cron expression 切割為獨立欄位
-     *
-     * @param expression
-     * @return
+     * @param limit 結果不可晚於此時間
      */
-    private String[] splitExpression(String expression) {
-
-        if (expression == null) {
-            return new String[0];
-        }
-        String[] fields = expression.split("\\s+");
-        if (fields == null || fields.length < 6) {
-            throw new IllegalArgumentException("invalid cron expression: " + expression);
-        }
-        return fields;
-        /*
-        StringTokenizer st = new StringTokenizer(str, delimiters);
-        List<String> tokens = new ArrayList<String>();
-        while (st.hasMoreTokens()) {
-            String token = st.nextToken();
-            token = token.trim();
-            if (token.length() > 0) {
-                tokens.add(token);
+    private void snapToPrevFireTime(EpochCalendar calendar, Compiled compiled, long limit) {
+
+        FieldHandler[] handlers = this.fieldHandlers;
+        FieldMeta[] fieldMeta = compiled.fieldMeta;
+        int[][] resetFields = compiled.resetFields;
+        long unit = compiled.unit;
+        int first = compiled.first;
+        int startYear = calendar.get(Calendar.YEAR);
+        // search from (milli)second to year one by one (backward)
+        int count = fieldMeta.length;
+        for (int i = first; i < count; i++) {
+            boolean changed = fieldMeta[i] != FieldMeta.ANY && handlers[i].seekPrev(calendar, fieldMeta[i]);
+            long time;
+            if (changed && i > first) {
+                // field(n) 發生異動 => 較小的欄位 (由大到小) 設為最大值後重新搜尋
+                for (int lower : resetFields[i]) {
+                    calendar.set(lower, calendar.getActualMaximum(lower));
+                }
+                if (startYear - calendar.get(Calendar.YEAR) > CompiledCron.MAX_SEARCH_YEARS) {
+                    throw new IllegalArgumentException("cron expression led to runaway search for previous trigger");
+                }
+                // 往回搜尋的時間必須愈來愈早
+                time = calendar.getTimeInMillis();
+                if (time < limit) {
+                    limit = time;
+                    i = first - 1;
+                    continue;
+                }
             }
+            else if (i < count - 1) {
+                continue;
+            }
+            else {
+                // 所有欄位都符合: 以 wall time 重新換算 (重複的時間取較晚的時間點, 同 next())
+                if (unit != 1) {
+                    calendar.set(Calendar.MILLISECOND, 0);
+                }
+                time = calendar.getTimeInMillis();
+                if (time <= limit) {
+                    continue;
+                }
+            }
+            // 沒有往回 (或晚於起點): wall time 落在 DST gap (不存在) 或 overlap (取較晚的時間點)
+            // => 同 CompiledCron.prev(), 由轉換前的時間繼續往回找
+            long transition = calendar.findTransition(time - EpochCalendar.MILLIS_PER_DAY, time);
+            long restart = time - unit;
+            if (transition != Long.MIN_VALUE) {
+                int delta = calendar.getOffset(transition - 1) - calendar.getOffset(transition);
+                // overlap: 由重複時段開始前 (第一次出現) 的上一秒繼續; gap: 由轉換前的上一秒繼續
+                restart = delta > 0 ? transition - delta - 1 : transition - 1;
+            }
+            restart = Math.min(restart, limit - 1);
+            calendar.setTimeInMillis(restart - EpochCalendar.floorMod(restart, unit));
+            limit = calendar.getTimeInMillis();
+            i = first - 1;
         }
-        return tokens.toArray(new String[tokens.size()]);
-        */
     }
 
     /**
-     * Parse the given pattern expression.
+     * 依各 handler 的 getPrevField() 串連出異動時需要重設的欄位 (例如: 月 => 日, 時, 分, 秒)
      */
-    public void parse(String expression) throws IllegalArgumentException {
-
-        String[] fields = this.splitExpression(expression);
-        if (fields == null || fields.length < 6) {
-            throw new IllegalArgumentException(String.format("invalid cron expression (\"%s\")", expression));
-        }
-/*
-        setNumberHits(this.seconds, fields[0], 0, 60);
-        setNumberHits(this.minutes, fields[1], 0, 60);
-        setNumberHits(this.hours, fields[2], 0, 24);
-        setDaysOfMonth(this.daysOfMonth, fields[3]);
-        setMonths(this.months, fields[4]);
-        setDays(this.daysOfWeek, replaceOrdinals(fields[5], "SUN,MON,TUE,WED,THU,FRI,SAT"), 8);
-        if (this.daysOfWeek.get(7)) {
-            // Sunday can be represented as 0 or 7
-            this.daysOfWeek.set(0);
-            this.daysOfWeek.clear(7);
-        }
-        */
+    private static int[][] resetFields(FieldHandler[] fieldHandlers) {
+
+        int count = fieldHandlers.length;
+        int[][] resetFields = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int[] fields = new int[count];
+            int n = 0;
+            int field = fieldHandlers[i].getPrevField();
+            while (field >= 0 && n < count) {
+                fields[n++] = field;
+                FieldHandler lower = null;
+                for (FieldHandler handler : fieldHandlers) {
+                    if (handler.getField() == field) {
+                        lower = handler;
+                    }
+                }
+                field = lower == null ? -1 : lower.getPrevField();
+            }
+            resetFields[i] = Arrays.copyOf(fields, n);
+        }
+        return resetFields;
     }
 
     /**
-     * Replace the values in the commaSeparatedList (case insensitive) with their index in the list.
+     * 設定此 engine 的監控 (解析時間, getNextFireTime() 的搜尋統計與時間)
      *
-     * @return a new string with the values from the list replaced
+     * @param metrics 監控 (null 或 {@link CronMetrics#NONE}: 不記錄)
      */
-    private String replaceOrdinals(String value, String commaSeparatedList) {
-        String[] list = StringUtils.commaDelimitedListToStringArray(commaSeparatedList);
-        for (int i = 0; i < list.length; i++) {
-            String item = list[i].toUpperCase();
-            value = StringUtils.replace(value.toUpperCase(), item, "" + i);
-        }
-        return value;
+    public void setMetrics(CronMetrics metrics) {
+        this.metrics = metrics == null ? CronMetrics.NONE : metrics;
     }
 
-    private void setDaysOfMonth(BitSet bits, String field) {
-        int max = 31;
-        // Days of month start with 1 (in Cron and Calendar) so add one
-        setDays(bits, field, max + 1);
-        // ... and remove it from the front
-        bits.clear(0);
+    public CronMetrics getMetrics() {
+        return this.metrics;
     }
 
-    private void setDays(BitSet bits, String field, int max) {
-        if (field.contains("?")) {
-            field = "*";
-        }
-        setNumberHits(bits, field, 0, max);
+    /**
+     * @return 此 engine 的解析快取 (可查詢 hit / miss 或預先載入; 快取的陣列由多個 thread 共用, 不可修改)
+     */
+    public ParseCache<FieldMeta[]> getParseCache() {
+        return this.parseCache;
     }
 
-    private void setMonths(BitSet bits, String value) {
-        int max = 12;
-        value = replaceOrdinals(value, "FOO,JAN,FEB,MAR,APR,MAY,JUN,JUL,AUG,SEP,OCT,NOV,DEC");
-        BitSet months = new BitSet(13);
-        // Months start with 1 in Cron and 0 in Calendar, so push the values first into a longer bit set
-        setNumberHits(months, value, 1, max + 1);
-        // ... and then rotate it to the front of the months
-        for (int i = 1; i <= max; i++) {
-            if (months.get(i)) {
-                bits.set(i - 1);
+    /**
+     * expression 的解析結果 (不可變): 所有欄位皆為 final, 經由 data race 發布也能看到完整的內容
+     */
+    static final class Compiled {
+
+        // 解析此 expression 的 engine (不同 engine 的 field handler 可能不同)
+        final CronEngine engine;
+
+        final FieldMeta[] fieldMeta;
+
+        final ZoneTransitions transitions;
+
+        // 搜尋的第一個 handler (以秒為單位時略過毫秒的 handler)
+        final int first;
+
+        // 最小單位 (millis): 使用毫秒欄位時為 1, 否則為 1 秒
+        final long unit;
+
+        // 異動時需要重設的欄位 (以秒為單位時不含毫秒)
+        final int[][] resetFields;
+
+        // 需要搜尋的 handler (由 first 起, 不含不限制的欄位)
+        final int[] searched;
+
+        // resetValues[i]: field handler(i) 異動後不需重新搜尋時的重設值, 需要重新搜尋時為 null
+        final int[][] resetValues;
+
+        Compiled(CronEngine engine, FieldMeta[] fieldMeta, ZoneTransitions transitions, int first) {
+            boolean milliseconds = engine.fieldHandlers[first].getField() == Calendar.MILLISECOND;
+            this.engine = engine;
+            this.fieldMeta = fieldMeta;
+            this.transitions = transitions;
+            this.first = first;
+            this.unit = milliseconds ? 1 : EpochCalendar.MILLIS_PER_SECOND;
+            this.resetFields = milliseconds ? engine.resetFields : engine.secondResetFields;
+            int[] searched = new int[fieldMeta.length - first];
+            int n = 0;
+            for (int i = first; i < fieldMeta.length; i++) {
+                if (fieldMeta[i] != FieldMeta.ANY) {
+                    searched[n++] = i;
+                }
+            }
+            this.searched = Arrays.copyOf(searched, n);
+            this.resetValues = new int[fieldMeta.length][];
+            for (int i = first; i < fieldMeta.length; i++) {
+                this.resetValues[i] = resetValues(engine, fieldMeta, i, this.resetFields[i]);
             }
         }
-    }
 
-    private void setNumberHits(BitSet bits, String value, int min, int max) {
-        String[] fields = StringUtils.delimitedListToStringArray(value, ",");
-        for (String field : fields) {
-            if (!field.contains("/")) {
-                // Not an incrementer so it must be a range (possibly empty)
-                int[] range = getRange(field, min, max);
-                bits.set(range[0], range[1] + 1);
+        /**
+         * 異動後不需重新搜尋的重設值: 重設的欄位都是內建的時間 handler 且
+         * <ul>
+         * <li>都允許最小值 (0): 重新搜尋不會改變任何欄位</li>
+         * <li>或 field handler(i) 為日期欄位 (之後不再有時間欄位): 重新搜尋的結果必定是新日期的第一個 fire time, 直接設為各欄位的第一個允許值</li>
+         * </ul>
+         *
+         * @return 重設值 (對應 resetFields), 需要重新搜尋時為 null
+         */
+        private static int[] resetValues(CronEngine engine, FieldMeta[] fieldMeta, int i, int[] resetFields) {
+            boolean date = !isTimeField(engine.fields[i]);
+            for (int k = i + 1; k < fieldMeta.length && date; k++) {
+                date = fieldMeta[k] == FieldMeta.ANY || !isTimeField(engine.fields[k]);
             }
-            else {
-                String[] split = StringUtils.delimitedListToStringArray(field, "/");
-                if (split.length > 2) {
-                    throw new IllegalArgumentException("Incrementer has more than two fields: '" +
-                            field + "' in expression \"" + "expression" + "\"");
-                }
-                int[] range = getRange(split[0], min, max);
-                if (!split[0].contains("-")) {
-                    range[1] = max - 1;
+            int[] values = new int[resetFields.length];
+            for (int n = 0; n < resetFields.length; n++) {
+                int lower = resetFields[n];
+                if (!isTimeField(lower)) {
+                    return null;
                 }
-                int delta = Integer.valueOf(split[1]);
-                for (int i = range[0]; i <= range[1]; i += delta) {
-                    bits.set(i);
+                for (int j = 0; j < fieldMeta.length; j++) {
+                    if (engine.fields[j] != lower || fieldMeta[j] == FieldMeta.ANY) {
+                        continue;
+                    }
+                    Class<?> type = engine.fieldHandlers[j].getClass();
+                    if (type != SecondFieldHandler.class && type != MinuteFieldHandler.class
+                            && type != HourFieldHandler.class && type != MillisecondFieldHandler.class) {
+                        return null;
+                    }
+                    if (date) {
+                        values[n] = fieldMeta[j].first();
+                    }
+                    else if (!fieldMeta[j].get(0)) {
+                        return null;
+                    }
                 }
             }
+            return values;
         }
-    }
 
-    private int[] getRange(String field, int min, int max) {
-        int[] result = new int[2];
-        if (field.contains("*")) {
-            result[0] = min;
-            result[1] = max - 1;
-            return result;
-        }
-        if (!field.contains("-")) {
-            result[0] = result[1] = Integer.valueOf(field);
-        }
-        else {
-            String[] split = StringUtils.delimitedListToStringArray(field, "-");
-            if (split.length > 2) {
-                throw new IllegalArgumentException("Range has more than two fields: '" +
-                        field + "' in expression \"" + "this.expression" + "\"");
-            }
-            result[0] = Integer.valueOf(split[0]);
-            result[1] = Integer.valueOf(split[1]);
-        }
-        if (result[0] >= max || result[1] >= max) {
-            throw new IllegalArgumentException("Range exceeds maximum (" + max + "): '" +
-                    field + "' in expression \"" + "this.expression" + "\"");
+        private static boolean isTimeField(int field) {
+            return (TIME_FIELDS & 1 << field) != 0 || field == Calendar.MILLISECOND;
         }
-        if (result[0] < min || result[1] < min) {
-            throw new IllegalArgumentException("Range less than minimum (" + min + "): '" +
-                    field + "' in expression \"" + "this.expression" + "\"");
-        }
-        return result;
     }
-
-
 }
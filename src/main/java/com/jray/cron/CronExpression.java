@@ -1,7 +1,5 @@
 package com.jray.cron;
 
-import com.jray.cron.field.FieldMeta;
-
 import java.util.TimeZone;
 
 /**
@@ -10,15 +8,21 @@ import java.util.TimeZone;
  * - 支援的 expression 為:
  *  1. 6 個欄位: [秒] [分] [時] [日] [月] [週]
  *  2. 7 個欄位: [秒] [分] [時] [日] [月] [週] [年]
+ *  3. 8 個欄位: [毫秒] [秒] [分] [時] [日] [月] [週] [年] (例如: "*&#47;250 * * * * * ? *" 每 250 毫秒;
+ *     需使用 {@link CronEngine#millisecondFieldHandlers()})
  *
+ * - thread-safe: 可由多個 thread 共用同一個 expression.
+ *   解析結果 ({@link CronEngine.Compiled}) 為不可變物件 (所有欄位皆為 final), 首次使用時建立,
+ *   不需要 lock 或 volatile 即可安全發布 (racy single-check: 其他 thread 最多重複解析一次, 結果相同).
  */
-public class CronExpression {
+public final class CronExpression {
 
     private final String expression;
 
     private final TimeZone timeZone;
 
-    private FieldMeta[] fieldMeta;
+    // 最後一次使用的 engine 的解析結果 (不可變)
+    private CronEngine.Compiled compiled;
 
     public CronExpression(String expression) {
         this(expression, TimeZone.getDefault());
@@ -30,15 +34,15 @@ public class CronExpression {
     }
 
     public boolean isParsed(){
-        return this.fieldMeta != null;
+        return this.compiled != null;
     }
 
-    public void setFieldMeta(FieldMeta[] fieldMeta) {
-        this.fieldMeta = fieldMeta;
+    CronEngine.Compiled getCompiled() {
+        return this.compiled;
     }
 
-    public Object[] getFiledMeta() {
-        return this.fieldMeta;
+    void setCompiled(CronEngine.Compiled compiled) {
+        this.compiled = compiled;
     }
 
     public String getExpression() {
@@ -0,0 +1,263 @@
+package com.jray.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多個 {@link CompiledCron} 的反向索引: 查詢 "指定時間 (秒) 有哪些 schedule 觸發".
+ *
+ *  1. 每個 schedule 有一個 id (0, 1, 2, ...), 移除後 id 會被重複使用
+ *  2. 每個欄位的每個值各有一個 bitmap, 記錄允許該值的 schedule
+ *      (秒 60 個, 分 60 個, 時 24 個, 日 31 個, 月 12 個, 週 7 個, 年 1970 ~ 2099 各一個,
+ *      另有一個 bitmap 給範圍外的年份, 只包含不限制年份的 schedule)
+ *  3. 查詢時依時區計算各欄位的值, 將對應的 bitmap 與該時區的 schedule 做 AND, 不需逐一呼叫 next()
+ *  4. 日與週同時符合才觸發 (與 {@link CompiledCron#next(long)} 相同)
+ *  5. DST 轉換前後一天內 (不存在或重複的 wall time) 該時區的 schedule 改以 {@link CompiledCron#matches(long)} 逐一確認,
+ *     結果與 next(millis - 1) == millis 相同
+ *
+ * 所有方法都是 thread-safe (synchronized).
+ */
+public class CronIndex {
+
+    private static final int WORD_BITS = 64;
+
+    // 範圍外年份的 bitmap index
+    private static final int OTHER_YEARS = CompiledCron.MAX_YEAR - CompiledCron.MIN_YEAR + 1;
+
+    // 欄位 bitmap: [值][word]
+    private final long[][] seconds = new long[60][];
+    private final long[][] minutes = new long[60][];
+    private final long[][] hours = new long[24][];
+    private final long[][] daysOfMonth = new long[32][];
+    private final long[][] months = new long[12][];
+    private final long[][] daysOfWeek = new long[7][];
+    private final long[][] years = new long[OTHER_YEARS + 1][];
+
+    private final List<long[][]> fields = new ArrayList<long[][]>();
+
+    // 依時區分組: 轉換表 => 該時區的 schedule bitmap.
+    // 不以時區 ID 分組: 自訂的 TimeZone 可能使用系統時區的 ID 但規則不同 (同 NextFireTimeTask.groupByZone)
+    private final Map<ZoneTransitions, Zone> zones = new IdentityHashMap<ZoneTransitions, Zone>();
+
+    private final List<CompiledCron> schedules = new ArrayList<CompiledCron>();
+
+    private final BitSet used = new BitSet();
+
+    private int words;
+
+    public CronIndex() {
+        this.fields.add(this.seconds);
+        this.fields.add(this.minutes);
+        this.fields.add(this.hours);
+        this.fields.add(this.daysOfMonth);
+        this.fields.add(this.months);
+        this.fields.add(this.daysOfWeek);
+        this.fields.add(this.years);
+        this.grow(1);
+    }
+
+    /**
+     * 加入 schedule
+     *
+     * @param schedule 已解析的 cron expression
+     * @return schedule 的 id
+     */
+    public synchronized int add(CompiledCron schedule) {
+        if (schedule == null) {
+            throw new IllegalArgumentException("schedule must not be null");
+        }
+        int id = this.used.nextClearBit(0);
+        if (id >= this.words * WORD_BITS) {
+            this.grow(this.words * 2);
+        }
+        this.used.set(id);
+        if (id == this.schedules.size()) {
+            this.schedules.add(schedule);
+        }
+        else {
+            this.schedules.set(id, schedule);
+        }
+        this.index(id, schedule, true);
+        return id;
+    }
+
+    /**
+     * 移除 schedule (id 之後可能被重複使用)
+     *
+     * @param id schedule 的 id
+     * @return 被移除的 schedule
+     */
+    public synchronized CompiledCron remove(int id) {
+        CompiledCron schedule = this.get(id);
+        this.index(id, schedule, false);
+        this.used.clear(id);
+        this.schedules.set(id, null);
+        return schedule;
+    }
+
+    /**
+     * 更換 schedule (例如: job 的 expression 變更), id 不變
+     *
+     * @param id schedule 的 id
+     * @param schedule 新的 schedule
+     * @return 原本的 schedule
+     */
+    public synchronized CompiledCron replace(int id, CompiledCron schedule) {
+        if (schedule == null) {
+            throw new IllegalArgumentException("schedule must not be null");
+        }
+        CompiledCron previous = this.get(id);
+        this.index(id, previous, false);
+        this.schedules.set(id, schedule);
+        this.index(id, schedule, true);
+        return previous;
+    }
+
+    /**
+     * @param id schedule 的 id
+     * @return schedule
+     */
+    public synchronized CompiledCron get(int id) {
+        if (id < 0 || !this.used.get(id)) {
+            throw new IllegalArgumentException("no schedule with id " + id);
+        }
+        return this.schedules.get(id);
+    }
+
+    /**
+     * @return schedule 數量
+     */
+    public synchronized int size() {
+        return this.used.cardinality();
+    }
+
+    /**
+     * 查詢在指定時間觸發的 schedule (時間以秒為單位, 忽略 millisecond)
+     *
+     * @param millis 指定時間
+     * @return 觸發的 schedule id
+     */
+    public synchronized BitSet firingAt(long millis) {
+        long[] result = new long[this.words];
+        long second = millis - EpochCalendar.floorMod(millis, EpochCalendar.MILLIS_PER_SECOND);
+        for (Zone zone : this.zones.values()) {
+            EpochCalendar calendar = EpochCalendar.forCurrentThread(zone.transitions);
+            calendar.setTimeInMillis(second);
+            if (calendar.isNearTransition()) {
+                this.matchEach(zone.members, second, result);
+                continue;
+            }
+            long[] secondOfMinute = this.seconds[calendar.get(Calendar.SECOND)];
+            long[] minute = this.minutes[calendar.get(Calendar.MINUTE)];
+            long[] hour = this.hours[calendar.get(Calendar.HOUR_OF_DAY)];
+            long[] dayOfMonth = this.daysOfMonth[calendar.get(Calendar.DAY_OF_MONTH)];
+            long[] month = this.months[calendar.get(Calendar.MONTH)];
+            long[] dayOfWeek = this.daysOfWeek[calendar.get(Calendar.DAY_OF_WEEK) - 1];
+            int yearIndex = calendar.get(Calendar.YEAR) - CompiledCron.MIN_YEAR;
+            long[] year = this.years[yearIndex >= 0 && yearIndex < OTHER_YEARS ? yearIndex : OTHER_YEARS];
+            long[] members = zone.members;
+            for (int i = 0; i < result.length; i++) {
+                result[i] |= members[i] & secondOfMinute[i] & minute[i] & hour[i] & dayOfMonth[i] & month[i] & dayOfWeek[i]
+                        & year[i];
+            }
+        }
+        return BitSet.valueOf(result);
+    }
+
+    /**
+     * 逐一以 {@link CompiledCron#matches(long)} 確認 members 中的 schedule (DST 轉換附近, bit mask 無法判斷)
+     */
+    private void matchEach(long[] members, long millis, long[] result) {
+        for (int i = 0; i < members.length; i++) {
+            for (long word = members[i]; word != 0; word &= word - 1) {
+                int id = i * WORD_BITS + Long.numberOfTrailingZeros(word);
+                if (this.schedules.get(id).matches(millis)) {
+                    result[i] |= Long.lowestOneBit(word);
+                }
+            }
+        }
+    }
+
+    private void index(int id, CompiledCron schedule, boolean set) {
+        int word = id / WORD_BITS;
+        long bit = 1L << id;
+        set(this.seconds, schedule.getSeconds(), word, bit, set);
+        set(this.minutes, schedule.getMinutes(), word, bit, set);
+        set(this.hours, schedule.getHours(), word, bit, set);
+        // 日的 bit 31 為 int 的符號位元, 不可帶號擴展
+        set(this.daysOfMonth, schedule.getDaysOfMonth() & 0xFFFFFFFFL, word, bit, set);
+        set(this.months, schedule.getMonths(), word, bit, set);
+        set(this.daysOfWeek, schedule.getDaysOfWeek(), word, bit, set);
+        long[] scheduleYears = schedule.getYears();
+        for (int value = 0; value < this.years.length; value++) {
+            // 不限制年份 => 所有年份 (含範圍外)
+            if (scheduleYears == null
+                    || value < OTHER_YEARS && (scheduleYears[value >> 6] & (1L << value)) != 0) {
+                if (set) {
+                    this.years[value][word] |= bit;
+                }
+                else {
+                    this.years[value][word] &= ~bit;
+                }
+            }
+        }
+        ZoneTransitions transitions = schedule.getTransitions();
+        Zone zone = this.zones.get(transitions);
+        if (set) {
+            if (zone == null) {
+                zone = new Zone(transitions, this.words);
+                this.zones.put(transitions, zone);
+            }
+            zone.members[word] |= bit;
+            zone.count++;
+        }
+        else {
+            zone.members[word] &= ~bit;
+            if (--zone.count == 0) {
+                this.zones.remove(transitions);
+            }
+        }
+    }
+
+    private static void set(long[][] bitmaps, long mask, int word, long bit, boolean set) {
+        for (int value = CompiledCron.nextSetBit(mask, 0); value >= 0; value = CompiledCron.nextSetBit(mask, value + 1)) {
+            if (set) {
+                bitmaps[value][word] |= bit;
+            }
+            else {
+                bitmaps[value][word] &= ~bit;
+            }
+        }
+    }
+
+    private void grow(int words) {
+        for (long[][] bitmaps : this.fields) {
+            for (int i = 0; i < bitmaps.length; i++) {
+                bitmaps[i] = bitmaps[i] == null ? new long[words] : Arrays.copyOf(bitmaps[i], words);
+            }
+        }
+        for (Zone zone : this.zones.values()) {
+            zone.members = Arrays.copyOf(zone.members, words);
+        }
+        this.words = words;
+    }
+
+    private static final class Zone {
+
+        private final ZoneTransitions transitions;
+
+        private long[] members;
+
+        private int count;
+
+        Zone(ZoneTransitions transitions, int words) {
+            this.transitions = transitions;
+            this.members = new long[words];
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.jray.cron;
+
+/**
+ * 解析與搜尋的監控介面 (SPI).
+ *
+ *  1. 預設為 {@link #NONE}: CronUtil / CronEngine 發現是 NONE 時直接走原本的路徑, 不計時也不計數
+ *  2. 實作必須是 thread-safe, 且不可保留傳入的 {@link SearchStats} (每個 thread 重複使用同一個物件)
+ *
+ * @see CronUtil#setMetrics(CronMetrics)
+ * @see CronEngine#setMetrics(CronMetrics)
+ * @see HistogramCronMetrics
+ */
+public interface CronMetrics {
+
+    /**
+     * 不做任何記錄 (預設)
+     */
+    CronMetrics NONE = new CronMetrics() {
+        @Override
+        public void parsed(String expression, long nanos) {
+        }
+
+        @Override
+        public void searched(String expression, long nanos, SearchStats stats) {
+        }
+    };
+
+    /**
+     * 解析 expression 完成 (快取命中時不會呼叫)
+     *
+     * @param expression cron expression
+     * @param nanos 解析時間
+     */
+    void parsed(String expression, long nanos);
+
+    /**
+     * 一次 next fire time 搜尋完成
+     *
+     * @param expression cron expression
+     * @param nanos 搜尋時間
+     * @param stats 搜尋過程的統計 (只在此方法內有效)
+     */
+    void searched(String expression, long nanos, SearchStats stats);
+}
@@ -0,0 +1,27 @@
+package com.jray.cron;
+
+/**
+ * cron expression 語法錯誤 (同 {@link java.text.ParseException}, 記錄錯誤的位置)
+ */
+public class CronParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int errorOffset;
+
+    /**
+     * @param message 錯誤訊息
+     * @param errorOffset 錯誤在 expression 中的位置 (由 0 起算)
+     */
+    public CronParseException(String message, int errorOffset) {
+        super(message + " at position " + errorOffset);
+        this.errorOffset = errorOffset;
+    }
+
+    /**
+     * @return 錯誤在 expression 中的位置 (由 0 起算)
+     */
+    public int getErrorOffset() {
+        return this.errorOffset;
+    }
+}
@@ -0,0 +1,438 @@
+package com.jray.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * cron expression 解析器: 由左至右逐字元掃描一次, 直接產生各欄位的 bit mask.
+ *
+ *  1. 欄位以空白分隔: 秒 分 時 日 月 星期 [年]
+ *  2. 每個欄位為以 ',' 分隔的項目; 項目為 "*", 數值, 名稱 (月: JAN ~ DEC, 星期: SUN ~ SAT, 不分大小寫) 或 "a-b",
+ *     可加上 "/n" 間隔 (沒有 "-" 時由起點到最大值); 日, 星期, 年可用 "?" 代表不限制
+ *  3. 不建立中間字串 (split / toUpperCase / Integer.valueOf), 只有發生錯誤時才建立錯誤訊息
+ *  4. 語法錯誤時拋出 {@link CronParseException}, 指出錯誤的位置
+ *
+ * 語法同 org.springframework.scheduling.support.CronSequenceGenerator (另支援年份欄位), 差異:
+ * 名稱必須是完整的欄位值 (例如: "MONDAY" 不合法), 間隔為 0 或範圍相反 (例如: "10-5/2") 時拋出例外.
+ */
+public final class CronParser {
+
+    // 月的名稱 (JAN = 1)
+    private static final String[] MONTH_NAMES = {
+            "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+    // 星期的名稱 (SUN = 0)
+    private static final String[] DAY_NAMES = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+    // 超過此值的數字不再累加 (避免 int 溢位), 一律視為超出範圍
+    private static final int MAX_NUMBER = 1000000;
+
+    private final String expression;
+
+    private final int length;
+
+    // 目前的位置
+    private int pos;
+
+    // 毫秒欄位 (0 ~ 999) 的 bit mask 長度
+    private static final int MILLISECOND_WORDS = 16;
+
+    // 目前欄位的 bit mask (年份與毫秒需要超過 64 bits)
+    private final long[] words;
+
+    private CronParser(String expression) {
+        this(expression, CompiledCron.YEAR_WORDS);
+    }
+
+    private CronParser(String expression, int words) {
+        this.expression = expression;
+        this.length = expression.length();
+        this.words = new long[words];
+    }
+
+    /**
+     * 解析 cron expression (6 個欄位, 或加上年份共 7 個欄位)
+     *
+     * @param expression cron expression
+     * @param timeZone 時區
+     * @return 已解析的 cron expression
+     * @throws CronParseException 語法錯誤
+     */
+    static CompiledCron parse(String expression, TimeZone timeZone) {
+        if (expression == null) {
+            throw new IllegalArgumentException("cron expression must not be null");
+        }
+        CronParser parser = new CronParser(expression);
+        long seconds = parser.nextField(0, 60, null, 0, false);
+        long minutes = parser.nextField(0, 60, null, 0, false);
+        long hours = parser.nextField(0, 24, null, 0, false);
+        long daysOfMonth = daysOfMonth(parser.nextField(0, 32, null, 0, true));
+        long months = months(parser.nextField(1, 13, MONTH_NAMES, 1, false));
+        long daysOfWeek = daysOfWeek(parser.nextField(0, 8, DAY_NAMES, 0, true));
+        long[] years = null;
+        if (parser.skipWhitespace()) {
+            years = parser.years();
+            if (parser.skipWhitespace()) {
+                throw parser.fieldCountError();
+            }
+        }
+        return new CompiledCron(expression, seconds, minutes, (int) hours, (int) daysOfMonth, (int) months,
+                (int) daysOfWeek, years, timeZone);
+    }
+
+    /**
+     * 解析單一欄位 (數值, "*", "a-b", "/n", 以 ',' 分隔)
+     *
+     * @param field 欄位
+     * @param min 最小值 (含)
+     * @param max 最大值 (不含, 不可超過 64)
+     * @return bit mask (bit n 代表值 n)
+     * @throws CronParseException 語法錯誤 (位置以 field 起算)
+     */
+    public static long parseField(String field, int min, int max) {
+        return parseSingle(field, min, max, null, 0, false);
+    }
+
+    /**
+     * 解析日的欄位 (1 ~ 31, 可用 "?")
+     *
+     * @return bit mask (bit n 代表 n 日)
+     * @throws CronParseException 語法錯誤
+     */
+    public static long parseDaysOfMonth(String field) {
+        return daysOfMonth(parseSingle(field, 0, 32, null, 0, true));
+    }
+
+    /**
+     * 解析月的欄位 (1 ~ 12 或 JAN ~ DEC)
+     *
+     * @return bit mask (bit n 代表 Calendar.MONTH 的值 n, 即 bit 0 = JAN)
+     * @throws CronParseException 語法錯誤
+     */
+    public static long parseMonths(String field) {
+        return months(parseSingle(field, 1, 13, MONTH_NAMES, 1, false));
+    }
+
+    /**
+     * 解析星期的欄位 (0 ~ 7 或 SUN ~ SAT, 0 與 7 皆為 SUN, 可用 "?")
+     *
+     * @return bit mask (bit 0 = SUN ~ bit 6 = SAT)
+     * @throws CronParseException 語法錯誤
+     */
+    public static long parseDaysOfWeek(String field) {
+        return daysOfWeek(parseSingle(field, 0, 8, DAY_NAMES, 0, true));
+    }
+
+    /**
+     * 解析年份的欄位 (1970 ~ 2099)
+     *
+     * @return bit mask (bit n 代表 1970 + n, 長度為 {@link CompiledCron#YEAR_WORDS}), "*" 或 "?" 不限制則回傳 null
+     * @throws CronParseException 語法錯誤
+     */
+    public static long[] parseYears(String field) {
+        CronParser parser = single(field);
+        long[] years = parser.years();
+        parser.end();
+        return years == null ? null : years.clone();
+    }
+
+    /**
+     * 解析毫秒的欄位 (0 ~ 999, 例如: "*&#47;250")
+     *
+     * @return bit mask (bit n 代表 n 毫秒, 長度為 16)
+     * @throws CronParseException 語法錯誤
+     */
+    public static long[] parseMilliseconds(String field) {
+        CronParser parser = single(field, MILLISECOND_WORDS);
+        parser.field(0, 1000, null, 0, false);
+        parser.end();
+        return parser.words.clone();
+    }
+
+    private static long parseSingle(String field, int min, int max, String[] names, int nameBase, boolean question) {
+        CronParser parser = single(field);
+        long bits = parser.field(min, max, names, nameBase, question);
+        parser.end();
+        return bits;
+    }
+
+    private static CronParser single(String field) {
+        return single(field, CompiledCron.YEAR_WORDS);
+    }
+
+    private static CronParser single(String field, int words) {
+        if (field == null) {
+            throw new IllegalArgumentException("cron field must not be null");
+        }
+        CronParser parser = new CronParser(field, words);
+        if (!parser.skipWhitespace()) {
+            throw parser.error("Empty field", 0, 0);
+        }
+        return parser;
+    }
+
+    /**
+     * 單一欄位之後只能有空白
+     */
+    private void end() {
+        if (this.skipWhitespace()) {
+            throw this.error("Unexpected character '" + this.expression.charAt(this.pos) + "'", this.pos, this.pos);
+        }
+    }
+
+    // 日由 1 開始: 同 Spring 以 0 ~ 31 解析後移除 bit 0 (例如: "*/5" 為 5, 10, ... 30)
+    private static long daysOfMonth(long bits) {
+        return bits & ~1L;
+    }
+
+    // 月由 1 開始, Calendar.MONTH 由 0 開始 => 往前移一個 bit
+    private static long months(long bits) {
+        return bits >>> 1;
+    }
+
+    private static long daysOfWeek(long bits) {
+        if ((bits & (1L << 7)) != 0) {
+            // Sunday can be represented as 0 or 7
+            bits |= 1L;
+            bits &= ~(1L << 7);
+        }
+        return bits;
+    }
+
+    /**
+     * 以空白切割欄位 (不解析欄位內容)
+     *
+     * @param expression cron expression
+     * @return 各欄位
+     */
+    static String[] splitFields(String expression) {
+        List<String> fields = new ArrayList<String>(7);
+        CronParser parser = new CronParser(expression);
+        while (parser.skipWhitespace()) {
+            int start = parser.pos;
+            while (parser.pos < parser.length && !Character.isWhitespace(expression.charAt(parser.pos))) {
+                parser.pos++;
+            }
+            fields.add(expression.substring(start, parser.pos));
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private long nextField(int min, int max, String[] names, int nameBase, boolean question) {
+        if (!this.skipWhitespace()) {
+            throw this.fieldCountError();
+        }
+        return this.field(min, max, names, nameBase, question);
+    }
+
+    /**
+     * 年份: "*" 或 "?" 代表不限制 (回傳 null)
+     */
+    private long[] years() {
+        char c = this.expression.charAt(this.pos);
+        if ((c == '*' || c == '?') && (this.pos + 1 == this.length
+                || Character.isWhitespace(this.expression.charAt(this.pos + 1)))) {
+            this.pos++;
+            return null;
+        }
+        this.field(CompiledCron.MIN_YEAR, CompiledCron.MAX_YEAR + 1, null, 0, true);
+        return this.words;
+    }
+
+    /**
+     * 解析目前位置的欄位, 直到空白或結尾
+     *
+     * @param min 最小值 (含)
+     * @param max 最大值 (不含)
+     * @param names 名稱 (null: 不接受名稱)
+     * @param nameBase 第一個名稱代表的值
+     * @param question 是否接受 "?"
+     * @return bit mask 的第一個 word (bit n 代表值 n, 年份則為值 - min)
+     */
+    private long field(int min, int max, String[] names, int nameBase, boolean question) {
+        Arrays.fill(this.words, 0L);
+        // 超過 64 bits 且不由 0 開始的欄位 (年份) 由 min 起算
+        int base = max > 64 ? min : 0;
+        do {
+            this.item(min, max, base, names, nameBase, question);
+        }
+        while (this.accept(','));
+        if (this.pos < this.length && !Character.isWhitespace(this.expression.charAt(this.pos))) {
+            throw this.unexpected(this.itemStart(), this.pos);
+        }
+        return this.words[0];
+    }
+
+    private void item(int min, int max, int base, String[] names, int nameBase, boolean question) {
+        int start = this.pos;
+        int from;
+        int to;
+        boolean range = false;
+        char c = this.peek();
+        if (c == '*' || (question && c == '?')) {
+            this.pos++;
+            from = min;
+            to = max - 1;
+        }
+        else {
+            from = this.value(start, names, nameBase);
+            to = from;
+            if (this.accept('-')) {
+                to = this.value(start, names, nameBase);
+                range = true;
+                if (this.peek() == '-') {
+                    throw this.error("Range has more than two fields", start, this.pos);
+                }
+            }
+        }
+        if (from >= max || to >= max) {
+            throw this.error("Range exceeds maximum (" + max + ")", start, start);
+        }
+        if (from < min || to < min) {
+            throw this.error("Range less than minimum (" + min + ")", start, start);
+        }
+        int step = 1;
+        if (this.accept('/')) {
+            int stepStart = this.pos;
+            step = this.number(start);
+            if (step == 0) {
+                throw this.error("Incrementer delta must be 1 or higher", start, stepStart);
+            }
+            if (this.peek() == '/') {
+                throw this.error("Incrementer has more than two fields", start, this.pos);
+            }
+            if (!range) {
+                to = max - 1;
+            }
+        }
+        if (from > to) {
+            throw this.error("Range start is after range end", start, start);
+        }
+        from -= base;
+        to -= base;
+        if (step == 1 && to < 64) {
+            this.words[0] |= (-1L << from) & (-1L >>> (63 - to));
+        }
+        else {
+            for (int i = from; i <= to; i += step) {
+                this.words[i >> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * 數值或名稱
+     */
+    private int value(int itemStart, String[] names, int nameBase) {
+        char c = this.peek();
+        if (c >= '0' && c <= '9') {
+            return this.number(itemStart);
+        }
+        if (names != null && Character.isLetter(c)) {
+            int start = this.pos;
+            while (this.pos < this.length && Character.isLetter(this.expression.charAt(this.pos))) {
+                this.pos++;
+            }
+            int nameLength = this.pos - start;
+            for (int i = 0; i < names.length; i++) {
+                if (nameLength == names[i].length()
+                        && this.expression.regionMatches(true, start, names[i], 0, nameLength)) {
+                    return i + nameBase;
+                }
+            }
+            throw this.error("Unknown name '" + this.expression.substring(start, this.pos) + "'", itemStart, start);
+        }
+        throw this.unexpected(itemStart, this.pos);
+    }
+
+    private int number(int itemStart) {
+        int start = this.pos;
+        int value = 0;
+        while (this.pos < this.length) {
+            char c = this.expression.charAt(this.pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (value < MAX_NUMBER) {
+                value = value * 10 + (c - '0');
+            }
+            this.pos++;
+        }
+        if (this.pos == start) {
+            throw this.unexpected(itemStart, start);
+        }
+        return value;
+    }
+
+    private char peek() {
+        return this.pos < this.length ? this.expression.charAt(this.pos) : '\0';
+    }
+
+    private boolean accept(char c) {
+        if (this.pos < this.length && this.expression.charAt(this.pos) == c) {
+            this.pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 略過空白後是否還有字元
+     */
+    private boolean skipWhitespace() {
+        while (this.pos < this.length && Character.isWhitespace(this.expression.charAt(this.pos))) {
+            this.pos++;
+        }
+        return this.pos < this.length;
+    }
+
+    /**
+     * @return 目前項目的起點 (往回找到 ',' 或空白)
+     */
+    private int itemStart() {
+        int start = this.pos;
+        while (start > 0 && this.expression.charAt(start - 1) != ','
+                && !Character.isWhitespace(this.expression.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    private CronParseException unexpected(int itemStart, int position) {
+        if (position >= this.length) {
+            return this.error("Unexpected end of expression", itemStart, position);
+        }
+        return this.error("Unexpected character '" + this.expression.charAt(position) + "'", itemStart, position);
+    }
+
+    /**
+     * @param message 錯誤訊息
+     * @param itemStart 發生錯誤的項目起點 (訊息中會列出該項目)
+     * @param position 錯誤的位置
+     */
+    private CronParseException error(String message, int itemStart, int position) {
+        int end = itemStart;
+        while (end < this.length && this.expression.charAt(end) != ','
+                && !Character.isWhitespace(this.expression.charAt(end))) {
+            end++;
+        }
+        return new CronParseException(message + ": '" + this.expression.substring(itemStart, end) +
+                "' in expression \"" + this.expression + "\"", position);
+    }
+
+    private CronParseException fieldCountError() {
+        int count = 0;
+        boolean field = false;
+        for (int i = 0; i < this.length; i++) {
+            boolean whitespace = Character.isWhitespace(this.expression.charAt(i));
+            if (!whitespace && !field) {
+                count++;
+            }
+            field = !whitespace;
+        }
+        return new CronParseException(String.format(
+                "Cron expression must consist of 6 or 7 fields (found %d in \"%s\")", count, this.expression), this.pos);
+    }
+}
@@ -0,0 +1,425 @@
+package com.jray.cron;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 以階層式 timing wheel (秒 / 分 / 時 / 日) 管理大量 cron job 的排程器.
+ *
+ *  1. fire time 以秒為單位 (tick, 不支援以毫秒為單位的 expression), 依距離目前 tick 的遠近放入對應的 wheel:
+ *      1.1 同一分鐘內 => 秒 wheel (60 格, 每格 1 秒)
+ *      1.2 同一小時內 => 分 wheel (60 格, 每格 1 分)
+ *      1.3 同一天內 => 時 wheel (24 格, 每格 1 小時)
+ *      1.4 同一個 366 天區段內 => 日 wheel (366 格, 每格 1 天)
+ *      1.5 更遠 => overflow (每 366 天重新分配一次)
+ *  2. 加入與到期都是 O(1): 每格為 job 的單向串列; 時間到達上層 wheel 的格子時, 將該格的 job 往下層重新分配 (cascade)
+ *  3. job 觸發後立即以 {@link CronEngine#getNextFireTime(CronExpression, long)} 計算下一次 fire time 並重新放入 wheel
+ *  4. 錯過的 fire time (例如: 程序暫停) 只觸發一次, 下一次 fire time 由目前時間起算 (記錄為 misfire)
+ *  5. schedule() 不需要取得鎖: 新的 job 先放入 concurrent queue, 由 {@link #advance()} 放入 wheel
+ *  6. 觸發的工作交給 {@link CronDispatcher} 執行 (virtual thread 或 executor, 可限制同一個 expression 同時執行的數量)
+ *  7. 可選擇記錄 {@link FireJournal}: 加入, 觸發 (含下一個 fire time), 完成與取消; 重新啟動後由日誌找出 misfire
+ *
+ * 時間來源 ({@link Clock}) 可替換, 測試時以手動時鐘搭配直接呼叫 {@link #advance()} 即可, 不需要啟動 thread.
+ */
+public class CronScheduler {
+
+    /**
+     * 排程器的時間來源
+     */
+    public interface Clock {
+
+        /**
+         * @return 目前時間 (millis)
+         */
+        long millis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    // 每一層 wheel 的格數與每格的 tick 數 (秒 / 分 / 時 / 日)
+    private static final int[] WHEEL_SIZE = { 60, 60, 24, 366 };
+
+    private static final long[] SLOT_TICKS = { 1, 60, 3600, 86400 };
+
+    private static final int LEVELS = WHEEL_SIZE.length;
+
+    // 最上層 wheel 涵蓋的 tick 數, 超過的 job 放入 overflow
+    private static final long OVERFLOW_TICKS = SLOT_TICKS[LEVELS - 1] * WHEEL_SIZE[LEVELS - 1];
+
+    private final CronEngine engine;
+
+    private final CronDispatcher dispatcher;
+
+    private final Clock clock;
+
+    // null: 不記錄
+    private final FireJournal journal;
+
+    private final AtomicLong jobIds = new AtomicLong();
+
+    private final Job[][] wheels = new Job[LEVELS][];
+
+    private Job overflow;
+
+    // 已到期 (或加入時已過期) 尚未觸發的 job
+    private Job due;
+
+    // 所有小於等於此 tick 的格子都已處理
+    private long currentTick;
+
+    private final ConcurrentLinkedQueue<Job> pending = new ConcurrentLinkedQueue<Job>();
+
+    private final AtomicLong dispatchCount = new AtomicLong();
+
+    private final AtomicLong misfireCount = new AtomicLong();
+
+    private final AtomicLong totalLagMillis = new AtomicLong();
+
+    private final LongAccumulator maxLagMillis = new LongAccumulator(Math::max, 0);
+
+    private volatile Thread worker;
+
+    public CronScheduler(CronEngine engine, Executor executor) {
+        this(engine, executor, SYSTEM_CLOCK);
+    }
+
+    public CronScheduler(CronEngine engine, Executor executor, Clock clock) {
+        this(engine, executor == null ? null : new CronDispatcher(executor, CronDispatcher.UNLIMITED), clock);
+    }
+
+    public CronScheduler(CronEngine engine, CronDispatcher dispatcher, Clock clock) {
+        this(engine, dispatcher, clock, null);
+    }
+
+    /**
+     * @param journal 記錄 fire time 的日誌 (null: 不記錄)
+     */
+    public CronScheduler(CronEngine engine, CronDispatcher dispatcher, Clock clock, FireJournal journal) {
+        if (engine == null || dispatcher == null || clock == null) {
+            throw new IllegalArgumentException("engine, dispatcher and clock must not be null");
+        }
+        this.engine = engine;
+        this.dispatcher = dispatcher;
+        this.clock = clock;
+        this.journal = journal;
+        for (int i = 0; i < LEVELS; i++) {
+            this.wheels[i] = new Job[WHEEL_SIZE[i]];
+        }
+        this.currentTick = toTick(clock.millis());
+    }
+
+    /**
+     * 加入 cron job (expression 不合法, 或以毫秒為單位時直接拋出例外)
+     *
+     * @param expression cron expression
+     * @param task 觸發時交給 dispatcher 執行的工作
+     * @return 已排程的 job (可取消)
+     */
+    public Job schedule(CronExpression expression, Runnable task) {
+        return this.schedule(this.jobIds.incrementAndGet(), expression, task);
+    }
+
+    /**
+     * 加入 cron job, 使用固定的 job id (重新啟動後相同, 日誌依 job id 回報 misfire)
+     *
+     * @param id job id
+     * @param expression cron expression
+     * @param task 觸發時交給 dispatcher 執行的工作
+     * @return 已排程的 job (可取消)
+     */
+    public Job schedule(long id, CronExpression expression, Runnable task) {
+        if (expression == null || task == null) {
+            throw new IllegalArgumentException("expression and task must not be null");
+        }
+        // 每個 tick 只推進一次: 以毫秒為單位的 job 會在同一個 tick 內重複觸發
+        if (this.engine.getUnit(expression) < EpochCalendar.MILLIS_PER_SECOND) {
+            throw new IllegalArgumentException("the scheduler ticks in whole seconds, millisecond expressions are not supported: "
+                    + expression.getExpression());
+        }
+        Job job = new Job(id, expression, task);
+        job.nextFireTime = this.engine.getNextFireTime(expression, this.clock.millis());
+        if (this.journal != null) {
+            this.journal.scheduled(id, job.nextFireTime);
+        }
+        this.pending.offer(job);
+        return job;
+    }
+
+    /**
+     * 將 wheel 推進到目前時間, 並觸發所有到期的 job (由 worker thread 或測試直接呼叫)
+     */
+    public synchronized void advance() {
+        long now = this.clock.millis();
+        long nowTick = toTick(now);
+        for (Job job = this.pending.poll(); job != null; job = this.pending.poll()) {
+            this.place(job);
+        }
+        this.dispatchDue(now);
+        while (this.currentTick < nowTick) {
+            long tick = ++this.currentTick;
+            // cascade: 由上層往下層, 確保往下分配的 job 在同一 tick 內繼續往下
+            if (tick % OVERFLOW_TICKS == 0) {
+                Job list = this.overflow;
+                this.overflow = null;
+                this.placeAll(list);
+            }
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if (tick % SLOT_TICKS[level] != 0) {
+                    continue;
+                }
+                Job[] wheel = this.wheels[level];
+                int slot = (int) ((tick / SLOT_TICKS[level]) % WHEEL_SIZE[level]);
+                Job list = wheel[slot];
+                wheel[slot] = null;
+                this.placeAll(list);
+            }
+            // expire
+            Job[] seconds = this.wheels[0];
+            int slot = (int) (tick % WHEEL_SIZE[0]);
+            Job list = seconds[slot];
+            seconds[slot] = null;
+            while (list != null) {
+                Job job = list;
+                list = list.next;
+                this.dispatch(job, now);
+            }
+            this.dispatchDue(now);
+        }
+    }
+
+    /**
+     * 啟動 worker thread (每秒推進一次)
+     */
+    public synchronized void start() {
+        if (this.worker != null) {
+            throw new IllegalStateException("scheduler already started");
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CronScheduler.this.runWorker();
+            }
+        }, "cron-scheduler");
+        thread.setDaemon(true);
+        this.worker = thread;
+        thread.start();
+    }
+
+    /**
+     * 停止 worker thread (已交給 dispatcher 的工作不受影響)
+     */
+    public void shutdown() {
+        Thread thread = this.worker;
+        this.worker = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return 已觸發的次數
+     */
+    public long getDispatchCount() {
+        return this.dispatchCount.get();
+    }
+
+    /**
+     * @return 因延遲而略過 fire time 的次數
+     */
+    public long getMisfireCount() {
+        return this.misfireCount.get();
+    }
+
+    /**
+     * @return 所有工作開始執行時與 fire time 的延遲總和 (millis)
+     */
+    public long getTotalLagMillis() {
+        return this.totalLagMillis.get();
+    }
+
+    /**
+     * @return 最大延遲 (millis)
+     */
+    public long getMaxLagMillis() {
+        return this.maxLagMillis.get();
+    }
+
+    /**
+     * @return 平均延遲 (millis)
+     */
+    public double getAverageLagMillis() {
+        long count = this.dispatchCount.get();
+        return count == 0 ? 0 : (double) this.totalLagMillis.get() / count;
+    }
+
+    private void runWorker() {
+        while (this.worker == Thread.currentThread()) {
+            this.advance();
+            long now = this.clock.millis();
+            try {
+                Thread.sleep(EpochCalendar.MILLIS_PER_SECOND - EpochCalendar.floorMod(now, EpochCalendar.MILLIS_PER_SECOND));
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void placeAll(Job list) {
+        while (list != null) {
+            Job job = list;
+            list = list.next;
+            this.place(job);
+        }
+    }
+
+    private void place(Job job) {
+        if (job.cancelled) {
+            job.next = null;
+            if (this.journal != null) {
+                this.journal.cancelled(job.id);
+            }
+            return;
+        }
+        long tick = toTick(job.nextFireTime);
+        if (tick <= this.currentTick) {
+            job.next = this.due;
+            this.due = job;
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            long span = SLOT_TICKS[level] * WHEEL_SIZE[level];
+            if (tick / span == this.currentTick / span) {
+                Job[] wheel = this.wheels[level];
+                int slot = (int) ((tick / SLOT_TICKS[level]) % WHEEL_SIZE[level]);
+                job.next = wheel[slot];
+                wheel[slot] = job;
+                return;
+            }
+        }
+        job.next = this.overflow;
+        this.overflow = job;
+    }
+
+    private void dispatchDue(long now) {
+        while (this.due != null) {
+            Job list = this.due;
+            this.due = null;
+            while (list != null) {
+                Job job = list;
+                list = list.next;
+                this.dispatch(job, now);
+            }
+        }
+    }
+
+    private void dispatch(final Job job, long now) {
+        job.next = null;
+        if (job.cancelled) {
+            if (this.journal != null) {
+                this.journal.cancelled(job.id);
+            }
+            return;
+        }
+        final long fireTime = job.nextFireTime;
+        // re-arm: 由這次的 fire time 起算, 已經錯過的 fire time 合併為一次 (先計算, 日誌記錄觸發時一併記錄)
+        long next;
+        try {
+            next = this.engine.getNextFireTime(job.expression, fireTime);
+            if (next <= now) {
+                this.misfireCount.incrementAndGet();
+                next = this.engine.getNextFireTime(job.expression, now);
+            }
+        }
+        catch (NoMoreFireTimesException ex) {
+            // 沒有下一次 fire time
+            next = Long.MIN_VALUE;
+        }
+        final FireJournal journal = this.journal;
+        if (journal != null) {
+            journal.fired(job.id, fireTime, next);
+        }
+        this.dispatcher.dispatch(job.expression, new Runnable() {
+            @Override
+            public void run() {
+                long lag = CronScheduler.this.clock.millis() - fireTime;
+                CronScheduler.this.dispatchCount.incrementAndGet();
+                CronScheduler.this.totalLagMillis.addAndGet(lag);
+                CronScheduler.this.maxLagMillis.accumulate(lag);
+                try {
+                    job.task.run();
+                }
+                finally {
+                    if (journal != null) {
+                        journal.completed(job.id, fireTime);
+                    }
+                }
+            }
+        });
+        if (next == Long.MIN_VALUE) {
+            job.cancelled = true;
+            return;
+        }
+        job.nextFireTime = next;
+        this.place(job);
+    }
+
+    private static long toTick(long millis) {
+        return EpochCalendar.floorDiv(millis, EpochCalendar.MILLIS_PER_SECOND);
+    }
+
+    /**
+     * 已排程的 cron job
+     */
+    public static final class Job {
+
+        private final long id;
+
+        private final CronExpression expression;
+
+        private final Runnable task;
+
+        private volatile long nextFireTime;
+
+        private volatile boolean cancelled;
+
+        // 同一格中的下一個 job (只由排程器存取)
+        private Job next;
+
+        Job(long id, CronExpression expression, Runnable task) {
+            this.id = id;
+            this.expression = expression;
+            this.task = task;
+        }
+
+        /**
+         * 取消 job (已交給 dispatcher 的工作不受影響), 下次經過 wheel 時移除
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        public long getId() {
+            return this.id;
+        }
+
+        public long getNextFireTime() {
+            return this.nextFireTime;
+        }
+
+        public CronExpression getExpression() {
+            return this.expression;
+        }
+    }
+}
@@ -1,15 +1,9 @@
 package com.jray.cron;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.BitSet;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.TimeZone;
-
-import org.springframework.util.StringUtils;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
 
 /**
  * @author jerry
@@ -23,17 +17,25 @@ import org.springframework.util.StringUtils;
  */
 public class CronUtil {
 
-    private final BitSet seconds = new BitSet(60);
-
-    private final BitSet minutes = new BitSet(60);
-
-    private final BitSet hours = new BitSet(24);
-
-    private final BitSet daysOfWeek = new BitSet(7);
+    // 共用的解析快取, 相同的 (expression, TimeZone) 只解析一次
+    private static final ParseCache<CompiledCron> PARSE_CACHE = new ParseCache<CompiledCron>() {
+        @Override
+        protected CompiledCron load(String expression, TimeZone timeZone) {
+            CronMetrics metrics = CronUtil.metrics;
+            if (metrics == CronMetrics.NONE) {
+                return parse(expression, timeZone);
+            }
+            long start = System.nanoTime();
+            CompiledCron schedule = parse(expression, timeZone);
+            metrics.parsed(expression, System.nanoTime() - start);
+            return schedule;
+        }
+    };
 
-    private final BitSet daysOfMonth = new BitSet(31);
+    // 所有 CronUtil 共用的監控 (預設不記錄)
+    private static volatile CronMetrics metrics = CronMetrics.NONE;
 
-    private final BitSet months = new BitSet(12);
+    private final CompiledCron schedule;
 
     private final String expression;
 
@@ -46,300 +48,172 @@ public class CronUtil {
     public CronUtil(String expression, TimeZone timeZone) {
         this.expression = expression;
         this.timeZone = timeZone;
-        parse(expression);
+        this.schedule = compile(expression, timeZone);
     }
 
     /**
-     * 取得 "指定時間" 後的 下一個符合 cron expression 時間
+     * 解析 cron expression (結果會被快取, 重複的 expression 只需一次 hash 查詢)
      *
-     * @param millis
-     *            指定時間
-     * @return 下一個符合 cron expression 時間
+     * @param expression cron expression
+     * @param timeZone 時區
+     * @return 已解析的 cron expression
      */
-    public long next(long millis) {
-
-        // 設定指定的時間, 並捨棄 millisecond
-        Calendar calendar = new GregorianCalendar();
-        calendar.setTimeZone(this.timeZone);
-        calendar.setTimeInMillis(millis);
-        calendar.set(Calendar.MILLISECOND, 0);
-        long originalTimestamp = calendar.getTimeInMillis();
-
-        // 首次搜尋 (忽略毫秒)
-        this.doNext(calendar, calendar.get(Calendar.YEAR));
-
-        // 如果時間相等 => 需要 +1 秒再算一次, 確保取得的時間比 date 晚
-        if (calendar.getTimeInMillis() == originalTimestamp) {
-            calendar.add(Calendar.SECOND, 1);
-            this.doNext(calendar, calendar.get(Calendar.YEAR));
-        }
-
-        // 回傳結果
-        return calendar.getTimeInMillis();
+    public static CompiledCron compile(String expression, TimeZone timeZone) {
+        return PARSE_CACHE.get(expression, timeZone);
     }
 
     /**
-     * 搜尋下一個時間點
+     * 設定所有 CronUtil 共用的監控 (解析時間, next() 的搜尋統計與時間)
      *
-     * @param calendar
-     * @param baseYear
+     * @param metrics 監控 (null 或 {@link CronMetrics#NONE}: 不記錄)
      */
-    private void doNext(Calendar calendar, int baseYear) {
-        long id = calendar.getTimeInMillis();
-        System.err.println("doNext()[+]:" + id);
-
-        // 記錄需要 reset 的欄位
-        List<Integer> resets = new ArrayList<Integer>();
-
-        // 秒
-        int second = calendar.get(Calendar.SECOND);
-        int updateSecond = findNext(this.seconds, second, calendar, Calendar.SECOND, Calendar.MINUTE, resets);
-        // 沒有異動 => 加入 reset 清單 (沒異動代表下一個欄位進位時需要 reset)
-        if (second == updateSecond) {
-            resets.add(Calendar.SECOND);
-        }
-
-        // 分
-        int minute = calendar.get(Calendar.MINUTE);
-        int updateMinute = findNext(this.minutes, minute, calendar, Calendar.MINUTE, Calendar.HOUR_OF_DAY, resets);
-        // 沒有異動 => 加入 reset 清單
-        if (minute == updateMinute) {
-            resets.add(Calendar.MINUTE);
-        }
-        // 已經異動 => 再次調整較小的欄位 (second)
-        else {
-            doNext(calendar, baseYear);
-            return;
-        }
-
-        // 時
-        int hour = calendar.get(Calendar.HOUR_OF_DAY);
-        int updateHour = findNext(this.hours, hour, calendar, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_WEEK, resets);
-        if (hour == updateHour) {
-            resets.add(Calendar.HOUR_OF_DAY);
-        }
-        else {
-            doNext(calendar, baseYear);
-            return;
-        }
-
-        // 日 / 星期
-        int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
-        int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
-        int updateDayOfMonth = findNextDay(calendar, this.daysOfMonth, dayOfMonth, daysOfWeek, dayOfWeek, resets);
-        if (dayOfMonth == updateDayOfMonth) {
-            resets.add(Calendar.DAY_OF_MONTH);
-        }
-        else {
-            doNext(calendar, baseYear);
-            return;
-        }
-
-        // 月
-        int month = calendar.get(Calendar.MONTH);
-        int updateMonth = findNext(this.months, month, calendar, Calendar.MONTH, Calendar.YEAR, resets);
-        if (month != updateMonth) {
-            // 確認在合理範圍內
-            if (calendar.get(Calendar.YEAR) - baseYear > 4) {
-                throw new IllegalArgumentException("Invalid cron expression \"" + this.expression +
-                        "\" led to runaway search for next trigger");
-            }
-            doNext(calendar, baseYear);
-            return;
-        }
-        System.err.println("doNext()[-]:" + id);
+    public static void setMetrics(CronMetrics metrics) {
+        CronUtil.metrics = metrics == null ? CronMetrics.NONE : metrics;
     }
 
-    private int findNextDay(Calendar calendar, BitSet daysOfMonth, int dayOfMonth, BitSet daysOfWeek, int dayOfWeek,
-                            List<Integer> resets) {
-
-        // 日期 / 星期 兩個條件需要一起滿足
-        // 每次往前進一天並檢驗是否符合設定, 如有改變日期 => 將較小的欄位 reset.
-        // 最多往前 366 天
+    public static CronMetrics getMetrics() {
+        return metrics;
+    }
 
-        int count = 0;
-        int max = 366;
-        // the DAY_OF_WEEK values in java.util.Calendar start with 1 (Sunday),
-        // but in the cron pattern, they start with 0, so we subtract 1 here
-        while ((!daysOfMonth.get(dayOfMonth) || !daysOfWeek.get(dayOfWeek - 1)) && count++ < max) {
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-            dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
-            dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
-            reset(calendar, resets);
-        }
-        if (count >= max) {
-            throw new IllegalArgumentException("Overflow in day for expression \"" + this.expression + "\"");
-        }
-        return dayOfMonth;
+    /**
+     * @return CronUtil 共用的解析快取 (可查詢 hit / miss 或預先載入)
+     */
+    public static ParseCache<CompiledCron> getParseCache() {
+        return PARSE_CACHE;
     }
 
     /**
-     * Search the bits provided for the next set bit after the value provided, and reset the calendar.
+     * 大量 schedule 的下一個 fire time (例如: failover 或校正時鐘後重新計算所有 job), 使用 common pool 平行計算
      *
-     * @param bits
-     *            a {@link BitSet} representing the allowed values of the field
-     * @param value
-     *            the current value of the field
-     * @param calendar
-     *            the calendar to increment as we move through the bits
-     * @param field
-     *            the field to increment in the calendar (@see {@link Calendar} for the static constants defining valid
-     *            fields)
-     * @param lowerOrders
-     *            the Calendar field ids that should be reset (i.e. the ones of lower significance than the field of
-     *            interest)
-     * @return the value of the calendar field that is next in the sequence
+     * @see #nextAll(CompiledCron[], long, long[], ForkJoinPool)
      */
-    private int findNext(BitSet bits, int value, Calendar calendar, int field, int nextField, List<Integer> lowerOrders) {
+    public static void nextAll(CompiledCron[] schedules, long millis, long[] out) {
+        nextAll(schedules, millis, out, ForkJoinPool.commonPool());
+    }
 
-        // 在 BitSet 中尋找下一個合法值
-        int nextValue = bits.nextSetBit(value);
+    /**
+     * 大量 schedule 的下一個 fire time: 依時區分組後以 fork-join 平行計算 (不記錄監控)
+     *
+     * @param schedules 已解析的 cron expression (可混合不同時區)
+     * @param millis 指定時間 (所有 schedule 相同)
+     * @param out 存放結果 (out[i] 對應 schedules[i], 長度至少與 schedules 相同);
+     *            不會再觸發的 schedule 結果為 Long.MIN_VALUE
+     * @param pool 執行計算的 pool
+     */
+    public static void nextAll(CompiledCron[] schedules, long millis, long[] out, ForkJoinPool pool) {
 
-        // 找不到 => 下一個 Field 需要進位, 然後由 0 再找一次
-        if (nextValue == -1) {
-            calendar.add(nextField, 1);
-            this.reset(calendar, Arrays.asList(field)); // TODO 應該不需要 ? 底下會設定.
-            nextValue = bits.nextSetBit(0);
+        // check argument
+        if (schedules == null || out == null || out.length < schedules.length) {
+            throw new IllegalArgumentException("output array must be at least as long as schedules");
         }
-
-        // 找到的值與目前不同 => 設定新值 + 將較小的欄位 reset
-        if (nextValue != value) {
-            calendar.set(field, nextValue);
-            this.reset(calendar, lowerOrders);
+        int[] order = NextFireTimeTask.groupByZone(schedules);
+        NextFireTimeTask task = new NextFireTimeTask(schedules, order, millis, out, 0, schedules.length);
+        // 數量少時不需切換 thread
+        if (schedules.length <= NextFireTimeTask.THRESHOLD) {
+            task.compute();
+        }
+        else {
+            pool.invoke(task);
         }
-        return nextValue;
     }
 
     /**
-     * Reset the calendar setting all the fields provided to zero.
+     * 取得 "指定時間" 後的 下一個符合 cron expression 時間
+     *
+     * @param millis
+     *            指定時間
+     * @return 下一個符合 cron expression 時間
+     * @throws NoMoreFireTimesException 允許的年份已用完, 之後不會再觸發
      */
-    private void reset(Calendar calendar, List<Integer> fields) {
-        for (int field : fields) {
-            calendar.set(field, field == Calendar.DAY_OF_MONTH ? 1 : 0);
+    public long next(long millis) {
+        CronMetrics metrics = CronUtil.metrics;
+        if (metrics == CronMetrics.NONE) {
+            return this.schedule.next(millis);
         }
+        SearchStats stats = SearchStats.forCurrentThread();
+        long start = System.nanoTime();
+        long next = this.schedule.next(millis, stats);
+        metrics.searched(this.expression, System.nanoTime() - start, stats);
+        return next;
     }
 
-    // Parsing logic invoked by the constructor
-
     /**
-     * Parse the given pattern expression.
+     * 取得 "指定時間" 前的 最後一個符合 cron expression 時間
+     *
+     * @param millis
+     *            指定時間
+     * @return 早於指定時間的最後一個符合 cron expression 時間
      */
-    private void parse(String expression) throws IllegalArgumentException {
-        String[] fields = StringUtils.tokenizeToStringArray(expression, " ");
-        if (fields.length != 6) {
-            throw new IllegalArgumentException(String.format(
-                    "Cron expression must consist of 6 fields (found %d in \"%s\")", fields.length, expression));
-        }
-        setNumberHits(this.seconds, fields[0], 0, 60);
-        setNumberHits(this.minutes, fields[1], 0, 60);
-        setNumberHits(this.hours, fields[2], 0, 24);
-        setDaysOfMonth(this.daysOfMonth, fields[3]);
-        setMonths(this.months, fields[4]);
-        setDays(this.daysOfWeek, replaceOrdinals(fields[5], "SUN,MON,TUE,WED,THU,FRI,SAT"), 8);
-        if (this.daysOfWeek.get(7)) {
-            // Sunday can be represented as 0 or 7
-            this.daysOfWeek.set(0);
-            this.daysOfWeek.clear(7);
-        }
+    public long prev(long millis) {
+        return this.schedule.prev(millis);
     }
 
     /**
-     * Replace the values in the commaSeparatedList (case insensitive) with their index in the list.
+     * 指定時間是否為 fire time (同 next(millis - 1) == millis), 只檢查各欄位的 bit mask, 不需搜尋
      *
-     * @return a new string with the values from the list replaced
+     * @param millis
+     *            指定時間
+     * @return 是否為 fire time
      */
-    private String replaceOrdinals(String value, String commaSeparatedList) {
-        String[] list = StringUtils.commaDelimitedListToStringArray(commaSeparatedList);
-        for (int i = 0; i < list.length; i++) {
-            String item = list[i].toUpperCase();
-            value = StringUtils.replace(value.toUpperCase(), item, "" + i);
-        }
-        return value;
+    public boolean matches(long millis) {
+        return this.schedule.matches(millis);
     }
 
-    private void setDaysOfMonth(BitSet bits, String field) {
-        int max = 31;
-        // Days of month start with 1 (in Cron and Calendar) so add one
-        setDays(bits, field, max + 1);
-        // ... and remove it from the front
-        bits.clear(0);
+    /**
+     * 大量時間的 {@link #matches(long)}, 不建立任何物件
+     *
+     * @param instants
+     *            指定時間
+     * @param out
+     *            存放結果 (out[i] 對應 instants[i], 長度至少與 instants 相同)
+     * @return 符合的數量
+     */
+    public int matches(long[] instants, boolean[] out) {
+        return this.schedule.matches(instants, out);
     }
 
-    private void setDays(BitSet bits, String field, int max) {
-        if (field.contains("?")) {
-            field = "*";
-        }
-        setNumberHits(bits, field, 0, max);
+    /**
+     * 連續取得 "指定時間" 後的 n 個符合 cron expression 時間, 不建立任何物件
+     *
+     * @param millis
+     *            指定時間
+     * @param out
+     *            存放結果 (長度至少為 n; 不會再觸發時, 之後的位置為 Long.MIN_VALUE)
+     * @param n
+     *            數量
+     * @return 取得的數量 (不會再觸發時少於 n)
+     */
+    public int nextFireTimes(long millis, long[] out, int n) {
+        return this.schedule.next(millis, out, n);
     }
 
-    private void setMonths(BitSet bits, String value) {
-        int max = 12;
-        value = replaceOrdinals(value, "FOO,JAN,FEB,MAR,APR,MAY,JUN,JUL,AUG,SEP,OCT,NOV,DEC");
-        BitSet months = new BitSet(13);
-        // Months start with 1 in Cron and 0 in Calendar, so push the values first into a longer bit set
-        setNumberHits(months, value, 1, max + 1);
-        // ... and then rotate it to the front of the months
-        for (int i = 1; i <= max; i++) {
-            if (months.get(i)) {
-                bits.set(i - 1);
-            }
-        }
+    /**
+     * 取得時間區間內的所有 fire time (lazy 計算, 可使用 parallel() 分段平行計算)
+     *
+     * @param from
+     *            起始時間 (含)
+     * @param to
+     *            結束時間 (不含)
+     * @return 依時間排序的 fire time
+     */
+    public LongStream fireTimes(long from, long to) {
+        return this.schedule.fireTimes(from, to);
     }
 
-    private void setNumberHits(BitSet bits, String value, int min, int max) {
-        String[] fields = StringUtils.delimitedListToStringArray(value, ",");
-        for (String field : fields) {
-            if (!field.contains("/")) {
-                // Not an incrementer so it must be a range (possibly empty)
-                int[] range = getRange(field, min, max);
-                bits.set(range[0], range[1] + 1);
-            }
-            else {
-                String[] split = StringUtils.delimitedListToStringArray(field, "/");
-                if (split.length > 2) {
-                    throw new IllegalArgumentException("Incrementer has more than two fields: '" +
-                            field + "' in expression \"" + this.expression + "\"");
-                }
-                int[] range = getRange(split[0], min, max);
-                if (!split[0].contains("-")) {
-                    range[1] = max - 1;
-                }
-                int delta = Integer.valueOf(split[1]);
-                for (int i = range[0]; i <= range[1]; i += delta) {
-                    bits.set(i);
-                }
-            }
-        }
+    /**
+     * @return 已解析的 cron expression
+     */
+    public CompiledCron getSchedule() {
+        return this.schedule;
     }
 
-    private int[] getRange(String field, int min, int max) {
-        int[] result = new int[2];
-        if (field.contains("*")) {
-            result[0] = min;
-            result[1] = max - 1;
-            return result;
-        }
-        if (!field.contains("-")) {
-            result[0] = result[1] = Integer.valueOf(field);
-        }
-        else {
-            String[] split = StringUtils.delimitedListToStringArray(field, "-");
-            if (split.length > 2) {
-                throw new IllegalArgumentException("Range has more than two fields: '" +
-                        field + "' in expression \"" + this.expression + "\"");
-            }
-            result[0] = Integer.valueOf(split[0]);
-            result[1] = Integer.valueOf(split[1]);
-        }
-        if (result[0] >= max || result[1] >= max) {
-            throw new IllegalArgumentException("Range exceeds maximum (" + max + "): '" +
-                    field + "' in expression \"" + this.expression + "\"");
-        }
-        if (result[0] < min || result[1] < min) {
-            throw new IllegalArgumentException("Range less than minimum (" + min + "): '" +
-                    field + "' in expression \"" + this.expression + "\"");
-        }
-        return result;
+    /**
+     * Parse the given pattern expression (6 fields, or 7 fields with a trailing year field).
+     *
+     * @see CronParser
+     */
+    static CompiledCron parse(String expression, TimeZone timeZone) throws IllegalArgumentException {
+        return CronParser.parse(expression, timeZone);
     }
 
     String getExpression() {
@@ -352,15 +226,12 @@ public class CronUtil {
             return false;
         }
         CronUtil cron = (CronUtil) obj;
-        return cron.months.equals(this.months) && cron.daysOfMonth.equals(this.daysOfMonth)
-                && cron.daysOfWeek.equals(this.daysOfWeek) && cron.hours.equals(this.hours)
-                && cron.minutes.equals(this.minutes) && cron.seconds.equals(this.seconds);
+        return cron.schedule.equals(this.schedule);
     }
 
     @Override
     public int hashCode() {
-        return 37 + 17 * this.months.hashCode() + 29 * this.daysOfMonth.hashCode() + 37 * this.daysOfWeek.hashCode()
-                + 41 * this.hours.hashCode() + 53 * this.minutes.hashCode() + 61 * this.seconds.hashCode();
+        return this.schedule.hashCode();
     }
 
     @Override
@@ -0,0 +1,462 @@
+package com.jray.cron;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * 以 primitive 欄位實作 cron 搜尋所需的 {@link java.util.GregorianCalendar} 子集合 (get / set / add).
+ *
+ *  1. 時間以 epoch millis 保存, 年/月/日/時/分/秒 以 int 保存, 過程中不建立任何物件.
+ *  2. set() 只修改欄位, 直到下次 get() / add() / getTimeInMillis() 才依 wall time 重算 (lenient, 與 Calendar 相同).
+ *  3. wall time -> UTC: 重疊時段 (DST overlap) 取較晚者, 不存在的時段 (DST gap) 以轉換前的 offset 計算,
+ *     與 GregorianCalendar + ZoneInfo 的行為一致.
+ *  4. add(SECOND / MINUTE / HOUR_OF_DAY) 以絕對時間計算; add(DAY_OF_MONTH / DAY_OF_WEEK) 保留 wall time.
+ *  5. offset 由 {@link ZoneTransitions} 查表, 並記住最後一次查到的區段 (兩次轉換之間), 同一區段內不需再查表.
+ *
+ * 日期一律以 proleptic Gregorian 計算 (不處理 1582 年的 Julian 切換).
+ * 非 thread-safe, 但可重複使用 (參考 {@link #forCurrentThread(TimeZone)}).
+ *
+ * @see java.util.GregorianCalendar#add(int, int)
+ */
+public final class EpochCalendar {
+
+    static final long MILLIS_PER_SECOND = 1000L;
+    static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    // 每個 thread 重複使用同一個 calendar, 搜尋時不需建立物件
+    private static final ThreadLocal<EpochCalendar> CALENDARS = new ThreadLocal<EpochCalendar>() {
+        @Override
+        protected EpochCalendar initialValue() {
+            return new EpochCalendar();
+        }
+    };
+
+    // 每個 thread 另一個固定 offset 的 calendar (DST 轉換附近的搜尋與上面的 calendar 同時使用)
+    private static final ThreadLocal<EpochCalendar> FIXED_CALENDARS = new ThreadLocal<EpochCalendar>() {
+        @Override
+        protected EpochCalendar initialValue() {
+            return new EpochCalendar(ZoneTransitions.fixed(0));
+        }
+    };
+
+    private TimeZone timeZone;
+
+    private ZoneTransitions transitions;
+
+    // 最後一次查到的 offset 區段 [segmentStart, segmentEnd)
+    private long segmentStart;
+    private long segmentEnd;
+    private int segmentOffset;
+
+    private long time;
+
+    // false => 欄位已被 set(), time 需要重算
+    private boolean timeSet;
+
+    private int zoneOffset;
+
+    private int year;
+    private int month;          // 0 ~ 11 (同 Calendar.MONTH)
+    private int dayOfMonth;
+    private int dayOfWeek;      // 1 (SUNDAY) ~ 7 (SATURDAY)
+    private int hourOfDay;
+    private int minute;
+    private int second;
+    private int millisecond;
+
+    public EpochCalendar() {
+        this(TimeZone.getDefault());
+    }
+
+    public EpochCalendar(TimeZone timeZone) {
+        this.setTimeZone(timeZone);
+    }
+
+    private EpochCalendar(ZoneTransitions transitions) {
+        this.setTransitions(transitions.getTimeZone(), transitions);
+    }
+
+    /**
+     * 取得目前 thread 專用, 固定 offset 的 calendar (不套用 DST, 每個 wall time 都恰好對應一個時間點).
+     * 與 {@link #forCurrentThread(TimeZone)} 是不同的 calendar, 可同時使用; 同樣不可保留或傳遞給其他 thread.
+     *
+     * @param offset UTC offset (millis)
+     */
+    static EpochCalendar fixedForCurrentThread(int offset) {
+        EpochCalendar calendar = FIXED_CALENDARS.get();
+        if (calendar.transitions.segmentOffset(0) != offset) {
+            ZoneTransitions transitions = ZoneTransitions.fixed(offset);
+            calendar.setTransitions(transitions.getTimeZone(), transitions);
+        }
+        return calendar;
+    }
+
+    /**
+     * 取得目前 thread 專用的 calendar (不可保留或傳遞給其他 thread)
+     *
+     * @param timeZone 時區
+     * @return 已設定時區的 calendar
+     */
+    static EpochCalendar forCurrentThread(TimeZone timeZone) {
+        EpochCalendar calendar = CALENDARS.get();
+        calendar.setTimeZone(timeZone);
+        return calendar;
+    }
+
+    /**
+     * 同 {@link #forCurrentThread(TimeZone)}, 直接使用已取得的轉換表 (不需查詢快取)
+     */
+    static EpochCalendar forCurrentThread(ZoneTransitions transitions) {
+        EpochCalendar calendar = CALENDARS.get();
+        if (calendar.transitions != transitions) {
+            calendar.setTransitions(transitions.getTimeZone(), transitions);
+        }
+        return calendar;
+    }
+
+    public void setTimeZone(TimeZone timeZone) {
+        if (timeZone != this.timeZone) {
+            this.setTransitions(timeZone, ZoneTransitions.of(timeZone));
+        }
+    }
+
+    private void setTransitions(TimeZone timeZone, ZoneTransitions transitions) {
+        this.timeZone = timeZone;
+        this.transitions = transitions;
+        this.segmentStart = Long.MAX_VALUE;
+        this.segmentEnd = Long.MIN_VALUE;
+    }
+
+    public TimeZone getTimeZone() {
+        return this.timeZone;
+    }
+
+    public void setTimeInMillis(long millis) {
+        this.time = millis;
+        this.timeSet = true;
+        this.computeFields();
+    }
+
+    public long getTimeInMillis() {
+        this.complete();
+        return this.time;
+    }
+
+    public int get(int field) {
+        this.complete();
+        switch (field) {
+            case Calendar.YEAR:
+                return this.year;
+            case Calendar.MONTH:
+                return this.month;
+            case Calendar.DAY_OF_MONTH:
+                return this.dayOfMonth;
+            case Calendar.DAY_OF_WEEK:
+                return this.dayOfWeek;
+            case Calendar.HOUR_OF_DAY:
+                return this.hourOfDay;
+            case Calendar.MINUTE:
+                return this.minute;
+            case Calendar.SECOND:
+                return this.second;
+            case Calendar.MILLISECOND:
+                return this.millisecond;
+            default:
+                throw new IllegalArgumentException("unsupported calendar field: " + field);
+        }
+    }
+
+    /**
+     * @return 目前日期 (wall time) 的 epoch day (1970-01-01 = 0)
+     */
+    public long getEpochDay() {
+        this.complete();
+        return daysFromCivil(this.year, this.month + 1, this.dayOfMonth);
+    }
+
+    /**
+     * 取得欄位的最小值 (DAY_OF_MONTH 為 1, DAY_OF_WEEK 為 SUNDAY, 其他為 0)
+     */
+    public int getActualMinimum(int field) {
+        switch (field) {
+            case Calendar.DAY_OF_MONTH:
+                return 1;
+            case Calendar.DAY_OF_WEEK:
+                return Calendar.SUNDAY;
+            case Calendar.MONTH:
+            case Calendar.HOUR_OF_DAY:
+            case Calendar.MINUTE:
+            case Calendar.SECOND:
+            case Calendar.MILLISECOND:
+                return 0;
+            default:
+                throw new IllegalArgumentException("unsupported calendar field: " + field);
+        }
+    }
+
+    /**
+     * 取得欄位的最大值 (以目前欄位計算, 不會觸發重算; DAY_OF_MONTH 為該月天數)
+     */
+    public int getActualMaximum(int field) {
+        switch (field) {
+            case Calendar.MONTH:
+                return Calendar.DECEMBER;
+            case Calendar.DAY_OF_MONTH:
+                return monthLength(this.year + floorDiv(this.month, 12), floorMod(this.month, 12));
+            case Calendar.DAY_OF_WEEK:
+                return Calendar.SATURDAY;
+            case Calendar.HOUR_OF_DAY:
+                return 23;
+            case Calendar.MINUTE:
+            case Calendar.SECOND:
+                return 59;
+            case Calendar.MILLISECOND:
+                return 999;
+            default:
+                throw new IllegalArgumentException("unsupported calendar field: " + field);
+        }
+    }
+
+    /**
+     * @return 指定時間的 UTC offset (millis)
+     */
+    public int getOffset(long millis) {
+        if (millis >= this.segmentStart && millis < this.segmentEnd) {
+            return this.segmentOffset;
+        }
+        int segment = this.transitions.segment(millis);
+        if (segment < 0) {
+            return this.timeZone.getOffset(millis);
+        }
+        this.segmentStart = this.transitions.segmentStart(segment);
+        this.segmentEnd = this.transitions.segmentEnd(segment);
+        this.segmentOffset = this.transitions.segmentOffset(segment);
+        return this.segmentOffset;
+    }
+
+    /**
+     * 目前時間的前後一天內是否可能有 offset 轉換 (只比較最後一次查到的區段, 不需搜尋轉換表).
+     *
+     * 超出轉換表範圍的時間一律視為可能 (區段不包含目前時間).
+     */
+    boolean isNearTransition() {
+        long millis = this.getTimeInMillis();
+        return millis - MILLIS_PER_DAY < this.segmentStart || millis + MILLIS_PER_DAY >= this.segmentEnd;
+    }
+
+    /**
+     * 在 (from, to] 之間尋找 offset 改變的時間點 (假設區間內最多改變一次)
+     *
+     * @return offset 改變後的第一個 millis, 區間內沒有改變則回傳 Long.MIN_VALUE
+     */
+    public long findTransition(long from, long to) {
+        return this.transitions.findTransition(from, to);
+    }
+
+    public void set(int field, int value) {
+        switch (field) {
+            case Calendar.YEAR:
+                this.year = value;
+                break;
+            case Calendar.MONTH:
+                this.month = value;
+                break;
+            case Calendar.DAY_OF_MONTH:
+                this.dayOfMonth = value;
+                break;
+            case Calendar.HOUR_OF_DAY:
+                this.hourOfDay = value;
+                break;
+            case Calendar.MINUTE:
+                this.minute = value;
+                break;
+            case Calendar.SECOND:
+                this.second = value;
+                break;
+            case Calendar.MILLISECOND:
+                this.millisecond = value;
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported calendar field: " + field);
+        }
+        this.timeSet = false;
+    }
+
+    public void add(int field, int amount) {
+        if (amount == 0) {
+            return;
+        }
+        this.complete();
+        switch (field) {
+            case Calendar.YEAR:
+                // 同 GregorianCalendar: 視為 set(YEAR), 超過月底時修正日期 (2/29 -> 2/28)
+                this.year += amount;
+                int monthLength = monthLength(this.year, this.month);
+                if (this.dayOfMonth > monthLength) {
+                    this.dayOfMonth = monthLength;
+                }
+                this.timeSet = false;
+                break;
+            case Calendar.DAY_OF_MONTH:
+            case Calendar.DAY_OF_WEEK:
+                this.addDays(amount);
+                break;
+            case Calendar.HOUR_OF_DAY:
+                this.setTimeInMillis(this.time + amount * MILLIS_PER_HOUR);
+                break;
+            case Calendar.MINUTE:
+                this.setTimeInMillis(this.time + amount * MILLIS_PER_MINUTE);
+                break;
+            case Calendar.SECOND:
+                this.setTimeInMillis(this.time + amount * MILLIS_PER_SECOND);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported calendar field: " + field);
+        }
+    }
+
+    /**
+     * 往前推進 n 天並保留 wall time, 演算法同 GregorianCalendar.add(DAY_OF_MONTH, n)
+     */
+    private void addDays(int amount) {
+        long local = this.time + this.zoneOffset;
+        long fixedDate = floorDiv(local, MILLIS_PER_DAY);
+        long timeOfDay = local - fixedDate * MILLIS_PER_DAY;
+        fixedDate += amount;
+        int offset = this.zoneOffset;
+        this.setTimeInMillis(fixedDate * MILLIS_PER_DAY + timeOfDay - offset);
+        // offset 改變 => 調整差距, 但若因此換日則維持原結果
+        int delta = offset - this.zoneOffset;
+        if (delta != 0) {
+            this.setTimeInMillis(this.time + delta);
+            if (floorDiv(this.time + this.zoneOffset, MILLIS_PER_DAY) != fixedDate) {
+                this.setTimeInMillis(this.time - delta);
+            }
+        }
+    }
+
+    private void complete() {
+        if (!this.timeSet) {
+            this.time = this.resolve(this.localMillis());
+            this.timeSet = true;
+            this.computeFields();
+        }
+    }
+
+    /**
+     * 將目前的欄位 (可能超出範圍) 換算為 local (wall) millis
+     */
+    private long localMillis() {
+        int y = this.year + floorDiv(this.month, 12);
+        int m = floorMod(this.month, 12);
+        long days = daysFromCivil(y, m + 1, 1) + this.dayOfMonth - 1;
+        return days * MILLIS_PER_DAY + this.hourOfDay * MILLIS_PER_HOUR + this.minute * MILLIS_PER_MINUTE
+                + this.second * MILLIS_PER_SECOND + this.millisecond;
+    }
+
+    /**
+     * wall time -> UTC millis (假設前後一天內最多一次 offset 轉換)
+     */
+    private long resolve(long wall) {
+        int before = this.getOffset(wall - MILLIS_PER_DAY);
+        int after = this.getOffset(wall + MILLIS_PER_DAY);
+        if (before != after && this.getOffset(wall - after) == after) {
+            return wall - after;
+        }
+        return wall - before;
+    }
+
+    private void computeFields() {
+        this.zoneOffset = this.getOffset(this.time);
+        long local = this.time + this.zoneOffset;
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+
+        // civil from days (Howard Hinnant), era = 400 年
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int m = mp < 10 ? mp + 3 : mp - 9;
+        this.year = (int) (yoe + era * 400) + (m <= 2 ? 1 : 0);
+        this.month = m - 1;
+        this.dayOfMonth = doy - (153 * mp + 2) / 5 + 1;
+        // 1970-01-01 為星期四
+        this.dayOfWeek = (int) floorMod(days + 4, 7L) + 1;
+
+        this.hourOfDay = millisOfDay / (int) MILLIS_PER_HOUR;
+        this.minute = millisOfDay / (int) MILLIS_PER_MINUTE % 60;
+        this.second = millisOfDay / (int) MILLIS_PER_SECOND % 60;
+        this.millisecond = millisOfDay % (int) MILLIS_PER_SECOND;
+    }
+
+    /**
+     * 西元日期 -> epoch day (1970-01-01 = 0)
+     *
+     * @param year 年
+     * @param month 月 (1 ~ 12)
+     * @param day 日 (1 ~ 31)
+     */
+    public static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    /**
+     * epoch day -> 年 (以平均年長估計後修正)
+     */
+    public static int yearOfDay(long epochDay) {
+        int year = (int) floorDiv(epochDay * 400, 146097L) + 1970;
+        if (daysFromCivil(year, 1, 1) > epochDay) {
+            return year - 1;
+        }
+        return daysFromCivil(year + 1, 1, 1) <= epochDay ? year + 1 : year;
+    }
+
+    /**
+     * @param month 月 (0 ~ 11)
+     */
+    public static int monthLength(int year, int month) {
+        switch (month) {
+            case Calendar.FEBRUARY:
+                return isLeapYear(year) ? 29 : 28;
+            case Calendar.APRIL:
+            case Calendar.JUNE:
+            case Calendar.SEPTEMBER:
+            case Calendar.NOVEMBER:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    static int floorDiv(int x, int y) {
+        int q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    static int floorMod(int x, int y) {
+        return x - floorDiv(x, y) * y;
+    }
+}
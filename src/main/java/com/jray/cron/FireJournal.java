@@ -0,0 +1,620 @@
+package com.jray.cron;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 本機的 fire time 日誌 (append-only, memory-mapped), 重新啟動時找出已到期但沒有完成的 fire time (misfire).
+ *
+ *  1. 每筆記錄固定 {@link #RECORD_SIZE} bytes, 含 checksum (程序中斷時寫到一半的記錄在讀取時捨棄):
+ *      <pre>
+ *       0  int  type
+ *       4  int  checksum
+ *       8  long job id (CHECKPOINT: 快照的記錄數)
+ *      16  long time (SCHEDULED: 下一個 fire time, FIRED / COMPLETED: fire time, CHECKPOINT: 建立時間)
+ *      24  long next (FIRED: 觸發後由 {@link CronEngine} 計算的下一個 fire time)
+ *      </pre>
+ *  2. 記錄類型: SCHEDULED (加入 job 或重新排程), FIRED (開始執行), COMPLETED (執行結束), CANCELLED (取消),
+ *     CHECKPOINT (快照結束)
+ *  3. checkpoint: 將所有 job 的狀態 (執行中的 fire time 與下一個 fire time) 寫成一段快照, 並在 header 記錄快照的位置;
+ *     開啟時只需由最後一個快照開始重播, 不需讀取 (或以 next() 重新計算) 更早的歷史
+ *  4. 每 checkpoint interval 筆記錄自動建立 checkpoint; 檔案寫滿時將快照寫入新的檔案後取代原本的檔案 (rename)
+ *  5. 自動 checkpoint 交給 checkpoint executor 執行, 寫入記錄的 thread (scheduler 的 tick) 不等待:
+ *     快照在 lock 內寫入 (只寫入 memory-mapped 的記錄, 與 job 數成正比), force() 不持有 lock, 期間仍可繼續寫入記錄;
+ *     剩餘空間不足以寫到下一次 checkpoint 時由 executor 先壓縮檔案. 壓縮期間 (寫入新檔案, force, rename)
+ *     持有 lock, 同時寫入的記錄會等待; 只有 executor 跟不上 (或 checkpoint interval 大於檔案容量) 時才會在寫入記錄時壓縮
+ *  6. misfire 分為兩種: 已開始但沒有 COMPLETED (執行中中斷), 以及下一個 fire time 已經過去 (沒有觸發)
+ *
+ * 寫入 memory-mapped 的檔案在程序中斷後仍會保留 (作業系統的 page cache); 需要承受系統當機時,
+ * checkpoint 會呼叫 force(), 也可自行定期呼叫 {@link #force()}.
+ */
+public final class FireJournal implements Closeable {
+
+    public static final int RECORD_SIZE = 32;
+
+    static final int SCHEDULED = 1;
+
+    static final int FIRED = 2;
+
+    static final int COMPLETED = 3;
+
+    static final int CANCELLED = 4;
+
+    static final int CHECKPOINT = 5;
+
+    // "CRNJ"
+    private static final int MAGIC = 0x43524E4A;
+
+    private static final int VERSION = 1;
+
+    // header: int magic, short version, short record size, int checkpoint (最後一個快照的記錄 index), 其餘保留
+    private static final int HEADER_SIZE = 32;
+
+    private static final int CHECKPOINT_POSITION = 8;
+
+    private final Path file;
+
+    private final int checkpointInterval;
+
+    // 執行自動 checkpoint
+    private final Executor checkpointExecutor;
+
+    // open() 建立的 executor (close 時結束), 使用者提供的 executor 為 null
+    private final ExecutorService ownedExecutor;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    // 可存放的記錄數
+    private int capacity;
+
+    // 下一筆記錄的 index
+    private int position;
+
+    private int sinceCheckpoint;
+
+    // 已交給 executor 尚未開始的 checkpoint
+    private boolean checkpointPending;
+
+    // 不持有 lock 進行中的 force()
+    private int forcing;
+
+    // force() 進行中時被取代的 channel (最後一個 force() 結束後關閉)
+    private final List<FileChannel> retired = new ArrayList<FileChannel>();
+
+    private boolean closed;
+
+    // 開啟時重播的記錄數
+    private final int replayed;
+
+    // 未取消的 job
+    private final Map<Long, JobState> jobs = new HashMap<Long, JobState>();
+
+    private FireJournal(Path file, int capacity, int checkpointInterval, Executor checkpointExecutor,
+            ExecutorService ownedExecutor) throws IOException {
+        this.file = file;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpointExecutor = checkpointExecutor;
+        this.ownedExecutor = ownedExecutor;
+        boolean exists = Files.exists(file) && Files.size(file) >= HEADER_SIZE + RECORD_SIZE;
+        this.map(file, exists ? (int) ((Files.size(file) - HEADER_SIZE) / RECORD_SIZE) : capacity);
+        int magic = exists ? this.buffer.getInt(0) : 0;
+        if (magic != 0 && magic != MAGIC) {
+            this.channel.close();
+            throw new IllegalArgumentException("not a fire journal: " + file);
+        }
+        if (magic == MAGIC) {
+            if ((this.buffer.getShort(4) & 0xFFFF) > VERSION || this.buffer.getShort(6) != RECORD_SIZE) {
+                this.channel.close();
+                throw new IllegalArgumentException("unsupported journal version in " + file);
+            }
+            this.replayed = this.replay(this.buffer.getInt(CHECKPOINT_POSITION));
+        }
+        else {
+            this.writeHeader(0);
+            this.replayed = 0;
+        }
+    }
+
+    /**
+     * 開啟 (或建立) 日誌, 由最後一個 checkpoint 重播至最後一筆完整的記錄; 自動 checkpoint 由日誌自己的 daemon thread 執行
+     *
+     * @param file 日誌檔案 (本機磁碟)
+     * @param capacity 新檔案可存放的記錄數
+     * @param checkpointInterval 每寫入多少筆記錄建立一次 checkpoint
+     */
+    public static FireJournal open(Path file, int capacity, int checkpointInterval) throws IOException {
+        checkArguments(capacity, checkpointInterval);
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fire-journal-checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            return new FireJournal(file, capacity, checkpointInterval, executor, executor);
+        }
+        catch (IOException | RuntimeException ex) {
+            executor.shutdown();
+            throw ex;
+        }
+    }
+
+    /**
+     * 開啟 (或建立) 日誌, 由最後一個 checkpoint 重播至最後一筆完整的記錄
+     *
+     * @param file 日誌檔案 (本機磁碟)
+     * @param capacity 新檔案可存放的記錄數
+     * @param checkpointInterval 每寫入多少筆記錄建立一次 checkpoint
+     * @param checkpointExecutor 執行自動 checkpoint (不應是寫入記錄的 thread, 否則 checkpoint 仍在寫入記錄時執行)
+     */
+    public static FireJournal open(Path file, int capacity, int checkpointInterval, Executor checkpointExecutor)
+            throws IOException {
+        checkArguments(capacity, checkpointInterval);
+        if (checkpointExecutor == null) {
+            throw new IllegalArgumentException("checkpoint executor must not be null");
+        }
+        return new FireJournal(file, capacity, checkpointInterval, checkpointExecutor, null);
+    }
+
+    private static void checkArguments(int capacity, int checkpointInterval) {
+        if (capacity < 2 || checkpointInterval < 1) {
+            throw new IllegalArgumentException("invalid capacity " + capacity + " or checkpoint interval " + checkpointInterval);
+        }
+    }
+
+    /**
+     * 加入 (或重新排程) job: 清除該 job 先前的執行狀態 (重新啟動後重新排程, 代表先前的 misfire 已處理)
+     */
+    public synchronized void scheduled(long jobId, long nextFireTime) {
+        this.append(SCHEDULED, jobId, nextFireTime, 0L);
+        this.jobs.put(jobId, new JobState(nextFireTime));
+        this.appended();
+    }
+
+    /**
+     * job 開始執行 (在交給 dispatcher 之前記錄)
+     *
+     * @param nextFireTime 下一個 fire time (沒有則為 Long.MIN_VALUE)
+     */
+    public synchronized void fired(long jobId, long fireTime, long nextFireTime) {
+        this.append(FIRED, jobId, fireTime, nextFireTime);
+        JobState state = this.state(jobId);
+        state.next = nextFireTime;
+        state.running.add(fireTime);
+        this.appended();
+    }
+
+    /**
+     * job 執行結束 (不論成功或失敗)
+     */
+    public synchronized void completed(long jobId, long fireTime) {
+        this.append(COMPLETED, jobId, fireTime, 0L);
+        JobState state = this.jobs.get(jobId);
+        if (state != null) {
+            state.running.remove(fireTime);
+        }
+        this.appended();
+    }
+
+    public synchronized void cancelled(long jobId) {
+        this.append(CANCELLED, jobId, 0L, 0L);
+        this.jobs.remove(jobId);
+        this.appended();
+    }
+
+    /**
+     * @return job 記錄的下一個 fire time (不存在或沒有下一次則為 Long.MIN_VALUE)
+     */
+    public synchronized long getNextFireTime(long jobId) {
+        JobState state = this.jobs.get(jobId);
+        return state == null ? Long.MIN_VALUE : state.next;
+    }
+
+    /**
+     * 依目前的記錄找出 misfire (開啟後尚未重新排程的 job)
+     *
+     * @param now 目前時間
+     * @return 依 job id 與 fire time 排序的 misfire
+     */
+    public synchronized List<Misfire> getMisfires(long now) {
+        List<Misfire> misfires = new ArrayList<Misfire>();
+        for (Map.Entry<Long, JobState> entry : this.jobs.entrySet()) {
+            long jobId = entry.getKey();
+            JobState state = entry.getValue();
+            for (long fireTime : state.running) {
+                misfires.add(new Misfire(jobId, fireTime, true));
+            }
+            if (state.next != Long.MIN_VALUE && state.next <= now && !state.running.contains(state.next)) {
+                misfires.add(new Misfire(jobId, state.next, false));
+            }
+        }
+        Collections.sort(misfires);
+        return misfires;
+    }
+
+    /**
+     * @return 開啟時重播的記錄數 (最後一個 checkpoint 之後的記錄)
+     */
+    public int getReplayedRecords() {
+        return this.replayed;
+    }
+
+    /**
+     * 寫入所有 job 的狀態快照, 之後開啟時由此開始重播 (在呼叫的 thread 執行, 寫入磁碟時不持有 lock)
+     */
+    public void checkpoint() {
+        this.checkpoint(false);
+    }
+
+    /**
+     * @param automatic 自動 checkpoint: 保留寫到下一次 checkpoint 的空間, 不足時先壓縮檔案
+     */
+    private void checkpoint(boolean automatic) {
+        int start;
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            this.checkpointPending = false;
+            if (this.closed) {
+                return;
+            }
+            int needed = this.checkpointSize();
+            // 每筆記錄最多使快照增加一筆, 寫入記錄時需保留快照 + 2 的空間
+            int reserve = automatic ? needed + this.checkpointInterval * 2 + 2 : 0;
+            if (this.position + needed + reserve > this.capacity) {
+                this.compact(needed + reserve);
+                return;
+            }
+            start = this.position;
+            this.writeSnapshot();
+            this.sinceCheckpoint = 0;
+            buffer = this.beginForce();
+        }
+        // 快照寫入磁碟後才更新 header
+        this.endForce(buffer);
+        synchronized (this) {
+            // 期間已壓縮 (新的檔案由快照開始)
+            if (this.buffer != buffer || this.closed) {
+                return;
+            }
+            this.writeHeader(start);
+            buffer = this.beginForce();
+        }
+        this.endForce(buffer);
+    }
+
+    /**
+     * 將 memory-mapped 的內容寫入磁碟 (不持有 lock, 期間仍可寫入記錄)
+     */
+    public void force() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            buffer = this.beginForce();
+        }
+        this.endForce(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.buffer.force();
+            this.release(this.channel);
+        }
+        if (this.ownedExecutor != null) {
+            this.ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 寫入一筆記錄 (空間不足時先將目前的狀態壓縮為快照, 因此必須在更新狀態之前呼叫)
+     */
+    private void append(int type, long jobId, long time, long next) {
+        // 保留建立 checkpoint 的空間 (記錄可能新增一個 job 或一個執行中的 fire time)
+        int needed = this.checkpointSize() + 2;
+        if (this.position + needed > this.capacity) {
+            this.compact(needed);
+        }
+        this.write(type, jobId, time, next);
+    }
+
+    /**
+     * 更新狀態之後呼叫: 定期建立 checkpoint
+     */
+    private void appended() {
+        if (++this.sinceCheckpoint >= this.checkpointInterval && !this.checkpointPending) {
+            this.checkpointPending = true;
+            this.checkpointExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    FireJournal.this.checkpoint(true);
+                }
+            });
+        }
+    }
+
+    // 持有 lock 時呼叫
+    private MappedByteBuffer beginForce() {
+        this.forcing++;
+        return this.buffer;
+    }
+
+    // 不持有 lock 時呼叫
+    private void endForce(MappedByteBuffer buffer) {
+        try {
+            buffer.force();
+        }
+        finally {
+            synchronized (this) {
+                if (--this.forcing == 0) {
+                    this.closeRetired();
+                }
+            }
+        }
+    }
+
+    /**
+     * 關閉 channel (有 force() 進行中時延後到最後一個 force() 結束)
+     */
+    private void release(FileChannel channel) {
+        this.retired.add(channel);
+        if (this.forcing == 0) {
+            this.closeRetired();
+        }
+    }
+
+    private void closeRetired() {
+        try {
+            for (FileChannel channel : this.retired) {
+                channel.close();
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("failed to close journal " + this.file, ex);
+        }
+        finally {
+            this.retired.clear();
+        }
+    }
+
+    private void write(int type, long jobId, long time, long next) {
+        int offset = HEADER_SIZE + this.position * RECORD_SIZE;
+        this.buffer.putLong(offset + 8, jobId);
+        this.buffer.putLong(offset + 16, time);
+        this.buffer.putLong(offset + 24, next);
+        // checksum 最後寫入 (同一筆記錄的其他欄位寫入後才有效)
+        this.buffer.putInt(offset, type);
+        this.buffer.putInt(offset + 4, checksum(type, jobId, time, next));
+        this.position++;
+    }
+
+    private void writeSnapshot() {
+        int count = 0;
+        for (Map.Entry<Long, JobState> entry : this.jobs.entrySet()) {
+            JobState state = entry.getValue();
+            // SCHEDULED 重播時清除執行中的狀態, 執行中的 fire time 寫在之後
+            this.write(SCHEDULED, entry.getKey(), state.next, 0L);
+            count++;
+            for (long fireTime : state.running) {
+                this.write(FIRED, entry.getKey(), fireTime, state.next);
+                count++;
+            }
+        }
+        this.write(CHECKPOINT, count, System.currentTimeMillis(), 0L);
+    }
+
+    /**
+     * 將快照寫入新的檔案後取代原本的檔案
+     */
+    private void compact(int needed) {
+        try {
+            Path temp = this.file.resolveSibling(this.file.getFileName() + ".compact");
+            int capacity = Math.max(this.capacity, needed * 2);
+            this.buffer.force();
+            this.release(this.channel);
+            Files.deleteIfExists(temp);
+            this.map(temp, capacity);
+            this.position = 0;
+            this.writeSnapshot();
+            this.writeHeader(0);
+            this.buffer.force();
+            this.release(this.channel);
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.map(this.file, capacity);
+            this.sinceCheckpoint = 0;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("failed to compact journal " + this.file, ex);
+        }
+    }
+
+    private void map(Path path, int capacity) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        this.buffer.order(ByteOrder.BIG_ENDIAN);
+        this.capacity = capacity;
+    }
+
+    private void writeHeader(int checkpoint) {
+        this.buffer.putInt(CHECKPOINT_POSITION, checkpoint);
+        this.buffer.putShort(4, (short) VERSION);
+        this.buffer.putShort(6, (short) RECORD_SIZE);
+        this.buffer.putInt(0, MAGIC);
+    }
+
+    /**
+     * 由 checkpoint 重播到最後一筆完整的記錄 (之後的記錄由此繼續寫入)
+     *
+     * @return 重播的記錄數
+     */
+    private int replay(int checkpoint) {
+        int index = checkpoint < 0 || checkpoint >= this.capacity ? 0 : checkpoint;
+        int start = index;
+        for (; index < this.capacity; index++) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            int type = this.buffer.getInt(offset);
+            long jobId = this.buffer.getLong(offset + 8);
+            long time = this.buffer.getLong(offset + 16);
+            long next = this.buffer.getLong(offset + 24);
+            if (type < SCHEDULED || type > CHECKPOINT || this.buffer.getInt(offset + 4) != checksum(type, jobId, time, next)) {
+                break;
+            }
+            switch (type) {
+                case SCHEDULED:
+                    this.jobs.put(jobId, new JobState(time));
+                    break;
+                case FIRED:
+                    JobState state = this.state(jobId);
+                    state.next = next;
+                    state.running.add(time);
+                    break;
+                case COMPLETED:
+                    JobState running = this.jobs.get(jobId);
+                    if (running != null) {
+                        running.running.remove(time);
+                    }
+                    break;
+                case CANCELLED:
+                    this.jobs.remove(jobId);
+                    break;
+                default:
+                    break;
+            }
+        }
+        // 清除寫到一半的記錄
+        if (index < this.capacity) {
+            int offset = HEADER_SIZE + index * RECORD_SIZE;
+            for (int i = 0; i < RECORD_SIZE; i += 8) {
+                this.buffer.putLong(offset + i, 0L);
+            }
+        }
+        this.position = index;
+        return index - start;
+    }
+
+    private JobState state(long jobId) {
+        JobState state = this.jobs.get(jobId);
+        if (state == null) {
+            state = new JobState(Long.MIN_VALUE);
+            this.jobs.put(jobId, state);
+        }
+        return state;
+    }
+
+    private int checkpointSize() {
+        int size = 1;
+        for (JobState state : this.jobs.values()) {
+            size += 1 + state.running.size();
+        }
+        return size;
+    }
+
+    private static int checksum(int type, long jobId, long time, long next) {
+        long h = type * 0x9E3779B97F4A7C15L;
+        h = (h ^ jobId) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ time) * 0x94D049BB133111EBL;
+        h = (h ^ next) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) | 1;
+    }
+
+    /**
+     * job 的狀態
+     */
+    private static final class JobState {
+
+        // 下一個 fire time (沒有則為 Long.MIN_VALUE)
+        long next;
+
+        // 已開始尚未結束的 fire time
+        final TreeSet<Long> running = new TreeSet<Long>();
+
+        JobState(long next) {
+            this.next = next;
+        }
+    }
+
+    /**
+     * 沒有完成的 fire time
+     */
+    public static final class Misfire implements Comparable<Misfire> {
+
+        private final long jobId;
+
+        private final long fireTime;
+
+        private final boolean started;
+
+        Misfire(long jobId, long fireTime, boolean started) {
+            this.jobId = jobId;
+            this.fireTime = fireTime;
+            this.started = started;
+        }
+
+        public long getJobId() {
+            return this.jobId;
+        }
+
+        /**
+         * @return 沒有完成的 fire time (沒有觸發時為第一個錯過的 fire time)
+         */
+        public long getFireTime() {
+            return this.fireTime;
+        }
+
+        /**
+         * @return true: 已開始執行但沒有結束 (執行中中斷), false: 沒有觸發
+         */
+        public boolean isStarted() {
+            return this.started;
+        }
+
+        @Override
+        public int compareTo(Misfire other) {
+            int result = Long.compare(this.jobId, other.jobId);
+            return result != 0 ? result : Long.compare(this.fireTime, other.fireTime);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Misfire)) {
+                return false;
+            }
+            Misfire other = (Misfire) obj;
+            return other.jobId == this.jobId && other.fireTime == this.fireTime && other.started == this.started;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.jobId * 31 + this.fireTime) * 31 + (this.started ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "job " + this.jobId + (this.started ? " interrupted at " : " missed ") + this.fireTime;
+        }
+    }
+}
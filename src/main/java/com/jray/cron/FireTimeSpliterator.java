@@ -0,0 +1,145 @@
+package com.jray.cron;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.TimeZone;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 時間區間 [from, to) 內的所有 fire time (lazy, 可分割給 parallel stream 使用).
+ *
+ *  1. 每次 tryAdvance() 才以 next(上一個 fire time) 計算下一個值
+ *  2. trySplit() 只在 fire time 上切割: 取 c = next(中點 - 1), 前半段為 [起點, c), 後半段由 c 開始, 不需先走過前半段
+ *  3. 不可直接以 next(中點 - 1) 作為後半段的第一個值: next() 沿用 Spring 的行為, 已前進的秒在分/時進位時不會重設,
+ *     由任意時間開始可能跳過符合的時間 (例如: "0,30 0,30 * * * ?" 由 01:10:20.999 開始得到 01:30:30, 跳過 01:30:00).
+ *     由 fire time 開始的 next() 則不會跳過, 因此 c 必定在 next() 串列上 (前提是前半段的第一個值在 c 之前, 第一次切割時先算出)
+ *  4. 中點前後一天內有 offset 轉換 (DST) 時將中點往後移兩天, c 前後一天內有 offset 轉換時不切割, 確保切割後的結果與逐一 next() 相同
+ *  5. next() 拋出 {@link NoMoreFireTimesException} (允許的年份已用完) 時結束, 不影響已取得的結果
+ *
+ * @see CompiledCron#fireTimes(long, long)
+ * @see CronEngine#fireTimes(CronExpression, long, long)
+ */
+public final class FireTimeSpliterator implements Spliterator.OfLong {
+
+    // 不再切割的最小區間
+    private static final long MIN_SPLIT_MILLIS = 60 * EpochCalendar.MILLIS_PER_SECOND;
+
+    private final LongUnaryOperator next;
+
+    private final TimeZone timeZone;
+
+    // 上一個 fire time (或起點 - 1)
+    private long cursor;
+
+    // next(cursor) 是否為 next() 串列上的值: cursor 為 fire time, 或 cursor + 1 為 fire time (起點則不一定)
+    private boolean anchored;
+
+    private final long to;
+
+    /**
+     * @param next 計算 "指定時間" 後的下一個 fire time
+     * @param timeZone 計算 fire time 使用的時區
+     * @param from 起始時間 (含)
+     * @param to 結束時間 (不含)
+     */
+    public FireTimeSpliterator(LongUnaryOperator next, TimeZone timeZone, long from, long to) {
+        this.next = next;
+        this.timeZone = timeZone;
+        this.cursor = from - 1;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+        if (this.cursor >= this.to) {
+            return false;
+        }
+        long fireTime = this.nextOrEnd(this.cursor);
+        if (fireTime >= this.to) {
+            this.cursor = this.to;
+            return false;
+        }
+        this.cursor = fireTime;
+        this.anchored = true;
+        action.accept(fireTime);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(LongConsumer action) {
+        while (this.tryAdvance(action)) {
+            // continue
+        }
+    }
+
+    @Override
+    public Spliterator.OfLong trySplit() {
+        if (this.to - (this.cursor + 1) < 2 * MIN_SPLIT_MILLIS) {
+            return null;
+        }
+        if (!this.anchored) {
+            // 起點不一定是 fire time: 先取得第一個值, 之後的切割點必定在 next() 串列上
+            long first = this.nextOrEnd(this.cursor);
+            if (first >= this.to) {
+                this.cursor = this.to;
+                return null;
+            }
+            // next(first - 1) == first
+            this.cursor = first - 1;
+            this.anchored = true;
+        }
+        long from = this.cursor + 1;
+        long mid = from + (this.to - from) / 2;
+        mid -= EpochCalendar.floorMod(mid, EpochCalendar.MILLIS_PER_SECOND);
+        if (this.nearTransition(mid)) {
+            mid += 2 * EpochCalendar.MILLIS_PER_DAY;
+            if (mid >= this.to) {
+                return null;
+            }
+        }
+        // 切割點為 mid 之後 (含) 的 fire time, 不一定是 mid 之後第一個符合的時間, 但與逐一 next() 的結果相同
+        long split = this.nextOrEnd(mid - 1);
+        if (split <= from || split >= this.to || this.nearTransition(split)) {
+            return null;
+        }
+        FireTimeSpliterator prefix = new FireTimeSpliterator(this.next, this.timeZone, from, split);
+        prefix.anchored = true;
+        this.cursor = split - 1;
+        return prefix;
+    }
+
+    private long nextOrEnd(long millis) {
+        try {
+            return this.next.applyAsLong(millis);
+        }
+        catch (NoMoreFireTimesException ex) {
+            return this.to;
+        }
+    }
+
+    // 前後一天內有 offset 轉換 (DST)
+    private boolean nearTransition(long millis) {
+        return this.timeZone.getOffset(millis - EpochCalendar.MILLIS_PER_DAY)
+                != this.timeZone.getOffset(millis + EpochCalendar.MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return 上限估計 (每秒最多一個 fire time)
+     */
+    @Override
+    public long estimateSize() {
+        return Math.max(0, (this.to - this.cursor) / EpochCalendar.MILLIS_PER_SECOND);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | SORTED | NONNULL | IMMUTABLE;
+    }
+
+    @Override
+    public Comparator<? super Long> getComparator() {
+        // natural order
+        return null;
+    }
+}
@@ -0,0 +1,229 @@
+package com.jray.cron;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 以 histogram 記錄解析 / 搜尋統計的 {@link CronMetrics} 實作 (lock-free).
+ *
+ *  1. 搜尋時間, 解析時間, 搜尋回合數, 逐日搜尋天數各有一個 histogram (以 2 的次方分組)
+ *  2. 依 expression 累計次數與時間, 可找出耗時的 expression (最多記錄 maxExpressions 個 expression)
+ */
+public class HistogramCronMetrics implements CronMetrics {
+
+    public static final int DEFAULT_MAX_EXPRESSIONS = 1000;
+
+    private final Histogram searchNanos = new Histogram();
+
+    private final Histogram parseNanos = new Histogram();
+
+    private final Histogram iterations = new Histogram();
+
+    private final Histogram dayScanSteps = new Histogram();
+
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    private final ConcurrentMap<String, ExpressionStats> expressions = new ConcurrentHashMap<String, ExpressionStats>();
+
+    private final int maxExpressions;
+
+    public HistogramCronMetrics() {
+        this(DEFAULT_MAX_EXPRESSIONS);
+    }
+
+    public HistogramCronMetrics(int maxExpressions) {
+        this.maxExpressions = maxExpressions;
+    }
+
+    @Override
+    public void parsed(String expression, long nanos) {
+        this.parseNanos.record(nanos);
+    }
+
+    @Override
+    public void searched(String expression, long nanos, SearchStats stats) {
+        this.searchNanos.record(nanos);
+        this.iterations.record(stats.getIterations());
+        this.dayScanSteps.record(stats.getDayScanSteps());
+        this.maxDepth.accumulate(stats.getDepth());
+        ExpressionStats expressionStats = this.expressions.get(expression);
+        if (expressionStats == null) {
+            if (this.expressions.size() >= this.maxExpressions) {
+                return;
+            }
+            ExpressionStats created = new ExpressionStats(expression);
+            expressionStats = this.expressions.putIfAbsent(expression, created);
+            if (expressionStats == null) {
+                expressionStats = created;
+            }
+        }
+        expressionStats.record(nanos, stats);
+    }
+
+    public Histogram getSearchNanos() {
+        return this.searchNanos;
+    }
+
+    public Histogram getParseNanos() {
+        return this.parseNanos;
+    }
+
+    public Histogram getIterations() {
+        return this.iterations;
+    }
+
+    public Histogram getDayScanSteps() {
+        return this.dayScanSteps;
+    }
+
+    public long getMaxDepth() {
+        return this.maxDepth.get();
+    }
+
+    /**
+     * @param limit 數量
+     * @return 搜尋總時間最長的 expression (由大到小)
+     */
+    public List<ExpressionStats> getSlowestExpressions(int limit) {
+        List<ExpressionStats> result = new ArrayList<ExpressionStats>(this.expressions.values());
+        Collections.sort(result, new Comparator<ExpressionStats>() {
+            @Override
+            public int compare(ExpressionStats o1, ExpressionStats o2) {
+                return Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+            }
+        });
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * 以 2 的次方分組的 histogram: 第 i 組為 [2^(i-1), 2^i), 第 0 組為 0
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong sum = new AtomicLong();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            this.buckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(value)));
+            this.count.incrementAndGet();
+            this.sum.addAndGet(value);
+            this.max.accumulate(value);
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        public long getMax() {
+            return this.max.get();
+        }
+
+        public double getMean() {
+            long count = this.count.get();
+            return count == 0 ? 0 : (double) this.sum.get() / count;
+        }
+
+        /**
+         * @param percentile 0 ~ 1 (例如: 0.99)
+         * @return 該百分位數所在分組的上限 (不超過最大值)
+         */
+        public long getPercentile(double percentile) {
+            long count = this.count.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank) {
+                    long upper = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, this.max.get());
+                }
+            }
+            return this.max.get();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.getCount() + ", mean=" + this.getMean() + ", p50<=" + this.getPercentile(0.5)
+                    + ", p99<=" + this.getPercentile(0.99) + ", max=" + this.getMax();
+        }
+    }
+
+    /**
+     * 單一 expression 的累計統計
+     */
+    public static final class ExpressionStats {
+
+        private final String expression;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private final LongAccumulator maxIterations = new LongAccumulator(Math::max, 0);
+
+        private final LongAccumulator maxDayScanSteps = new LongAccumulator(Math::max, 0);
+
+        ExpressionStats(String expression) {
+            this.expression = expression;
+        }
+
+        void record(long nanos, SearchStats stats) {
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+            this.maxNanos.accumulate(nanos);
+            this.maxIterations.accumulate(stats.getIterations());
+            this.maxDayScanSteps.accumulate(stats.getDayScanSteps());
+        }
+
+        public String getExpression() {
+            return this.expression;
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        public long getTotalNanos() {
+            return this.totalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return this.maxNanos.get();
+        }
+
+        public long getMaxIterations() {
+            return this.maxIterations.get();
+        }
+
+        public long getMaxDayScanSteps() {
+            return this.maxDayScanSteps.get();
+        }
+
+        @Override
+        public String toString() {
+            return this.expression + ": count=" + this.getCount() + ", totalNanos=" + this.getTotalNanos()
+                    + ", maxNanos=" + this.getMaxNanos() + ", maxIterations=" + this.getMaxIterations()
+                    + ", maxDayScanSteps=" + this.getMaxDayScanSteps();
+        }
+    }
+}
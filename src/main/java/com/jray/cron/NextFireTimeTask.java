@@ -0,0 +1,123 @@
+package com.jray.cron;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 大量 schedule 的下一個 fire time (fork-join, 同一個起始時間).
+ *
+ *  1. 先依時區分組 (counting sort, 只排序 index), 同一時區的 schedule 連續計算,
+ *     各 thread 的 EpochCalendar 不需更換轉換表, offset 區段的快取也持續有效
+ *  2. 分組後的 index 區間對半切割, 小於 {@link #THRESHOLD} 時直接計算
+ *  3. 結果依原本的 index 寫入 out (各 task 寫入的位置不重疊, 不需同步)
+ *
+ * @see CronUtil#nextAll(CompiledCron[], long, long[])
+ */
+final class NextFireTimeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // 不再切割的 schedule 數量
+    static final int THRESHOLD = 2048;
+
+    private final CompiledCron[] schedules;
+
+    // 依時區排序後的 index (null: 只有一個時區, 依原本順序)
+    private final int[] order;
+
+    private final long millis;
+
+    private final long[] out;
+
+    private final int from;
+
+    private final int to;
+
+    NextFireTimeTask(CompiledCron[] schedules, int[] order, long millis, long[] out, int from, int to) {
+        this.schedules = schedules;
+        this.order = order;
+        this.millis = millis;
+        this.out = out;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.to - this.from > THRESHOLD) {
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new NextFireTimeTask(this.schedules, this.order, this.millis, this.out, this.from, middle),
+                    new NextFireTimeTask(this.schedules, this.order, this.millis, this.out, middle, this.to));
+            return;
+        }
+        for (int k = this.from; k < this.to; k++) {
+            int i = this.order == null ? k : this.order[k];
+            this.out[i] = next(this.schedules[i], this.millis);
+        }
+    }
+
+    /**
+     * @return 下一個 fire time, 不會再觸發時回傳 Long.MIN_VALUE (不中斷其他 schedule 的計算;
+     *         其他錯誤, 例如無法滿足的 expression, 照常拋出)
+     */
+    static long next(CompiledCron schedule, long millis) {
+        try {
+            return schedule.next(millis);
+        }
+        catch (NoMoreFireTimesException ex) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 依時區將 index 分組 (同一時區內維持原本順序)
+     *
+     * @return 排序後的 index, 只有一個時區時回傳 null
+     */
+    static int[] groupByZone(CompiledCron[] schedules) {
+
+        int count = schedules.length;
+        int[] zones = new int[count];
+        Map<ZoneTransitions, Integer> ids = new IdentityHashMap<ZoneTransitions, Integer>();
+        int[] sizes = new int[8];
+        // 相鄰的 schedule 多半屬於同一時區, 只在時區改變時查詢 map
+        ZoneTransitions last = null;
+        int id = -1;
+        for (int i = 0; i < count; i++) {
+            CompiledCron schedule = schedules[i];
+            if (schedule == null) {
+                throw new IllegalArgumentException("schedule " + i + " must not be null");
+            }
+            ZoneTransitions transitions = schedule.getTransitions();
+            if (transitions != last) {
+                Integer known = ids.get(transitions);
+                if (known == null) {
+                    known = ids.size();
+                    ids.put(transitions, known);
+                    if (known == sizes.length) {
+                        sizes = Arrays.copyOf(sizes, known * 2);
+                    }
+                }
+                last = transitions;
+                id = known;
+            }
+            zones[i] = id;
+            sizes[id]++;
+        }
+        if (ids.size() <= 1) {
+            return null;
+        }
+        // counting sort: starts[z] = 時區 z 的第一個位置
+        int[] starts = new int[ids.size()];
+        for (int z = 1; z < starts.length; z++) {
+            starts[z] = starts[z - 1] + sizes[z - 1];
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[starts[zones[i]]++] = i;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,19 @@
+package com.jray.cron;
+
+/**
+ * 之後 (或之前) 不會再觸發: 年份欄位允許的年份已用完 (例如: "0 0 0 1 1 ? 2030" 在 2030 之後).
+ *
+ * 與無法滿足的 expression (例如: 2/30, runaway search) 不同, expression 本身是合法的;
+ * 連續取得 fire time 的方法 (fireTimes, nextFireTimes, nextAll) 遇到時直接結束, 不會拋出.
+ */
+public class NoMoreFireTimesException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message 錯誤訊息
+     */
+    public NoMoreFireTimesException(String message) {
+        super(message);
+    }
+}
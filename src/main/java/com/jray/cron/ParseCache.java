@@ -0,0 +1,195 @@
+package com.jray.cron;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以 (expression, TimeZone) 為 key 的解析結果快取 (TimeZone 以 ID 與規則比較).
+ *
+ *  1. thread-safe: 依 key 的 hash 分為多個 segment, 每個 segment 各自加鎖 (LRU, access order)
+ *  2. 容量固定: 每個 segment 超過 maxSize / segments 時淘汰最久未使用的項目
+ *  3. 記錄 hit / miss / eviction 次數
+ *
+ * 子類別實作 {@link #load(String, TimeZone)} 提供實際的解析; 解析失敗 (例外) 的結果不會被快取.
+ *
+ * @param <V> 解析結果 (必須是不可變物件, 會被多個 thread 共用)
+ */
+public abstract class ParseCache<V> {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<V>[] segments;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ParseCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ParseCache(int maxSize) {
+        if (maxSize < SEGMENT_COUNT) {
+            throw new IllegalArgumentException("maxSize must be at least " + SEGMENT_COUNT + ": " + maxSize);
+        }
+        this.segments = (Segment<V>[]) new Segment<?>[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            this.segments[i] = new Segment<V>(maxSize / SEGMENT_COUNT, this.evictionCount);
+        }
+    }
+
+    /**
+     * 解析 expression (cache miss 時才會呼叫)
+     *
+     * @param expression cron expression
+     * @param timeZone 時區
+     * @return 解析結果
+     * @throws IllegalArgumentException expression 不合法
+     */
+    protected abstract V load(String expression, TimeZone timeZone);
+
+    /**
+     * 取得解析結果, 如果不在快取中則解析並放入快取
+     *
+     * @param expression cron expression
+     * @param timeZone 時區
+     * @return 解析結果
+     */
+    public V get(String expression, TimeZone timeZone) {
+        if (expression == null || timeZone == null) {
+            throw new IllegalArgumentException("expression and time zone must not be null");
+        }
+        Key key = new Key(expression, timeZone);
+        Segment<V> segment = this.segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            this.hitCount.incrementAndGet();
+            return value;
+        }
+        this.missCount.incrementAndGet();
+        // 解析在鎖外進行, 同時 miss 的 thread 可能重複解析, 以先放入者為準
+        value = this.load(expression, timeZone);
+        synchronized (segment) {
+            V existing = segment.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            // 放入快取的 key 保存 TimeZone 的複本, 呼叫者之後修改 TimeZone 不影響快取
+            segment.put(new Key(expression, (TimeZone) timeZone.clone()), value);
+        }
+        return value;
+    }
+
+    /**
+     * 預先解析 expression (例如: 服務啟動或載入 tenant 時)
+     *
+     * @param expressions cron expressions
+     * @param timeZone 時區
+     */
+    public void warmUp(Iterable<String> expressions, TimeZone timeZone) {
+        for (String expression : expressions) {
+            this.get(expression, timeZone);
+        }
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment<V> segmentFor(Key key) {
+        int h = key.hash;
+        return this.segments[(h ^ (h >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class Segment<V> extends LinkedHashMap<Key, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private final AtomicLong evictionCount;
+
+        Segment(int maxSize, AtomicLong evictionCount) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+            if (this.size() > this.maxSize) {
+                this.evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // 時區以 ID 與規則比較: 同 ID 但規則不同的自訂 TimeZone 不會取得其他時區的解析結果
+    private static final class Key {
+
+        private final String expression;
+
+        private final TimeZone timeZone;
+
+        private final int hash;
+
+        Key(String expression, TimeZone timeZone) {
+            this.expression = expression;
+            this.timeZone = timeZone;
+            this.hash = expression.hashCode() * 31 + timeZone.getID().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return key.hash == this.hash && key.expression.equals(this.expression)
+                    && key.timeZone.getID().equals(this.timeZone.getID())
+                    && (key.timeZone == this.timeZone || key.timeZone.hasSameRules(this.timeZone));
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
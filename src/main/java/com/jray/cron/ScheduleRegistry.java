@@ -0,0 +1,329 @@
+package com.jray.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/**
+ * 相同 schedule 的 job 共用一個 {@link CompiledCron} 與一次計算.
+ *
+ *  1. 寫法不同但解析結果相同的 expression (例如: "0 0 * * * ?" 與 "0 0 0-23 * * *", "MON-FRI" 與 "1-5")
+ *     依 {@link CompiledCron#equals(Object)} (bit mask 與時區) 對應到同一個共用的 schedule (canonical)
+ *  2. 每個共用的 schedule 只保存一個下一次 fire time, 依時間放入 priority queue
+ *  3. {@link #advance(long, FireListener)} 只處理到期的 schedule: 每個 schedule 計算一次 next(), 再通知所有共用的 job
+ *  4. 錯過的 fire time (advance 間隔大於 schedule 的間隔) 只通知一次, 下一次 fire time 由目前時間起算
+ *
+ * 所有方法都是 thread-safe (synchronized); listener 在持有 lock 時呼叫, 不可執行耗時的工作.
+ * listener 可在通知時 register / unregister job: 通知的對象為到期時的 job (快照), 移除的 schedule 不再放回 queue.
+ *
+ * 與 {@link CronScheduler} 各自獨立: CronScheduler 以 {@link CronEngine} (可自訂 field handler) 計算每個 job 的 fire time,
+ * 本類別只適用內建語法的 {@link CompiledCron}, 適合自行以時間驅動 (advance) 大量共用 schedule 的 job.
+ */
+public class ScheduleRegistry {
+
+    /**
+     * 接收到期的 job
+     */
+    public interface FireListener {
+
+        /**
+         * @param jobId job id
+         * @param fireTime fire time
+         */
+        void fired(long jobId, long fireTime);
+    }
+
+    // 共用的 schedule => 使用該 schedule 的 job
+    private final Map<CompiledCron, Group> groups = new HashMap<CompiledCron, Group>();
+
+    private final Map<Long, Member> jobs = new HashMap<Long, Member>();
+
+    // 依下一次 fire time 排序 (移除的 group 在取出時略過, 超過一半時重建)
+    private final PriorityQueue<Group> queue = new PriorityQueue<Group>();
+
+    // queue 中已移除的 group 數量
+    private int removedInQueue;
+
+    // 已處理到此時間 (新加入的 job 由此計算下一次 fire time)
+    private long now;
+
+    private long evaluations;
+
+    private long notifications;
+
+    /**
+     * @param now 起始時間
+     */
+    public ScheduleRegistry(long now) {
+        this.now = now;
+    }
+
+    /**
+     * 加入 job (job id 已存在時更換 schedule)
+     *
+     * @param jobId job id
+     * @param expression cron expression
+     * @param timeZone 時區
+     * @return 共用的 schedule
+     */
+    public CompiledCron register(long jobId, String expression, TimeZone timeZone) {
+        return this.register(jobId, CronUtil.compile(expression, timeZone));
+    }
+
+    /**
+     * 加入 job (job id 已存在時更換 schedule)
+     *
+     * @param jobId job id
+     * @param schedule 已解析的 cron expression
+     * @return 共用的 schedule (與 schedule 相等, 第一次出現時即為 schedule 本身)
+     */
+    public synchronized CompiledCron register(long jobId, CompiledCron schedule) {
+        if (schedule == null) {
+            throw new IllegalArgumentException("schedule must not be null");
+        }
+        this.unregister(jobId);
+        Group group = this.groups.get(schedule);
+        if (group == null) {
+            group = new Group(schedule);
+            group.next = this.next(schedule, this.now);
+            this.groups.put(schedule, group);
+            if (group.next != Long.MIN_VALUE) {
+                this.enqueue(group);
+            }
+        }
+        this.jobs.put(jobId, group.add(jobId));
+        return group.schedule;
+    }
+
+    /**
+     * @return 相等的共用 schedule (沒有 job 使用時回傳 schedule 本身)
+     */
+    public synchronized CompiledCron canonical(CompiledCron schedule) {
+        Group group = this.groups.get(schedule);
+        return group == null ? schedule : group.schedule;
+    }
+
+    /**
+     * 移除 job
+     *
+     * @return job 是否存在
+     */
+    public synchronized boolean unregister(long jobId) {
+        Member member = this.jobs.remove(jobId);
+        if (member == null) {
+            return false;
+        }
+        Group group = member.group;
+        group.remove(member);
+        if (group.size == 0) {
+            this.groups.remove(group.schedule);
+            group.removed = true;
+            if (group.queued) {
+                this.removedInQueue++;
+                this.purge();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return job 使用的共用 schedule (不存在時回傳 null)
+     */
+    public synchronized CompiledCron getSchedule(long jobId) {
+        Member member = this.jobs.get(jobId);
+        return member == null ? null : member.group.schedule;
+    }
+
+    /**
+     * @return job 的下一次 fire time (不存在或不會再觸發時回傳 Long.MIN_VALUE)
+     */
+    public synchronized long getNextFireTime(long jobId) {
+        Member member = this.jobs.get(jobId);
+        return member == null ? Long.MIN_VALUE : member.group.next;
+    }
+
+    /**
+     * 處理到 now (含) 為止到期的 schedule, 依 fire time 順序通知共用該 schedule 的所有 job
+     *
+     * @param now 目前時間
+     * @param listener 接收到期的 job
+     * @return 通知的次數
+     */
+    public synchronized int advance(long now, FireListener listener) {
+        int count = 0;
+        while (!this.queue.isEmpty() && this.queue.peek().next <= now) {
+            Group group = this.queue.poll();
+            group.queued = false;
+            if (group.removed) {
+                this.removedInQueue--;
+                continue;
+            }
+            long fireTime = group.next;
+            // listener 可能 register / unregister => 通知到期時的 job
+            long[] members = group.jobIds();
+            for (long jobId : members) {
+                listener.fired(jobId, fireTime);
+            }
+            count += members.length;
+            if (group.removed) {
+                continue;
+            }
+            // 每個共用的 schedule 只計算一次; 已錯過的 fire time 合併為一次
+            long next = this.next(group.schedule, fireTime);
+            if (next != Long.MIN_VALUE && next <= now) {
+                next = this.next(group.schedule, now);
+            }
+            group.next = next;
+            if (next != Long.MIN_VALUE) {
+                this.enqueue(group);
+            }
+        }
+        this.notifications += count;
+        this.now = Math.max(this.now, now);
+        return count;
+    }
+
+    /**
+     * @return job 數量
+     */
+    public synchronized int size() {
+        return this.jobs.size();
+    }
+
+    /**
+     * @return 不同的 schedule 數量
+     */
+    public synchronized int distinctSize() {
+        return this.groups.size();
+    }
+
+    /**
+     * @return queue 中的 schedule 數量 (含尚未清除的已移除 schedule)
+     */
+    synchronized int queueSize() {
+        return this.queue.size();
+    }
+
+    /**
+     * @return 呼叫 next() 的次數
+     */
+    public synchronized long getEvaluations() {
+        return this.evaluations;
+    }
+
+    /**
+     * @return 通知 job 的次數 (未共用時需要呼叫 next() 的次數)
+     */
+    public synchronized long getNotifications() {
+        return this.notifications;
+    }
+
+    private void enqueue(Group group) {
+        group.queued = true;
+        this.queue.add(group);
+    }
+
+    /**
+     * 移除的 group 超過 queue 的一半時重建 queue
+     */
+    private void purge() {
+        if (this.removedInQueue * 2 <= this.queue.size()) {
+            return;
+        }
+        List<Group> live = new ArrayList<Group>(this.queue.size() - this.removedInQueue);
+        for (Group group : this.queue) {
+            if (group.removed) {
+                group.queued = false;
+            }
+            else {
+                live.add(group);
+            }
+        }
+        this.queue.clear();
+        this.queue.addAll(live);
+        this.removedInQueue = 0;
+    }
+
+    private long next(CompiledCron schedule, long millis) {
+        this.evaluations++;
+        return NextFireTimeTask.next(schedule, millis);
+    }
+
+    /**
+     * 共用同一個 schedule 的 job
+     */
+    private static final class Group implements Comparable<Group> {
+
+        final CompiledCron schedule;
+
+        Member[] members = new Member[4];
+
+        int size;
+
+        // 下一次 fire time (不會再觸發時為 Long.MIN_VALUE)
+        long next;
+
+        boolean removed;
+
+        // 是否在 queue 中
+        boolean queued;
+
+        Group(CompiledCron schedule) {
+            this.schedule = schedule;
+        }
+
+        Member add(long jobId) {
+            if (this.size == this.members.length) {
+                this.members = Arrays.copyOf(this.members, this.size * 2);
+            }
+            Member member = new Member(this, jobId, this.size);
+            this.members[this.size++] = member;
+            return member;
+        }
+
+        /**
+         * O(1): 以最後一個 member 填補移除的位置
+         */
+        void remove(Member member) {
+            Member last = this.members[--this.size];
+            this.members[member.index] = last;
+            last.index = member.index;
+            this.members[this.size] = null;
+        }
+
+        long[] jobIds() {
+            long[] jobIds = new long[this.size];
+            for (int i = 0; i < jobIds.length; i++) {
+                jobIds[i] = this.members[i].jobId;
+            }
+            return jobIds;
+        }
+
+        @Override
+        public int compareTo(Group other) {
+            return Long.compare(this.next, other.next);
+        }
+    }
+
+    /**
+     * job 在 group 中的位置
+     */
+    private static final class Member {
+
+        final Group group;
+
+        final long jobId;
+
+        int index;
+
+        Member(Group group, long jobId, int index) {
+            this.group = group;
+            this.jobId = jobId;
+            this.index = index;
+        }
+    }
+}
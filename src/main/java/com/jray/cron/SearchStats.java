@@ -0,0 +1,62 @@
+package com.jray.cron;
+
+/**
+ * 一次 next fire time 搜尋的統計 (只在啟用 {@link CronMetrics} 時收集).
+ *
+ *  1. iterations: 搜尋的回合數 (CompiledCron: doNext 的呼叫次數; CronEngine: field handler 的呼叫次數)
+ *  2. depth: 最大遞迴深度 (CronEngine: 由秒欄位重新開始的次數)
+ *  3. dayScanSteps: 逐日搜尋 (findNextDay) 前進的天數
+ *
+ * 每個 thread 重複使用同一個物件, 不可保留或傳遞給其他 thread.
+ */
+public final class SearchStats {
+
+    private static final ThreadLocal<SearchStats> STATS = new ThreadLocal<SearchStats>() {
+        @Override
+        protected SearchStats initialValue() {
+            return new SearchStats();
+        }
+    };
+
+    int iterations;
+
+    int depth;
+
+    int dayScanSteps;
+
+    /**
+     * @return 目前 thread 專用的統計物件 (已清除)
+     */
+    static SearchStats forCurrentThread() {
+        SearchStats stats = STATS.get();
+        stats.iterations = 0;
+        stats.depth = 0;
+        stats.dayScanSteps = 0;
+        return stats;
+    }
+
+    void enter(int depth) {
+        this.iterations++;
+        if (depth > this.depth) {
+            this.depth = depth;
+        }
+    }
+
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    public int getDayScanSteps() {
+        return this.dayScanSteps;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStats[iterations=" + this.iterations + ", depth=" + this.depth + ", dayScanSteps="
+                + this.dayScanSteps + "]";
+    }
+}
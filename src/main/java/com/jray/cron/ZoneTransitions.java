@@ -0,0 +1,277 @@
+package com.jray.cron;
+
+import java.util.Arrays;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 時區的 offset 轉換表 (不可變, 每個時區只建立一次).
+ *
+ *  1. 建立時預先計算前後 50 年內所有 offset 改變的時間點, 查詢 offset 時以 binary search 取代 {@link TimeZone#getOffset(long)}
+ *  2. 50 年內沒有任何轉換 (UTC, GMT+8, Asia/Kolkata ...) => 整段只有一個 offset, 不需搜尋
+ *  3. 超出範圍的時間直接使用 {@link TimeZone#getOffset(long)}, 結果永遠與 TimeZone (GregorianCalendar) 相同
+ *
+ * 轉換點以 TimeZone 本身的 getOffset() 每天掃描一次後二分搜尋而得, 因此自訂的 TimeZone 也適用.
+ * 不使用 java.time 的 ZoneRules: 部分時區 (例如: Africa/Casablanca, Asia/Gaza) 的轉換與 ZoneInfo 不同,
+ * 而結果必須與 GregorianCalendar 一致. 同一天內改變又改回的 offset 會被略過, 目前的 tz database 中沒有這種情況.
+ */
+final class ZoneTransitions {
+
+    // 以時區 ID 快取, 每個 ID 一個小陣列 (同 ID 但規則不同的自訂 TimeZone 各一個, 以 hasSameRules() 比對), 陣列不會被修改
+    private static final ConcurrentMap<String, ZoneTransitions[]> CACHE = new ConcurrentHashMap<String, ZoneTransitions[]>();
+
+    // 每個 ID 最多快取的規則數, 超過時不放入快取 (避免不斷產生不同規則的自訂 TimeZone 佔用記憶體)
+    private static final int MAX_RULES_PER_ID = 8;
+
+    // 前後 50 年 (以格里曆平均年長計算)
+    private static final long WINDOW_MILLIS = 50L * 146097 / 400 * EpochCalendar.MILLIS_PER_DAY;
+
+    private static final long SCAN_MILLIS = EpochCalendar.MILLIS_PER_DAY;
+
+    // 固定 offset 的轉換表 (DST 轉換附近以單一 offset 換算 wall time 用), 以 offset 快取
+    private static final ConcurrentMap<Integer, ZoneTransitions> FIXED = new ConcurrentHashMap<Integer, ZoneTransitions>();
+
+    private final TimeZone timeZone;
+
+    // starts[0] 為範圍起點, 其餘為轉換後的第一個 millis; offsets[i] 適用於 [starts[i], starts[i + 1])
+    private final long[] starts;
+
+    private final int[] offsets;
+
+    // 範圍終點 (不含)
+    private final long end;
+
+    ZoneTransitions(TimeZone timeZone, long center) {
+        this.timeZone = (TimeZone) timeZone.clone();
+        long start = center - WINDOW_MILLIS;
+        this.end = center + WINDOW_MILLIS;
+        long[] starts = new long[16];
+        int[] offsets = new int[16];
+        int count = 1;
+        starts[0] = start;
+        offsets[0] = this.timeZone.getOffset(start);
+        for (long from = start; from < this.end; from += SCAN_MILLIS) {
+            long to = Math.min(from + SCAN_MILLIS, this.end - 1);
+            int offset = this.timeZone.getOffset(to);
+            if (offset == offsets[count - 1]) {
+                continue;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            starts[count] = findTransition(this.timeZone, from, to);
+            offsets[count] = offset;
+            count++;
+        }
+        this.starts = Arrays.copyOf(starts, count);
+        this.offsets = Arrays.copyOf(offsets, count);
+    }
+
+    // 固定 offset: 單一區段涵蓋所有時間
+    private ZoneTransitions(TimeZone timeZone, int offset) {
+        this.timeZone = timeZone;
+        this.starts = new long[] { Long.MIN_VALUE };
+        this.offsets = new int[] { offset };
+        this.end = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param timeZone 時區
+     * @return 該時區的轉換表 (以目前時間為中心)
+     */
+    static ZoneTransitions of(TimeZone timeZone) {
+        String id = timeZone.getID();
+        ZoneTransitions[] cached = CACHE.get(id);
+        ZoneTransitions found = find(cached, timeZone);
+        if (found != null) {
+            return found;
+        }
+        ZoneTransitions created = new ZoneTransitions(timeZone, System.currentTimeMillis());
+        while (true) {
+            if (cached == null) {
+                cached = CACHE.putIfAbsent(id, new ZoneTransitions[] { created });
+                if (cached == null) {
+                    return created;
+                }
+            }
+            else if (cached.length >= MAX_RULES_PER_ID) {
+                return created;
+            }
+            else {
+                ZoneTransitions[] grown = Arrays.copyOf(cached, cached.length + 1);
+                grown[cached.length] = created;
+                if (CACHE.replace(id, cached, grown)) {
+                    return created;
+                }
+                cached = CACHE.get(id);
+            }
+            // 其他 thread 同時加入 => 重新比對
+            found = find(cached, timeZone);
+            if (found != null) {
+                return found;
+            }
+        }
+    }
+
+    private static ZoneTransitions find(ZoneTransitions[] cached, TimeZone timeZone) {
+        if (cached != null) {
+            for (ZoneTransitions transitions : cached) {
+                if (transitions.timeZone == timeZone || transitions.timeZone.hasSameRules(timeZone)) {
+                    return transitions;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param offset UTC offset (millis)
+     * @return 沒有任何轉換, 永遠為指定 offset 的轉換表
+     */
+    static ZoneTransitions fixed(int offset) {
+        ZoneTransitions cached = FIXED.get(offset);
+        if (cached == null) {
+            cached = new ZoneTransitions(new SimpleTimeZone(offset, "GMT" + (offset < 0 ? "" : "+") + offset), offset);
+            ZoneTransitions existing = FIXED.putIfAbsent(offset, cached);
+            if (existing != null) {
+                cached = existing;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * 在 (from, to] 之間以二分搜尋找到 offset 改變的時間點 (假設區間內最多改變一次)
+     *
+     * @return offset 改變後的第一個 millis, 區間內沒有改變則回傳 Long.MIN_VALUE
+     */
+    static long findTransition(TimeZone timeZone, long from, long to) {
+        int offset = timeZone.getOffset(from);
+        if (timeZone.getOffset(to) == offset) {
+            return Long.MIN_VALUE;
+        }
+        // offset(low) == offset, offset(high) != offset
+        long low = from;
+        long high = to;
+        while (high - low > 1) {
+            long mid = low + (high - low) / 2;
+            if (timeZone.getOffset(mid) == offset) {
+                low = mid;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    TimeZone getTimeZone() {
+        return this.timeZone;
+    }
+
+    /**
+     * @return 範圍內沒有任何轉換
+     */
+    boolean isFixed() {
+        return this.starts.length == 1;
+    }
+
+    /**
+     * @param millis 時間
+     * @return 該時間所在區段的 index, 超出範圍則回傳 -1
+     */
+    int segment(long millis) {
+        if (millis < this.starts[0] || millis >= this.end) {
+            return -1;
+        }
+        if (this.starts.length == 1) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(this.starts, millis);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @return 範圍內的區段數 (轉換次數 + 1)
+     */
+    int segmentCount() {
+        return this.starts.length;
+    }
+
+    long segmentStart(int segment) {
+        return this.starts[segment];
+    }
+
+    long segmentEnd(int segment) {
+        return segment + 1 < this.starts.length ? this.starts[segment + 1] : this.end;
+    }
+
+    int segmentOffset(int segment) {
+        return this.offsets[segment];
+    }
+
+    /**
+     * @return 同 {@link TimeZone#getOffset(long)}
+     */
+    int getOffset(long millis) {
+        int segment = this.segment(millis);
+        return segment < 0 ? this.timeZone.getOffset(millis) : this.offsets[segment];
+    }
+
+    /**
+     * 在 (from, to] 之間尋找 offset 改變的時間點 (假設區間內最多改變一次)
+     *
+     * @return offset 改變後的第一個 millis, 區間內沒有改變則回傳 Long.MIN_VALUE
+     */
+    long findTransition(long from, long to) {
+        int segment = this.segment(from);
+        if (segment < 0 || to >= this.end) {
+            return findTransition(this.timeZone, from, to);
+        }
+        long next = this.segmentEnd(segment);
+        return next <= to ? next : Long.MIN_VALUE;
+    }
+
+    /**
+     * 在 (from, to] 之間尋找第一次 offset 改變的時間點 (超出範圍時同建立轉換表, 以一天為單位掃描)
+     *
+     * @return 第一次改變後的第一個 millis, 區間內沒有改變則回傳 Long.MIN_VALUE
+     */
+    long firstTransition(long from, long to) {
+        int segment = this.segment(from);
+        if (segment >= 0 && (segment < this.starts.length - 1 || to < this.end)) {
+            long next = this.segmentEnd(segment);
+            return next <= to ? next : Long.MIN_VALUE;
+        }
+        int offset = this.timeZone.getOffset(from);
+        for (long start = from; start < to; start += SCAN_MILLIS) {
+            long end = Math.min(start + SCAN_MILLIS, to);
+            if (this.timeZone.getOffset(end) != offset) {
+                return findTransition(this.timeZone, start, end);
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * 在 (from, to] 之間尋找最後一次 offset 改變的時間點 (超出範圍時假設區間內最多改變一次)
+     *
+     * @return 最後一次改變後的第一個 millis, 區間內沒有改變則回傳 Long.MIN_VALUE
+     */
+    long lastTransition(long from, long to) {
+        int segment = this.segment(to);
+        if (segment < 0 || from < this.starts[0]) {
+            return findTransition(this.timeZone, from, to);
+        }
+        return segment > 0 && this.starts[segment] > from ? this.starts[segment] : Long.MIN_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + this.timeZone.getID() + ", transitions=" + (this.starts.length - 1)
+                + "]";
+    }
+}
@@ -0,0 +1,61 @@
+package com.jray.cron.field;
+
+import com.jray.cron.EpochCalendar;
+
+/**
+ * 欄位處理的共用部分: 記錄對應的 Calendar 欄位, 以及在 cron expression 中的位置.
+ */
+public abstract class AbstractFieldHandler implements FieldHandler {
+
+    private final int field;
+
+    private final int nextField;
+
+    private final int prevField;
+
+    // 在 cron expression 中的位置 (秒 = 0)
+    private final int position;
+
+    protected AbstractFieldHandler(int field, int nextField, int prevField, int position) {
+        this.field = field;
+        this.nextField = nextField;
+        this.prevField = prevField;
+        this.position = position;
+    }
+
+    @Override
+    public int getField() {
+        return this.field;
+    }
+
+    @Override
+    public int getNextField() {
+        return this.nextField;
+    }
+
+    @Override
+    public int getPrevField() {
+        return this.prevField;
+    }
+
+    public int getPosition() {
+        return this.position;
+    }
+
+    /**
+     * field meta 直接以 Calendar 欄位的值記錄時, 只需檢查一個 bit
+     */
+    @Override
+    public boolean matches(EpochCalendar calendar, FieldMeta fieldMeta) {
+        return fieldMeta.get(calendar.get(this.field));
+    }
+
+    @Override
+    public FieldMeta parseFields(String[] fields) {
+        if (this.position >= fields.length) {
+            throw new IllegalArgumentException(String.format("cron expression has no field %d (found %d fields)",
+                    this.position, fields.length));
+        }
+        return this.parseField(fields[this.position]);
+    }
+}
@@ -0,0 +1,111 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CompiledCron;
+
+/**
+ * 日的解析結果, 另外記錄合併 日 / 月 / 星期 / 年 之後的日期表 (CompiledCron 的 per-year day mask).
+ *
+ * 日與星期 (例如: 13 號星期五), 日與月 (例如: 2/29) 的組合不需在 handler 之間反覆來回, 一次查詢即可找到下一個日期.
+ */
+public class DateFieldMeta extends FieldMeta {
+
+    // 只使用日期欄位 (時 / 分 / 秒固定為 0)
+    private final CompiledCron dates;
+
+    private final int months;
+
+    private final int daysOfWeek;
+
+    // null: 不限制
+    private final FieldMeta years;
+
+    /**
+     * @param daysOfMonth 日的 bit mask (bit n = n 日)
+     * @param dates 日期欄位的 cron expression
+     */
+    public DateFieldMeta(long daysOfMonth, CompiledCron dates) {
+        super(daysOfMonth);
+        this.dates = dates;
+        this.months = dates.getMonths();
+        this.daysOfWeek = dates.getDaysOfWeek();
+        this.years = years(dates.getYears());
+    }
+
+    /**
+     * 子類別自行計算日期 (不使用日期表)
+     *
+     * @param daysOfMonth 日的 bit mask
+     * @param months 月的 bit mask (bit 0 = JAN)
+     * @param daysOfWeek 星期的 bit mask (bit 0 = SUN)
+     * @param years 允許的年份 (null: 不限制)
+     */
+    protected DateFieldMeta(long daysOfMonth, int months, int daysOfWeek, long[] years) {
+        super(daysOfMonth);
+        this.dates = null;
+        this.months = months;
+        this.daysOfWeek = daysOfWeek;
+        this.years = years(years);
+    }
+
+    private static FieldMeta years(long[] years) {
+        return years == null ? null
+                : new FieldMeta(years, CompiledCron.MIN_YEAR, CompiledCron.MAX_YEAR - CompiledCron.MIN_YEAR + 1);
+    }
+
+    protected int getMonths() {
+        return this.months;
+    }
+
+    /**
+     * @return 允許的年份 (null: 不限制)
+     */
+    protected FieldMeta getYears() {
+        return this.years;
+    }
+
+    /**
+     * 日期是否符合 (不需查詢日期表)
+     *
+     * @param year 年
+     * @param month 月 (0 ~ 11)
+     * @param dayOfMonth 日 (1 ~ 31)
+     * @param dayOfWeek 星期 (0 = SUN ~ 6 = SAT)
+     */
+    public boolean matches(int year, int month, int dayOfMonth, int dayOfWeek) {
+        return this.get(dayOfMonth) && (this.months & 1 << month) != 0 && (this.daysOfWeek & 1 << dayOfWeek) != 0
+                && (this.years == null || this.years.get(year));
+    }
+
+    /**
+     * nextDay / prevDay 找不到日期的原因
+     *
+     * @return true: 允許的年份已用完 (不會再觸發); false: 無法滿足的組合 (例如: 2/30)
+     */
+    public boolean isYearLimited() {
+        return this.years != null && (this.dates == null || this.dates.isSatisfiable());
+    }
+
+    /**
+     * @see CompiledCron#nextDay(long)
+     */
+    public long nextDay(long epochDay) {
+        return this.dates.nextDay(epochDay);
+    }
+
+    /**
+     * @see CompiledCron#prevDay(long)
+     */
+    public long prevDay(long epochDay) {
+        return this.dates.prevDay(epochDay);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof DateFieldMeta && super.equals(obj) && ((DateFieldMeta) obj).dates.equals(this.dates);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode() * 31 + this.dates.hashCode();
+    }
+}
@@ -0,0 +1,180 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CompiledCron;
+import com.jray.cron.CronParser;
+import com.jray.cron.EpochCalendar;
+import com.jray.cron.NoMoreFireTimesException;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * 日 (1 ~ 31), cron expression 的第 4 個欄位.
+ *
+ * 超過該月天數的值 (例如: 4/31) 視為不存在, 直接跳到下一個有符合日期的月份.
+ *
+ * 由 engine 解析時 ({@link #parseFields(String[], MonthFieldHandler, DayOfWeekFieldHandler, YearFieldHandler)})
+ * 同時選取預設的 月 / 星期 / 年 handler 的欄位 (依各 handler 的位置), 以 {@link DateFieldMeta}
+ * 直接找到這些欄位都符合的下一個日期; 之後的月 / 星期 / 年 handler 不會再改變日期.
+ * 自訂的 月 / 星期 / 年 handler 不合併 (日期表不限制該欄位), 由該 handler 自行解析與搜尋.
+ * 日或星期使用 Quartz 的 L / W / # 時改用 {@link RuleDateFieldMeta}, 每個月直接算出符合的日期.
+ */
+public class DayOfMonthFieldHandler extends AbstractFieldHandler {
+
+    public DayOfMonthFieldHandler() {
+        super(Calendar.DAY_OF_MONTH, Calendar.MONTH, Calendar.HOUR_OF_DAY, 3);
+    }
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * 只解析日的欄位 (不合併其他欄位)
+     */
+    @Override
+    public FieldMeta parseFields(String[] fields) {
+        return this.parseFields(fields, null, null, null);
+    }
+
+    /**
+     * 解析日的欄位, 並與指定 handler 的欄位合併為日期表
+     *
+     * @param fields cron expression 中的各欄位
+     * @param months 合併的月 handler (null: 不合併, 日期表不限制月)
+     * @param daysOfWeek 合併的星期 handler (null: 不合併; 星期使用 L / # 時必須合併)
+     * @param years 合併的年 handler (null 或 expression 沒有年的欄位: 不限制年)
+     * @return 日的 field meta
+     */
+    public FieldMeta parseFields(String[] fields, MonthFieldHandler months, DayOfWeekFieldHandler daysOfWeek,
+            YearFieldHandler years) {
+
+        if (this.getPosition() >= fields.length) {
+            return super.parseFields(fields);
+        }
+        String daysOfMonthField = fields[this.getPosition()];
+        String monthField = field(fields, months, "*");
+        String dayOfWeekField = field(fields, daysOfWeek, "*");
+        String yearField = field(fields, years, null);
+        long[] allowedYears = yearField == null ? null : CronParser.parseYears(yearField);
+        if (DayRule.hasDayOfMonthModifier(daysOfMonthField) || DayRule.hasDayOfWeekModifier(dayOfWeekField)) {
+            return new RuleDateFieldMeta(DayRule.parseDaysOfMonth(daysOfMonthField), DayRule.parseDaysOfWeek(dayOfWeekField),
+                    (int) CronParser.parseMonths(monthField), allowedYears);
+        }
+        FieldMeta daysOfMonth = this.parseField(daysOfMonthField);
+        if (months == null && daysOfWeek == null && allowedYears == null) {
+            return daysOfMonth;
+        }
+        // 合併為日期表
+        CompiledCron dates = new CompiledCron(1L, 1L, 1, (int) daysOfMonth.getMask(),
+                (int) CronParser.parseMonths(monthField), (int) CronParser.parseDaysOfWeek(dayOfWeekField), allowedYears, UTC);
+        return new DateFieldMeta(daysOfMonth.getMask(), dates);
+    }
+
+    /**
+     * @return handler 在 expression 中的欄位 (沒有 handler 或 expression 沒有該欄位時回傳 defaultValue)
+     */
+    private static String field(String[] fields, AbstractFieldHandler handler, String defaultValue) {
+        return handler == null || handler.getPosition() >= fields.length ? defaultValue : fields[handler.getPosition()];
+    }
+
+    @Override
+    public FieldMeta parseField(String fieldExpression) {
+        return new FieldMeta(CronParser.parseDaysOfMonth(fieldExpression));
+    }
+
+    @Override
+    public boolean matches(EpochCalendar calendar, FieldMeta fieldMeta) {
+        if (fieldMeta instanceof DateFieldMeta) {
+            return matches(calendar, (DateFieldMeta) fieldMeta);
+        }
+        return fieldMeta.get(calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    @Override
+    public boolean seekNext(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        if (fieldMeta instanceof DateFieldMeta) {
+            DateFieldMeta dates = (DateFieldMeta) fieldMeta;
+            if (matches(calendar, dates)) {
+                return false;
+            }
+            long today = calendar.getEpochDay();
+            return moveTo(calendar, dates, today, dates.nextDay(today), "next");
+        }
+        int original = calendar.get(Calendar.DAY_OF_MONTH);
+        int nextValue = fieldMeta.nextSetBit(original);
+        boolean carried = false;
+        // 本月沒有符合的日 => 下個月 (月份超過 11 時由 calendar 進位到下一年)
+        int month = calendar.get(Calendar.MONTH);
+        while (nextValue == -1 || nextValue > calendar.getActualMaximum(Calendar.DAY_OF_MONTH)) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+            calendar.set(Calendar.MONTH, ++month);
+            nextValue = fieldMeta.first();
+            carried = true;
+        }
+        if (carried || nextValue != original) {
+            calendar.set(Calendar.DAY_OF_MONTH, nextValue);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean seekPrev(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        if (fieldMeta instanceof DateFieldMeta) {
+            DateFieldMeta dates = (DateFieldMeta) fieldMeta;
+            if (matches(calendar, dates)) {
+                return false;
+            }
+            long today = calendar.getEpochDay();
+            return moveTo(calendar, dates, today, dates.prevDay(today), "previous");
+        }
+        int original = calendar.get(Calendar.DAY_OF_MONTH);
+        int prevValue = fieldMeta.prevSetBit(original);
+        boolean borrowed = false;
+        // 本月沒有符合的日 => 上個月, 由該月最後一天往回找
+        int month = calendar.get(Calendar.MONTH);
+        while (prevValue == -1) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+            calendar.set(Calendar.MONTH, --month);
+            prevValue = fieldMeta.prevSetBit(calendar.getActualMaximum(Calendar.DAY_OF_MONTH));
+            borrowed = true;
+        }
+        if (borrowed || prevValue != original) {
+            calendar.set(Calendar.DAY_OF_MONTH, prevValue);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(EpochCalendar calendar, DateFieldMeta dates) {
+        return dates.matches(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+    }
+
+    /**
+     * 移到指定的日期 (時間由 engine reset)
+     */
+    private static boolean moveTo(EpochCalendar calendar, DateFieldMeta dates, long today, long day, String direction) {
+        if (day == Long.MIN_VALUE) {
+            if (dates.isYearLimited()) {
+                throw new NoMoreFireTimesException("cron expression has no " + direction + " trigger in its allowed years");
+            }
+            throw new IllegalArgumentException("cron expression led to runaway search for " + direction + " trigger");
+        }
+        if (day == today) {
+            return false;
+        }
+        // 直接設定日期欄位 (時間隨後由 engine 重設, 只需換算一次)
+        int year = EpochCalendar.yearOfDay(day);
+        int dayOfYear = (int) (day - EpochCalendar.daysFromCivil(year, 1, 1));
+        int month = 0;
+        while (dayOfYear >= EpochCalendar.monthLength(year, month)) {
+            dayOfYear -= EpochCalendar.monthLength(year, month++);
+        }
+        calendar.set(Calendar.YEAR, year);
+        calendar.set(Calendar.MONTH, month);
+        calendar.set(Calendar.DAY_OF_MONTH, dayOfYear + 1);
+        return true;
+    }
+}
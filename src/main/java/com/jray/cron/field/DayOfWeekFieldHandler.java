@@ -0,0 +1,67 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CronParser;
+import com.jray.cron.EpochCalendar;
+
+import java.util.Calendar;
+
+/**
+ * 星期 (0 ~ 7 或 SUN ~ SAT), cron expression 的第 6 個欄位; FieldMeta 以 0 (SUN) ~ 6 (SAT) 記錄.
+ *
+ * 直接前進 (後退) 到下一個 (上一個) 符合的星期, 不需逐日搜尋.
+ * 使用 L / # 時 (例如: 5L, MON#2) 日期由 {@link DayOfMonthFieldHandler} 的 {@link RuleDateFieldMeta} 決定, 此欄位不限制.
+ */
+public class DayOfWeekFieldHandler extends AbstractFieldHandler {
+
+    public DayOfWeekFieldHandler() {
+        super(Calendar.DAY_OF_WEEK, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, 5);
+    }
+
+    @Override
+    public FieldMeta parseField(String fieldExpression) {
+        if (DayRule.hasDayOfWeekModifier(fieldExpression)) {
+            return FieldMeta.ANY;
+        }
+        long mask = CronParser.parseDaysOfWeek(fieldExpression);
+        return mask == 0x7F ? FieldMeta.ANY : new FieldMeta(mask);
+    }
+
+    @Override
+    public boolean matches(EpochCalendar calendar, FieldMeta fieldMeta) {
+        return fieldMeta.get(calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+    }
+
+    @Override
+    public boolean seekNext(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        int original = calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+        int nextValue = fieldMeta.nextSetBit(original);
+
+        // 本週沒有符合的星期 => 下一週
+        if (nextValue == -1) {
+            nextValue = fieldMeta.first() + 7;
+        }
+        if (nextValue != original) {
+            calendar.add(this.getNextField(), nextValue - original);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean seekPrev(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        int original = calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+        int prevValue = fieldMeta.prevSetBit(original);
+
+        // 本週沒有符合的星期 => 上一週
+        if (prevValue == -1) {
+            prevValue = fieldMeta.last() - 7;
+        }
+        if (prevValue != original) {
+            calendar.add(this.getNextField(), prevValue - original);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,242 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CronParser;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 日 / 星期欄位的解析結果, 支援 Quartz 的 L, W 與 # (不可變).
+ *
+ * 日 (可與一般的值以 "," 混用, 例如: "1,L"):
+ *  1. L: 該月最後一天; L-n: 最後一天的前 n 天
+ *  2. nW: 最接近 n 日的平日 (週一 ~ 週五, 不跨月); n 日超過該月天數時該月不觸發
+ *  3. LW: 該月最後一個平日
+ *
+ * 星期 (數字同一般的星期欄位: 0 或 7 = SUN, 1 = MON ... 6 = SAT; 亦可使用名稱):
+ *  1. L: 同 SAT (Quartz)
+ *  2. xL: 該月最後一個星期 x (例如: 5L 或 FRIL = 最後一個星期五)
+ *  3. x#n: 該月第 n 個星期 x (n = 1 ~ 5, 例如: MON#1 = 第一個星期一); 沒有第 n 個時該月不觸發
+ *
+ * {@link #days(int, int)} 依該月的天數與 1 日的星期直接算出符合的日期 (bit mask), 不需逐日檢查.
+ */
+public final class DayRule {
+
+    // 規則種類
+    private static final int LAST = 0;
+    private static final int WEEKDAY = 1;
+    private static final int LAST_WEEKDAY = 2;
+    private static final int LAST_OF_WEEK = 3;
+    private static final int NTH_OF_WEEK = 4;
+
+    private static final int SUNDAY = 0;
+    private static final int SATURDAY = 6;
+
+    private final boolean dayOfWeek;
+
+    // 一般的值 (日: bit n = n 日, 星期: bit n = 星期 n)
+    private final long mask;
+
+    private final int[] kinds;
+
+    private final int[] values;
+
+    // # 的 n
+    private final int[] ordinals;
+
+    private DayRule(boolean dayOfWeek, long mask, int[] kinds, int[] values, int[] ordinals) {
+        this.dayOfWeek = dayOfWeek;
+        this.mask = mask;
+        this.kinds = kinds;
+        this.values = values;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * @return 日的欄位是否使用 L 或 W
+     */
+    public static boolean hasDayOfMonthModifier(String field) {
+        return field.indexOf('L') >= 0 || field.indexOf('l') >= 0 || field.indexOf('W') >= 0 || field.indexOf('w') >= 0;
+    }
+
+    /**
+     * @return 星期的欄位是否使用 L 或 # (星期的名稱都不以 L 結尾, "WED" 的 W 不是 modifier)
+     */
+    public static boolean hasDayOfWeekModifier(String field) {
+        if (field.indexOf('#') >= 0) {
+            return true;
+        }
+        for (String item : field.split(",")) {
+            if (item.trim().toUpperCase(Locale.ROOT).endsWith("L")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析日的欄位 (1 ~ 31, L, L-n, nW, LW)
+     */
+    public static DayRule parseDaysOfMonth(String field) {
+        long mask = 0;
+        int count = 0;
+        String[] items = field.split(",");
+        int[] kinds = new int[items.length];
+        int[] values = new int[items.length];
+        for (String raw : items) {
+            String item = raw.trim().toUpperCase(Locale.ROOT);
+            if (item.equals("L")) {
+                kinds[count] = LAST;
+                values[count++] = 0;
+            }
+            else if (item.startsWith("L-")) {
+                kinds[count] = LAST;
+                values[count++] = number(item.substring(2), 0, 30, field);
+            }
+            else if (item.equals("LW")) {
+                kinds[count] = LAST_WEEKDAY;
+                values[count++] = 0;
+            }
+            else if (item.endsWith("W")) {
+                kinds[count] = WEEKDAY;
+                values[count++] = number(item.substring(0, item.length() - 1), 1, 31, field);
+            }
+            else {
+                mask |= CronParser.parseDaysOfMonth(item);
+            }
+        }
+        return new DayRule(false, mask, Arrays.copyOf(kinds, count), Arrays.copyOf(values, count), new int[count]);
+    }
+
+    /**
+     * 解析星期的欄位 (0 ~ 7, SUN ~ SAT, L, xL, x#n)
+     */
+    public static DayRule parseDaysOfWeek(String field) {
+        long mask = 0;
+        int count = 0;
+        String[] items = field.split(",");
+        int[] kinds = new int[items.length];
+        int[] values = new int[items.length];
+        int[] ordinals = new int[items.length];
+        for (String raw : items) {
+            String item = raw.trim().toUpperCase(Locale.ROOT);
+            int hash = item.indexOf('#');
+            if (item.equals("L")) {
+                mask |= 1L << SATURDAY;
+            }
+            else if (hash >= 0) {
+                kinds[count] = NTH_OF_WEEK;
+                values[count] = dayOfWeek(item.substring(0, hash), field);
+                ordinals[count++] = number(item.substring(hash + 1), 1, 5, field);
+            }
+            else if (item.endsWith("L")) {
+                kinds[count] = LAST_OF_WEEK;
+                values[count++] = dayOfWeek(item.substring(0, item.length() - 1), field);
+            }
+            else {
+                mask |= CronParser.parseDaysOfWeek(item);
+            }
+        }
+        return new DayRule(true, mask, Arrays.copyOf(kinds, count), Arrays.copyOf(values, count),
+                Arrays.copyOf(ordinals, count));
+    }
+
+    /**
+     * 該月符合的日期
+     *
+     * @param length 該月的天數
+     * @param firstDayOfWeek 1 日的星期 (0 = SUN ~ 6 = SAT)
+     * @return bit mask (bit n = n 日)
+     */
+    public int days(int length, int firstDayOfWeek) {
+        int days;
+        if (this.dayOfWeek) {
+            // 1 日為星期 first 時, n 日為星期 (first + n - 1) % 7: rotate 後每 7 天重複
+            int week = (int) (((this.mask >>> firstDayOfWeek) | (this.mask << (7 - firstDayOfWeek))) & 0x7F);
+            days = week << 1 | week << 8 | week << 15 | week << 22 | week << 29;
+        }
+        else {
+            days = (int) this.mask;
+        }
+        for (int i = 0; i < this.kinds.length; i++) {
+            int day = this.day(i, length, firstDayOfWeek);
+            if (day >= 1 && day <= length) {
+                days |= 1 << day;
+            }
+        }
+        // 只保留 1 ~ length 日
+        return days & (int) ((1L << (length + 1)) - 2);
+    }
+
+    /**
+     * @return 第 i 個規則在該月的日期 (不存在時回傳 0 或超過 length 的值)
+     */
+    private int day(int i, int length, int first) {
+        int value = this.values[i];
+        switch (this.kinds[i]) {
+            case LAST:
+                return length - value;
+            case WEEKDAY: {
+                if (value > length) {
+                    return 0;
+                }
+                int week = (first + value - 1) % 7;
+                if (week == SATURDAY) {
+                    return value == 1 ? 3 : value - 1;
+                }
+                if (week == SUNDAY) {
+                    return value == length ? value - 2 : value + 1;
+                }
+                return value;
+            }
+            case LAST_WEEKDAY: {
+                int week = (first + length - 1) % 7;
+                return week == SATURDAY ? length - 1 : week == SUNDAY ? length - 2 : length;
+            }
+            case LAST_OF_WEEK: {
+                int week = (first + length - 1) % 7;
+                return length - (week - value + 7) % 7;
+            }
+            default:
+                return 1 + (value - first + 7) % 7 + 7 * (this.ordinals[i] - 1);
+        }
+    }
+
+    private static int dayOfWeek(String item, String field) {
+        long mask = CronParser.parseDaysOfWeek(item);
+        if (Long.bitCount(mask) != 1) {
+            throw new IllegalArgumentException("single day of week required before modifier: '" + field + "'");
+        }
+        return Long.numberOfTrailingZeros(mask);
+    }
+
+    private static int number(String text, int min, int max, String field) {
+        int value;
+        try {
+            value = Integer.parseInt(text);
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid day modifier: '" + field + "'");
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("day modifier out of range (" + min + " ~ " + max + "): '" + field + "'");
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof DayRule)) {
+            return false;
+        }
+        DayRule other = (DayRule) obj;
+        return other.dayOfWeek == this.dayOfWeek && other.mask == this.mask && Arrays.equals(other.kinds, this.kinds)
+                && Arrays.equals(other.values, this.values) && Arrays.equals(other.ordinals, this.ordinals);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Long.hashCode(this.mask) * 31 + Arrays.hashCode(this.kinds);
+        return (h * 31 + Arrays.hashCode(this.values)) * 31 + Arrays.hashCode(this.ordinals);
+    }
+}
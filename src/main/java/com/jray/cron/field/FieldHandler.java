@@ -1,14 +1,29 @@
 package com.jray.cron.field;
 
-import java.util.Calendar;
+import com.jray.cron.EpochCalendar;
 
 /**
  * Created by Jerry on 2014/7/22.
+ *
+ * 單一欄位的處理: 解析欄位, 以及在 calendar 上尋找下一個 (上一個) 符合的值.
+ * 發生異動時由 {@link com.jray.cron.CronEngine} 依 getPrevField() 將較小的欄位重設, 再由第一個欄位重新搜尋.
+ * 同一個 handler 會由多個 thread 同時使用: 實作不可保存搜尋狀態 (狀態只存在於傳入的 calendar 中).
  */
 public interface FieldHandler {
 
+    /**
+     * @return 此欄位對應的 Calendar 欄位 (例如: Calendar.SECOND)
+     */
     public int getField();
+
+    /**
+     * @return 無法推進時進位的 Calendar 欄位 (沒有則為 -1)
+     */
     public int getNextField();  // for 往前推進
+
+    /**
+     * @return 此欄位異動後需要重設的較小 Calendar 欄位 (沒有則為 -1)
+     */
     public int getPrevField();  // for 重新設置
 
 
@@ -22,18 +37,41 @@ public interface FieldHandler {
 
 
     /**
-     * 試圖尋找下一個符合的值
+     * 試圖尋找下一個符合的值 (不足時向下一個欄位進位並取最小的合法值)
      *
      * @param calendar 尋找的起點
      * @param fieldMeta 已解析的 field meta
      * @return 是否找到新的值
      */
-    public boolean seekNext(Calendar calendar, FieldMeta fieldMeta);
-
+    public boolean seekNext(EpochCalendar calendar, FieldMeta fieldMeta);
 
+    /**
+     * 試圖尋找上一個符合的值 (往回找, 不足時向下一個欄位借位並取最大的合法值)
+     *
+     * @param calendar 尋找的起點
+     * @param fieldMeta 已解析的 field meta
+     * @return 是否找到新的值
+     */
+    public boolean seekPrev(EpochCalendar calendar, FieldMeta fieldMeta);
 
+    /**
+     * calendar 目前的值是否符合此欄位 (不搜尋, 用於 {@link com.jray.cron.CronEngine#matches}).
+     *
+     * 預設以 seekNext() 判斷 (不需移動即符合), 不符合時 calendar 可能已被改變; 實作應直接檢查 field meta.
+     *
+     * @param calendar 檢查的時間
+     * @param fieldMeta 已解析的 field meta
+     * @return 是否符合
+     */
+    public default boolean matches(EpochCalendar calendar, FieldMeta fieldMeta) {
+        return !this.seekNext(calendar, fieldMeta);
+    }
 
-    public Object parseField(String fieldExpression);
 
-    public boolean next(Calendar calendar, Object fieldMeta);
+    /**
+     * @param fieldExpression 單一欄位
+     * @return 對應的 field-meta 物件
+     * @throws IllegalArgumentException 語法錯誤
+     */
+    public FieldMeta parseField(String fieldExpression);
 }
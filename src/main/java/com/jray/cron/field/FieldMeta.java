@@ -1,7 +1,162 @@
 package com.jray.cron.field;
 
+import java.util.Arrays;
+
 /**
  * Created by Jerry on 2014/7/24.
+ *
+ * 欄位的解析結果 (不可變): 以 bit mask 記錄允許的值 (bit n = 值 offset + n)
+ *
+ * 建立時預先計算 next / prev 查詢表, nextSetBit() / prevSetBit() 只需讀取一次陣列,
+ * 不論欄位有多少個值 (例如: 年份 1970 ~ 2099) 都不需要逐一搜尋.
  */
 public class FieldMeta {
+
+    /**
+     * 不限制 (所有值都允許, 包含範圍外的值), 例如: 省略年份, 或欄位為 "*" / "?"; engine 不需呼叫該欄位的 handler
+     */
+    public static final FieldMeta ANY = new FieldMeta(new long[] { -1L }, 0, 64, true);
+
+    private final long[] words;
+
+    // 第一個 bit 代表的值
+    private final int offset;
+
+    // 值的個數 (offset ~ offset + size - 1)
+    private final int size;
+
+    private final boolean any;
+
+    // next[i]: 大於或等於 offset + i 的第一個允許值, 沒有則為 -1
+    private final int[] next;
+
+    // prev[i]: 小於或等於 offset + i 的最後一個允許值, 沒有則為 -1
+    private final int[] prev;
+
+    /**
+     * @param mask bit mask (bit n = 值 n, 0 ~ 63)
+     */
+    public FieldMeta(long mask) {
+        this(new long[] { mask }, 0, 64, false);
+    }
+
+    /**
+     * @param words bit mask (bit n = 值 offset + n, 可超過 64 個值)
+     * @param offset 第一個 bit 代表的值
+     * @param size 值的個數
+     */
+    public FieldMeta(long[] words, int offset, int size) {
+        this(words.clone(), offset, size, false);
+    }
+
+    private FieldMeta(long[] words, int offset, int size, boolean any) {
+        if (size <= 0 || size > words.length * 64) {
+            throw new IllegalArgumentException("invalid size " + size + " for " + words.length + " words");
+        }
+        this.words = words;
+        this.offset = offset;
+        this.size = size;
+        this.any = any;
+        this.next = new int[size];
+        this.prev = new int[size];
+        int value = -1;
+        for (int i = size - 1; i >= 0; i--) {
+            if ((words[i >> 6] & (1L << i)) != 0) {
+                value = offset + i;
+            }
+            this.next[i] = value;
+        }
+        value = -1;
+        for (int i = 0; i < size; i++) {
+            if ((words[i >> 6] & (1L << i)) != 0) {
+                value = offset + i;
+            }
+            this.prev[i] = value;
+        }
+    }
+
+    /**
+     * @return bit mask 的第一個 word (值 offset ~ offset + 63)
+     */
+    public long getMask() {
+        return this.words[0];
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public boolean isAny() {
+        return this.any;
+    }
+
+    public boolean get(int value) {
+        if (this.any) {
+            return true;
+        }
+        int index = value - this.offset;
+        return index >= 0 && index < this.size && this.next[index] == value;
+    }
+
+    /**
+     * @param fromIndex 起始值 (含)
+     * @return 下一個允許的值, 找不到則回傳 -1
+     */
+    public int nextSetBit(int fromIndex) {
+        if (this.any) {
+            return fromIndex;
+        }
+        int index = fromIndex - this.offset;
+        if (index < 0) {
+            return this.next[0];
+        }
+        return index < this.size ? this.next[index] : -1;
+    }
+
+    /**
+     * @param fromIndex 起始值 (含)
+     * @return 往回找到的第一個允許的值, 找不到則回傳 -1
+     */
+    public int prevSetBit(int fromIndex) {
+        if (this.any) {
+            return fromIndex;
+        }
+        int index = fromIndex - this.offset;
+        if (index >= this.size) {
+            return this.prev[this.size - 1];
+        }
+        return index >= 0 ? this.prev[index] : -1;
+    }
+
+    /**
+     * @return 最小的允許值, 沒有則回傳 -1
+     */
+    public int first() {
+        return this.next[0];
+    }
+
+    /**
+     * @return 最大的允許值, 沒有則回傳 -1
+     */
+    public int last() {
+        return this.prev[this.size - 1];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof FieldMeta)) {
+            return false;
+        }
+        FieldMeta other = (FieldMeta) obj;
+        return other.any == this.any && other.offset == this.offset && other.size == this.size
+                && Arrays.equals(other.words, this.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(this.words) * 31 + this.offset) * 31 + this.size;
+    }
 }
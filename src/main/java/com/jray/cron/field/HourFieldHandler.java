@@ -0,0 +1,13 @@
+package com.jray.cron.field;
+
+import java.util.Calendar;
+
+/**
+ * 時 (0 ~ 23), cron expression 的第 3 個欄位; 進位時加一天 (保留 wall time, 同 Spring)
+ */
+public class HourFieldHandler extends TimeFieldHandler {
+
+    public HourFieldHandler() {
+        super(Calendar.HOUR_OF_DAY, Calendar.DAY_OF_MONTH, Calendar.MINUTE, 2, 0, 24);
+    }
+}
@@ -0,0 +1,39 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CronParser;
+
+import java.util.Calendar;
+
+/**
+ * 毫秒 (0 ~ 999), 可省略的第 1 個欄位: 只有 8 個欄位 (毫秒 秒 分 時 日 月 星期 年) 時存在, 例如: "*&#47;250 * * * * * ? *".
+ *
+ * 7 個欄位已代表最後為年份, 因此使用毫秒時年份不可省略 (可用 "*"); 其他欄位由 {@link com.jray.cron.CronEngine} 往後一個位置讀取.
+ * 省略或為 "*" 時為 {@link FieldMeta#ANY}: 以秒為單位的 expression 不使用此欄位, 搜尋方式不變.
+ * 其他寫法即使允許所有值 (例如: "*&#47;1", "0-999") 也是以毫秒為單位, 每毫秒觸發.
+ */
+public class MillisecondFieldHandler extends TimeFieldHandler {
+
+    /**
+     * 含毫秒欄位的 expression 的欄位數
+     */
+    public static final int FIELD_COUNT = 8;
+
+    public MillisecondFieldHandler() {
+        super(Calendar.MILLISECOND, Calendar.SECOND, -1, 0, 0, 1000);
+    }
+
+    @Override
+    public FieldMeta parseFields(String[] fields) {
+        if (fields.length < FIELD_COUNT) {
+            return FieldMeta.ANY;
+        }
+        return this.parseField(fields[this.getPosition()]);
+    }
+
+    @Override
+    public FieldMeta parseField(String fieldExpression) {
+        long[] words = CronParser.parseMilliseconds(fieldExpression);
+        // 只有 "*" 同秒為單位的 expression (每秒的第 0 毫秒); "*/1", "0-999" 等明確的範圍為每毫秒
+        return "*".equals(fieldExpression.trim()) ? FieldMeta.ANY : new FieldMeta(words, 0, 1000);
+    }
+}
@@ -0,0 +1,13 @@
+package com.jray.cron.field;
+
+import java.util.Calendar;
+
+/**
+ * 分 (0 ~ 59), cron expression 的第 2 個欄位
+ */
+public class MinuteFieldHandler extends TimeFieldHandler {
+
+    public MinuteFieldHandler() {
+        super(Calendar.MINUTE, Calendar.HOUR_OF_DAY, Calendar.SECOND, 1, 0, 60);
+    }
+}
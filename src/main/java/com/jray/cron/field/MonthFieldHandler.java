@@ -0,0 +1,59 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CronParser;
+import com.jray.cron.EpochCalendar;
+
+import java.util.Calendar;
+
+/**
+ * 月 (1 ~ 12 或 JAN ~ DEC), cron expression 的第 5 個欄位; FieldMeta 以 Calendar.MONTH 的值記錄 (JAN = 0)
+ */
+public class MonthFieldHandler extends AbstractFieldHandler {
+
+    public MonthFieldHandler() {
+        super(Calendar.MONTH, Calendar.YEAR, Calendar.DAY_OF_MONTH, 4);
+    }
+
+    @Override
+    public FieldMeta parseField(String fieldExpression) {
+        long mask = CronParser.parseMonths(fieldExpression);
+        return mask == 0xFFF ? FieldMeta.ANY : new FieldMeta(mask);
+    }
+
+    @Override
+    public boolean seekNext(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        int original = calendar.get(Calendar.MONTH);
+        int nextValue = fieldMeta.nextSetBit(original);
+
+        // 今年沒有符合的月 => 下一年的第一個月
+        if (nextValue == -1) {
+            calendar.set(Calendar.YEAR, calendar.get(Calendar.YEAR) + 1);
+            nextValue = fieldMeta.first();
+        }
+        // 日由 engine reset (在重新計算之前, 不會因為月底而溢位)
+        if (nextValue != original) {
+            calendar.set(Calendar.MONTH, nextValue);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean seekPrev(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        int original = calendar.get(Calendar.MONTH);
+        int prevValue = fieldMeta.prevSetBit(original);
+
+        // 今年沒有符合的月 => 前一年的最後一個月
+        if (prevValue == -1) {
+            calendar.set(Calendar.YEAR, calendar.get(Calendar.YEAR) - 1);
+            prevValue = fieldMeta.last();
+        }
+        if (prevValue != original) {
+            calendar.set(Calendar.MONTH, prevValue);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package com.jray.cron.field;
+
+import com.jray.cron.EpochCalendar;
+
+/**
+ * 日 / 星期使用 L, W 或 # 時的日期 (見 {@link DayRule}).
+ *
+ * 每個月以 {@link DayRule#days(int, int)} 直接算出符合的日期 (日與星期的 bit mask 取 AND),
+ * 不符合的月 / 年直接略過; 搜尋最多 400 年 (格里曆的週期), 超過代表不會再觸發.
+ */
+public class RuleDateFieldMeta extends DateFieldMeta {
+
+    private static final int MAX_MONTHS = 400 * 12;
+
+    private final DayRule daysOfMonth;
+
+    private final DayRule daysOfWeek;
+
+    /**
+     * @param daysOfMonth 日的欄位
+     * @param daysOfWeek 星期的欄位
+     * @param months 月的 bit mask (bit 0 = JAN)
+     * @param years 允許的年份 (null: 不限制)
+     */
+    public RuleDateFieldMeta(DayRule daysOfMonth, DayRule daysOfWeek, int months, long[] years) {
+        super(0xFFFFFFFEL, months, 0x7F, years);
+        this.daysOfMonth = daysOfMonth;
+        this.daysOfWeek = daysOfWeek;
+    }
+
+    @Override
+    public boolean matches(int year, int month, int dayOfMonth, int dayOfWeek) {
+        if ((this.getMonths() & 1 << month) == 0 || (this.getYears() != null && !this.getYears().get(year))) {
+            return false;
+        }
+        int first = (dayOfWeek - (dayOfMonth - 1) % 7 + 7) % 7;
+        return (this.days(year, month, first) & 1 << dayOfMonth) != 0;
+    }
+
+    @Override
+    public long nextDay(long epochDay) {
+
+        int year = EpochCalendar.yearOfDay(epochDay);
+        int dayOfYear = (int) (epochDay - EpochCalendar.daysFromCivil(year, 1, 1));
+        int month = 0;
+        while (dayOfYear >= EpochCalendar.monthLength(year, month)) {
+            dayOfYear -= EpochCalendar.monthLength(year, month++);
+        }
+        int day = dayOfYear + 1;
+        for (int i = 0; i <= MAX_MONTHS; i++) {
+            if (this.getYears() != null && !this.getYears().get(year)) {
+                // 直接跳到下一個允許的年份
+                year = this.getYears().nextSetBit(year + 1);
+                if (year < 0) {
+                    return Long.MIN_VALUE;
+                }
+                month = 0;
+                day = 1;
+            }
+            if ((this.getMonths() & 1 << month) != 0) {
+                long start = EpochCalendar.daysFromCivil(year, month + 1, 1);
+                int days = this.days(year, month, first(start)) & -1 << day;
+                if (days != 0) {
+                    return start + Integer.numberOfTrailingZeros(days) - 1;
+                }
+            }
+            day = 1;
+            if (++month == 12) {
+                month = 0;
+                year++;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    @Override
+    public long prevDay(long epochDay) {
+
+        int year = EpochCalendar.yearOfDay(epochDay);
+        int dayOfYear = (int) (epochDay - EpochCalendar.daysFromCivil(year, 1, 1));
+        int month = 0;
+        while (dayOfYear >= EpochCalendar.monthLength(year, month)) {
+            dayOfYear -= EpochCalendar.monthLength(year, month++);
+        }
+        int day = dayOfYear + 1;
+        for (int i = 0; i <= MAX_MONTHS; i++) {
+            if (this.getYears() != null && !this.getYears().get(year)) {
+                // 直接跳到上一個允許的年份
+                year = this.getYears().prevSetBit(year - 1);
+                if (year < 0) {
+                    return Long.MIN_VALUE;
+                }
+                month = 11;
+                day = 31;
+            }
+            if ((this.getMonths() & 1 << month) != 0) {
+                long start = EpochCalendar.daysFromCivil(year, month + 1, 1);
+                int days = this.days(year, month, first(start)) & (int) ((2L << day) - 1);
+                if (days != 0) {
+                    return start + (31 - Integer.numberOfLeadingZeros(days)) - 1;
+                }
+            }
+            day = 31;
+            if (--month < 0) {
+                month = 11;
+                year--;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * @param first 1 日的星期 (0 = SUN)
+     * @return 該月符合的日期 (bit n = n 日)
+     */
+    private int days(int year, int month, int first) {
+        int length = EpochCalendar.monthLength(year, month);
+        return this.daysOfMonth.days(length, first) & this.daysOfWeek.days(length, first);
+    }
+
+    /**
+     * @return epoch day 的星期 (0 = SUN, 1970-01-01 為星期四)
+     */
+    private static int first(long epochDay) {
+        return (int) ((epochDay % 7 + 11) % 7);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RuleDateFieldMeta)) {
+            return false;
+        }
+        RuleDateFieldMeta other = (RuleDateFieldMeta) obj;
+        return other.daysOfMonth.equals(this.daysOfMonth) && other.daysOfWeek.equals(this.daysOfWeek)
+                && other.getMonths() == this.getMonths()
+                && (other.getYears() == null ? this.getYears() == null : other.getYears().equals(this.getYears()));
+    }
+
+    @Override
+    public int hashCode() {
+        return (this.daysOfMonth.hashCode() * 31 + this.daysOfWeek.hashCode()) * 31 + this.getMonths();
+    }
+}
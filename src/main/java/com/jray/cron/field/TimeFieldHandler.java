@@ -0,0 +1,75 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CronParser;
+import com.jray.cron.EpochCalendar;
+
+/**
+ * 時 / 分 / 秒: 數值範圍固定, 無法推進時向較大的欄位進位一個單位.
+ *
+ * 往後找以絕對時間進位 (同 Spring, 與 CompiledCron.next() 相同); 往回找以 wall time 借位 (同 CompiledCron.prev()).
+ */
+public abstract class TimeFieldHandler extends AbstractFieldHandler {
+
+    private final int min;
+
+    private final int max;
+
+    /**
+     * @param min 最小值 (含)
+     * @param max 最大值 (不含)
+     */
+    protected TimeFieldHandler(int field, int nextField, int prevField, int position, int min, int max) {
+        super(field, nextField, prevField, position);
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public FieldMeta parseField(String fieldExpression) {
+
+        // valid symbol: , / - *
+        long mask = CronParser.parseField(fieldExpression, this.min, this.max);
+        // 所有值都允許 (例如: "*") => 不需搜尋
+        return mask == (-1L >>> (64 - this.max) & -1L << this.min) ? FieldMeta.ANY : new FieldMeta(mask);
+    }
+
+    @Override
+    public boolean seekNext(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        int original = calendar.get(this.getField());
+        int nextValue = fieldMeta.nextSetBit(original);
+
+        // can't find next valid value: advance next-field and search from min
+        if (nextValue == -1) {
+            calendar.add(this.getNextField(), 1);
+            nextValue = fieldMeta.first();
+        }
+
+        // 找到的值與目前不同 => 設定新值 (較小的欄位由 engine reset)
+        if (nextValue != original) {
+            calendar.set(this.getField(), nextValue);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean seekPrev(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        int original = calendar.get(this.getField());
+        int prevValue = fieldMeta.prevSetBit(original);
+
+        // can't find previous valid value: step back next-field (wall time, 不受 DST 影響) and search from max
+        if (prevValue == -1) {
+            calendar.set(this.getNextField(), calendar.get(this.getNextField()) - 1);
+            prevValue = fieldMeta.last();
+        }
+
+        // 找到的值與目前不同 => 設定新值
+        if (prevValue != original) {
+            calendar.set(this.getField(), prevValue);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,73 @@
+package com.jray.cron.field;
+
+import com.jray.cron.CompiledCron;
+import com.jray.cron.CronParser;
+import com.jray.cron.EpochCalendar;
+import com.jray.cron.NoMoreFireTimesException;
+
+import java.util.Calendar;
+
+/**
+ * 年 (1970 ~ 2099), cron expression 的第 7 個欄位 (可省略).
+ *
+ * 省略或為 "*" / "?" 時不限制 ({@link FieldMeta#ANY}, 包含範圍外的年份).
+ */
+public class YearFieldHandler extends AbstractFieldHandler {
+
+    public YearFieldHandler() {
+        super(Calendar.YEAR, -1, Calendar.MONTH, 6);
+    }
+
+    @Override
+    public FieldMeta parseFields(String[] fields) {
+        if (this.getPosition() >= fields.length) {
+            return FieldMeta.ANY;
+        }
+        return this.parseField(fields[this.getPosition()]);
+    }
+
+    @Override
+    public FieldMeta parseField(String fieldExpression) {
+        long[] years = CronParser.parseYears(fieldExpression);
+        if (years == null) {
+            return FieldMeta.ANY;
+        }
+        return new FieldMeta(years, CompiledCron.MIN_YEAR, CompiledCron.MAX_YEAR - CompiledCron.MIN_YEAR + 1);
+    }
+
+    @Override
+    public boolean seekNext(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        if (fieldMeta.isAny()) {
+            return false;
+        }
+        int original = calendar.get(Calendar.YEAR);
+        int nextValue = fieldMeta.nextSetBit(original);
+        if (nextValue == -1) {
+            throw new NoMoreFireTimesException("no allowed year after " + original);
+        }
+        if (nextValue != original) {
+            calendar.set(Calendar.YEAR, nextValue);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean seekPrev(EpochCalendar calendar, FieldMeta fieldMeta) {
+
+        if (fieldMeta.isAny()) {
+            return false;
+        }
+        int original = calendar.get(Calendar.YEAR);
+        int prevValue = fieldMeta.prevSetBit(original);
+        if (prevValue == -1) {
+            throw new NoMoreFireTimesException("no allowed year before " + original);
+        }
+        if (prevValue != original) {
+            calendar.set(Calendar.YEAR, prevValue);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package com.jray.cron.spring;
+
+import com.jray.cron.CronEngine;
+import com.jray.cron.CronExpression;
+import com.jray.cron.NoMoreFireTimesException;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 以 {@link CronEngine} 計算的 {@link Trigger}, 可直接取代 org.springframework.scheduling.support.CronTrigger.
+ *
+ *  1. 建構時即解析 expression, 語法錯誤時丟出 IllegalArgumentException (同 CronTrigger)
+ *  2. 起算時間同 CronTrigger: 上一次完成的時間 (若早於上一次排定的時間則取排定的時間), 沒有執行過時為目前時間
+ *  3. 每次只建立回傳的 {@link Date}
+ *  4. 不會再觸發時 (例如: "0 0 0 1 1 ? 2030" 在 2030 之後) 回傳 null (Trigger 的約定), 不丟出例外
+ *
+ * 與 CronTrigger 不同的結果 (見 {@link com.jray.cron.CompiledCron} 的說明), 例如:
+ *  1. 日期改變時回傳新日期的第一個 fire time: "0,30 0,30 0,12 1 * ?" (UTC) 由 2018-06-18 00:00:21 起為
+ *     2018-07-01 00:00:00, CronTrigger 為 00:00:30; "*&#47;20 *&#47;10 0,12 1 * ?" 由 2022-12-07 12:50:18 起為
+ *     2023-01-01 00:00:00, CronTrigger 為 00:00:20
+ *  2. 符合的日期相隔超過 366 天 (例如: 2/29 跨過 2100 年) 時 CronTrigger 失敗, 此處回傳下一個 fire time
+ *
+ * 預設共用同一個 {@link CronEngine} (thread-safe), 相同的 expression 只解析一次.
+ */
+public class EngineCronTrigger implements Trigger {
+
+    private static final CronEngine DEFAULT_ENGINE = new CronEngine();
+
+    private final CronEngine engine;
+
+    private final CronExpression expression;
+
+    /**
+     * 使用預設時區
+     */
+    public EngineCronTrigger(String expression) {
+        this(expression, TimeZone.getDefault());
+    }
+
+    public EngineCronTrigger(String expression, TimeZone timeZone) {
+        this(DEFAULT_ENGINE, expression, timeZone);
+    }
+
+    /**
+     * @param engine 計算 fire time 的 engine
+     * @param expression cron expression
+     * @param timeZone 時區
+     */
+    public EngineCronTrigger(CronEngine engine, String expression, TimeZone timeZone) {
+        if (engine == null || expression == null || timeZone == null) {
+            throw new IllegalArgumentException("engine, expression and time zone must not be null");
+        }
+        this.engine = engine;
+        this.expression = new CronExpression(expression, timeZone);
+        // 同 CronTrigger: 語法錯誤在建構時發現 (解析結果留在 engine 的 cache)
+        engine.getParseCache().get(expression, timeZone);
+    }
+
+    @Override
+    public Date nextExecutionTime(TriggerContext triggerContext) {
+        Date date = triggerContext.lastCompletionTime();
+        long millis;
+        if (date != null) {
+            millis = date.getTime();
+            Date scheduled = triggerContext.lastScheduledExecutionTime();
+            if (scheduled != null && millis < scheduled.getTime()) {
+                // 提早完成: 由排定的時間起算, 避免同一個 fire time 執行兩次
+                millis = scheduled.getTime();
+            }
+        }
+        else {
+            millis = System.currentTimeMillis();
+        }
+        try {
+            return new Date(this.engine.getNextFireTime(this.expression, millis));
+        }
+        catch (NoMoreFireTimesException ex) {
+            return null;
+        }
+    }
+
+    public String getExpression() {
+        return this.expression.getExpression();
+    }
+
+    public TimeZone getTimeZone() {
+        return this.expression.getTimeZone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof EngineCronTrigger)) {
+            return false;
+        }
+        EngineCronTrigger other = (EngineCronTrigger) obj;
+        return other.engine == this.engine && other.getExpression().equals(this.getExpression())
+                && other.getTimeZone().equals(this.getTimeZone());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.getExpression().hashCode() * 31 + this.getTimeZone().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.getExpression();
+    }
+}
@@ -0,0 +1,167 @@
+package com.jray.cron.spring;
+
+import com.jray.cron.CronEngine;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.CronTrigger;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * {@link TaskScheduler} 的 decorator: 將 {@link CronTrigger} 換成 {@link EngineCronTrigger}, 其他呼叫直接交給原本的 scheduler.
+ *
+ * 以此 bean 取代原本的 TaskScheduler, 既有的 &#64;Scheduled(cron = ...) 不需修改即改用 {@link CronEngine} 計算.
+ *
+ * 時區:
+ *  1. 預設沿用 CronTrigger 自己的時區 (CronTrigger 沒有公開時區, 以 reflection 讀取; &#64;Scheduled 建立的為系統時區)
+ *  2. 無法讀取時區時 (例如: Spring 版本的內部欄位不同) 不轉換, 保留原本的 CronTrigger 並記錄 warning
+ *  3. 建構時指定時區 ({@link #EngineTaskScheduler(TaskScheduler, CronEngine, TimeZone)}) 為明確的覆寫:
+ *     所有 CronTrigger 改用該時區, 與 CronTrigger 自己的時區不同時記錄 info
+ */
+public class EngineTaskScheduler implements TaskScheduler {
+
+    private static final Log LOG = LogFactory.getLog(EngineTaskScheduler.class);
+
+    // CronTrigger.sequenceGenerator, CronSequenceGenerator.timeZone (無法存取時為 null)
+    private static final Field[] TIME_ZONE_FIELDS = timeZoneFields();
+
+    private final TaskScheduler delegate;
+
+    private final CronEngine engine;
+
+    // null: 沿用 CronTrigger 的時區
+    private final TimeZone timeZone;
+
+    /**
+     * 沿用 CronTrigger 的時區
+     */
+    public EngineTaskScheduler(TaskScheduler delegate) {
+        this(delegate, new CronEngine());
+    }
+
+    /**
+     * 沿用 CronTrigger 的時區
+     *
+     * @param delegate 實際執行工作的 scheduler
+     * @param engine 計算 fire time 的 engine
+     */
+    public EngineTaskScheduler(TaskScheduler delegate, CronEngine engine) {
+        if (delegate == null || engine == null) {
+            throw new IllegalArgumentException("delegate and engine must not be null");
+        }
+        this.delegate = delegate;
+        this.engine = engine;
+        this.timeZone = null;
+    }
+
+    /**
+     * 所有 CronTrigger 改用指定的時區 (覆寫 CronTrigger 自己的時區)
+     *
+     * @param delegate 實際執行工作的 scheduler
+     * @param engine 計算 fire time 的 engine
+     * @param timeZone 轉換 CronTrigger 時使用的時區
+     */
+    public EngineTaskScheduler(TaskScheduler delegate, CronEngine engine, TimeZone timeZone) {
+        if (delegate == null || engine == null || timeZone == null) {
+            throw new IllegalArgumentException("delegate, engine and time zone must not be null");
+        }
+        this.delegate = delegate;
+        this.engine = engine;
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * @return 轉換後的 trigger (不是 CronTrigger, 或無法取得 CronTrigger 的時區時回傳 trigger 本身)
+     */
+    public Trigger adapt(Trigger trigger) {
+        if (!(trigger instanceof CronTrigger)) {
+            return trigger;
+        }
+        CronTrigger cronTrigger = (CronTrigger) trigger;
+        String expression = cronTrigger.getExpression();
+        TimeZone timeZone = timeZoneOf(cronTrigger);
+        if (this.timeZone != null) {
+            if (timeZone != null && !timeZone.getID().equals(this.timeZone.getID())) {
+                LOG.info("CronTrigger '" + expression + "' (" + timeZone.getID() + ") scheduled in time zone "
+                        + this.timeZone.getID());
+            }
+            return new EngineCronTrigger(this.engine, expression, this.timeZone);
+        }
+        if (timeZone == null) {
+            LOG.warn("cannot read the time zone of CronTrigger '" + expression + "', keeping the Spring trigger");
+            return trigger;
+        }
+        return new EngineCronTrigger(this.engine, expression, timeZone);
+    }
+
+    /**
+     * @return CronTrigger 的時區 (無法取得時為 null)
+     */
+    static TimeZone timeZoneOf(CronTrigger trigger) {
+        if (TIME_ZONE_FIELDS == null) {
+            return null;
+        }
+        try {
+            Object generator = TIME_ZONE_FIELDS[0].get(trigger);
+            return generator == null ? null : (TimeZone) TIME_ZONE_FIELDS[1].get(generator);
+        }
+        catch (IllegalAccessException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static Field[] timeZoneFields() {
+        try {
+            Field generator = CronTrigger.class.getDeclaredField("sequenceGenerator");
+            Field timeZone = generator.getType().getDeclaredField("timeZone");
+            if (timeZone.getType() != TimeZone.class) {
+                return null;
+            }
+            generator.setAccessible(true);
+            timeZone.setAccessible(true);
+            return new Field[] { generator, timeZone };
+        }
+        catch (NoSuchFieldException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        return this.delegate.schedule(task, this.adapt(trigger));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+        return this.delegate.schedule(task, startTime);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        return this.delegate.scheduleAtFixedRate(task, startTime, period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        return this.delegate.scheduleAtFixedRate(task, period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        return this.delegate.scheduleWithFixedDelay(task, startTime, delay);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        return this.delegate.scheduleWithFixedDelay(task, delay);
+    }
+
+    public TaskScheduler getDelegate() {
+        return this.delegate;
+    }
+}
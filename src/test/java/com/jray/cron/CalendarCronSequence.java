@@ -0,0 +1,233 @@
+package com.jray.cron;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * 以 {@link GregorianCalendar} 實作的原始搜尋演算法 (org.springframework.scheduling.support.CronSequenceGenerator),
+ * 作為測試 {@link CronUtil} 結果的基準.
+ */
+class CalendarCronSequence {
+
+    private final BitSet seconds = new BitSet(60);
+
+    private final BitSet minutes = new BitSet(60);
+
+    private final BitSet hours = new BitSet(24);
+
+    private final BitSet daysOfWeek = new BitSet(7);
+
+    private final BitSet daysOfMonth = new BitSet(31);
+
+    private final BitSet months = new BitSet(12);
+
+    private final String expression;
+
+    private final TimeZone timeZone;
+
+    CalendarCronSequence(String expression, TimeZone timeZone) {
+        this.expression = expression;
+        this.timeZone = timeZone;
+        parse(expression);
+    }
+
+    long next(long millis) {
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTimeZone(this.timeZone);
+        calendar.setTimeInMillis(millis);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long originalTimestamp = calendar.getTimeInMillis();
+        doNext(calendar, calendar.get(Calendar.YEAR));
+        if (calendar.getTimeInMillis() == originalTimestamp) {
+            calendar.add(Calendar.SECOND, 1);
+            doNext(calendar, calendar.get(Calendar.YEAR));
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * @return 指定時間 (整秒) 是否符合 expression
+     */
+    boolean matches(long millis) {
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTimeZone(this.timeZone);
+        calendar.setTimeInMillis(millis);
+        return calendar.get(Calendar.MILLISECOND) == 0 && this.seconds.get(calendar.get(Calendar.SECOND))
+                && this.minutes.get(calendar.get(Calendar.MINUTE)) && this.hours.get(calendar.get(Calendar.HOUR_OF_DAY))
+                && this.daysOfMonth.get(calendar.get(Calendar.DAY_OF_MONTH))
+                && this.daysOfWeek.get(calendar.get(Calendar.DAY_OF_WEEK) - 1)
+                && this.months.get(calendar.get(Calendar.MONTH));
+    }
+
+    private void doNext(Calendar calendar, int baseYear) {
+        List<Integer> resets = new ArrayList<Integer>();
+
+        int second = calendar.get(Calendar.SECOND);
+        int updateSecond = findNext(this.seconds, second, calendar, Calendar.SECOND, Calendar.MINUTE, resets);
+        if (second == updateSecond) {
+            resets.add(Calendar.SECOND);
+        }
+
+        int minute = calendar.get(Calendar.MINUTE);
+        int updateMinute = findNext(this.minutes, minute, calendar, Calendar.MINUTE, Calendar.HOUR_OF_DAY, resets);
+        if (minute == updateMinute) {
+            resets.add(Calendar.MINUTE);
+        }
+        else {
+            doNext(calendar, baseYear);
+            return;
+        }
+
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        int updateHour = findNext(this.hours, hour, calendar, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_WEEK, resets);
+        if (hour == updateHour) {
+            resets.add(Calendar.HOUR_OF_DAY);
+        }
+        else {
+            doNext(calendar, baseYear);
+            return;
+        }
+
+        int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
+        int dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+        int updateDayOfMonth = findNextDay(calendar, this.daysOfMonth, dayOfMonth, daysOfWeek, dayOfWeek, resets);
+        if (dayOfMonth == updateDayOfMonth) {
+            resets.add(Calendar.DAY_OF_MONTH);
+        }
+        else {
+            doNext(calendar, baseYear);
+            return;
+        }
+
+        int month = calendar.get(Calendar.MONTH);
+        int updateMonth = findNext(this.months, month, calendar, Calendar.MONTH, Calendar.YEAR, resets);
+        if (month != updateMonth) {
+            if (calendar.get(Calendar.YEAR) - baseYear > 4) {
+                throw new IllegalArgumentException("Invalid cron expression \"" + this.expression +
+                        "\" led to runaway search for next trigger");
+            }
+            doNext(calendar, baseYear);
+        }
+    }
+
+    private int findNextDay(Calendar calendar, BitSet daysOfMonth, int dayOfMonth, BitSet daysOfWeek, int dayOfWeek,
+                            List<Integer> resets) {
+        int count = 0;
+        int max = 366;
+        while ((!daysOfMonth.get(dayOfMonth) || !daysOfWeek.get(dayOfWeek - 1)) && count++ < max) {
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            dayOfMonth = calendar.get(Calendar.DAY_OF_MONTH);
+            dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
+            reset(calendar, resets);
+        }
+        if (count >= max) {
+            throw new IllegalArgumentException("Overflow in day for expression \"" + this.expression + "\"");
+        }
+        return dayOfMonth;
+    }
+
+    private int findNext(BitSet bits, int value, Calendar calendar, int field, int nextField, List<Integer> lowerOrders) {
+        int nextValue = bits.nextSetBit(value);
+        if (nextValue == -1) {
+            calendar.add(nextField, 1);
+            reset(calendar, Arrays.asList(field));
+            nextValue = bits.nextSetBit(0);
+        }
+        if (nextValue != value) {
+            calendar.set(field, nextValue);
+            reset(calendar, lowerOrders);
+        }
+        return nextValue;
+    }
+
+    private void reset(Calendar calendar, List<Integer> fields) {
+        for (int field : fields) {
+            calendar.set(field, field == Calendar.DAY_OF_MONTH ? 1 : 0);
+        }
+    }
+
+    private void parse(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 6) {
+            throw new IllegalArgumentException("Cron expression must consist of 6 fields: " + expression);
+        }
+        setNumberHits(this.seconds, fields[0], 0, 60);
+        setNumberHits(this.minutes, fields[1], 0, 60);
+        setNumberHits(this.hours, fields[2], 0, 24);
+        setDays(this.daysOfMonth, fields[3], 32);
+        this.daysOfMonth.clear(0);
+        BitSet months = new BitSet(13);
+        setNumberHits(months, replaceOrdinals(fields[4], "FOO,JAN,FEB,MAR,APR,MAY,JUN,JUL,AUG,SEP,OCT,NOV,DEC"), 1, 13);
+        for (int i = 1; i <= 12; i++) {
+            if (months.get(i)) {
+                this.months.set(i - 1);
+            }
+        }
+        setDays(this.daysOfWeek, replaceOrdinals(fields[5], "SUN,MON,TUE,WED,THU,FRI,SAT"), 8);
+        if (this.daysOfWeek.get(7)) {
+            this.daysOfWeek.set(0);
+            this.daysOfWeek.clear(7);
+        }
+    }
+
+    private String replaceOrdinals(String value, String commaSeparatedList) {
+        String[] list = commaSeparatedList.split(",");
+        for (int i = 0; i < list.length; i++) {
+            value = value.toUpperCase().replace(list[i], "" + i);
+        }
+        return value;
+    }
+
+    private void setDays(BitSet bits, String field, int max) {
+        if (field.contains("?")) {
+            field = "*";
+        }
+        setNumberHits(bits, field, 0, max);
+    }
+
+    private void setNumberHits(BitSet bits, String value, int min, int max) {
+        for (String field : value.split(",")) {
+            if (!field.contains("/")) {
+                int[] range = getRange(field, min, max);
+                bits.set(range[0], range[1] + 1);
+            }
+            else {
+                String[] split = field.split("/");
+                int[] range = getRange(split[0], min, max);
+                if (!split[0].contains("-")) {
+                    range[1] = max - 1;
+                }
+                int delta = Integer.parseInt(split[1]);
+                for (int i = range[0]; i <= range[1]; i += delta) {
+                    bits.set(i);
+                }
+            }
+        }
+    }
+
+    private int[] getRange(String field, int min, int max) {
+        int[] result = new int[2];
+        if (field.contains("*")) {
+            result[0] = min;
+            result[1] = max - 1;
+            return result;
+        }
+        if (!field.contains("-")) {
+            result[0] = result[1] = Integer.parseInt(field);
+        }
+        else {
+            String[] split = field.split("-");
+            result[0] = Integer.parseInt(split[0]);
+            result[1] = Integer.parseInt(split[1]);
+        }
+        if (result[0] >= max || result[1] >= max || result[0] < min || result[1] < min) {
+            throw new IllegalArgumentException("Range out of bounds: '" + field + "'");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 寫入後讀回的 schedule 必須與原本相同 (equals 與 next 的結果).
+ */
+public class CompiledCronCodecTest {
+
+    @Test
+    public void testRoundTripThroughMappedFile() throws Exception {
+        Random random = new Random(20140801L);
+        CompiledCron[] schedules = new CompiledCron[1000];
+        for (int i = 0; i < schedules.length; i++) {
+            TimeZone timeZone = TimeZone.getTimeZone(CronUtilTest.ZONES[random.nextInt(CronUtilTest.ZONES.length)]);
+            schedules[i] = CronUtil.compile(CronUtilTest.EXPRESSIONS[random.nextInt(CronUtilTest.EXPRESSIONS.length)], timeZone);
+        }
+        schedules[1] = CronUtil.compile("0 15 10 ? * 6 2000-2040/3", TimeZone.getTimeZone("Asia/Taipei"));
+        schedules[2] = CronUtil.compile("0 0 0 29 2 ? 2030-2040", TimeZone.getTimeZone("UTC"));
+        File file = File.createTempFile("compiled-cron", ".bin");
+        try {
+            CompiledCronCodec.write(schedules, file.toPath());
+            assertEquals(CompiledCronCodec.encodedSize(schedules), file.length());
+            CompiledCronReader reader = CompiledCronReader.open(file.toPath());
+            assertEquals(CompiledCronCodec.VERSION, reader.getVersion());
+            assertEquals(schedules.length, reader.size());
+            long millis = 1414904400000L;
+            long[] out = new long[schedules.length];
+            reader.nextAll(millis, out);
+            for (int i = 0; i < schedules.length; i++) {
+                assertEquals(schedules[i], reader.get(i));
+                assertEquals(schedules[i].getTimeZone().getID(), reader.getTimeZone(i).getID());
+                assertEquals(schedules[i].next(millis), reader.next(i, millis));
+                assertEquals(schedules[i].next(millis), out[i]);
+            }
+            // 同一時區只保留一個 TimeZone, 解碼後的 record 重複使用
+            int shared = 3;
+            while (!schedules[shared].getTimeZone().getID().equals(schedules[0].getTimeZone().getID())) {
+                shared++;
+            }
+            assertSame(reader.getTimeZone(0), reader.getTimeZone(shared));
+            assertSame(reader.get(shared), reader.get(shared));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFixedWidthRecordsAndVersionCheck() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        CompiledCron[] schedules = { CronUtil.compile("0 0 12 * * ?", utc), CronUtil.compile("*/5 * 9-17 * * MON-FRI", utc) };
+        int size = CompiledCronCodec.encodedSize(schedules);
+        // header + zone table ("UTC"), 對齊 8 bytes + 2 筆 record
+        assertEquals(32 + 2 * CompiledCronCodec.RECORD_SIZE, size);
+        // 寫入 buffer 目前的位置
+        ByteBuffer buffer = ByteBuffer.allocate(size + 4);
+        buffer.putInt(0);
+        CompiledCronCodec.write(schedules, buffer);
+        assertEquals(size + 4, buffer.position());
+        buffer.position(4);
+        assertEquals(schedules[1], new CompiledCronReader(buffer).get(1));
+
+        // 較新的版本, 未知的 flags, 不完整的資料
+        ByteBuffer newer = buffer.duplicate();
+        newer.putShort(8, (short) (CompiledCronCodec.VERSION + 1));
+        assertInvalid(newer);
+        ByteBuffer flags = buffer.duplicate();
+        flags.putShort(4 + 32 + 26, (short) 1);
+        try {
+            new CompiledCronReader(flags).get(0);
+            fail("expected unsupported flags");
+        }
+        catch (IllegalArgumentException ex) {
+            // ok
+        }
+        ByteBuffer truncated = buffer.duplicate();
+        truncated.limit(size);
+        assertInvalid(truncated);
+        assertInvalid(ByteBuffer.allocate(64));
+        try {
+            CompiledCronCodec.write(schedules, ByteBuffer.allocate(size - 1));
+            fail("expected small buffer");
+        }
+        catch (IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testTimeZones() {
+        // 自訂時區: 與系統時區不同的 ID, 以及與系統時區同 ID 但規則不同 (沒有夏令時間)
+        TimeZone custom = new SimpleTimeZone(-5 * 3600000, "Custom/Eastern", Calendar.MARCH, 8, -Calendar.SUNDAY,
+                7200000, Calendar.NOVEMBER, 1, -Calendar.SUNDAY, 7200000);
+        TimeZone standard = new SimpleTimeZone(-5 * 3600000, "America/New_York");
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        CompiledCron[] schedules = { CronUtil.compile("0 30 2 * * ?", custom), CronUtil.compile("0 30 2 * * ?", standard),
+                CronUtil.compile("0 30 2 * * ?", utc) };
+        ByteBuffer buffer = ByteBuffer.allocate(CompiledCronCodec.encodedSize(schedules));
+        CompiledCronCodec.write(schedules, buffer);
+        buffer.flip();
+        CompiledCronReader reader = new CompiledCronReader(buffer);
+        assertTrue(reader.getTimeZone(1).hasSameRules(standard));
+        for (long millis = 1394000000000L; millis < 1394600000000L; millis += 3600000L) {
+            for (int i = 0; i < schedules.length; i++) {
+                assertEquals(schedules[i].next(millis), reader.next(i, millis));
+            }
+        }
+
+        // 未知的 time zone ID (不使用 GMT)
+        ByteBuffer unknown = ByteBuffer.allocate(CompiledCronCodec.encodedSize(new CompiledCron[] { schedules[2] }));
+        CompiledCronCodec.write(new CompiledCron[] { schedules[2] }, unknown);
+        unknown.put(CompiledCronCodec.HEADER_SIZE + 2, (byte) 'X');
+        unknown.flip();
+        assertInvalid(unknown);
+
+        // 同 ID 不同規則的時區無法寫入同一個檔案
+        try {
+            CompiledCronCodec.encodedSize(new CompiledCron[] { schedules[1], CronUtil.compile("0 0 0 * * ?",
+                    TimeZone.getTimeZone("America/New_York")) });
+            fail("expected conflicting time zone rules");
+        }
+        catch (IllegalArgumentException ex) {
+            // ok
+        }
+    }
+
+    private static void assertInvalid(ByteBuffer buffer) {
+        try {
+            new CompiledCronReader(buffer);
+            fail("expected invalid data");
+        }
+        catch (IllegalArgumentException ex) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CronDispatcherTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void testConcurrencyLimitPerExpression() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CronDispatcher dispatcher = new CronDispatcher(pool, 2);
+            final CountDownLatch started = new CountDownLatch(2);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(13);
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(current, Math::max);
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            };
+            CronExpression hourly = new CronExpression("0 0 * * * ?", UTC);
+            for (int i = 0; i < 10; i++) {
+                dispatcher.dispatch(hourly, task);
+            }
+            // 前 2 個開始執行, 其餘 8 個等待
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(2, running.get());
+            assertEquals(8, dispatcher.getQueuedCount());
+            // 其他 expression 不受影響: 同樣最多 2 個, 第 3 個等待前 2 個完成
+            final CountDownLatch releaseOther = new CountDownLatch(1);
+            final CountDownLatch other = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                dispatcher.dispatch(new CronExpression("0 * * * * ?", UTC), new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            releaseOther.await();
+                        }
+                        catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        other.countDown();
+                        done.countDown();
+                    }
+                });
+            }
+            assertEquals(9, dispatcher.getQueuedCount());
+            assertEquals(2, dispatcher.getLaneCount());
+            releaseOther.countDown();
+            assertTrue(other.await(5, TimeUnit.SECONDS));
+            assertEquals(2, running.get());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(2, maxRunning.get());
+            // 所有工作完成後不保留 lane
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(0, dispatcher.getLaneCount());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsFallBackToExecutor() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            CronDispatcher dispatcher = CronDispatcher.virtualThreads(CronDispatcher.UNLIMITED, pool);
+            ExecutorService virtual = CronDispatcher.newVirtualThreadExecutor();
+            assertEquals(virtual != null, dispatcher.isVirtualThreads());
+            if (virtual != null) {
+                virtual.shutdown();
+            }
+            final CountDownLatch done = new CountDownLatch(1);
+            dispatcher.dispatch(new CronExpression("* * * * * ?", UTC), new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,9 +1,32 @@
 package com.jray.cron;
 
+import com.jray.cron.field.DayOfWeekFieldHandler;
+import com.jray.cron.field.FieldHandler;
+import com.jray.cron.field.FieldMeta;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 /**
  * Created by Jerry on 2014/7/22.
+ *
+ * 完整 field handler 的 CronEngine 結果必須與 CronUtil 相同.
  */
 public class CronEngineTest {
 
@@ -17,4 +40,506 @@ public class CronEngineTest {
         }
 
     }
+
+    @Test
+    public void testNextMatchesCronUtil() {
+        CronEngine engine = new CronEngine();
+        Random random = new Random(20140729L);
+        for (String zone : CronUtilTest.ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : expressions()) {
+                CronUtil cron = new CronUtil(expression, timeZone);
+                CronExpression cronExpression = new CronExpression(expression, timeZone);
+                for (int i = 0; i < 100; i++) {
+                    long next = CronUtilTest.FROM + (long) (random.nextDouble() * (CronUtilTest.TO - CronUtilTest.FROM));
+                    // 連續呼叫 (包含 DST 轉換附近)
+                    for (int j = 0; j < 5; j++) {
+                        long expected = cron.next(next);
+                        assertEquals(cron + " from " + next, expected, engine.getNextFireTime(cronExpression, next));
+                        next = expected;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAroundDaylightSavingTransitions() {
+        CronEngine engine = new CronEngine();
+        // New York: 2014-03-09 02:00 (gap), 2014-11-02 與 2018-11-04 01:00 (overlap); Sao Paulo: 2008-02-17 00:00 (overlap 跨日)
+        String[] zones = { "America/New_York", "America/New_York", "America/Sao_Paulo", "America/New_York" };
+        long[] transitions = { 1394348400000L, 1414904400000L, 1203213600000L, 1541311200000L };
+        for (String expression : expressions()) {
+            for (int i = 0; i < transitions.length; i++) {
+                TimeZone timeZone = TimeZone.getTimeZone(zones[i]);
+                CronUtil cron = new CronUtil(expression, timeZone);
+                CronExpression cronExpression = new CronExpression(expression, timeZone);
+                // 前後 3 小時, 每 10 分鐘取樣
+                long transition = transitions[i];
+                for (long millis = transition - 3 * 3600000L; millis < transition + 3 * 3600000L; millis += 600000L) {
+                    assertEquals(cron + " from " + millis, cron.next(millis + 1234),
+                            engine.getNextFireTime(cronExpression, millis + 1234));
+                    assertEquals(cron + " before " + millis, cron.prev(millis + 1234),
+                            engine.getPrevFireTime(cronExpression, millis + 1234));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPrevMatchesCronUtil() {
+        CronEngine engine = new CronEngine();
+        Random random = new Random(20140730L);
+        for (String zone : CronUtilTest.ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : expressions()) {
+                CronUtil cron = new CronUtil(expression, timeZone);
+                CronExpression cronExpression = new CronExpression(expression, timeZone);
+                for (int i = 0; i < 100; i++) {
+                    long millis = CronUtilTest.FROM + (long) (random.nextDouble() * (CronUtilTest.TO - CronUtilTest.FROM));
+                    long expected;
+                    try {
+                        expected = cron.prev(millis);
+                    }
+                    catch (IllegalArgumentException ex) {
+                        // 之前沒有符合的年份
+                        assertPrevError(engine, cronExpression, millis);
+                        continue;
+                    }
+                    assertEquals(cron + " before " + millis, expected, engine.getPrevFireTime(cronExpression, millis));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOptionalYearAndErrors() {
+        CronEngine engine = new CronEngine();
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        // 省略年份 => 不限制
+        FieldMeta[] fieldMeta = engine.getParseCache().get("0 0 0 1 1 ?", utc);
+        assertEquals(7, fieldMeta.length);
+        assertSame(FieldMeta.ANY, fieldMeta[6]);
+        // 2099-01-01 之後沒有符合的年份
+        long last = engine.getNextFireTime(new CronExpression("0 0 0 1 1 ? 2030,2099", utc), 1893456000000L);
+        assertEquals(4070908800000L, last);
+        assertError(engine, "0 0 0 1 1 ? 2030,2099", utc, last);
+        try {
+            engine.getNextFireTime(new CronExpression("0 0 0 1 1 ? 2030,2099", utc), last);
+            fail("expected no more fire times");
+        }
+        catch (NoMoreFireTimesException ex) {
+            // ok
+        }
+        // 連續取得時遇到最後一個 fire time 直接結束
+        long[] out = new long[3];
+        assertEquals(2, engine.nextFireTimes(new CronExpression("0 0 0 1 1 ? 2030,2099", utc), 0L, out, 3));
+        assertArrayEquals(new long[] { 1893456000000L, last, Long.MIN_VALUE }, out);
+        assertEquals(2, engine.fireTimes(new CronExpression("0 0 0 1 1 ? 2030,2099", utc), 0L, Long.MAX_VALUE).count());
+        // 不存在的日期 (不是 "不會再觸發")
+        try {
+            engine.getNextFireTime(new CronExpression("0 0 0 30 2 ? 2030", utc), 0L);
+            fail("expected runaway search");
+        }
+        catch (IllegalArgumentException ex) {
+            assertFalse(ex instanceof NoMoreFireTimesException);
+        }
+        assertError(engine, "0 0 0 30 2 ?", utc, 0L);
+        assertError(engine, "0 0 0 1 1", utc, 0L);
+        assertError(engine, "0 0 0 1 1 ? * 1", utc, 0L);
+        assertError(engine, "0 0 0 1 13 ?", utc, 0L);
+    }
+
+    @Test
+    public void testCustomDateFieldHandler() {
+        // Quartz 的星期 (1 = SUN ~ 7 = SAT): 自訂的 handler 不合併到日期表, 由其自行解析與搜尋
+        FieldHandler[] handlers = CronEngine.defaultFieldHandlers();
+        handlers[5] = new DayOfWeekFieldHandler() {
+            @Override
+            public FieldMeta parseField(String fieldExpression) {
+                FieldMeta fieldMeta = super.parseField(fieldExpression);
+                long mask = fieldMeta.getMask();
+                return fieldMeta.isAny() ? fieldMeta : new FieldMeta(mask >>> 1 | (mask & 1) << 6);
+            }
+        };
+        CronEngine quartz = new CronEngine(handlers);
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        long from = 1405987200000L; // 2014-07-22 (二)
+        CronExpression monday = new CronExpression("0 0 12 ? * 2", utc);
+        assertEquals(1406548800000L, quartz.getNextFireTime(monday, from)); // 2014-07-28 (一)
+        assertEquals(1405944000000L, quartz.getPrevFireTime(monday, from)); // 2014-07-21 (一)
+        assertTrue(quartz.matches(monday, 1406548800000L));
+        assertEquals(1406030400000L, new CronEngine().getNextFireTime(new CronExpression("0 0 12 ? * 2", utc), from));
+        // 月 / 年仍與日合併
+        CronExpression saturday = new CronExpression("0 0 12 ? FEB 7 2015", utc);
+        assertEquals(1424520000000L, quartz.getNextFireTime(saturday, 1424476800000L)); // 2015-02-21 (六)
+        assertEquals(1425124800000L, quartz.getNextFireTime(saturday, 1424520000000L)); // 2015-02-28 (六)
+        try {
+            quartz.getNextFireTime(saturday, 1425124800000L);
+            fail("expected no more fire times");
+        }
+        catch (NoMoreFireTimesException ex) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws Exception {
+        // 多個 thread 共用同一個 engine 與 expression (尚未解析), 另一個 engine 也交替使用相同的 expression
+        final CronEngine engine = new CronEngine();
+        final CronEngine other = new CronEngine();
+        final TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        final String[] expressions = expressions();
+        final CronExpression[] shared = new CronExpression[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            shared[i] = new CronExpression(expressions[i], timeZone);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 16; t++) {
+                final Random random = new Random(20140730L + t);
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 500; i++) {
+                            int index = random.nextInt(expressions.length);
+                            long millis = CronUtilTest.FROM + (long) (random.nextDouble() * (CronUtilTest.TO - CronUtilTest.FROM));
+                            CronEngine current = (i & 7) == 0 ? other : engine;
+                            assertEquals(expressions[index] + " from " + millis,
+                                    new CronUtil(expressions[index], timeZone).next(millis),
+                                    current.getNextFireTime(shared[index], millis));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Quartz 的 L / W / #: 與逐日檢查的結果相同 (規則以另一種定義實作: 例如 W = 同月中距離最近的平日)
+     */
+    @Test
+    public void testQuartzDayModifiers() {
+        CronEngine engine = new CronEngine();
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        String[] expressions = { "0 0 0 L * ?", "0 0 0 L-3 * ?", "0 0 0 15W * ?", "0 0 0 1W * ?", "0 0 0 31W * ?",
+                "0 0 0 LW * ?", "0 0 0 ? * 5L", "0 0 0 ? * FRI#3", "0 0 0 ? * 1#5", "0 0 0 1,L * ?",
+                "0 0 0 L * MON", "0 0 0 ? * sun#5,3L 2016-2020", "0 0 0 lw 2,8 ?" };
+        GregorianCalendar day = new GregorianCalendar(utc);
+        day.clear();
+        day.set(2014, Calendar.JANUARY, 1);
+        long from = day.getTimeInMillis();
+        for (int rule = 0; rule < expressions.length; rule++) {
+            CronExpression expression = new CronExpression(expressions[rule], utc);
+            // 逐日找出 2014 ~ 2021 年符合的日期
+            List<Long> expected = new ArrayList<Long>();
+            day.setTimeInMillis(from);
+            while (day.get(Calendar.YEAR) < 2022) {
+                if (matches(rule, day)) {
+                    expected.add(day.getTimeInMillis());
+                }
+                day.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            long next = from - 1000L;
+            for (long millis : expected) {
+                next = engine.getNextFireTime(expression, next);
+                assertEquals(expressions[rule], millis, next);
+                if (millis > expected.get(0)) {
+                    assertEquals(expressions[rule], expected.get(expected.indexOf(millis) - 1).longValue(),
+                            engine.getPrevFireTime(expression, millis));
+                }
+            }
+        }
+        // 已知的日期: 2014-11-15 (六) => 11/14, 2014-11-01 (六) => 11/03, 2014-08-31 (日) => LW 為 8/29
+        assertEquals(1415923200000L, engine.getNextFireTime(new CronExpression("0 0 0 15W 11 ?", utc), 1414800000000L));
+        assertEquals(1414972800000L, engine.getNextFireTime(new CronExpression("0 0 0 1W 11 ?", utc), 1412121600000L));
+        assertEquals(1409270400000L, engine.getNextFireTime(new CronExpression("0 0 0 LW 8 ?", utc), 1404172800000L));
+        assertError(engine, "0 0 0 32W * ?", utc, 0L);
+        assertError(engine, "0 0 0 ? * MON#6", utc, 0L);
+        assertError(engine, "0 0 0 ? * MON-FRI#2", utc, 0L);
+        assertError(engine, "0 0 0 30W 2 ?", utc, 0L);
+    }
+
+    /**
+     * 毫秒欄位: 與逐毫秒檢查的結果相同 (含 DST 重複的時段); 以秒為單位的 expression 結果不變
+     */
+    @Test
+    public void testMillisecondField() {
+        CronEngine engine = new CronEngine(CronEngine.millisecondFieldHandlers());
+        String[] expressions = { "*/250 * * * * * ? *", "0,500 30 * * * * ? *", "250,750 */20 * * * * ? *",
+                "100-102 0 */2 * * * ? *" };
+        // 2014-11-02 05:58 ~ 06:04 UTC
+        long from = 1414907880000L;
+        long to = from + 6 * 60000L;
+        for (String zone : new String[] { "UTC", "Asia/Kolkata", "America/New_York" }) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (int rule = 0; rule < expressions.length; rule++) {
+                CronExpression expression = new CronExpression(expressions[rule], timeZone);
+                List<Long> expected = new ArrayList<Long>();
+                for (long millis = from; millis < to; millis++) {
+                    if (matches(rule, millis)) {
+                        expected.add(millis);
+                    }
+                }
+                long[] out = new long[expected.size()];
+                engine.nextFireTimes(expression, from - 1, out, out.length);
+                long prev = to;
+                for (int i = out.length - 1; i >= 0; i--) {
+                    assertEquals(expressions[rule] + " @ " + zone, expected.get(i).longValue(), out[i]);
+                    assertEquals(expressions[rule] + " @ " + zone, out[i], engine.getNextFireTime(expression, out[i] - 1));
+                    prev = engine.getPrevFireTime(expression, prev);
+                    assertEquals(expressions[rule] + " @ " + zone, out[i], prev);
+                }
+            }
+        }
+        // America/New_York 於 2014-11-02 06:00 UTC 結束 DST (01:00 ~ 02:00 重複): 由重複時段內的任意毫秒起,
+        // next() 為之後第一個符合的時間 (兩次 01:00 ~ 02:00 都觸發), 依時間遞增
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        CronExpression quarter = new CronExpression(expressions[0], newYork);
+        assertEquals(1414904849500L, engine.getNextFireTime(quarter, 1414904849343L));
+        assertEquals(1414904849500L, engine.getNextFireTime(quarter, 1414904849499L));
+        Random overlap = new Random(20141102L);
+        for (int rule = 0; rule < expressions.length; rule++) {
+            CronExpression expression = new CronExpression(expressions[rule], newYork);
+            long last = Long.MIN_VALUE;
+            // 05:00 ~ 07:00 UTC (01:00 EDT ~ 02:00 EST), 由不是整秒的時間開始
+            for (long millis = 1414904400000L + overlap.nextInt(1000); millis < 1414911600000L; millis += overlap.nextInt(60000)) {
+                long expected = millis + 1;
+                while (!matches(rule, expected)) {
+                    expected++;
+                }
+                long next = engine.getNextFireTime(expression, millis);
+                assertEquals(expressions[rule] + " from " + millis, expected, next);
+                assertTrue(expressions[rule], next >= last);
+                assertTrue(expressions[rule], engine.matches(expression, next));
+                assertEquals(expressions[rule], next, engine.getPrevFireTime(expression, next + 1));
+                last = next;
+            }
+        }
+        // 毫秒為 0 時, 除了 offset 轉換附近都同以秒為單位的 expression; 重複的時段以秒為單位的 expression 同 Spring 略過
+        CronEngine seconds = new CronEngine();
+        String[][] pairs = { { "0 */7 * * * * ? *", "*/7 * * * * ?" }, { "0 0 30 * * * ? *", "0 30 * * * ?" } };
+        for (String[] pair : pairs) {
+            CronExpression millisecond = new CronExpression(pair[0], newYork);
+            CronExpression second = new CronExpression(pair[1], newYork);
+            for (long millis = from - 5 * 86400000L; millis < from - 2 * 86400000L; millis += 7919L * 13) {
+                assertEquals(pair[0], seconds.getNextFireTime(second, millis), engine.getNextFireTime(millisecond, millis));
+            }
+        }
+        // 2014-11-02 01:59:59.387 EDT: 01:00:30 EST 與 02:00:30 EST
+        assertEquals(1414908030000L, engine.getNextFireTime(new CronExpression("0 30 * * * * ? *", newYork), 1414907999387L));
+        assertEquals(1414911630000L, seconds.getNextFireTime(new CronExpression("30 * * * * ?", newYork), 1414907999387L));
+        // 秒改變時毫秒重設: 12:00:10.600 => 12:00:30.250
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        assertEquals(1412164830250L, engine.getNextFireTime(new CronExpression("250,750 30 * * * * ? *", utc), 1412164810600L));
+        // 以秒為單位 (6 或 7 個欄位, 或毫秒為 "*"): 同預設的 engine
+        Random random = new Random(20140730L);
+        for (String expression : expressions()) {
+            CronExpression cronExpression = new CronExpression(expression, utc);
+            for (int i = 0; i < 100; i++) {
+                long millis = CronUtilTest.FROM + (long) (random.nextDouble() * (CronUtilTest.TO - CronUtilTest.FROM));
+                assertEquals(expression, seconds.getNextFireTime(cronExpression, millis), engine.getNextFireTime(cronExpression, millis));
+            }
+        }
+        assertEquals(1412164811000L, engine.getNextFireTime(new CronExpression("* * * * * * ? *", utc), 1412164810600L));
+        // 明確允許所有毫秒的寫法為每毫秒, 不是以秒為單位
+        for (String expression : new String[] { "*/1 * * * * * ? *", "0-999 * * * * * ? *" }) {
+            CronExpression everyMillisecond = new CronExpression(expression, utc);
+            assertEquals(expression, 1L, engine.getUnit(everyMillisecond));
+            assertEquals(expression, 1412164810601L, engine.getNextFireTime(everyMillisecond, 1412164810600L));
+            assertEquals(expression, 1412164810999L, engine.getPrevFireTime(everyMillisecond, 1412164811000L));
+            assertTrue(expression, engine.matches(everyMillisecond, 1412164810601L));
+        }
+        assertEquals(1000L, engine.getUnit(new CronExpression("* * * * * * ? *", utc)));
+        assertError(engine, "1000 * * * * * ? *", utc, 0L);
+        assertError(engine, "0 0 * * * * ? * *", utc, 0L);
+        assertError(seconds, "0 0 0 0 1 1 ? *", utc, 0L);
+    }
+
+    @Test
+    public void testMatchesEquivalentToNext() {
+        CronEngine engine = new CronEngine();
+        CronEngine milliseconds = new CronEngine(CronEngine.millisecondFieldHandlers());
+        String[] expressions = expressions();
+        String[] modifiers = { "0 0 0 L * ?", "0 30 12 15W * ?", "0 0 6 ? * 5L", "0 0 0 ? * FRI#3 2016-2020",
+                "*/250 * * * * * ? *", "0,500 30 * * * * ? *", "100-102 0 */2 * * * ? *" };
+        Random random = new Random(20141018L);
+        long[] instants = new long[8];
+        boolean[] out = new boolean[instants.length];
+        for (String zone : CronUtilTest.ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (int e = 0; e < expressions.length + modifiers.length; e++) {
+                CronEngine target = e < expressions.length + 4 ? engine : milliseconds;
+                CronExpression expression = new CronExpression(
+                        e < expressions.length ? expressions[e] : modifiers[e - expressions.length], timeZone);
+                for (int i = 0; i < 50; i++) {
+                    // fire time 與附近的時間
+                    long millis = CronUtilTest.FROM + (long) (random.nextDouble() * (CronUtilTest.TO - CronUtilTest.FROM));
+                    long fireTime;
+                    try {
+                        fireTime = target.getNextFireTime(expression, millis);
+                    }
+                    catch (IllegalArgumentException ex) {
+                        // 之後沒有符合的年份
+                        assertFalse(target.matches(expression, millis / 1000 * 1000));
+                        continue;
+                    }
+                    long[] offsets = { 0, -1000, 1000, 1, -1, 250, 3600000, 86400000 };
+                    for (int j = 0; j < instants.length; j++) {
+                        instants[j] = fireTime + offsets[j];
+                    }
+                    assertMatches(target, expression, instants, out);
+                    assertTrue(expression.getExpression(), out[0]);
+                }
+            }
+        }
+        // DST 轉換前後 3 小時, 每 10 秒取樣 (New York: gap / overlap; Sao Paulo: overlap 跨日)
+        String[] zones = { "America/New_York", "America/New_York", "America/Sao_Paulo" };
+        long[] transitions = { 1394348400000L, 1414908000000L, 1203213600000L };
+        instants = new long[6 * 3600 / 10];
+        out = new boolean[instants.length];
+        for (int i = 0; i < transitions.length; i++) {
+            TimeZone timeZone = TimeZone.getTimeZone(zones[i]);
+            for (int j = 0; j < instants.length; j++) {
+                instants[j] = transitions[i] - 3 * 3600000L + j * 10000L;
+            }
+            for (String expression : expressions) {
+                assertMatches(engine, new CronExpression(expression, timeZone), instants, out);
+            }
+            assertMatches(milliseconds, new CronExpression("0 0 30 * * * ? *", timeZone), instants, out);
+        }
+    }
+
+    private static void assertMatches(CronEngine engine, CronExpression expression, long[] instants, boolean[] out) {
+        int count = engine.matches(expression, instants, out);
+        int expected = 0;
+        for (int i = 0; i < instants.length; i++) {
+            boolean matches;
+            try {
+                matches = engine.getNextFireTime(expression, instants[i] - 1) == instants[i];
+            }
+            catch (IllegalArgumentException ex) {
+                // 之後不會再觸發
+                matches = false;
+            }
+            String message = expression.getExpression() + " @ " + expression.getTimeZone().getID() + " at " + instants[i];
+            assertEquals(message, matches, out[i]);
+            assertEquals(message, matches, engine.matches(expression, instants[i]));
+            if (matches) {
+                expected++;
+            }
+        }
+        assertEquals(expression.getExpression(), expected, count);
+    }
+
+    private static boolean matches(int rule, long millis) {
+        // 測試的時區 offset 皆為 30 分的倍數: 毫秒 / 秒 / 分的奇偶與 UTC 相同
+        int millisecond = (int) (millis % 1000);
+        int second = (int) (millis / 1000 % 60);
+        int minute = (int) (millis / 60000 % 60);
+        switch (rule) {
+            case 0:
+                return millisecond % 250 == 0;
+            case 1:
+                return (millisecond == 0 || millisecond == 500) && second == 30;
+            case 2:
+                return (millisecond == 250 || millisecond == 750) && second % 20 == 0;
+            default:
+                return millisecond >= 100 && millisecond <= 102 && second == 0 && minute % 2 == 0;
+        }
+    }
+
+    private static boolean matches(int rule, GregorianCalendar day) {
+        int dayOfMonth = day.get(Calendar.DAY_OF_MONTH);
+        int last = day.getActualMaximum(Calendar.DAY_OF_MONTH);
+        int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+        int month = day.get(Calendar.MONTH);
+        // 同月的第幾個星期 x
+        int ordinal = (dayOfMonth - 1) / 7 + 1;
+        boolean lastOfWeek = dayOfMonth + 7 > last;
+        switch (rule) {
+            case 0:
+                return dayOfMonth == last;
+            case 1:
+                return dayOfMonth == last - 3;
+            case 2:
+                return dayOfMonth == nearestWeekday(day, 15);
+            case 3:
+                return dayOfMonth == nearestWeekday(day, 1);
+            case 4:
+                return last == 31 && dayOfMonth == nearestWeekday(day, 31);
+            case 5:
+                return dayOfMonth == nearestWeekday(day, last);
+            case 6:
+                return dayOfWeek == Calendar.FRIDAY && lastOfWeek;
+            case 7:
+                return dayOfWeek == Calendar.FRIDAY && ordinal == 3;
+            case 8:
+                return dayOfWeek == Calendar.MONDAY && ordinal == 5;
+            case 9:
+                return dayOfMonth == 1 || dayOfMonth == last;
+            case 10:
+                return dayOfMonth == last && dayOfWeek == Calendar.MONDAY;
+            case 11:
+                int year = day.get(Calendar.YEAR);
+                return year >= 2016 && year <= 2020 && (dayOfWeek == Calendar.SUNDAY && ordinal == 5
+                        || dayOfWeek == Calendar.WEDNESDAY && lastOfWeek);
+            default:
+                return (month == Calendar.FEBRUARY || month == Calendar.AUGUST) && dayOfMonth == nearestWeekday(day, last);
+        }
+    }
+
+    /**
+     * @return 同月中距離 target 最近的平日
+     */
+    private static int nearestWeekday(GregorianCalendar day, int target) {
+        GregorianCalendar probe = (GregorianCalendar) day.clone();
+        int best = -1;
+        for (int d = 1; d <= day.getActualMaximum(Calendar.DAY_OF_MONTH); d++) {
+            probe.set(Calendar.DAY_OF_MONTH, d);
+            int week = probe.get(Calendar.DAY_OF_WEEK);
+            if (week != Calendar.SATURDAY && week != Calendar.SUNDAY
+                    && (best < 0 || Math.abs(d - target) < Math.abs(best - target))) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    private static void assertError(CronEngine engine, String expression, TimeZone timeZone, long millis) {
+        try {
+            engine.getNextFireTime(new CronExpression(expression, timeZone), millis);
+            fail("expected error: " + expression);
+        }
+        catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private static void assertPrevError(CronEngine engine, CronExpression expression, long millis) {
+        try {
+            engine.getPrevFireTime(expression, millis);
+            fail("expected error: " + expression.getExpression() + " before " + millis);
+        }
+        catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private static String[] expressions() {
+        String[] expressions = new String[CronUtilTest.EXPRESSIONS.length + 3];
+        System.arraycopy(CronUtilTest.EXPRESSIONS, 0, expressions, 0, CronUtilTest.EXPRESSIONS.length);
+        expressions[expressions.length - 3] = "0,30 5 * * * ?";
+        expressions[expressions.length - 2] = "0 0 0 29 2 MON";
+        expressions[expressions.length - 1] = "0 15 10 ? * 6 2000-2040/3";
+        return expressions;
+    }
 }
@@ -0,0 +1,146 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class CronIndexTest {
+
+    @Test
+    public void testFiringAtMatchesEverySchedule() {
+        CronIndex index = new CronIndex();
+        List<CompiledCron> schedules = new ArrayList<CompiledCron>();
+        for (String zone : CronUtilTest.ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : CronUtilTest.EXPRESSIONS) {
+                CompiledCron schedule = CronUtil.compile(expression, timeZone);
+                assertEquals(schedules.size(), index.add(schedule));
+                schedules.add(schedule);
+            }
+        }
+        Random random = new Random(20140727L);
+        for (int i = 0; i < 2000; i++) {
+            // 以某個 schedule 的 fire time 為查詢時間, 確保有觸發的 schedule
+            long millis = CronUtilTest.FROM + (long) (random.nextDouble() * (CronUtilTest.TO - CronUtilTest.FROM));
+            try {
+                millis = schedules.get(random.nextInt(schedules.size())).next(millis);
+            }
+            catch (IllegalArgumentException ex) {
+                // 搜尋超過 366 天 (例如: 13 號星期五)
+                millis -= millis % 1000;
+            }
+            assertFiring(schedules, index.firingAt(millis), millis);
+        }
+        // DST 轉換前後每 10 分鐘 (New York, Lord Howe: 30 分鐘的 DST)
+        long[] transitions = { 1394348400000L, 1414908000000L, 1396710000000L, 1412436600000L };
+        for (long transition : transitions) {
+            for (long millis = transition - 3 * 3600000L; millis < transition + 3 * 3600000L; millis += 600000L) {
+                assertFiring(schedules, index.firingAt(millis), millis);
+            }
+        }
+    }
+
+    @Test
+    public void testDaylightSavingTransitions() {
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        CronIndex index = new CronIndex();
+        int id = index.add(CronUtil.compile("0 30 2 * * ?", newYork));
+        int repeated = index.add(CronUtil.compile("0 30 1 * * ?", newYork));
+        // 2014-03-09 02:30 不存在: next() 同 Spring 略過當天 (03:30 EDT 不觸發), 下一次為 03-10 02:30 EDT
+        assertEquals(1394433000000L, CronUtil.compile("0 30 2 * * ?", newYork).next(1394344800000L));
+        assertEquals(new BitSet(), index.firingAt(1394350200000L));
+        assertEquals(bits(id), index.firingAt(1394433000000L));
+        // 2014-11-02 01:30 重複: 只有 next() 產生的時間點 (01:30 EST, 06:30 UTC) 觸發
+        assertEquals(new BitSet(), index.firingAt(1414906200000L));
+        assertEquals(bits(repeated), index.firingAt(1414909800000L));
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        CronIndex index = new CronIndex();
+        int hourly = index.add(CronUtil.compile("0 0 * * * ?", utc));
+        int daily = index.add(CronUtil.compile("0 0 0 * * ?", utc));
+        int taipei = index.add(CronUtil.compile("0 0 8 * * ?", TimeZone.getTimeZone("Asia/Taipei")));
+        // 2014-07-27 00:00:00 UTC
+        long midnight = 1406419200000L;
+        assertEquals(bits(hourly, daily, taipei), index.firingAt(midnight));
+        assertEquals(bits(hourly), index.firingAt(midnight + 3600000L));
+        assertEquals(new BitSet(), index.firingAt(midnight + 1000L));
+
+        index.remove(daily);
+        assertEquals(bits(hourly, taipei), index.firingAt(midnight));
+        index.replace(taipei, CronUtil.compile("0 0 9 * * ?", TimeZone.getTimeZone("Asia/Taipei")));
+        assertEquals(bits(hourly), index.firingAt(midnight));
+        assertEquals(bits(hourly, taipei), index.firingAt(midnight + 3600000L));
+        // id 重複使用
+        assertEquals(daily, index.add(CronUtil.compile("0 0 0 * * ?", utc)));
+        assertEquals(3, index.size());
+
+        // 超過一個 word
+        for (int i = 0; i < 200; i++) {
+            index.add(CronUtil.compile("0 0 0 * * ?", utc));
+        }
+        assertEquals(203 - 1, index.firingAt(midnight).cardinality());
+    }
+
+    @Test
+    public void testYears() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        CronIndex index = new CronIndex();
+        int any = index.add(CronUtil.compile("0 0 0 * * ?", utc));
+        int only2014 = index.add(CronUtil.compile("0 0 0 * * ? 2014", utc));
+        int later = index.add(CronUtil.compile("0 0 0 * * ? 2015-2099", utc));
+        // 2014-07-27, 2015-07-27, 2100-01-01
+        assertEquals(bits(any, only2014), index.firingAt(1406419200000L));
+        assertEquals(bits(any, later), index.firingAt(1437955200000L));
+        assertEquals(bits(any), index.firingAt(4102444800000L));
+        index.remove(only2014);
+        assertEquals(bits(any), index.firingAt(1406419200000L));
+    }
+
+    @Test
+    public void testCustomZoneWithSystemId() {
+        // 使用系統時區 ID 但規則不同 (+01:00) 的自訂 TimeZone 不可與 New York 視為同一時區
+        CronIndex index = new CronIndex();
+        int newYork = index.add(CronUtil.compile("0 0 12 * * ?", TimeZone.getTimeZone("America/New_York")));
+        int custom = index.add(CronUtil.compile("0 0 12 * * ?", new SimpleTimeZone(3600000, "America/New_York")));
+        // 2023-11-15 11:00 UTC, 17:00 UTC
+        assertEquals(bits(custom), index.firingAt(1700046000000L));
+        assertEquals(bits(newYork), index.firingAt(1700067600000L));
+        index.remove(newYork);
+        assertEquals(bits(custom), index.firingAt(1700046000000L));
+        assertEquals(new BitSet(), index.firingAt(1700067600000L));
+    }
+
+    private static BitSet bits(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return bits;
+    }
+
+    // 與 next() 比較: 觸發 <=> next(millis - 1) == millis
+    private static void assertFiring(List<CompiledCron> schedules, BitSet actual, long millis) {
+        for (int id = 0; id < schedules.size(); id++) {
+            boolean expected;
+            try {
+                expected = schedules.get(id).next(millis - 1) == millis;
+            }
+            catch (IllegalArgumentException ex) {
+                // 之後不會再觸發
+                expected = false;
+            }
+            assertEquals("schedule " + id + " at " + millis, expected, actual.get(id));
+        }
+        assertEquals(actual.length() <= schedules.size(), true);
+    }
+}
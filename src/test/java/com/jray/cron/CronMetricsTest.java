@@ -0,0 +1,67 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CronMetricsTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void testCronUtilReportsParseAndSearch() {
+        HistogramCronMetrics metrics = new HistogramCronMetrics();
+        CronUtil.setMetrics(metrics);
+        try {
+            // 2/29: 逐日搜尋最多 (跨月, 跨年)
+            CronUtil leapDay = new CronUtil("1 2 3 29 2 ?", UTC);
+            CronUtil hourly = new CronUtil("3 2 * * * ?", UTC);
+            assertEquals(2, metrics.getParseNanos().getCount());
+
+            CalendarCronSequence expected = new CalendarCronSequence("1 2 3 29 2 ?", UTC);
+            long next = CronUtilTest.FROM;
+            for (int i = 0; i < 20; i++) {
+                long actual = leapDay.next(next);
+                assertEquals(expected.next(next), actual);
+                next = actual;
+                hourly.next(next);
+            }
+            assertEquals(40, metrics.getSearchNanos().getCount());
+            assertTrue(metrics.getIterations().getMax() > 1);
+            assertTrue(metrics.getMaxDepth() > 1);
+            assertTrue(metrics.getDayScanSteps().getMax() > 31);
+            assertTrue(metrics.getSearchNanos().getPercentile(0.5) <= metrics.getSearchNanos().getMax());
+
+            List<HistogramCronMetrics.ExpressionStats> slowest = metrics.getSlowestExpressions(10);
+            assertEquals(2, slowest.size());
+            for (HistogramCronMetrics.ExpressionStats stats : slowest) {
+                assertEquals(20, stats.getCount());
+                assertEquals(stats.getExpression().equals("1 2 3 29 2 ?"), stats.getMaxDayScanSteps() > 31);
+            }
+        }
+        finally {
+            CronUtil.setMetrics(null);
+        }
+        assertSame(CronMetrics.NONE, CronUtil.getMetrics());
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        HistogramCronMetrics.Histogram histogram = new HistogramCronMetrics.Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        // 50 位於 [32, 64)
+        assertEquals(63, histogram.getPercentile(0.5));
+        assertEquals(100, histogram.getPercentile(0.99));
+        assertEquals(1, histogram.getPercentile(0.01));
+    }
+}
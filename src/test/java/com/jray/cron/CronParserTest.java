@@ -0,0 +1,92 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CronParserTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void testFieldSyntax() {
+        CompiledCron cron = CronParser.parse("0,30 */15 9-17 1-10/3 JAN,jun-Aug MON-FRI", UTC);
+        assertEquals((1L << 0) | (1L << 30), cron.getSeconds());
+        assertEquals((1L << 0) | (1L << 15) | (1L << 30) | (1L << 45), cron.getMinutes());
+        assertEquals(0x3FE00, cron.getHours());
+        assertEquals((1 << 1) | (1 << 4) | (1 << 7) | (1 << 10), cron.getDaysOfMonth());
+        // 月: bit 0 = JAN
+        assertEquals((1 << 0) | (1 << 5) | (1 << 6) | (1 << 7), cron.getMonths());
+        assertEquals(0x3E, cron.getDaysOfWeek());
+        assertNull(cron.getYears());
+
+        // 同 Spring: 日的 "*/5" 由 0 起算 (5, 10, ... 30), 星期 7 = SUN, "?" 不限制, 多個空白
+        CompiledCron spring = CronParser.parse("  5/20\t0 0 */5 * 7  ", UTC);
+        assertEquals((1L << 5) | (1L << 25) | (1L << 45), spring.getSeconds());
+        assertEquals((1 << 5) | (1 << 10) | (1 << 15) | (1 << 20) | (1 << 25) | (1 << 30), spring.getDaysOfMonth());
+        assertEquals(1, spring.getDaysOfWeek());
+        assertEquals(0xFFF, spring.getMonths());
+        assertEquals(0x7F, CronParser.parse("0 0 0 ? * ?", UTC).getDaysOfWeek());
+
+        // 年份
+        CompiledCron years = CronParser.parse("0 0 0 1 1 ? 1970,2030-2040/5,2099", UTC);
+        long[] expected = new long[CompiledCron.YEAR_WORDS];
+        for (int year : new int[] { 1970, 2030, 2035, 2040, 2099 }) {
+            expected[(year - 1970) >> 6] |= 1L << (year - 1970);
+        }
+        assertArrayEquals(expected, years.getYears());
+        assertNull(CronParser.parse("0 0 0 1 1 ? *", UTC).getYears());
+
+        assertEquals(0x0FFFFFFFFFFFFFFFL, CronParser.parseField("*", 0, 60));
+        assertEquals(0x1FL, CronParser.parseField(" 0-4 ", 0, 60));
+
+        // 單一欄位 (field handler 使用), 結果與完整的 expression 相同
+        assertEquals(spring.getDaysOfMonth(), CronParser.parseDaysOfMonth("*/5"));
+        assertEquals((1 << 0) | (1 << 11), CronParser.parseMonths("jan,DEC"));
+        assertEquals(1 | (1 << 6), CronParser.parseDaysOfWeek("SAT,7"));
+        assertArrayEquals(expected, CronParser.parseYears("1970,2030-2040/5,2099"));
+        assertNull(CronParser.parseYears("?"));
+    }
+
+    @Test
+    public void testErrorPositions() {
+        assertError("0 0 0 * *", 9, "found 5");
+        assertError("0 0 0 * * ? 2030 1", 17, "found 8");
+        assertError("60 * * * * ?", 0, "Range exceeds maximum (60): '60'");
+        assertError("* * 9-17,25 * * ?", 9, "Range exceeds maximum (24): '25'");
+        assertError("* * * 1 0 ?", 8, "Range less than minimum (1): '0'");
+        assertError("* * 17-9 * * ?", 4, "Range start is after range end: '17-9'");
+        assertError("* * 1-2-3 * * ?", 7, "Range has more than two fields");
+        assertError("*/5/2 * * * * ?", 3, "Incrementer has more than two fields");
+        assertError("*/0 * * * * ?", 2, "Incrementer delta must be 1 or higher");
+        assertError("* * * * * MONDAY", 10, "Unknown name 'MONDAY'");
+        assertError("* * * * FOO ?", 8, "Unknown name 'FOO'");
+        assertError("* * * * * 1-", 12, "Unexpected end of expression");
+        assertError("* 1;2 * * * ?", 3, "Unexpected character ';'");
+        assertError("? * * * * ?", 0, "Unexpected character '?'");
+        assertError("0 0 0 1 1 ? 1969", 12, "Range less than minimum (1970)");
+        try {
+            CronParser.parseField("1,x", 0, 60);
+            fail("expected parse error");
+        }
+        catch (CronParseException ex) {
+            assertEquals(2, ex.getErrorOffset());
+        }
+    }
+
+    private static void assertError(String expression, int position, String message) {
+        try {
+            CronParser.parse(expression, UTC);
+            fail("expected parse error: " + expression);
+        }
+        catch (CronParseException ex) {
+            assertEquals(ex.getMessage(), position, ex.getErrorOffset());
+            assertEquals(ex.getMessage(), true, ex.getMessage().contains(message));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CronSchedulerTest {
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("America/New_York");
+
+    // 2014-10-01 00:00:00 UTC
+    private static final long START = 1412121600000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class ManualClock implements CronScheduler.Clock {
+
+        long millis = START;
+
+        @Override
+        public long millis() {
+            return this.millis;
+        }
+    }
+
+    private static class Recorder implements Runnable {
+
+        private final ManualClock clock;
+
+        final List<Long> runs = new ArrayList<Long>();
+
+        Recorder(ManualClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void run() {
+            this.runs.add(this.clock.millis);
+        }
+    }
+
+    static CronEngine newEngine() {
+        return new CronEngine();
+    }
+
+    @Test
+    public void testJobsFireOnEveryWheelLevel() {
+        String[] expressions = { "*/7 * * * * ?", "0 */15 * * * ?", "0 30 2 * * ?", "0 0 0 1 * ?", "0 0 12 29 2 ?" };
+        ManualClock clock = new ManualClock();
+        CronScheduler scheduler = new CronScheduler(newEngine(), DIRECT, clock);
+        Recorder[] recorders = new Recorder[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            recorders[i] = new Recorder(clock);
+            scheduler.schedule(new CronExpression(expressions[i], TIME_ZONE), recorders[i]);
+        }
+        // 推進約 2 年 (包含 DST 轉換與閏日), 每次 0 ~ 3 秒
+        Random random = new Random(20140726L);
+        long end = START + 2 * 366 * EpochCalendar.MILLIS_PER_DAY;
+        while (clock.millis < end) {
+            clock.millis += random.nextInt(3000);
+            scheduler.advance();
+            // 長時間沒有 job 的區段一次推進較多
+            if (random.nextInt(1000) == 0) {
+                clock.millis += random.nextInt(3000000);
+            }
+        }
+        long lag = 0;
+        for (int i = 0; i < expressions.length; i++) {
+            CompiledCron cron = CronUtil.compile(expressions[i], TIME_ZONE);
+            List<Long> runs = recorders[i].runs;
+            long fireTime = cron.next(START);
+            for (long run : runs) {
+                assertTrue(expressions[i] + " fired at " + run + " for " + fireTime, run >= fireTime);
+                lag = Math.max(lag, run - fireTime);
+                // 跳躍推進時錯過的 fire time 合併為一次, 下一次由觸發時間起算
+                long next = cron.next(fireTime);
+                fireTime = next <= run ? cron.next(run) : next;
+            }
+            assertTrue(expressions[i], runs.size() > 0);
+            assertTrue(expressions[i] + " missed " + fireTime, fireTime > clock.millis);
+        }
+        assertEquals(lag, scheduler.getMaxLagMillis());
+        assertTrue(scheduler.getAverageLagMillis() <= lag);
+    }
+
+    @Test
+    public void testMillisecondExpressionsAreRejected() {
+        ManualClock clock = new ManualClock();
+        CronScheduler scheduler = new CronScheduler(new CronEngine(CronEngine.millisecondFieldHandlers()), DIRECT, clock);
+        Recorder recorder = new Recorder(clock);
+        try {
+            scheduler.schedule(new CronExpression("*/250 * * * * * ? *", TIME_ZONE), recorder);
+            fail("expected millisecond expression to be rejected");
+        }
+        catch (IllegalArgumentException ex) {
+            // tick 為整秒
+        }
+        // 同一個 engine 以秒為單位的 expression (毫秒為 "*" 或省略) 仍可排程
+        scheduler.schedule(new CronExpression("* * * * * * ? *", TIME_ZONE), recorder);
+        scheduler.schedule(new CronExpression("*/2 * * * * ?", TIME_ZONE), recorder);
+        for (int i = 0; i < 10; i++) {
+            clock.millis += 1000;
+            scheduler.advance();
+        }
+        assertEquals(15, recorder.runs.size());
+    }
+
+    @Test
+    public void testCancelledJobDoesNotFire() {
+        ManualClock clock = new ManualClock();
+        CronScheduler scheduler = new CronScheduler(newEngine(), DIRECT, clock);
+        Recorder recorder = new Recorder(clock);
+        CronScheduler.Job job = scheduler.schedule(new CronExpression("* * * * * ?", TIME_ZONE), recorder);
+        for (int i = 0; i < 10; i++) {
+            clock.millis += 1000;
+            scheduler.advance();
+        }
+        assertEquals(10, recorder.runs.size());
+        job.cancel();
+        for (int i = 0; i < 10; i++) {
+            clock.millis += 1000;
+            scheduler.advance();
+        }
+        assertEquals(10, recorder.runs.size());
+        assertEquals(10, scheduler.getDispatchCount());
+    }
+
+    @Test
+    public void testMisfiresAreCoalesced() {
+        ManualClock clock = new ManualClock();
+        CronScheduler scheduler = new CronScheduler(newEngine(), DIRECT, clock);
+        Recorder recorder = new Recorder(clock);
+        scheduler.schedule(new CronExpression("0 * * * * ?", TIME_ZONE), recorder);
+        clock.millis += 10 * 60000 + 500;
+        scheduler.advance();
+        assertEquals(1, recorder.runs.size());
+        assertEquals(1, scheduler.getMisfireCount());
+        assertEquals(9 * 60000 + 500, scheduler.getMaxLagMillis());
+        clock.millis += 60000;
+        scheduler.advance();
+        assertEquals(2, recorder.runs.size());
+    }
+}
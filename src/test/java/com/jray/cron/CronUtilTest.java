@@ -0,0 +1,501 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TimeZone;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CronUtil 的結果必須與原本以 GregorianCalendar 實作的演算法 ({@link CalendarCronSequence}) 完全一致,
+ * 只有 {@link CompiledCron} 說明的刻意不同之處例外 (見 {@link #assertSameNext}).
+ */
+public class CronUtilTest {
+
+    static final String[] EXPRESSIONS = {
+            "* * * * * ?",
+            "0 * * * * ?",
+            "*/7 * * * * ?",
+            "0 0 * * * ?",
+            "0 */15 * * * ?",
+            "0 30 2 * * ?",
+            "0 0,30 1,2,3 * * ?",
+            "15 10 0 * * ?",
+            "0 0 9-17 * * MON-FRI",
+            "0 0 0 1 * ?",
+            "0 0 12 29 2 ?",
+            "0 0 0 31 * ?",
+            "0 0 0 13 * FRI",
+            "30 45 23 28-31 * SUN",
+            "0 0 0 1 JAN,JUL ?",
+            "5-10 1/20 4-6 10-20 3-11 2,4,6",
+    };
+
+    static final String[] ZONES = {
+            "UTC",
+            "Asia/Taipei",
+            "America/New_York",
+            "Europe/London",
+            "America/Sao_Paulo",
+            "Australia/Lord_Howe",
+            "Pacific/Apia",
+            "Asia/Kolkata",
+    };
+
+    // 1990-01-01 ~ 2036-01-01
+    static final long FROM = 631152000000L;
+    static final long TO = 2082758400000L;
+
+    @Test
+    public void testNextMatchesCalendarSearch() {
+        Random random = new Random(20140722L);
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : EXPRESSIONS) {
+                CronUtil cron = new CronUtil(expression, timeZone);
+                CalendarCronSequence expected = new CalendarCronSequence(expression, timeZone);
+                for (int i = 0; i < 200; i++) {
+                    long millis = FROM + (long) (random.nextDouble() * (TO - FROM));
+                    assertSameNext(expected, cron, millis);
+                    // 連續呼叫 (包含 DST 轉換附近)
+                    long next = millis;
+                    for (int j = 0; j < 5; j++) {
+                        next = assertSameNext(expected, cron, next);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNextAroundDaylightSavingTransitions() {
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        // 2014-03-09 02:00 (gap) 與 2014-11-02 01:00 (overlap) 前後, 每 10 分鐘取樣
+        long[] transitions = { 1394348400000L, 1414904400000L };
+        for (String expression : EXPRESSIONS) {
+            CronUtil cron = new CronUtil(expression, timeZone);
+            CalendarCronSequence expected = new CalendarCronSequence(expression, timeZone);
+            for (long transition : transitions) {
+                for (long millis = transition - 3 * 3600000L; millis < transition + 3 * 3600000L; millis += 600000L) {
+                    assertSameNext(expected, cron, millis + 1234);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNextFireTimesMatchesRepeatedNext() {
+        Random random = new Random(20140724L);
+        long[] out = new long[64];
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : new String[] { "* * * * * ?", "0 */15 * * * ?", "0 0,30 1,2,3 * * ?" }) {
+                CronUtil cron = new CronUtil(expression, timeZone);
+                for (int i = 0; i < 20; i++) {
+                    long millis = FROM + (long) (random.nextDouble() * (TO - FROM));
+                    cron.nextFireTimes(millis, out, out.length);
+                    long next = millis;
+                    for (long actual : out) {
+                        next = cron.next(next);
+                        assertEquals(cron + " from " + millis, next, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelFireTimesMatchesSequentialNext() {
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        // 2014-10-01 ~ 2014-12-01 (包含 DST 結束)
+        long from = 1412136000000L;
+        long to = 1417410000000L;
+        for (String expression : new String[] { "*/7 * * * * ?", "0 0,30 1,2,3 * * ?", "0 0 0 13 * FRI" }) {
+            CronUtil cron = new CronUtil(expression, timeZone);
+            long[] actual = cron.fireTimes(from, to).parallel().toArray();
+            int count = 0;
+            for (long next = cron.next(from - 1); next < to; next = cron.next(next)) {
+                assertEquals(expression, next, actual[count++]);
+            }
+            assertEquals(expression, count, actual.length);
+        }
+    }
+
+    @Test
+    public void testSplitFireTimesKeepsSkippedSecond() {
+        // next(4220999) 為 01:30:30 (已前進的秒在分進位時不重設), 由 01:30:00 切割會漏掉 01:30:00
+        TimeZone timeZone = TimeZone.getTimeZone("UTC");
+        CronUtil cron = new CronUtil("0,30 0,30 * * * ?", timeZone);
+        assertEquals(5430000L, cron.next(4220999L));
+        long[] expected = cron.fireTimes(0, 8442000L).toArray();
+        assertTrue(Arrays.binarySearch(expected, 5400000L) >= 0);
+        assertArrayEquals(expected, cron.fireTimes(0, 8442000L).parallel().toArray());
+        assertArrayEquals(expected, splitAll(cron, 0, 8442000L));
+        // 起點不是 fire time 時, 第一個值同樣可能跳過符合的時間 (5400000), 切割後仍相同
+        long[] skipped = cron.fireTimes(4221000L, 8442000L).toArray();
+        assertEquals(5430000L, skipped[0]);
+        assertArrayEquals(skipped, splitAll(cron, 4221000L, 8442000L));
+    }
+
+    // 切割到不能再切割為止, 依序串接各段結果
+    private static long[] splitAll(CronUtil cron, long from, long to) {
+        List<Spliterator.OfLong> parts = new ArrayList<>();
+        parts.add(new FireTimeSpliterator(cron::next, TimeZone.getTimeZone("UTC"), from, to));
+        for (int i = 0; i < parts.size(); ) {
+            Spliterator.OfLong prefix = parts.get(i).trySplit();
+            if (prefix == null) {
+                i++;
+            }
+            else {
+                parts.add(i, prefix);
+            }
+        }
+        assertTrue(parts.size() > 1);
+        return parts.stream().flatMapToLong(part -> StreamSupport.longStream(part, false)).toArray();
+    }
+
+    @Test
+    public void testNextAllMatchesNext() {
+        // 混合時區 (含 DST) 與一個已不再觸發的 schedule, 數量足以切割為多個 task
+        Random random = new Random(20140731L);
+        CompiledCron[] schedules = new CompiledCron[20000];
+        for (int i = 0; i < schedules.length; i++) {
+            TimeZone timeZone = TimeZone.getTimeZone(ZONES[random.nextInt(ZONES.length)]);
+            schedules[i] = CronUtil.compile(EXPRESSIONS[random.nextInt(EXPRESSIONS.length)], timeZone);
+        }
+        schedules[12345] = CronUtil.compile("0 0 0 1 1 ? 2000", TimeZone.getTimeZone("UTC"));
+        long millis = 1414904400000L; // 2014-11-02 01:00 EST (New York DST 結束)
+        long[] out = new long[schedules.length];
+        CronUtil.nextAll(schedules, millis, out);
+        for (int i = 0; i < schedules.length; i++) {
+            long expected = i == 12345 ? Long.MIN_VALUE : schedules[i].next(millis);
+            assertEquals(schedules[i] + " at " + i, expected, out[i]);
+        }
+        // 數量少時在呼叫的 thread 計算
+        long[] small = new long[3];
+        CronUtil.nextAll(new CompiledCron[] { schedules[0], schedules[1], schedules[2] }, millis, small);
+        assertArrayEquals(new long[] { out[0], out[1], out[2] }, small);
+        try {
+            CronUtil.nextAll(schedules, millis, new long[1]);
+            fail("expected short output array");
+        }
+        catch (IllegalArgumentException ex) {
+            // ok
+        }
+        // 只有 "不會再觸發" 以 Long.MIN_VALUE 表示, 其他錯誤 (無法滿足的 expression) 照常拋出
+        try {
+            CronUtil.nextAll(new CompiledCron[] { schedules[0], CronUtil.compile("0 0 0 30 2 ?", TimeZone.getTimeZone("UTC")) },
+                    millis, small);
+            fail("expected runaway search");
+        }
+        catch (IllegalArgumentException ex) {
+            assertFalse(ex instanceof NoMoreFireTimesException);
+        }
+    }
+
+    @Test
+    public void testPrevIsInverseOfNext() {
+        Random random = new Random(20140725L);
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : EXPRESSIONS) {
+                CronUtil cron = new CronUtil(expression, timeZone);
+                CalendarCronSequence expected = new CalendarCronSequence(expression, timeZone);
+                for (int i = 0; i < 100; i++) {
+                    long millis = FROM + (long) (random.nextDouble() * (TO - FROM));
+                    long next;
+                    try {
+                        next = expected.next(millis);
+                    }
+                    catch (IllegalArgumentException ex) {
+                        continue;
+                    }
+                    // 原本的搜尋在跨月後日期相同時不會重新調整時間, 可能回傳不符合的時間 => 略過
+                    if (!expected.matches(next)) {
+                        continue;
+                    }
+                    // next 的前一個 fire time 不晚於 millis, 且其下一個 fire time 即為 next
+                    long prev = cron.prev(next);
+                    assertTrue(cron + " prev(" + next + ")=" + prev, prev < next && prev <= millis);
+                    assertTrue(cron + " prev(" + next + ")=" + prev, expected.matches(prev));
+                    assertEquals(prev, cron.prev(next - 999));
+                    try {
+                        long actual = expected.next(prev);
+                        if (expected.matches(actual)) {
+                            assertEquals(cron + " prev(" + next + ")=" + prev, next, actual);
+                        }
+                    }
+                    catch (IllegalArgumentException ex) {
+                        // 原本的搜尋超過 366 天 (例如: 13 號星期五)
+                    }
+                }
+            }
+        }
+        // DST 轉換前後: prev() 的結果必須是 fire time (next(prev - 1) == prev), 且與指定時間之間沒有其他 fire time
+        long[] transitions = { 1394348400000L, 1414908000000L, 1541311200000L };
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        for (String expression : EXPRESSIONS) {
+            CronUtil cron = new CronUtil(expression, newYork);
+            for (long transition : transitions) {
+                for (long millis = transition - 3 * 3600000L; millis < transition + 3 * 3600000L; millis += 600001L) {
+                    long prev = cron.prev(millis);
+                    assertEquals(cron + " prev(" + millis + ")", prev, cron.next(prev - 1));
+                    for (long second = prev + 1000; second < millis && second < prev + 3600000L; second += 1000) {
+                        assertFalse(cron + " prev(" + millis + ")=" + prev, cron.matches(second));
+                    }
+                }
+            }
+        }
+        // 2018-11-04 01:00 ~ 02:00 重複: 重複時段內 01:00 的兩個時間點 next(t - 1) 都會換算到其他時間, 不是 fire time
+        CronUtil overlap = new CronUtil("0 0,30 1,2,3 * * ?", newYork);
+        assertFalse(overlap.matches(1541307600000L));
+        assertFalse(overlap.matches(1541311200000L));
+        assertEquals(1541230200000L, overlap.prev(1541311819000L));
+    }
+
+    @Test
+    public void testDateChangeResetsTime() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        // 日期改變時時 / 分 / 秒全部重設: 新日期的第一個 fire time (原本的搜尋保留已前進的秒, 略過 00:00:00)
+        String expression = "0,30 0,30 0,12 1 * ?";
+        long from = 1529280021000L; // 2018-06-18 00:00:21
+        assertEquals(1530403200000L, new CronUtil(expression, utc).next(from)); // 2018-07-01 00:00:00
+        assertEquals(1530403230000L, new CalendarCronSequence(expression, utc).next(from)); // 00:00:30
+        expression = "*/20 */10 0,12 1 * ?";
+        from = 1670417418000L; // 2022-12-07 12:50:18
+        assertEquals(1672531200000L, new CronUtil(expression, utc).next(from)); // 2023-01-01 00:00:00
+        assertEquals(1672531220000L, new CalendarCronSequence(expression, utc).next(from)); // 00:00:20
+        // 其餘結果與原本的搜尋相同
+        Random random = new Random(20181018L);
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String reset : new String[] { "0,30 0,30 0,12 1 * ?", "*/20 */10 0,12 1 * ?" }) {
+                CronUtil cron = new CronUtil(reset, timeZone);
+                CalendarCronSequence expected = new CalendarCronSequence(reset, timeZone);
+                for (int i = 0; i < 200; i++) {
+                    long next = FROM + (long) (random.nextDouble() * (TO - FROM));
+                    for (int j = 0; j < 5; j++) {
+                        next = assertSameNext(expected, cron, next);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testYearMaskSharedByEqualDates() {
+        // 每年允許日期只與 日 / 月 / 星期 有關: 時間或時區不同的 schedule 共用同一份
+        CompiledCron first = new CronUtil("0 0 12 1,15 * MON-FRI", TimeZone.getTimeZone("UTC")).getSchedule();
+        CompiledCron second = new CronUtil("*/5 30 8-17 1,15 * MON-FRI", TimeZone.getTimeZone("Asia/Taipei")).getSchedule();
+        assertSame(first.getYearMask(2024), second.getYearMask(2024));
+        assertNotSame(first.getYearMask(2024), second.getYearMask(2025));
+    }
+
+    @Test
+    public void testDayOverflowRollsIntoNextYear() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        CronUtil cron = new CronUtil("0 0 0 13 * FRI", utc);
+        // 2012-07-13 (五) 之後的 13 號星期五為 2013-09-13, 超過 366 天
+        long from = 1342137601000L;
+        try {
+            new CalendarCronSequence("0 0 0 13 * FRI", utc).next(from);
+            fail("original search should overflow");
+        }
+        catch (IllegalArgumentException ex) {
+            // ok
+        }
+        assertEquals(1379030400000L, cron.next(from));
+        // 2/29 星期一: 2016 之後為 2044 (只搜尋閏年, 不受 4 年限制)
+        assertEquals(2340316800000L, new CronUtil("0 0 0 29 2 MON", utc).next(1456790400000L));
+        assertEquals(1456704000000L, new CronUtil("0 0 0 29 2 MON", utc).prev(2340316800000L));
+        // 不可能的日期 => 不需搜尋直接失敗
+        try {
+            new CronUtil("0 0 0 30 2 ?", utc).next(from);
+            fail("expected runaway search");
+        }
+        catch (IllegalArgumentException ex) {
+            // 錯誤訊息包含原本的 expression
+            assertTrue(ex.getMessage(), ex.getMessage().contains("\"0 0 0 30 2 ?\""));
+        }
+    }
+
+    @Test
+    public void testYearField() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        long from = 1388534400000L; // 2014-01-01
+
+        // 區間 + 間隔: 2030, 2035, 2040 之後沒有
+        CronUtil step = new CronUtil("0 0 12 1 1 ? 2030-2040/5", utc);
+        assertEquals(1893499200000L, step.next(from));
+        assertEquals(2051265600000L, step.next(1893499200000L));
+        assertEquals(2209032000000L, step.next(2051265600000L));
+        try {
+            step.next(2209032000000L);
+            fail("expected no more fire times");
+        }
+        catch (NoMoreFireTimesException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("\"0 0 12 1 1 ? 2030-2040/5\""));
+        }
+        assertEquals(2051265600000L, step.prev(2209032000000L));
+        assertEquals(1893499200000L, step.prev(2051265600000L));
+        try {
+            step.prev(1893499200000L);
+            fail("expected no earlier fire times");
+        }
+        catch (NoMoreFireTimesException ex) {
+            // ok
+        }
+        // 連續取得時遇到最後一個 fire time 直接結束
+        long[] last = new long[5];
+        assertEquals(3, step.nextFireTimes(from, last, 4));
+        assertArrayEquals(new long[] { 1893499200000L, 2051265600000L, 2209032000000L, Long.MIN_VALUE, 0 }, last);
+        assertArrayEquals(new long[] { 1893499200000L, 2051265600000L, 2209032000000L },
+                step.fireTimes(from, Long.MAX_VALUE).toArray());
+        assertEquals(0, step.fireTimes(2209032000001L, Long.MAX_VALUE).count());
+
+        // 2/29 只出現在區間內的閏年
+        CronUtil leapDay = new CronUtil("0 0 0 29 2 ? 2030-2040", utc);
+        long[] out = new long[3];
+        assertEquals(3, leapDay.nextFireTimes(from, out, 3));
+        assertArrayEquals(new long[] { 1961625600000L, 2087856000000L, 2214086400000L }, out);
+
+        // 列舉
+        CronUtil list = new CronUtil("0 0 0 1 1 ? 2020,2025", utc);
+        assertEquals(1577836800000L, list.next(from));
+        assertEquals(1735689600000L, list.next(1577836800000L));
+
+        // "*" 與 6 個欄位相同
+        assertEquals(new CronUtil("0 0 0 29 2 ?", utc), new CronUtil("0 0 0 29 2 ? *", utc));
+        assertFalse(leapDay.equals(new CronUtil("0 0 0 29 2 ?", utc)));
+        assertEquals(leapDay, new CronUtil("0 0 0 29 2 ? 2030-2040", utc));
+
+        for (String expression : new String[] { "0 0 0 1 1 ? 1969", "0 0 0 1 1 ? 2100", "0 0 0 1 1 ? 2040-2030",
+                "0 0 0 1 1 ? 2030/0" }) {
+            try {
+                new CronUtil(expression, utc);
+                fail("expected invalid year: " + expression);
+            }
+            catch (IllegalArgumentException ex) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void testEqualsComparesCompiledSchedule() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        CronUtil a = new CronUtil("0 0 * * * ?", utc);
+        CronUtil b = new CronUtil("0 0 */1 * * *", utc);
+        CronUtil c = new CronUtil("0 0 9-17 * * MON-FRI", utc);
+        CronUtil d = new CronUtil("0 0 9-17 * * 1-5", utc);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(c.getSchedule(), d.getSchedule());
+        assertFalse(a.equals(c));
+        assertFalse(a.equals(new CronUtil("0 0 * * * ?", TimeZone.getTimeZone("Asia/Taipei"))));
+    }
+
+    @Test
+    public void testMatchesEquivalentToNext() {
+        Random random = new Random(20141018L);
+        long[] instants = new long[8];
+        boolean[] out = new boolean[instants.length];
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : EXPRESSIONS) {
+                CronUtil cron = new CronUtil(expression, timeZone);
+                for (int i = 0; i < 100; i++) {
+                    // fire time 與附近的時間
+                    long fireTime = cron.next(FROM + (long) (random.nextDouble() * (TO - FROM)));
+                    instants[0] = fireTime;
+                    instants[1] = fireTime - 1000;
+                    instants[2] = fireTime + 1000;
+                    instants[3] = fireTime + 1;
+                    instants[4] = fireTime - 60000;
+                    instants[5] = fireTime + 3600000;
+                    instants[6] = fireTime + 86400000;
+                    instants[7] = FROM + (long) (random.nextDouble() * (TO - FROM)) / 1000 * 1000;
+                    assertMatches(cron, instants, out);
+                    assertTrue(out[0]);
+                    assertFalse(out[3]);
+                }
+            }
+        }
+        // DST 轉換前後 (New York: gap / overlap, Lord Howe: 30 分鐘), 每 10 秒取樣
+        long[] transitions = { 1394348400000L, 1414908000000L, 1396710000000L, 1412436600000L };
+        String[] zones = { "America/New_York", "America/New_York", "Australia/Lord_Howe", "Australia/Lord_Howe" };
+        instants = new long[6 * 3600 / 10];
+        out = new boolean[instants.length];
+        for (int i = 0; i < transitions.length; i++) {
+            TimeZone timeZone = TimeZone.getTimeZone(zones[i]);
+            assertTrue(timeZone.getOffset(transitions[i] - 1) != timeZone.getOffset(transitions[i]));
+            for (int j = 0; j < instants.length; j++) {
+                instants[j] = transitions[i] - 3 * 3600000L + j * 10000L;
+            }
+            for (String expression : EXPRESSIONS) {
+                assertMatches(new CronUtil(expression, timeZone), instants, out);
+            }
+        }
+    }
+
+    private static void assertMatches(CronUtil cron, long[] instants, boolean[] out) {
+        int count = cron.matches(instants, out);
+        int expected = 0;
+        for (int i = 0; i < instants.length; i++) {
+            boolean matches = cron.next(instants[i] - 1) == instants[i];
+            assertEquals(cron + " at " + instants[i], matches, out[i]);
+            assertEquals(cron + " at " + instants[i], matches, cron.matches(instants[i]));
+            if (matches) {
+                expected++;
+            }
+        }
+        assertEquals(cron.toString(), expected, count);
+    }
+
+    /**
+     * 原本的演算法有兩種情況結果不正確, 此時改為驗證 next 的定義 (符合 expression, 且與 millis 之間沒有其他 fire time):
+     *  1. 逐日搜尋超過 366 天 (例如: 13 號星期五) => 例外
+     *  2. 跨月後日期相同時沒有 reset 較小的欄位 => 回傳不符合的時間
+     */
+    private static long assertSameNext(CalendarCronSequence expected, CronUtil cron, long millis) {
+        long actual = cron.next(millis);
+        try {
+            long expectedNext = expected.next(millis);
+            if (expected.matches(expectedNext)) {
+                // 日期改變時原本的搜尋保留已前進的秒 / 分, 略過同一天較早的 fire time => 只接受同一天較早且符合的時間
+                if (actual != expectedNext) {
+                    assertTrue(cron + " at " + millis + ": " + actual + " != " + expectedNext,
+                            actual < expectedNext && sameDay(cron, actual, expectedNext) && expected.matches(actual)
+                                    && cron.prev(actual) <= millis);
+                }
+                return actual;
+            }
+        }
+        catch (IllegalArgumentException ex) {
+            // overflow in day
+        }
+        assertTrue(cron + " at " + millis + ": " + actual, actual > millis && expected.matches(actual));
+        assertTrue(cron + " at " + millis + ": " + actual, cron.prev(actual) <= millis);
+        return actual;
+    }
+
+    private static boolean sameDay(CronUtil cron, long first, long second) {
+        EpochCalendar calendar = new EpochCalendar(cron.getSchedule().getTimeZone());
+        calendar.setTimeInMillis(first);
+        long day = calendar.getEpochDay();
+        calendar.setTimeInMillis(second);
+        return calendar.getEpochDay() == day;
+    }
+}
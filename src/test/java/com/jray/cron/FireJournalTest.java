@@ -0,0 +1,214 @@
+package com.jray.cron;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 重新開啟日誌 (模擬程序中斷, 不呼叫 close) 後回報的 misfire 與重播的記錄數.
+ */
+public class FireJournalTest {
+
+    // 2014-10-01 00:00:00 UTC
+    private static final long START = 1412121600000L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("fire-journal", ".log");
+        this.file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        this.file.delete();
+        new File(this.file.getPath() + ".compact").delete();
+    }
+
+    @Test
+    public void testMisfiresAfterCrash() throws Exception {
+        Path path = this.file.toPath();
+        FireJournal journal = FireJournal.open(path, 1024, 100);
+        journal.scheduled(1L, START + 60000L);
+        journal.scheduled(2L, START + 3600000L);
+        journal.scheduled(3L, START + 120000L);
+        // job 1: 完成; job 2: 執行中中斷; job 3: 取消
+        journal.fired(1L, START + 60000L, START + 120000L);
+        journal.completed(1L, START + 60000L);
+        journal.fired(2L, START + 3600000L, START + 7200000L);
+        journal.cancelled(3L);
+
+        FireJournal reopened = FireJournal.open(path, 1024, 100);
+        assertEquals(7, reopened.getReplayedRecords());
+        assertEquals(START + 120000L, reopened.getNextFireTime(1L));
+        assertEquals(Long.MIN_VALUE, reopened.getNextFireTime(3L));
+        // 中斷時間早於 job 1 的下一個 fire time: 只有執行中的 job 2
+        assertEquals(Arrays.asList(new FireJournal.Misfire(2L, START + 3600000L, true)),
+                reopened.getMisfires(START + 90000L));
+        // 更晚重新啟動: job 1 與 job 2 的下一個 fire time 都沒有觸發
+        assertEquals(Arrays.asList(new FireJournal.Misfire(1L, START + 120000L, false),
+                new FireJournal.Misfire(2L, START + 3600000L, true),
+                new FireJournal.Misfire(2L, START + 7200000L, false)), reopened.getMisfires(START + 7200000L));
+        // 重新排程後清除
+        reopened.scheduled(2L, START + 10800000L);
+        assertEquals(Arrays.asList(new FireJournal.Misfire(1L, START + 120000L, false)),
+                reopened.getMisfires(START + 7200000L));
+        reopened.close();
+    }
+
+    @Test
+    public void testReplayOnlyTailAfterCheckpoint() throws Exception {
+        Path path = this.file.toPath();
+        FireJournal journal = FireJournal.open(path, 64, 1000);
+        for (long job = 1; job <= 10; job++) {
+            journal.scheduled(job, START + job * 1000L);
+        }
+        // 每個 job 觸發多次 (超過檔案容量 => 壓縮為快照)
+        for (int round = 1; round <= 20; round++) {
+            for (long job = 1; job <= 10; job++) {
+                long fireTime = START + round * 60000L + job * 1000L;
+                journal.fired(job, fireTime, fireTime + 60000L);
+                if (job != 4 || round != 20) {
+                    journal.completed(job, fireTime);
+                }
+            }
+        }
+        journal.checkpoint();
+        journal.fired(7L, START + 21 * 60000L + 7000L, START + 22 * 60000L + 7000L);
+
+        FireJournal reopened = FireJournal.open(path, 64, 1000);
+        // 快照 (10 個 job + 1 個執行中 + CHECKPOINT) 與之後的 1 筆記錄
+        assertEquals(13, reopened.getReplayedRecords());
+        assertEquals(START + 22 * 60000L + 7000L, reopened.getNextFireTime(7L));
+        long now = START + 21 * 60000L + 30000L;
+        assertEquals(Arrays.asList(
+                new FireJournal.Misfire(1L, START + 21 * 60000L + 1000L, false),
+                new FireJournal.Misfire(2L, START + 21 * 60000L + 2000L, false),
+                new FireJournal.Misfire(3L, START + 21 * 60000L + 3000L, false),
+                new FireJournal.Misfire(4L, START + 20 * 60000L + 4000L, true),
+                new FireJournal.Misfire(4L, START + 21 * 60000L + 4000L, false),
+                new FireJournal.Misfire(5L, START + 21 * 60000L + 5000L, false),
+                new FireJournal.Misfire(6L, START + 21 * 60000L + 6000L, false),
+                new FireJournal.Misfire(7L, START + 21 * 60000L + 7000L, true),
+                new FireJournal.Misfire(8L, START + 21 * 60000L + 8000L, false),
+                new FireJournal.Misfire(9L, START + 21 * 60000L + 9000L, false),
+                new FireJournal.Misfire(10L, START + 21 * 60000L + 10000L, false)), reopened.getMisfires(now));
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws Exception {
+        Path path = this.file.toPath();
+        FireJournal journal = FireJournal.open(path, 16, 100);
+        journal.scheduled(1L, START);
+        journal.fired(1L, START, START + 1000L);
+        journal.force();
+        // 最後一筆記錄寫到一半 (checksum 不符)
+        RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+        raf.seek(32 + 32 + 20);
+        raf.writeInt(12345);
+        raf.close();
+
+        FireJournal reopened = FireJournal.open(path, 16, 100);
+        assertEquals(1, reopened.getReplayedRecords());
+        assertEquals(Arrays.asList(new FireJournal.Misfire(1L, START, false)), reopened.getMisfires(START));
+        // 由中斷的位置繼續寫入
+        reopened.fired(1L, START, START + 1000L);
+        reopened.completed(1L, START);
+        reopened.close();
+        FireJournal again = FireJournal.open(path, 16, 100);
+        assertEquals(3, again.getReplayedRecords());
+        assertTrue(again.getMisfires(START + 999L).isEmpty());
+        again.close();
+    }
+
+    @Test
+    public void testCheckpointRunsOnExecutor() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        Executor queue = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        Path path = this.file.toPath();
+        FireJournal journal = FireJournal.open(path, 32, 10, queue);
+        journal.scheduled(1L, START);
+        for (int i = 0; i < 7; i++) {
+            journal.fired(1L, START + i * 1000L, START + (i + 1) * 1000L);
+            journal.completed(1L, START + i * 1000L);
+        }
+        // 寫入記錄時只交給 executor (尚未執行前不再重複)
+        assertEquals(1, tasks.size());
+        assertEquals(32 + 32 * 32, this.file.length());
+        FireJournal crashed = FireJournal.open(path, 32, 10, queue);
+        assertEquals(15, crashed.getReplayedRecords());
+        crashed.close();
+
+        // 剩餘空間不足以寫到下一次 checkpoint => 由 executor 壓縮
+        tasks.remove(0).run();
+        assertTrue(this.file.length() > 32 + 32 * 32);
+        journal.fired(1L, START + 7000L, START + 8000L);
+        FireJournal reopened = FireJournal.open(path, 32, 10, queue);
+        // 快照 (SCHEDULED + CHECKPOINT) 與之後的 1 筆記錄
+        assertEquals(3, reopened.getReplayedRecords());
+        assertEquals(Arrays.asList(new FireJournal.Misfire(1L, START + 7000L, true)), reopened.getMisfires(START + 7000L));
+        reopened.close();
+        journal.close();
+    }
+
+    @Test
+    public void testSchedulerJournal() throws Exception {
+        final long[] now = { START };
+        CronScheduler.Clock clock = new CronScheduler.Clock() {
+            @Override
+            public long millis() {
+                return now[0];
+            }
+        };
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        Path path = this.file.toPath();
+        // checkpoint 在同一個 thread 執行 (重新開啟時檔案不會同時被寫入)
+        FireJournal journal = FireJournal.open(path, 1024, 100, direct);
+        CronScheduler scheduler = new CronScheduler(new CronEngine(),
+                new CronDispatcher(direct, CronDispatcher.UNLIMITED), clock, journal);
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        scheduler.schedule(100L, new CronExpression("0 * * * * ?", utc), noop);
+        scheduler.schedule(200L, new CronExpression("0 0 * * * ?", utc), noop);
+        for (int i = 0; i < 150; i++) {
+            now[0] += 1000L;
+            scheduler.advance();
+        }
+        assertEquals(2, scheduler.getDispatchCount());
+        // 程序中斷, 10 分鐘後重新啟動
+        FireJournal reopened = FireJournal.open(path, 1024, 100);
+        assertEquals(Arrays.asList(new FireJournal.Misfire(100L, START + 180000L, false)),
+                reopened.getMisfires(START + 750000L));
+        assertEquals(START + 3600000L, reopened.getNextFireTime(200L));
+        reopened.close();
+        journal.close();
+    }
+}
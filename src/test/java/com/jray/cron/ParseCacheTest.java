@@ -0,0 +1,80 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParseCacheTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static ParseCache<CompiledCron> newCache(int maxSize) {
+        return new ParseCache<CompiledCron>(maxSize) {
+            @Override
+            protected CompiledCron load(String expression, TimeZone timeZone) {
+                return CronUtil.parse(expression, timeZone);
+            }
+        };
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        ParseCache<CompiledCron> cache = newCache(64);
+        CompiledCron first = cache.get("0 0 * * * ?", UTC);
+        assertSame(first, cache.get("0 0 * * * ?", UTC));
+        assertNotSame(first, cache.get("0 0 * * * ?", TimeZone.getTimeZone("Asia/Taipei")));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testTimeZoneComparedByRules() {
+        ParseCache<CompiledCron> cache = newCache(64);
+        CompiledCron taipei = cache.get("0 0 * * * ?", TimeZone.getTimeZone("Asia/Taipei"));
+        // 同 ID 同規則的不同物件 => 共用
+        assertSame(taipei, cache.get("0 0 * * * ?", (TimeZone) TimeZone.getTimeZone("Asia/Taipei").clone()));
+        // 同 ID 但規則不同的自訂時區 => 不可取得其他時區的結果
+        CompiledCron custom = cache.get("0 0 * * * ?", new SimpleTimeZone(0, "Asia/Taipei"));
+        assertNotSame(taipei, custom);
+        assertEquals(0, custom.getTimeZone().getRawOffset());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testEvictionKeepsSizeBounded() {
+        ParseCache<CompiledCron> cache = newCache(32);
+        for (int i = 0; i < 60; i++) {
+            cache.get(i + " * * * * ?", UTC);
+        }
+        assertTrue(cache.size() <= 32);
+        assertEquals(60 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWarmUp() {
+        ParseCache<CompiledCron> cache = newCache(64);
+        cache.warmUp(Arrays.asList("0 0 9-17 * * MON-FRI", "0 */5 * * * ?"), UTC);
+        cache.get("0 */5 * * * ?", UTC);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpressionIsNotCached() {
+        ParseCache<CompiledCron> cache = newCache(64);
+        try {
+            cache.get("0 0 * * ?", UTC);
+        }
+        finally {
+            assertEquals(0, cache.size());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduleRegistryTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // 2014-10-01 00:00:00 UTC (Wednesday)
+    private static final long START = 1412121600000L;
+
+    @Test
+    public void testEquivalentSpellingsShareOneSchedule() {
+        ScheduleRegistry registry = new ScheduleRegistry(START);
+        CompiledCron hourly = registry.register(1L, "0 0 * * * ?", UTC);
+        assertSame(hourly, registry.register(2L, "0 0 */1 * * *", UTC));
+        assertSame(hourly, registry.register(3L, "0 0 0-23 * * ?", UTC));
+        CompiledCron weekdays = registry.register(4L, "0 0 9 ? * MON-FRI", UTC);
+        assertSame(weekdays, registry.register(5L, "0 0 9 * * 1-5", UTC));
+        // 時區不同 => 不共用
+        CompiledCron taipei = registry.register(6L, "0 0 * * * ?", TimeZone.getTimeZone("Asia/Taipei"));
+        assertFalse(hourly == taipei);
+        assertEquals(6, registry.size());
+        assertEquals(3, registry.distinctSize());
+        assertSame(hourly, registry.canonical(CronUtil.compile("0 0 */1 * * ?", UTC)));
+
+        // 更換 schedule 與移除
+        assertSame(weekdays, registry.register(3L, "0 0 9 ? * mon-fri", UTC));
+        assertSame(weekdays, registry.getSchedule(3L));
+        assertTrue(registry.unregister(6L));
+        assertFalse(registry.unregister(6L));
+        assertNull(registry.getSchedule(6L));
+        assertEquals(2, registry.distinctSize());
+    }
+
+    @Test
+    public void testCustomZoneWithSystemIdIsNotShared() {
+        ScheduleRegistry registry = new ScheduleRegistry(1700000000000L);
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        TimeZone custom = new SimpleTimeZone(3600000, "America/New_York");
+        CompiledCron real = registry.register(1L, "0 0 12 * * ?", newYork);
+        CompiledCron fake = registry.register(2L, "0 0 12 * * ?", custom);
+        assertNotSame(real, fake);
+        assertFalse(real.equals(fake));
+        assertEquals(2, registry.distinctSize());
+        // 2023-11-15 12:00 EST, 12:00 +01:00
+        assertEquals(1700067600000L, registry.getNextFireTime(1L));
+        assertEquals(1700046000000L, registry.getNextFireTime(2L));
+        // 同 ID 同規則 => 共用
+        assertSame(real, registry.register(3L, "0 0 12 * * ?", (TimeZone) newYork.clone()));
+        assertSame(fake, registry.register(4L, "0 0 12 * * ?", new SimpleTimeZone(3600000, "America/New_York")));
+        assertEquals(2, registry.distinctSize());
+    }
+
+    @Test
+    public void testAdvanceComputesOncePerDistinctSchedule() {
+        ScheduleRegistry registry = new ScheduleRegistry(START);
+        String[] spellings = { "0 */15 * * * ?", "0 0,15,30,45 * * * *", "0 0-59/15 * * * ?", "0 */15 0-23 * * ?" };
+        for (long job = 0; job < 100; job++) {
+            registry.register(job, spellings[(int) (job % spellings.length)], UTC);
+        }
+        registry.register(1000L, "0 0 12 * * ?", UTC);
+        long evaluations = registry.getEvaluations();
+        assertEquals(2, evaluations);
+
+        final List<Long> fired = new ArrayList<Long>();
+        ScheduleRegistry.FireListener listener = new ScheduleRegistry.FireListener() {
+            @Override
+            public void fired(long jobId, long fireTime) {
+                fired.add(fireTime);
+            }
+        };
+        // 每 15 分鐘一次, 到 12:00 (含) 共 48 次; 12:00 另有一個 job
+        for (long now = START; now <= START + 12 * 3600000L; now += 60000L) {
+            registry.advance(now, listener);
+        }
+        assertEquals(48 * 100 + 1, fired.size());
+        assertEquals(48 * 100 + 1, registry.getNotifications());
+        assertEquals(evaluations + 48 + 1, registry.getEvaluations());
+        assertEquals(START + 12 * 3600000L + 15 * 60000L, registry.getNextFireTime(7L));
+
+        // 錯過的 fire time 只通知一次
+        fired.clear();
+        assertEquals(100, registry.advance(START + 13 * 3600000L + 60000L, listener));
+        assertEquals(START + 13 * 3600000L + 15 * 60000L, registry.getNextFireTime(7L));
+        assertEquals(Long.valueOf(START + 12 * 3600000L + 15 * 60000L), fired.get(0));
+    }
+
+    @Test
+    public void testListenerMayUnregister() {
+        final ScheduleRegistry registry = new ScheduleRegistry(START);
+        for (long job = 1; job <= 3; job++) {
+            registry.register(job, "0 0 * * * ?", UTC);
+        }
+        registry.register(4L, "0 0 */2 * * ?", UTC);
+        final List<Long> fired = new ArrayList<Long>();
+        ScheduleRegistry.FireListener listener = new ScheduleRegistry.FireListener() {
+            @Override
+            public void fired(long jobId, long fireTime) {
+                fired.add(jobId);
+                // 第一個 job 移除同一個 schedule 的其他 job, 以及另一個 schedule 唯一的 job
+                if (jobId == 1L) {
+                    registry.unregister(2L);
+                    registry.unregister(3L);
+                    registry.unregister(4L);
+                }
+            }
+        };
+        // 到期時的 job 都會收到通知 (不論順序)
+        assertEquals(3, registry.advance(START + 3600000L, listener));
+        assertEquals(3, fired.size());
+        assertTrue(fired.containsAll(Arrays.asList(1L, 2L, 3L)));
+        fired.clear();
+        assertEquals(1, registry.advance(START + 2 * 3600000L, listener));
+        assertEquals(Arrays.asList(1L), fired);
+        assertEquals(1, registry.distinctSize());
+
+        // 最後一個 job 在通知時移除 => 不再放回 queue
+        registry.register(5L, "0 0 * * * ?", UTC);
+        ScheduleRegistry.FireListener removeAll = new ScheduleRegistry.FireListener() {
+            @Override
+            public void fired(long jobId, long fireTime) {
+                registry.unregister(jobId);
+            }
+        };
+        assertEquals(2, registry.advance(START + 3 * 3600000L, removeAll));
+        assertEquals(0, registry.distinctSize());
+        assertEquals(Long.MIN_VALUE, registry.getNextFireTime(1L));
+        assertEquals(0, registry.advance(START + 4 * 3600000L, listener));
+    }
+
+    @Test
+    public void testRemovedSchedulesArePurged() {
+        ScheduleRegistry registry = new ScheduleRegistry(START);
+        for (long job = 0; job < 1000; job++) {
+            registry.register(job, (job % 60) + " " + (job / 60) + " * * * ?", UTC);
+        }
+        assertEquals(1000, registry.queueSize());
+        for (long job = 0; job < 1000; job++) {
+            if (job % 10 != 0) {
+                assertTrue(registry.unregister(job));
+            }
+        }
+        // 移除的 schedule 不會無限累積在 queue 中
+        assertEquals(100, registry.distinctSize());
+        assertTrue(registry.queueSize() <= 2 * 100 + 1);
+        assertEquals(100, registry.advance(START + 3600000L, new ScheduleRegistry.FireListener() {
+            @Override
+            public void fired(long jobId, long fireTime) {
+                assertEquals(0, jobId % 10);
+            }
+        }));
+    }
+}
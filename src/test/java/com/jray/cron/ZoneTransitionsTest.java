@@ -0,0 +1,102 @@
+package com.jray.cron;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ZoneTransitionsTest {
+
+    // 2014-07-27 00:00:00 UTC
+    private static final long CENTER = 1406419200000L;
+
+    private static final long YEAR = 365 * EpochCalendar.MILLIS_PER_DAY;
+
+    @Test
+    public void testOffsetsMatchTimeZone() {
+        Random random = new Random(20140727L);
+        for (String id : TimeZone.getAvailableIDs()) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            ZoneTransitions transitions = new ZoneTransitions(timeZone, CENTER);
+            EpochCalendar calendar = new EpochCalendar(timeZone);
+            // 範圍內外的隨機時間 (包含 calendar 的區段快取)
+            for (int i = 0; i < 200; i++) {
+                long millis = CENTER + (long) ((random.nextDouble() * 2 - 1) * 60 * YEAR);
+                assertEquals(id + " at " + millis, timeZone.getOffset(millis), transitions.getOffset(millis));
+                assertEquals(id + " at " + millis, timeZone.getOffset(millis), calendar.getOffset(millis));
+            }
+            // 每個轉換點前後
+            for (int segment = 1; segment < transitions.segmentCount(); segment++) {
+                long start = transitions.segmentStart(segment);
+                assertEquals(id, segment, transitions.segment(start));
+                assertEquals(id + " before " + start, timeZone.getOffset(start - 1), transitions.getOffset(start - 1));
+                assertEquals(id + " at " + start, timeZone.getOffset(start), transitions.getOffset(start));
+                assertEquals(id, start, transitions.findTransition(start - EpochCalendar.MILLIS_PER_DAY, start));
+                assertEquals(id, Long.MIN_VALUE, transitions.findTransition(start, start + 1));
+            }
+        }
+    }
+
+    @Test
+    public void testFixedOffsetZones() {
+        for (String id : new String[] { "UTC", "GMT+08:00", "Asia/Kolkata" }) {
+            ZoneTransitions transitions = new ZoneTransitions(TimeZone.getTimeZone(id), CENTER);
+            assertTrue(id, transitions.isFixed());
+            assertEquals(0, transitions.segment(CENTER + 40 * YEAR));
+            assertEquals(Long.MIN_VALUE, transitions.findTransition(CENTER, CENTER + YEAR));
+        }
+        ZoneTransitions newYork = new ZoneTransitions(TimeZone.getTimeZone("America/New_York"), CENTER);
+        assertFalse(newYork.isFixed());
+        // 範圍外 => -1 (改用 TimeZone)
+        assertEquals(-1, newYork.segment(CENTER + 51 * YEAR));
+        assertEquals(-1, newYork.segment(CENTER - 51 * YEAR));
+        // 一年內的第一次轉換 (2014-11-02 06:00 UTC), 範圍外同 TimeZone
+        assertEquals(1414908000000L, newYork.firstTransition(CENTER, CENTER + YEAR));
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        long far = CENTER + 51 * YEAR;
+        long first = newYork.firstTransition(far, far + YEAR);
+        assertEquals(timeZone.getOffset(far), timeZone.getOffset(first - 1));
+        assertTrue(timeZone.getOffset(first - 1) != timeZone.getOffset(first));
+        assertEquals(Long.MIN_VALUE, newYork.firstTransition(first, first + EpochCalendar.MILLIS_PER_DAY));
+    }
+
+    @Test
+    public void testFixedCalendarIsReused() {
+        EpochCalendar calendar = EpochCalendar.fixedForCurrentThread(-4 * 3600000);
+        calendar.setTimeInMillis(1414904400000L);
+        assertEquals(1, calendar.get(Calendar.HOUR_OF_DAY));
+        // 同一 thread 改變 offset 不建立新的 calendar, 也不影響一般的 calendar
+        EpochCalendar other = EpochCalendar.fixedForCurrentThread(-5 * 3600000);
+        assertSame(calendar, other);
+        other.setTimeInMillis(1414904400000L);
+        assertEquals(0, other.get(Calendar.HOUR_OF_DAY));
+        assertNotSame(calendar, EpochCalendar.forCurrentThread(TimeZone.getTimeZone("UTC")));
+    }
+
+    @Test
+    public void testCacheComparesRules() {
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        assertSame(ZoneTransitions.of(newYork), ZoneTransitions.of(TimeZone.getTimeZone("America/New_York")));
+        // 同 ID 但規則不同的自訂時區
+        SimpleTimeZone custom = new SimpleTimeZone(3600000, "America/New_York");
+        ZoneTransitions transitions = ZoneTransitions.of(custom);
+        assertNotSame(ZoneTransitions.of(newYork), transitions);
+        assertEquals(3600000, transitions.getOffset(CENTER));
+        assertTrue(transitions.isFixed());
+        // 自訂時區同樣快取 (不需每次重建), 不影響原本的時區
+        assertSame(transitions, ZoneTransitions.of(new SimpleTimeZone(3600000, "America/New_York")));
+        assertSame(ZoneTransitions.of(newYork), ZoneTransitions.of(TimeZone.getTimeZone("America/New_York")));
+        ZoneTransitions other = ZoneTransitions.of(new SimpleTimeZone(7200000, "America/New_York"));
+        assertNotSame(transitions, other);
+        assertEquals(7200000, other.getOffset(CENTER));
+        assertSame(other, ZoneTransitions.of(new SimpleTimeZone(7200000, "America/New_York")));
+    }
+}
@@ -0,0 +1,200 @@
+package com.jray.cron.spring;
+
+import com.jray.cron.CronEngine;
+import org.junit.Test;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link EngineCronTrigger} 與 Spring 的 {@link CronTrigger} 結果相同.
+ */
+public class EngineCronTriggerTest {
+
+    // 2014-01-01 ~ 2024-01-01 (UTC)
+    private static final long FROM = 1388534400000L;
+    private static final long TO = 1704067200000L;
+
+    private static final String[] EXPRESSIONS = { "* * * * * ?", "0 */15 9-17 * * MON-FRI", "0 0 12 31 * ?",
+            "0 0 0 29 */6 ?", "*/7 3/11 */5 * * *", "0 30 2 * * SUN", "0 0 1,2,3 ? * *", "15 0 0 1-7 * MON",
+            "0 0 0 28-31 * ?", "0 0 9 ? JAN,JUL 1-5" };
+
+    private static final String[] ZONES = { "UTC", "America/New_York", "Europe/London", "Asia/Taipei" };
+
+    @Test
+    public void testEquivalentToCronTrigger() {
+        Random random = new Random(20140728L);
+        CronEngine engine = new CronEngine();
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            for (String expression : EXPRESSIONS) {
+                Trigger spring = new CronTrigger(expression, timeZone);
+                Trigger trigger = new EngineCronTrigger(engine, expression, timeZone);
+                for (int i = 0; i < 50; i++) {
+                    // 連續執行: 每次執行 0 ~ 2 秒 (可能超過下一個 fire time)
+                    long start = FROM + (long) (random.nextDouble() * (TO - FROM));
+                    SimpleTriggerContext context = new SimpleTriggerContext();
+                    context.update(null, null, new Date(start));
+                    for (int n = 0; n < 20; n++) {
+                        Date expected = spring.nextExecutionTime(context);
+                        Date next = trigger.nextExecutionTime(context);
+                        assertEquals(expression + " @ " + zone, expected, next);
+                        Date completion = new Date(next.getTime() + random.nextInt(2000));
+                        context.update(next, next, completion);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEarlyCompletionUsesScheduledTime() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        EngineCronTrigger trigger = new EngineCronTrigger("0 * * * * ?", utc);
+        // 排定於 00:01:00, 時鐘誤差使得在 00:00:59.990 完成
+        Date scheduled = new Date(FROM + 60000L);
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        context.update(scheduled, new Date(FROM + 59980L), new Date(FROM + 59990L));
+        assertEquals(new Date(FROM + 120000L), trigger.nextExecutionTime(context));
+        assertEquals(new CronTrigger("0 * * * * ?", utc).nextExecutionTime(context), trigger.nextExecutionTime(context));
+        // 沒有執行過: 由目前時間起算
+        long now = System.currentTimeMillis();
+        long next = trigger.nextExecutionTime(new SimpleTriggerContext()).getTime();
+        assertTrue(next > now && next <= now + 60000L + 1000L);
+        assertEquals(new EngineCronTrigger("0 * * * * ?", utc), trigger);
+    }
+
+    @Test
+    public void testLeapDayBeyondSpringSearchLimit() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        // 2096-02-29 執行之後: 2100 年不是閏年, 下一次 (2104-02-29) 超過 CronTrigger 的搜尋上限
+        context.update(new Date(3981312000000L), new Date(3981312000000L), new Date(3981312001000L));
+        try {
+            new CronTrigger("0 0 0 29 2 ?", utc).nextExecutionTime(context);
+            fail();
+        }
+        catch (IllegalArgumentException expected) {
+            // runaway search
+        }
+        assertEquals(new Date(4233686400000L), new EngineCronTrigger("0 0 0 29 2 ?", utc).nextExecutionTime(context));
+    }
+
+    @Test
+    public void testDateChangeResetsTime() {
+        // 日期改變時回傳新日期的第一個 fire time, CronTrigger 保留已前進的秒 (見 CompiledCron 的說明)
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        assertDateChange("0,30 0,30 0,12 1 * ?", 1529280021000L, 1530403200000L, 1530403230000L, utc);
+        assertDateChange("*/20 */10 0,12 1 * ?", 1670417418000L, 1672531200000L, 1672531220000L, utc);
+    }
+
+    private static void assertDateChange(String expression, long start, long next, long spring, TimeZone timeZone) {
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        context.update(null, null, new Date(start));
+        assertEquals(new Date(spring), new CronTrigger(expression, timeZone).nextExecutionTime(context));
+        assertEquals(new Date(next), new EngineCronTrigger(expression, timeZone).nextExecutionTime(context));
+    }
+
+    @Test
+    public void testExhaustedScheduleReturnsNull() {
+        EngineCronTrigger trigger = new EngineCronTrigger("0 0 0 1 1 ? 2030", TimeZone.getTimeZone("UTC"));
+        SimpleTriggerContext context = new SimpleTriggerContext();
+        // 2030-01-01 00:00:00 UTC
+        Date last = new Date(1893456000000L);
+        context.update(null, null, new Date(last.getTime() - 1000L));
+        assertEquals(last, trigger.nextExecutionTime(context));
+        context.update(last, last, new Date(last.getTime() + 1000L));
+        assertNull(trigger.nextExecutionTime(context));
+    }
+
+    @Test
+    public void testInvalidExpressionFailsOnConstruction() {
+        for (String expression : new String[] { "0 0 0 32 * ?", "0 0 0 * * FOO", "* * * *" }) {
+            try {
+                new EngineCronTrigger(expression, TimeZone.getTimeZone("UTC"));
+                fail(expression);
+            }
+            catch (IllegalArgumentException expected) {
+                // 同 CronTrigger
+            }
+        }
+    }
+
+    @Test
+    public void testSchedulerAdaptsCronTrigger() {
+        final Trigger[] scheduled = new Trigger[1];
+        TaskScheduler delegate = new TaskScheduler() {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+                scheduled[0] = trigger;
+                return null;
+            }
+
+            @Override
+            public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+                return null;
+            }
+
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+                return null;
+            }
+
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+                return null;
+            }
+
+            @Override
+            public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+                return null;
+            }
+
+            @Override
+            public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+                return null;
+            }
+        };
+        TimeZone taipei = TimeZone.getTimeZone("Asia/Taipei");
+        TimeZone london = TimeZone.getTimeZone("Europe/London");
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        // 預設沿用 CronTrigger 的時區 (沒有指定時為系統時區)
+        EngineTaskScheduler scheduler = new EngineTaskScheduler(delegate, new CronEngine());
+        scheduler.schedule(noop, new CronTrigger("0 0 9 * * MON-FRI", london));
+        EngineCronTrigger adapted = (EngineCronTrigger) scheduled[0];
+        assertEquals("0 0 9 * * MON-FRI", adapted.getExpression());
+        assertEquals(london, adapted.getTimeZone());
+        scheduler.schedule(noop, new CronTrigger("0 0 9 * * MON-FRI"));
+        assertEquals(TimeZone.getDefault(), ((EngineCronTrigger) scheduled[0]).getTimeZone());
+
+        // 明確指定的時區覆寫 CronTrigger 的時區
+        scheduler = new EngineTaskScheduler(delegate, new CronEngine(), taipei);
+        scheduler.schedule(noop, new CronTrigger("0 0 9 * * MON-FRI"));
+        adapted = (EngineCronTrigger) scheduled[0];
+        assertEquals("0 0 9 * * MON-FRI", adapted.getExpression());
+        assertEquals(taipei, adapted.getTimeZone());
+        scheduler.schedule(noop, new CronTrigger("0 0 9 * * MON-FRI", london));
+        assertEquals(taipei, ((EngineCronTrigger) scheduled[0]).getTimeZone());
+        // 其他的 trigger 不轉換
+        PeriodicTrigger periodic = new PeriodicTrigger(1000L);
+        scheduler.schedule(noop, periodic);
+        assertSame(periodic, scheduled[0]);
+    }
+}